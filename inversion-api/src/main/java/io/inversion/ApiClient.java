@@ -19,9 +19,12 @@ package io.inversion;
 
 import io.inversion.context.Context;
 import io.inversion.json.JSNode;
+import io.inversion.utils.GzipCompressingInputStream;
 import io.inversion.utils.Path;
+import io.inversion.utils.SingleFlight;
 import io.inversion.utils.StreamBuffer;
 import io.inversion.utils.Utils;
+import io.inversion.utils.VirtualThreads;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -33,16 +36,27 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * An HttpClient wrapper designed specifically to run inside of an Inversion Request Chain with some extra superpowers.
@@ -56,6 +70,8 @@ import java.util.zip.GZIPOutputStream;
  *  <li>lazy runtime host url construction through lookup of "{ApiClient.name}.url" in the environment
  *  <li>dynamic host url variables - any "{paramName}" tokens in the host url will be replaced with Chain.peek.getRequest().getUrl().getParam(paramName).
  *  <li>change any request/response in an always thread safe way by overriding <code>doRequest(Request)</code>
+ *  <li>HTTP caching with ETag revalidation, stale-while-revalidate and stale-if-error.  See ApiClient.withCaching()/withResponseCache()
+ *  <li>a choice of the Apache HttpClient or the JDK's HTTP/2 capable HttpClient as the transport.  See ApiClient.withTransport()
  * </ul>
  *
  * <p>
@@ -213,6 +229,17 @@ public class ApiClient {
      */
     protected long maxMemoryBuffer = 100 * 1024;
 
+    /**
+     * When true, response bodies are not buffered.  The Response is handed to listeners and
+     * FutureResponse callers as soon as the headers arrive and the live entity stream is available
+     * from {@link Response#getBodyStream()}.  The connection is released when that stream is closed.
+     * <p>
+     * The other Response body accessors still work, they buffer the stream on first use.
+     * <p>
+     * Default value is false.
+     */
+    protected boolean streamResponses = false;
+
 
     /**
      * The thread pool executor used to make asynchronous requests.  The Executor will expand to
@@ -276,6 +303,173 @@ public class ApiClient {
      */
     public int maxConTotal = 50;
 
+    /**
+     * The number of times an idempotent request (GET, HEAD, OPTIONS, PUT, DELETE) will be retried when it fails with
+     * a network error or one of the <code>retryStatusCodes</code>.
+     * <p>
+     * Retries wait a random "full jitter" delay between zero and <code>retryBaseDelay * 2^attempt</code>, capped at
+     * <code>retryMaxDelay</code>, or the response's Retry-After seconds if that is longer.  Requests with a
+     * {@link Request#getBodyStream() body stream} are never retried because the stream can only be sent once.
+     * <p>
+     * Default value is 0, no retries.
+     */
+    protected int retryMax = 0;
+
+    /**
+     * Default value is 100ms
+     */
+    protected long retryBaseDelay = 100;
+
+    /**
+     * Default value is 5000ms
+     */
+    protected long retryMaxDelay = 5000;
+
+    /**
+     * Response status codes that will be retried, network errors are always retried.
+     * <p>
+     * Default values are 429, 502, 503 and 504.
+     */
+    protected final Set<Integer> retryStatusCodes = Utils.add(new TreeSet<>(), 429, 502, 503, 504);
+
+    /**
+     * When greater than zero, a GET that has not completed within this percentile of recent GET latencies
+     * is "hedged" by sending a second identical request, the first successful response wins.
+     * <p>
+     * For example 95 sends a second request for the slowest 5% of GETs, trading a few percent of extra load
+     * for a much shorter latency tail.  Hedging starts once <code>hedgeMinSamples</code> latencies have been recorded.
+     * <p>
+     * Default value is 0, no hedging.
+     */
+    protected double hedgePercentile = 0;
+
+    /**
+     * Default value is 20
+     */
+    protected int hedgeMinSamples = 20;
+
+    /**
+     * When greater than zero, at most this many requests, including retries and hedges, will be in flight to
+     * any one scheme/host/port at a time.  Requests wait up to <code>connectionRequestTimeout</code> for a slot
+     * and then fail with a 503 without being sent.
+     * <p>
+     * Default value is 0, unlimited.
+     */
+    protected int routeConcurrencyMax = 0;
+
+    /**
+     * When greater than zero, this many consecutive network errors or 5xx responses from a scheme/host/port
+     * will open its circuit.  While open, requests fail fast with a 503 without being sent.  After
+     * <code>circuitOpenTime</code> a single probe request is let through, if it succeeds the circuit closes
+     * otherwise it stays open for another <code>circuitOpenTime</code>.
+     * <p>
+     * Default value is 0, no circuit breaker.
+     */
+    protected int circuitFailureThreshold = 0;
+
+    /**
+     * Default value is 30000ms
+     */
+    protected long circuitOpenTime = 30000;
+
+    /**
+     * When true, concurrent identical GETs share a single in flight call.  Calls are identical if they have the same
+     * url and the same values for the <code>coalesceKeyHeaders</code>, so callers with different credentials
+     * never share a response.  Each caller receives its own copy of the Response.
+     * <p>
+     * GETs with a body stream and clients with <code>streamResponses</code> on are never coalesced.
+     * <p>
+     * Default value is false.
+     */
+    protected boolean coalesceGets = false;
+
+    /**
+     * Headers that identify the caller and so are part of the coalescing key.
+     */
+    protected final Set<String> coalesceKeyHeaders = Utils.add(new TreeSet<>(String.CASE_INSENSITIVE_ORDER), "Authorization", "Cookie", "x-auth-token");
+
+    /**
+     * Shares in flight GETs when <code>coalesceGets</code> is true.  Set a ttl on this to also share successful
+     * responses for a short time after they complete.
+     */
+    protected final SingleFlight<String, Response> singleFlight = new SingleFlight<>();
+
+    /**
+     * When true, GET responses are cached according to their Cache-Control, Expires, ETag, Last-Modified and Vary
+     * headers.  Fresh entries are served without a remote call, stale entries that have an ETag or Last-Modified
+     * validator are revalidated with a conditional If-None-Match/If-Modified-Since request, entries within their
+     * stale-while-revalidate window are served immediately while being revalidated in the background, and entries
+     * within their stale-if-error window are served in place of network errors and 5xx responses.
+     * <p>
+     * Entries are keyed on the url and the <code>coalesceKeyHeaders</code> so callers with different credentials
+     * never share a cached response.
+     * <p>
+     * Cache hits never reach {@link #doRequest(Request)} or the RequestListeners but are delivered to the response
+     * listeners like any other Response.
+     * <p>
+     * Default value is false.
+     *
+     * @see #withResponseCache(ResponseCache)
+     */
+    protected boolean caching = false;
+
+    /**
+     * The size of the default {@link ResponseCache.InMemory} cache.
+     * <p>
+     * Default value is 1000
+     */
+    protected int cacheMaxEntries = 1000;
+
+    /**
+     * Responses with larger bodies are not cached.
+     * <p>
+     * Default value is 1MB
+     */
+    protected long cacheMaxBodySize = 1024 * 1024;
+
+    /**
+     * How long, in milliseconds, past their freshness lifetime cached responses may be served in place of an error when
+     * the response did not include a stale-if-error directive.
+     * <p>
+     * Default value is 0
+     */
+    protected long cacheStaleIfError = 0;
+
+    /**
+     * How long, in milliseconds, entries that have an ETag or Last-Modified validator are kept after they
+     * can no longer be served so they can be cheaply revalidated.
+     * <p>
+     * Default value is 3600000ms
+     */
+    protected long cacheKeepForRevalidation = 60 * 60 * 1000;
+
+    protected ResponseCache responseCache = null;
+
+    /**
+     * Keys currently being revalidated in the background for stale-while-revalidate.
+     */
+    final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Counters for the caching, retry, hedging, concurrency limit and circuit breaker policies.
+     */
+    protected final Counters counters = new Counters();
+
+    final Map<String, Route> routes    = new ConcurrentHashMap<>();
+    final LatencyTracker     latencies = new LatencyTracker(256);
+
+    /**
+     * Runs hedged requests, background cache revalidation and retries.
+     *
+     * @see #getHedgeExecutor()
+     */
+    static ExecutorService hedgeExecutor = null;
+
+    /**
+     * Waits out retry delays so that no worker thread sleeps while waiting to retry.
+     */
+    static ScheduledExecutorService retryScheduler = null;
+
 
     /**
      * Parameter for default HttpClient configuration
@@ -295,6 +489,44 @@ public class ApiClient {
 
     protected HttpClient httpClient = null;
 
+    /**
+     * Sends requests through the blocking Apache HttpClient, limited by <code>maxConPerRoute</code> and <code>maxConTotal</code>.
+     */
+    public static final String TRANSPORT_APACHE = "apache";
+
+    /**
+     * Sends requests through the JDK's java.net.http.HttpClient which multiplexes concurrent requests over a single
+     * HTTP/2 connection per host, negotiated with ALPN for https and an h2c upgrade for http, and falls back to
+     * HTTP/1.1 for servers that don't support HTTP/2.
+     */
+    public static final String TRANSPORT_JDK = "jdk";
+
+    /**
+     * The HTTP client used to send requests, either {@link #TRANSPORT_APACHE} or {@link #TRANSPORT_JDK}.
+     * <p>
+     * The retry, hedging, caching and other policies, RequestListeners and FutureResponse api behave the same
+     * with either transport.  The JDK transport does not pool connections by route so use <code>routeConcurrencyMax</code>
+     * to limit the load on a downstream.  It pairs well with <code>virtualThreads</code> on the Executor which lets
+     * <code>threadsMax</code> be raised to match the number of concurrent calls without the cost of platform threads.
+     * <p>
+     * Default value is "apache".
+     */
+    protected String transport = TRANSPORT_APACHE;
+
+    /**
+     * The preferred protocol for the JDK transport, "HTTP_2" or "HTTP_1_1".
+     * <p>
+     * Default value is "HTTP_2".
+     */
+    protected String httpVersion = "HTTP_2";
+
+    protected transient volatile java.net.http.HttpClient jdkHttpClient = null;
+
+    /**
+     * Headers the JDK HttpClient manages itself and will not accept from callers.
+     */
+    static final Set<String> JDK_RESTRICTED_HEADERS = Utils.add(new TreeSet<>(String.CASE_INSENSITIVE_ORDER), "Connection", "Content-Length", "Expect", "Host", "Upgrade");
+
     public ApiClient() {
     }
 
@@ -419,7 +651,34 @@ public class ApiClient {
      * @return
      */
     public FutureResponse call(Request request) {
+        String                         key    = coalesceGets ? buildCoalesceKey(request) : null;
+        SingleFlight.Flight<Response> flight = key != null ? singleFlight.join(key) : null;
+
+        if (flight != null && !flight.isLeader()) {
+            FutureResponse follower = new FutureResponse(request) {
+                public void run() {
+                    //-- the leader does the work
+                }
+            };
+            flight.getFuture().whenComplete((template, ex) -> {
+                Response response = ex == null ? template.copy() : new Response(request.getUrl().toString()).withStatus(Status.SC_500_INTERNAL_SERVER_ERROR).withError(ex);
+                response.withRequest(request);
+                follower.setResponse(response);
+            });
+            return follower;
+        }
+
         FutureResponse future = buildFuture(request);
+        if (flight != null) {
+            future.onResponse(response -> {
+                try {
+                    singleFlight.complete(key, flight, response.copy(), response.isSuccess());
+                } catch (Throwable ex) {
+                    singleFlight.fail(key, flight, ex);
+                }
+            });
+        }
+
         if (threadsMax < 1)
             future.run();
         else
@@ -427,6 +686,29 @@ public class ApiClient {
         return future;
     }
 
+    /**
+     * @return the single flight key for <code>request</code> or null if it can not be coalesced
+     */
+    protected String buildCoalesceKey(Request request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || request.getBodyStream() != null || streamResponses)
+            return null;
+
+        return identityKey(request);
+    }
+
+    /**
+     * @return the url plus the values of any <code>coalesceKeyHeaders</code>
+     */
+    String identityKey(Request request) {
+        StringBuilder key = new StringBuilder(request.getUrl().toString());
+        for (String header : coalesceKeyHeaders) {
+            List<String> values = request.getAllHeaders(header);
+            if (values != null && values.size() > 0)
+                key.append("\n").append(header.toLowerCase()).append(": ").append(Utils.implode(",", values));
+        }
+        return key.toString();
+    }
+
     /**
      * Builds a request with the supplied information merged with the url, query param, and header options configured
      * on this reset client and potentially pulled from the Chain.first() root caller request.
@@ -512,9 +794,29 @@ public class ApiClient {
         final FutureResponse future = new FutureResponse(request) {
 
             public void run() {
-                Response response = doRequest(request);
-                response.withEndAt(System.currentTimeMillis());
-                setResponse(response);
+                CompletableFuture<Response> result;
+                try {
+                    //-- a retry is scheduled instead of holding this worker thread while it waits
+                    result = executeAsync(request);
+                } catch (Throwable ex) {
+                    result = new CompletableFuture<>();
+                    result.completeExceptionally(ex);
+                }
+                CompletableFuture<Response> done = result.whenComplete((response, ex) -> {
+                    if (ex != null) {
+                        //-- always complete so callers, and any coalesced followers, are never left waiting
+                        ex = unwrap(ex);
+                        log.error("Error executing request", ex);
+                        response = new Response(request.getUrl().toString()).withStatus(Status.SC_500_INTERNAL_SERVER_ERROR).withError(ex);
+                        response.withRequest(request);
+                    }
+                    response.withEndAt(System.currentTimeMillis());
+                    setResponse(response);
+                });
+
+                //-- a synchronous client promises a completed FutureResponse
+                if (threadsMax < 1)
+                    done.handle((response, ex) -> response).join();
             }
         };
 
@@ -522,150 +824,612 @@ public class ApiClient {
     }
 
     /**
-     * The work of executing the remote call is done here.
-     * <p>
-     * Override this method to intercept the remote call and change anything about the Request or Response that you want.
-     * <p>
-     * All of the Request url/header/param configuration has already been done on the Request.
-     * <p>
-     * You don't need to do anything related to threading here.
-     * This method is already executing asynchronously within the Executor's thread pool.
-     * Simply handle/transform the Request/Response as desired.
-     * Simply returning a Response will cause the FutureResponse to transition to done and allow calls blocking on FutureResponse.get() to receive the Response.
+     * Answers <code>request</code> from the response cache, when <code>caching</code> is on, or runs it through
+     * {@link #doRequest(Request)} applying the circuit breaker, per route concurrency limit, hedging and retry policies.
      * <p>
-     * Overriding this method can be really helpful when you what your ApiClient calling algorithm to say clean,
-     * hiding some of the Request/Response customization details or otherwise need to make sure Requests/Responses are always handled in a specific way.
-     * <p>
-     * A typical override of this method might look like the following:
-     * <pre>
-     * protected ApiClient client = new ApiClient("myservice"){
-     *
-     *  protected Response doRequest(Request request)
-     *  {
-     *      if(checkMyCondition(request))
-     *      {
-     *          //-- short circuit the remote call "faking" a
-     *          //-- remote 200 response (the default status code for a Response)
-     *          return new Response(request.getUrl());
-     *      }
-     *      else
-     *      {
-     *          doMyRequestTransformation(request);
-     *          Response response = super.doRequest(request);
-     *          doMyResponseTransformation(response);
-     *          return response;
-     *      }
-     *  }
-     * }
-     * </pre>
+     * This blocks the calling thread through any retry delays, {@link FutureResponse}s use {@link #executeAsync(Request)}.
      *
      * @param request the request to make
-     * @return a Response containing the server response data or error data.  Will not be null.
+     * @return the final Response, never null
      */
-    protected Response doRequest(Request request) {
-        return doRequest0(request);
+    protected Response execute(Request request) {
+        return join(executeAsync(request));
     }
 
-    Response doRequest0(Request request) {
-
-        String          m   = request.getMethod();
-        HttpRequestBase req = null;
-
-        String   url      = request.getUrl().toString();
-        Response response = new Response(url);
-        response.withJson((JSNode) null);
-        response.withRequest(request);
+    /**
+     * The first attempt runs on the calling thread.  Retries are scheduled after their delay and then
+     * run on the background executor so no thread is held while waiting to retry.
+     *
+     * @param request the request to make
+     * @return a future that completes with the final Response, never null
+     * @see #execute(Request)
+     */
+    protected CompletableFuture<Response> executeAsync(Request request) {
+        counters.requests.increment();
+
+        ResponseCache cache = getResponseCache();
+        if (cache == null)
+            return sendAsync(request);
+
+        String key = buildCacheKey(request);
+        if (key == null) {
+            return sendAsync(request).thenApply(response -> {
+                if (!Utils.in(request.getMethod() == null ? null : request.getMethod().toUpperCase(), "GET", "HEAD", "OPTIONS")) {
+                    //-- unsafe methods invalidate the cached response for their url
+                    String url = identityKey(request);
+                    if (url != null && response.getStatusCode() < 400)
+                        cache.remove(url);
+                }
+                return response;
+            });
+        }
 
-        for (RequestListener l : requestListeners) {
-            Response replacementResponse = l.onRequest(request);
-            if (replacementResponse != null) {
-                if (replacementResponse.getUrl() == null)
-                    replacementResponse.withUrl(url);
-                if (replacementResponse.getRequest() == null)
-                    replacementResponse.withRequest(request);
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry != null && !entry.matches(request))
+            entry = null;
 
-                return replacementResponse;
+        String  cacheControl = request.getHeader("Cache-Control");
+        boolean noCache      = cacheControl != null && cacheControl.toLowerCase().contains("no-cache");
+        if (entry != null && !noCache) {
+            if (entry.isFresh()) {
+                counters.cacheHits.increment();
+                return CompletableFuture.completedFuture(entry.toResponse(request));
+            }
+            if (entry.isStaleWhileRevalidate()) {
+                counters.cacheStale.increment();
+                revalidateAsync(key, request, entry);
+                return CompletableFuture.completedFuture(entry.toResponse(request));
             }
         }
 
-        try {
-            HttpClient   h = getHttpClient();
-            HttpResponse hr;
-
-            response.debug("--request header------");
-            response.debug(m + " " + url);
+        if (entry == null)
+            counters.cacheMisses.increment();
 
-            if ("post".equalsIgnoreCase(m)) {
-                req = new HttpPost(url);
-            }
-            if ("put".equalsIgnoreCase(m)) {
-                req = new HttpPut(url);
-            } else if ("get".equalsIgnoreCase(m)) {
-                req = new HttpGet(url);
+        return revalidate(cache, key, request, entry);
+    }
 
+    /**
+     * Sends <code>request</code>, conditionally if there is an <code>entry</code> with validators, and updates the cache with the result.
+     */
+    CompletableFuture<Response> revalidate(ResponseCache cache, String key, Request request, ResponseCache.Entry entry) {
+        boolean conditional = entry != null && entry.hasValidators();
+        if (conditional) {
+            counters.cacheRevalidations.increment();
+            if (entry.getETag() != null)
+                request.setHeader("If-None-Match", entry.getETag());
+            if (entry.getLastModified() != null)
+                request.setHeader("If-Modified-Since", entry.getLastModified());
+        }
 
-            } else if ("delete".equalsIgnoreCase(m)) {
-                if (request.getBody() != null) {
-                    req = new HttpDeleteWithBody(url);
-                } else {
-                    req = new HttpDelete(url);
-                }
-            } else if ("patch".equalsIgnoreCase(m)) {
-                req = new HttpPatch(url);
+        return sendAsync(request).handle((response, ex) -> {
+            if (conditional) {
+                request.removeHeader("If-None-Match");
+                request.removeHeader("If-Modified-Since");
             }
 
-            for (String key : request.getHeaders().keySet()) {
-                List<String> values = request.getAllHeaders(key);
-                for (String value : values) {
-                    req.setHeader(key, value);
-                    response.debug(key, value);
+            if (ex != null) {
+                if (entry != null && entry.isStaleIfError(cacheStaleIfError)) {
+                    counters.cacheStale.increment();
+                    return entry.toResponse(request);
                 }
+                throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
             }
-            if (request.getBody() != null && req instanceof HttpEntityEnclosingRequestBase) {
-                response.debug("\r\n--request body--------");
-
-                byte[] bytes = request.getBody().getBytes(StandardCharsets.UTF_8);
-
-                if (useCompression && bytes.length >= compressionMinSize) {
-                    req.setHeader("Content-Encoding", "gzip");
-                    ByteArrayOutputStream obj  = new ByteArrayOutputStream();
-                    GZIPOutputStream      gzip = new GZIPOutputStream(obj);
-                    gzip.write(bytes);
-                    gzip.flush();
-                    gzip.close();
-                    bytes = obj.toByteArray();
-                    //TODO: replace this with a transparent stream
-                    //https://stackoverflow.com/questions/11036280/compress-an-inputstream-with-gzip
-                }
 
-                ((HttpEntityEnclosingRequestBase) req).setEntity(new ByteArrayEntity(bytes));
+            if (conditional && response.getStatusCode() == 304) {
+                counters.cacheNotModified.increment();
+                ResponseCache.Entry refreshed = entry.refresh(response);
+                cache.put(key, refreshed, refreshed.getTtl(cacheStaleIfError, cacheKeepForRevalidation));
+                return refreshed.toResponse(request);
             }
 
-            if (Utils.empty(request.getHeader("Accept-Encoding"))) {
-                req.setHeader("Accept-Encoding", "gzip");
+            if (entry != null && isFailure(response) && entry.isStaleIfError(cacheStaleIfError)) {
+                counters.cacheStale.increment();
+                discard(response);
+                return entry.toResponse(request);
             }
 
-            hr = h.execute(req);
-
-            response.withStatusMesg(hr.getStatusLine().toString());
-            response.withStatusCode(hr.getStatusLine().getStatusCode());
+            ResponseCache.Entry updated = ResponseCache.Entry.of(request, response, cacheMaxBodySize);
+            if (updated != null)
+                cache.put(key, updated, updated.getTtl(cacheStaleIfError, cacheKeepForRevalidation));
+            else if (entry != null && !isFailure(response))
+                cache.remove(key);
 
-            response.debug("-response headers -----");
-            response.debug("status: " + response.getStatus());
-            for (Header header : hr.getAllHeaders()) {
-                response.debug("\r\n" + header.getName() + ": " + header.getValue());
-                response.withHeader(header.getName(), header.getValue());
-            }
+            return response;
+        });
+    }
 
-            HttpEntity e = hr.getEntity();
-            if (e != null) {
-                InputStream is = e.getContent();
+    /**
+     * Revalidates a stale entry on a background thread, at most once at a time per key, using a copy of
+     * <code>request</code> so the caller's Request is never modified concurrently.
+     */
+    void revalidateAsync(String key, Request request, ResponseCache.Entry entry) {
+        if (!revalidating.add(key))
+            return;
+
+        Request copy = new Request(request.getMethod(), request.getUrl().toString());
+        for (String name : request.getHeaders().keySet()) {
+            for (String value : request.getAllHeaders(name))
+                copy.addHeader(name, value);
+        }
 
-//                String text = Utils.read(is);
-//                System.out.println(">>>--------------------------------");
-//                System.out.println(hr.getStatusLine().getStatusCode() + " " + m + " " + url);
-//                System.out.println("\r\n");
-//                System.out.println(text);
+        try {
+            getHedgeExecutor().execute(() -> {
+                CompletableFuture<Response> result;
+                try {
+                    result = revalidate(getResponseCache(), key, copy, entry);
+                } catch (Throwable ex) {
+                    result = new CompletableFuture<>();
+                    result.completeExceptionally(ex);
+                }
+                result.whenComplete((response, ex) -> {
+                    if (ex != null)
+                        log.warn("Error revalidating cached response for " + copy.getUrl(), unwrap(ex));
+                    revalidating.remove(key);
+                });
+            });
+        } catch (RejectedExecutionException ex) {
+            //-- saturated, the stale entry is served and the next request tries again
+            revalidating.remove(key);
+        } catch (RuntimeException ex) {
+            revalidating.remove(key);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the response cache key for <code>request</code> or null if it can not be cached
+     */
+    protected String buildCacheKey(Request request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || request.getBodyStream() != null || streamResponses)
+            return null;
+
+        String cacheControl = request.getHeader("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase().contains("no-store"))
+            return null;
+
+        //-- callers managing their own conditional requests get the remote response as is
+        if (request.getHeader("If-None-Match") != null || request.getHeader("If-Modified-Since") != null)
+            return null;
+
+        return identityKey(request);
+    }
+
+    /**
+     * Runs <code>request</code> through {@link #doRequest(Request)} applying the circuit breaker, per route
+     * concurrency limit, hedging and retry policies.
+     *
+     * @param request the request to make
+     * @return a future that completes with the final Response, never null
+     */
+    CompletableFuture<Response> sendAsync(Request request) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        send(request, 0, result);
+        return result;
+    }
+
+    /**
+     * Makes attempt number <code>attempt</code> on the calling thread and either completes <code>result</code>
+     * or schedules the next attempt on the retry scheduler.
+     */
+    void send(Request request, int attempt, CompletableFuture<Response> result) {
+        try {
+            Route   route      = getRoute(request);
+            boolean idempotent = request.getBodyStream() == null && isIdempotent(request.getMethod());
+            boolean hedgeable  = hedgePercentile > 0 && request.getBodyStream() == null && "GET".equalsIgnoreCase(request.getMethod());
+
+            if (!route.allowRequest()) {
+                counters.shortCircuited.increment();
+                result.complete(buildUnavailableResponse(request, "The circuit for '{}' is open", route.key));
+                return;
+            }
+
+            long     threshold = hedgeable ? latencies.percentile(hedgePercentile, hedgeMinSamples) : -1;
+            Response response;
+            try {
+                response = threshold > -1 ? hedge(request, route, threshold) : attempt(request, route, -1);
+            } catch (RuntimeException | Error ex) {
+                route.record(true);
+                throw ex;
+            }
+
+            if (response == null) {
+                route.cancelProbe();
+                counters.routeRejected.increment();
+                result.complete(buildUnavailableResponse(request, "The concurrency limit for '{}' has been reached", route.key));
+                return;
+            }
+
+            route.record(isFailure(response));
+
+            if (attempt >= retryMax || !idempotent || !isRetryable(response)) {
+                result.complete(response);
+                return;
+            }
+
+            counters.retries.increment();
+            discard(response);
+
+            Callable<Object> retry = Chain.propagate(() -> {
+                send(request, attempt + 1, result);
+                return null;
+            });
+            try {
+                getRetryScheduler().schedule(() -> {
+                    try {
+                        getHedgeExecutor().execute(() -> {
+                            try {
+                                retry.call();
+                            } catch (Throwable ex) {
+                                result.completeExceptionally(ex);
+                            }
+                        });
+                    } catch (RejectedExecutionException ex) {
+                        //-- saturated, give up retrying instead of adding load
+                        result.complete(response);
+                    } catch (Throwable ex) {
+                        result.completeExceptionally(ex);
+                    }
+                }, computeRetryDelay(attempt, response), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                result.complete(response);
+            }
+        } catch (Throwable ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * @return the Response of <code>future</code>, rethrowing the original exception if it failed
+     */
+    static Response join(CompletableFuture<Response> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = unwrap(ex);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw ex;
+        }
+    }
+
+    static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null)
+            ex = ex.getCause();
+        return ex;
+    }
+
+    /**
+     * Makes a single call through doRequest() holding one of the route's concurrency slots.
+     *
+     * @param wait how long to wait for a slot, less than zero to wait up to <code>connectionRequestTimeout</code>
+     * @return the Response or null if a concurrency slot could not be acquired
+     */
+    Response attempt(Request request, Route route, long wait) {
+        if (!route.acquire(wait < 0 ? connectionRequestTimeout : wait))
+            return null;
+        try {
+            counters.attempts.increment();
+            long     start    = System.nanoTime();
+            Response response = doRequest(request);
+            if (!isFailure(response) && "GET".equalsIgnoreCase(request.getMethod()))
+                latencies.record(System.nanoTime() - start);
+            return response;
+        } finally {
+            route.release();
+        }
+    }
+
+    /**
+     * Sends the request and, if it has not responded within <code>threshold</code> nanoseconds, sends it again
+     * returning whichever response arrives first, preferring success.
+     */
+    Response hedge(Request request, Route route, long threshold) {
+        CompletableFuture<Response> primary = supplyAsync(request, route, -1);
+        try {
+            return primary.get(threshold, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            //-- too slow, send the hedge below
+        } catch (Exception ex) {
+            return primary.join();
+        }
+
+        //-- never wait for a slot to hedge, that would only add load to a saturated route
+        CompletableFuture<Response> secondary = supplyAsync(request, route, 0);
+        counters.hedges.increment();
+
+        CompletableFuture.anyOf(primary, secondary).handle((r, ex) -> r).join();
+
+        CompletableFuture<Response> winner   = primary.isDone() ? primary : secondary;
+        CompletableFuture<Response> other    = winner == primary ? secondary : primary;
+        Response                    response = resultOf(winner);
+
+        if (response == null || isFailure(response)) {
+            //-- the first to arrive failed, threw or could not get a slot so wait for the other
+            other.handle((r, ex) -> r).join();
+            Response alternate = resultOf(other);
+            if (alternate != null && (response == null || !isFailure(alternate))) {
+                discard(response);
+                response = alternate;
+                winner = other;
+            } else {
+                discard(alternate);
+            }
+        } else {
+            other.thenAccept(this::discard);
+        }
+
+        if (response == null && primary.isCompletedExceptionally())
+            return primary.join();//-- rethrows
+
+        if (response != null && winner == secondary)
+            counters.hedgeWins.increment();
+
+        return response;
+    }
+
+    static Response resultOf(CompletableFuture<Response> future) {
+        return future.isCompletedExceptionally() ? null : future.join();
+    }
+
+    CompletableFuture<Response> supplyAsync(Request request, Route route, long wait) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Callable<Response>          task   = Chain.propagate(() -> attempt(request, route, wait));
+        Runnable                    run    = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+        try {
+            getHedgeExecutor().execute(run);
+        } catch (RejectedExecutionException ex) {
+            //-- saturated, send the primary on this thread and skip the hedge
+            if (wait < 0)
+                run.run();
+            else
+                future.complete(null);
+        }
+        return future;
+    }
+
+    /**
+     * Virtual threads are used when the JVM supports them (Java 21+).  Otherwise a fixed size pool of daemon
+     * threads with a bounded queue is used that rejects tasks when it is saturated.  Callers fall back to
+     * running a primary request on their own thread, skipping the hedge, background revalidation or retry.
+     *
+     * @return the executor shared by all ApiClients for hedges, background revalidation and retries
+     */
+    static synchronized ExecutorService getHedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = VirtualThreads.newExecutor("apiclient-hedge-");
+            if (hedgeExecutor == null) {
+                AtomicInteger      threadNum = new AtomicInteger(0);
+                int                threads   = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+                ThreadPoolExecutor pool      = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 16), r -> {
+                    Thread t = new Thread(r, "apiclient-hedge-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+                pool.allowCoreThreadTimeOut(true);
+                hedgeExecutor = pool;
+            }
+        }
+        return hedgeExecutor;
+    }
+
+    static synchronized ScheduledExecutorService getRetryScheduler() {
+        if (retryScheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "apiclient-retry");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            retryScheduler = scheduler;
+        }
+        return retryScheduler;
+    }
+
+    /**
+     * Releases the connection held by an unused streaming response.
+     */
+    void discard(Response response) {
+        if (response != null && response.isStreaming()) {
+            try {
+                response.getBodyStream().close();
+            } catch (Exception ex) {
+                //ignore
+            }
+        }
+    }
+
+    protected boolean isIdempotent(String method) {
+        return Utils.in(method == null ? null : method.toUpperCase(), "GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    }
+
+    /**
+     * @return true for network errors and any <code>retryStatusCodes</code>
+     */
+    protected boolean isRetryable(Response response) {
+        if (retryStatusCodes.contains(response.getStatusCode()))
+            return true;
+        return response.getStatusCode() >= 500 && response.getError() != null;
+    }
+
+    /**
+     * @return true for network errors and 5xx responses, these count against the circuit breaker
+     */
+    protected boolean isFailure(Response response) {
+        return response.getStatusCode() >= 500;
+    }
+
+    protected long computeRetryDelay(int attempt, Response response) {
+        long cap   = Math.min(retryMaxDelay, retryBaseDelay * (1L << Math.min(attempt, 20)));
+        long delay = ThreadLocalRandom.current().nextLong(Math.max(cap, 0) + 1);
+
+        String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter != null && retryAfter.trim().matches("\\d+"))
+            delay = Math.max(delay, Math.min(retryMaxDelay, Long.parseLong(retryAfter.trim()) * 1000));
+
+        return delay;
+    }
+
+    Response buildUnavailableResponse(Request request, String messageFormat, Object... args) {
+        String   url      = request.getUrl().toString();
+        Response response = new Response(url);
+        response.withRequest(request);
+        response.withStatus(Status.SC_503_SERVICE_UNAVAILABLE);
+        response.withError(new ApiException(null, Status.SC_503_SERVICE_UNAVAILABLE, messageFormat, args));
+        response.withEndAt(System.currentTimeMillis());
+        return response;
+    }
+
+    Route getRoute(Request request) {
+        Url    url = request.getUrl();
+        String key = url.getProtocol() + "://" + url.getHost() + (url.getPort() > 0 ? ":" + url.getPort() : "");
+        return routes.computeIfAbsent(key.toLowerCase(), Route::new);
+    }
+
+    /**
+     * The work of executing the remote call is done here.
+     * <p>
+     * Override this method to intercept the remote call and change anything about the Request or Response that you want.
+     * <p>
+     * All of the Request url/header/param configuration has already been done on the Request.
+     * <p>
+     * You don't need to do anything related to threading here.
+     * This method is already executing asynchronously within the Executor's thread pool.
+     * Simply handle/transform the Request/Response as desired.
+     * Simply returning a Response will cause the FutureResponse to transition to done and allow calls blocking on FutureResponse.get() to receive the Response.
+     * <p>
+     * Overriding this method can be really helpful when you what your ApiClient calling algorithm to say clean,
+     * hiding some of the Request/Response customization details or otherwise need to make sure Requests/Responses are always handled in a specific way.
+     * <p>
+     * A typical override of this method might look like the following:
+     * <pre>
+     * protected ApiClient client = new ApiClient("myservice"){
+     *
+     *  protected Response doRequest(Request request)
+     *  {
+     *      if(checkMyCondition(request))
+     *      {
+     *          //-- short circuit the remote call "faking" a
+     *          //-- remote 200 response (the default status code for a Response)
+     *          return new Response(request.getUrl());
+     *      }
+     *      else
+     *      {
+     *          doMyRequestTransformation(request);
+     *          Response response = super.doRequest(request);
+     *          doMyResponseTransformation(response);
+     *          return response;
+     *      }
+     *  }
+     * }
+     * </pre>
+     *
+     * @param request the request to make
+     * @return a Response containing the server response data or error data.  Will not be null.
+     */
+    protected Response doRequest(Request request) {
+        return doRequest0(request);
+    }
+
+    Response doRequest0(Request request) {
+
+        String          m         = request.getMethod();
+        HttpRequestBase req       = null;
+        boolean         streaming = false;
+
+        String   url      = request.getUrl().toString();
+        Response response = new Response(url);
+        response.withJson((JSNode) null);
+        response.withRequest(request);
+
+        for (RequestListener l : requestListeners) {
+            Response replacementResponse = l.onRequest(request);
+            if (replacementResponse != null) {
+                if (replacementResponse.getUrl() == null)
+                    replacementResponse.withUrl(url);
+                if (replacementResponse.getRequest() == null)
+                    replacementResponse.withRequest(request);
+
+                return replacementResponse;
+            }
+        }
+
+        if (TRANSPORT_JDK.equalsIgnoreCase(transport))
+            return doJdkRequest(request, response);
+
+        try {
+            HttpClient   h = getHttpClient();
+            HttpResponse hr;
+
+            response.debug("--request header------");
+            response.debug(m + " " + url);
+
+            if ("post".equalsIgnoreCase(m)) {
+                req = new HttpPost(url);
+            }
+            if ("put".equalsIgnoreCase(m)) {
+                req = new HttpPut(url);
+            } else if ("get".equalsIgnoreCase(m)) {
+                req = new HttpGet(url);
+
+
+            } else if ("delete".equalsIgnoreCase(m)) {
+                if (request.getBody() != null) {
+                    req = new HttpDeleteWithBody(url);
+                } else {
+                    req = new HttpDelete(url);
+                }
+            } else if ("patch".equalsIgnoreCase(m)) {
+                req = new HttpPatch(url);
+            }
+
+            for (String key : request.getHeaders().keySet()) {
+                List<String> values = request.getAllHeaders(key);
+                for (String value : values) {
+                    req.setHeader(key, value);
+                    response.debug(key, value);
+                }
+            }
+            if (req instanceof HttpEntityEnclosingRequestBase && (request.getBodyStream() != null || request.getBody() != null)) {
+                response.debug("\r\n--request body--------");
+                ((HttpEntityEnclosingRequestBase) req).setEntity(buildEntity(request, req));
+            }
+
+            if (Utils.empty(request.getHeader("Accept-Encoding"))) {
+                req.setHeader("Accept-Encoding", "gzip");
+            }
+
+            hr = h.execute(req);
+
+            response.withStatusMesg(hr.getStatusLine().toString());
+            response.withStatusCode(hr.getStatusLine().getStatusCode());
+
+            response.debug("-response headers -----");
+            response.debug("status: " + response.getStatus());
+            for (Header header : hr.getAllHeaders()) {
+                response.debug("\r\n" + header.getName() + ": " + header.getValue());
+                response.withHeader(header.getName(), header.getValue());
+            }
+
+            HttpEntity e = hr.getEntity();
+            if (e != null && streamResponses) {
+                response.withBodyStream(new ReleasingInputStream(e.getContent(), req));
+                streaming = true;
+            } else if (e != null) {
+                InputStream is = e.getContent();
+
+//                String text = Utils.read(is);
+//                System.out.println(">>>--------------------------------");
+//                System.out.println(hr.getStatusLine().getStatusCode() + " " + m + " " + url);
+//                System.out.println("\r\n");
+//                System.out.println(text);
 //                System.out.println("<<<--------------------------------");
 //                System.out.println("<<<--------------------------------");
 //                response.withText(text);
@@ -685,7 +1449,7 @@ public class ApiClient {
             response.withError(ex);
             response.withStatus(Status.SC_500_INTERNAL_SERVER_ERROR);
         } finally {
-            if (req != null) {
+            if (req != null && !streaming) {
                 try {
                     req.releaseConnection();
                 } catch (Exception ex) {
@@ -694,11 +1458,196 @@ public class ApiClient {
             }
         }
 
-        response.dump();
+        if (!streaming)
+            response.dump();
 
         return response;
     }
 
+    /**
+     * Streams the Request body to the connection.
+     * <p>
+     * String bodies smaller than <code>compressionMinSize</code> are sent as is with a Content-Length.  Larger
+     * String bodies and stream bodies, whose size is unknown, are gzipped on the fly as HttpClient writes
+     * them, using chunked transfer encoding, so the compressed body is never held in memory.
+     */
+    HttpEntity buildEntity(Request request, HttpRequestBase req) throws IOException {
+        InputStream in = request.getBodyStream();
+        if (in == null) {
+            byte[] bytes = request.getBody().getBytes(StandardCharsets.UTF_8);
+            if (!useCompression || bytes.length < compressionMinSize)
+                return new ByteArrayEntity(bytes);
+
+            in = new ByteArrayInputStream(bytes);
+        }
+
+        if (useCompression) {
+            req.setHeader("Content-Encoding", "gzip");
+            in = new GzipCompressingInputStream(in, 8 * 1024);
+        }
+
+        InputStreamEntity entity = new InputStreamEntity(in, -1);
+        entity.setChunked(true);
+        return entity;
+    }
+
+    /**
+     * Sends <code>request</code> with the JDK HttpClient, see {@link #TRANSPORT_JDK}.
+     * <p>
+     * Like the Apache HttpClient, gzipped responses are transparently decompressed and redirects are followed.
+     */
+    Response doJdkRequest(Request request, Response response) {
+        String      m         = request.getMethod().toUpperCase();
+        String      url       = response.getUrl();
+        InputStream in        = null;
+        boolean     streaming = false;
+
+        try {
+            response.debug("--request header------");
+            response.debug(m + " " + url);
+
+            java.net.http.HttpRequest.Builder req = java.net.http.HttpRequest.newBuilder(URI.create(url));
+            if (socketTimeout > 0)
+                req.timeout(Duration.ofMillis(socketTimeout));
+
+            for (String key : request.getHeaders().keySet()) {
+                if (JDK_RESTRICTED_HEADERS.contains(key))
+                    continue;
+                for (String value : request.getAllHeaders(key)) {
+                    req.header(key, value);
+                    response.debug(key, value);
+                }
+            }
+
+            if (Utils.empty(request.getHeader("Accept-Encoding")))
+                req.header("Accept-Encoding", "gzip");
+
+            boolean hasBody = Utils.in(m, "POST", "PUT", "PATCH", "DELETE") && (request.getBodyStream() != null || request.getBody() != null);
+            if (hasBody)
+                response.debug("\r\n--request body--------");
+            req.method(m, hasBody ? buildBodyPublisher(request, req) : java.net.http.HttpRequest.BodyPublishers.noBody());
+
+            java.net.http.HttpResponse<InputStream> hr = getJdkHttpClient().send(req.build(), java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+            in = hr.body();
+
+            String version = hr.version() == java.net.http.HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+            response.withStatusMesg(version + " " + hr.statusCode());
+            response.withStatusCode(hr.statusCode());
+
+            boolean gzipped = "gzip".equalsIgnoreCase(hr.headers().firstValue("Content-Encoding").orElse(null));
+
+            response.debug("-response headers -----");
+            response.debug("status: " + response.getStatus());
+            for (Map.Entry<String, List<String>> header : hr.headers().map().entrySet()) {
+                String name = header.getKey();
+                if (name.startsWith(":"))
+                    continue;//-- HTTP/2 pseudo headers
+                if (gzipped && Utils.in(name.toLowerCase(), "content-encoding", "content-length"))
+                    continue;//-- the body is decompressed below
+                for (String value : header.getValue()) {
+                    response.debug("\r\n" + name + ": " + value);
+                    response.withHeader(name, value);
+                }
+            }
+
+            if (gzipped)
+                in = gunzip(in);
+
+            if (streamResponses) {
+                response.withBodyStream(in);
+                streaming = true;
+            } else {
+                StreamBuffer tempBuffer = new StreamBuffer();
+                tempBuffer.withBufferSize(getMaxMemoryBuffer());
+                Utils.pipe(in, tempBuffer);
+                response.withBody(tempBuffer);
+            }
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            log.warn("Error executing request " + m + " " + url, ex);
+            response.withError(ex);
+            response.withStatus(Status.SC_500_INTERNAL_SERVER_ERROR);
+        } finally {
+            if (in != null && !streaming) {
+                try {
+                    in.close();
+                } catch (Exception ex) {
+                    log.info("Exception trying to close the response stream", ex);
+                }
+            }
+        }
+
+        if (!streaming)
+            response.dump();
+
+        return response;
+    }
+
+    /**
+     * The JDK transport version of {@link #buildEntity(Request, HttpRequestBase)}.
+     */
+    java.net.http.HttpRequest.BodyPublisher buildBodyPublisher(Request request, java.net.http.HttpRequest.Builder req) {
+        InputStream stream = request.getBodyStream();
+        byte[]      bytes  = stream == null ? request.getBody().getBytes(StandardCharsets.UTF_8) : null;
+        boolean     gzip   = useCompression && (bytes == null || bytes.length >= compressionMinSize);
+        if (bytes != null && !gzip)
+            return java.net.http.HttpRequest.BodyPublishers.ofByteArray(bytes);
+
+        if (gzip)
+            req.setHeader("Content-Encoding", "gzip");
+
+        //-- the client asks for the body again to follow a redirect so each call gets a fresh stream
+        AtomicBoolean sent = new AtomicBoolean(false);
+        return java.net.http.HttpRequest.BodyPublishers.ofInputStream(() -> {
+            InputStream in = bytes != null ? new ByteArrayInputStream(bytes) : stream;
+            if (bytes == null && sent.getAndSet(true))
+                throw new IllegalStateException("The request body stream has already been sent and can not be replayed.");
+            try {
+                return gzip ? new GzipCompressingInputStream(in, 8 * 1024) : in;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * @return a decompressing stream, or the original stream if it is empty, for example in response to a HEAD
+     */
+    static InputStream gunzip(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 1);
+        int                 first    = pushback.read();
+        if (first < 0)
+            return pushback;
+        pushback.unread(first);
+        return new GZIPInputStream(pushback);
+    }
+
+    /**
+     * A live response entity stream that releases the connection when it is closed.
+     */
+    static class ReleasingInputStream extends FilterInputStream {
+        final HttpRequestBase req;
+        boolean closed = false;
+
+        ReleasingInputStream(InputStream in, HttpRequestBase req) {
+            super(in);
+            this.req = req;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                req.releaseConnection();
+            }
+        }
+    }
+
     /**
      * Requests listeners can modify the Request.  If they return null, request processing/execution
      * will continue.  If they return a Response, no additional RequestListeners will be notified
@@ -718,7 +1667,7 @@ public class ApiClient {
         return this;
     }
 
-    synchronized void submit(FutureResponse future) {
+    void submit(FutureResponse future) {
         getExecutor().submit(future);
     }
 
@@ -1005,6 +1954,68 @@ public class ApiClient {
         return builder.build();
     }
 
+    public String getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param transport {@link #TRANSPORT_APACHE} or {@link #TRANSPORT_JDK}
+     * @return this
+     */
+    public ApiClient withTransport(String transport) {
+        if (!Utils.in(transport == null ? null : transport.toLowerCase(), TRANSPORT_APACHE, TRANSPORT_JDK))
+            throw new IllegalArgumentException("Unknown transport '" + transport + "', use '" + TRANSPORT_APACHE + "' or '" + TRANSPORT_JDK + "'");
+        this.transport = transport.toLowerCase();
+        return this;
+    }
+
+    public String getHttpVersion() {
+        return httpVersion;
+    }
+
+    public ApiClient withHttpVersion(String httpVersion) {
+        this.httpVersion = httpVersion;
+        return this;
+    }
+
+    public java.net.http.HttpClient getJdkHttpClient() {
+        java.net.http.HttpClient client = jdkHttpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = jdkHttpClient;
+                if (client == null)
+                    jdkHttpClient = client = buildJdkHttpClient();
+            }
+        }
+        return client;
+    }
+
+    public ApiClient withJdkHttpClient(java.net.http.HttpClient jdkHttpClient) {
+        this.jdkHttpClient = jdkHttpClient;
+        return this;
+    }
+
+    /**
+     * Builds the JDK transport client using <code>httpVersion</code> and <code>connectTimeout</code>.  The client's
+     * own callbacks run on virtual threads when the JVM supports them.
+     *
+     * @return a new JDK HttpClient
+     */
+    protected java.net.http.HttpClient buildJdkHttpClient() {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()//
+                .version(java.net.http.HttpClient.Version.valueOf(httpVersion.toUpperCase()))//
+                .followRedirects(java.net.http.HttpClient.Redirect.NORMAL);
+
+        if (connectTimeout > 0)
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+
+        ExecutorService virtualThreads = VirtualThreads.newExecutor("apiclient-http-");
+        if (virtualThreads != null)
+            builder.executor(virtualThreads);
+
+        return builder.build();
+    }
+
     public ApiClient withHttpClientBuilder(HttpClientBuilder httpClientBuilder) {
         this.httpClientBuilder = httpClientBuilder;
         return this;
@@ -1184,6 +2195,215 @@ public class ApiClient {
         return this;
     }
 
+    public int getRetryMax() {
+        return retryMax;
+    }
+
+    public ApiClient withRetryMax(int retryMax) {
+        this.retryMax = retryMax;
+        return this;
+    }
+
+    public long getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    public ApiClient withRetryBaseDelay(long retryBaseDelay) {
+        this.retryBaseDelay = retryBaseDelay;
+        return this;
+    }
+
+    public long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public ApiClient withRetryMaxDelay(long retryMaxDelay) {
+        this.retryMaxDelay = retryMaxDelay;
+        return this;
+    }
+
+    public Set<Integer> getRetryStatusCodes() {
+        return new TreeSet<>(retryStatusCodes);
+    }
+
+    public ApiClient withRetryStatusCodes(Integer... statusCodes) {
+        retryStatusCodes.clear();
+        Collections.addAll(retryStatusCodes, statusCodes);
+        return this;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public ApiClient withHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
+    public int getHedgeMinSamples() {
+        return hedgeMinSamples;
+    }
+
+    public ApiClient withHedgeMinSamples(int hedgeMinSamples) {
+        this.hedgeMinSamples = hedgeMinSamples;
+        return this;
+    }
+
+    public int getRouteConcurrencyMax() {
+        return routeConcurrencyMax;
+    }
+
+    /**
+     * @param routeConcurrencyMax the max concurrent requests per route, this can not be changed once a route has been called
+     * @return this
+     */
+    public ApiClient withRouteConcurrencyMax(int routeConcurrencyMax) {
+        this.routeConcurrencyMax = routeConcurrencyMax;
+        return this;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public ApiClient withCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+        return this;
+    }
+
+    public long getCircuitOpenTime() {
+        return circuitOpenTime;
+    }
+
+    public ApiClient withCircuitOpenTime(long circuitOpenTime) {
+        this.circuitOpenTime = circuitOpenTime;
+        return this;
+    }
+
+    /**
+     * @param url any url on the route
+     * @return true if the circuit for the url's scheme/host/port is open or half open
+     */
+    public boolean isCircuitOpen(String url) {
+        return getRoute(new Request("GET", url)).isOpen();
+    }
+
+    public Counters getCounters() {
+        return counters;
+    }
+
+    public boolean isCaching() {
+        return caching;
+    }
+
+    public ApiClient withCaching(boolean caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * @return the configured cache, the default in memory cache if <code>caching</code> is true, or null
+     */
+    public ResponseCache getResponseCache() {
+        if (responseCache == null && caching) {
+            synchronized (this) {
+                if (responseCache == null)
+                    responseCache = new ResponseCache.InMemory(cacheMaxEntries);
+            }
+        }
+        return caching ? responseCache : null;
+    }
+
+    /**
+     * Replaces the default in memory cache, for example with one shared between instances, and turns on <code>caching</code>.
+     *
+     * @param responseCache the cache to use
+     * @return this
+     */
+    public ApiClient withResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        this.caching = responseCache != null;
+        return this;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public ApiClient withCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+        return this;
+    }
+
+    public long getCacheMaxBodySize() {
+        return cacheMaxBodySize;
+    }
+
+    public ApiClient withCacheMaxBodySize(long cacheMaxBodySize) {
+        this.cacheMaxBodySize = cacheMaxBodySize;
+        return this;
+    }
+
+    public long getCacheStaleIfError() {
+        return cacheStaleIfError;
+    }
+
+    public ApiClient withCacheStaleIfError(long cacheStaleIfError) {
+        this.cacheStaleIfError = cacheStaleIfError;
+        return this;
+    }
+
+    public long getCacheKeepForRevalidation() {
+        return cacheKeepForRevalidation;
+    }
+
+    public ApiClient withCacheKeepForRevalidation(long cacheKeepForRevalidation) {
+        this.cacheKeepForRevalidation = cacheKeepForRevalidation;
+        return this;
+    }
+
+    public boolean isCoalesceGets() {
+        return coalesceGets;
+    }
+
+    public ApiClient withCoalesceGets(boolean coalesceGets) {
+        this.coalesceGets = coalesceGets;
+        return this;
+    }
+
+    /**
+     * @param coalesceTtl how long, in milliseconds, a successful coalesced GET response is shared after it completes
+     * @return this
+     */
+    public ApiClient withCoalesceTtl(long coalesceTtl) {
+        singleFlight.withTtl(coalesceTtl);
+        return this;
+    }
+
+    public long getCoalesceTtl() {
+        return singleFlight.getTtl();
+    }
+
+    public ApiClient withCoalesceKeyHeaders(String... headers) {
+        coalesceKeyHeaders.clear();
+        Collections.addAll(coalesceKeyHeaders, headers);
+        return this;
+    }
+
+    public SingleFlight<String, Response> getSingleFlight() {
+        return singleFlight;
+    }
+
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    public ApiClient withStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+        return this;
+    }
+
     public int getThreadsMax() {
         return threadsMax;
     }
@@ -1214,99 +2434,313 @@ public class ApiClient {
         }
     }
 
+    /**
+     * Concurrency and circuit breaker state for a single scheme/host/port.
+     */
+    class Route {
+        static final int CLOSED    = 0;
+        static final int OPEN      = 1;
+        static final int HALF_OPEN = 2;
+
+        final String        key;
+        final AtomicInteger state    = new AtomicInteger(CLOSED);
+        final AtomicInteger failures = new AtomicInteger();
+        volatile long       openedAt = 0;
+        Semaphore           permits  = null;
+
+        Route(String key) {
+            this.key = key;
+            if (routeConcurrencyMax > 0)
+                permits = new Semaphore(routeConcurrencyMax);
+        }
+
+        boolean allowRequest() {
+            if (circuitFailureThreshold < 1)
+                return true;
+
+            switch (state.get()) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    //-- let a single probe through once the circuit has been open long enough
+                    return System.currentTimeMillis() - openedAt >= circuitOpenTime && state.compareAndSet(OPEN, HALF_OPEN);
+                default:
+                    return false;
+            }
+        }
+
+        void record(boolean failure) {
+            if (circuitFailureThreshold < 1)
+                return;
+
+            if (!failure) {
+                failures.set(0);
+                state.set(CLOSED);
+            } else if (state.get() == HALF_OPEN || failures.incrementAndGet() >= circuitFailureThreshold) {
+                if (state.getAndSet(OPEN) != OPEN) {
+                    openedAt = System.currentTimeMillis();
+                    counters.circuitOpens.increment();
+                }
+            }
+        }
+
+        /**
+         * Puts a half open circuit back to open, without restarting the timer, when the probe was never sent.
+         */
+        void cancelProbe() {
+            state.compareAndSet(HALF_OPEN, OPEN);
+        }
+
+        boolean acquire(long timeoutMillis) {
+            if (permits == null)
+                return true;
+            if (permits.tryAcquire())
+                return true;
+            try {
+                return timeoutMillis > 0 && permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void release() {
+            if (permits != null)
+                permits.release();
+        }
+
+        boolean isOpen() {
+            return state.get() != CLOSED;
+        }
+    }
+
+    /**
+     * A fixed size ring of recent latencies used to find the hedging threshold.
+     */
+    static class LatencyTracker {
+        final AtomicLongArray samples;
+        final AtomicLong      count     = new AtomicLong();
+        volatile long         threshold = -1;
+        volatile double       thresholdPercentile = -1;
+
+        LatencyTracker(int size) {
+            samples = new AtomicLongArray(size);
+        }
+
+        void record(long nanos) {
+            long n = count.getAndIncrement();
+            samples.set((int) (n % samples.length()), nanos);
+
+            //-- the threshold is recomputed every 16 samples instead of on every request
+            if (n % 16 == 0)
+                threshold = -1;
+        }
+
+        /**
+         * @return the latency, in nanos, at <code>percentile</code> or -1 if there are fewer than <code>minSamples</code>
+         */
+        long percentile(double percentile, int minSamples) {
+            long n = Math.min(count.get(), samples.length());
+            if (n < Math.max(1, minSamples))
+                return -1;
+
+            long t = threshold;
+            if (t > -1 && thresholdPercentile == percentile)
+                return t;
+
+            long[] sorted = new long[(int) n];
+            for (int i = 0; i < n; i++)
+                sorted[i] = samples.get(i);
+            Arrays.sort(sorted);
+
+            int idx = (int) Math.ceil(percentile / 100d * n) - 1;
+            t = sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+            thresholdPercentile = percentile;
+            threshold = t;
+            return t;
+        }
+    }
+
+    /**
+     * Counters for observing the caching, retry, hedging, concurrency limit and circuit breaker policies.
+     */
+    public static class Counters {
+        final LongAdder requests       = new LongAdder();
+        final LongAdder attempts       = new LongAdder();
+        final LongAdder retries        = new LongAdder();
+        final LongAdder hedges         = new LongAdder();
+        final LongAdder hedgeWins      = new LongAdder();
+        final LongAdder routeRejected  = new LongAdder();
+        final LongAdder shortCircuited = new LongAdder();
+        final LongAdder circuitOpens   = new LongAdder();
+
+        final LongAdder cacheHits          = new LongAdder();
+        final LongAdder cacheMisses        = new LongAdder();
+        final LongAdder cacheStale         = new LongAdder();
+        final LongAdder cacheRevalidations = new LongAdder();
+        final LongAdder cacheNotModified   = new LongAdder();
+
+        /**
+         * @return the number of requests submitted to the ApiClient
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return the number of calls to doRequest() including retries and hedges
+         */
+        public long getAttempts() {
+            return attempts.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getHedges() {
+            return hedges.sum();
+        }
+
+        /**
+         * @return the number of hedges whose response was used instead of the original request's
+         */
+        public long getHedgeWins() {
+            return hedgeWins.sum();
+        }
+
+        /**
+         * @return the number of requests that failed because the route concurrency limit was reached
+         */
+        public long getRouteRejected() {
+            return routeRejected.sum();
+        }
+
+        /**
+         * @return the number of requests that failed fast because a circuit was open
+         */
+        public long getShortCircuited() {
+            return shortCircuited.sum();
+        }
+
+        /**
+         * @return the number of times a circuit has opened
+         */
+        public long getCircuitOpens() {
+            return circuitOpens.sum();
+        }
+
+        /**
+         * @return the number of requests answered with a fresh cached response
+         */
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        /**
+         * @return the number of cacheable requests that had no usable cached response
+         */
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        /**
+         * @return the number of stale cached responses served, during stale-while-revalidate or in place of an error
+         */
+        public long getCacheStale() {
+            return cacheStale.sum();
+        }
+
+        /**
+         * @return the number of conditional requests sent to revalidate a cached response
+         */
+        public long getCacheRevalidations() {
+            return cacheRevalidations.sum();
+        }
+
+        /**
+         * @return the number of revalidations answered with 304 Not Modified
+         */
+        public long getCacheNotModified() {
+            return cacheNotModified.sum();
+        }
+
+        public String toString() {
+            return "requests=" + getRequests() + " attempts=" + getAttempts() + " retries=" + getRetries() + " hedges=" + getHedges() //
+                    + " hedgeWins=" + getHedgeWins() + " routeRejected=" + getRouteRejected() + " shortCircuited=" + getShortCircuited() + " circuitOpens=" + getCircuitOpens() //
+                    + " cacheHits=" + getCacheHits() + " cacheMisses=" + getCacheMisses() + " cacheStale=" + getCacheStale() + " cacheRevalidations=" + getCacheRevalidations() + " cacheNotModified=" + getCacheNotModified();
+        }
+    }
+
     /**
      * An asynchronous thread pool task runner.
      * <p>
      * The number of threads in the pool will be expanded up to <code>threadsMax</code> and down to
      * <code>thredsMin</code> based on the size of of the queue.  Up to <code>queueMax</code> tasks
      * can occupy the queue before caller will start to be blocked having to wait for queue space to
-     * clear up.
+     * clear up.  If <code>queueTimeout</code> is set, callers that wait longer than that for space
+     * have their task rejected with a RejectedExecutionException.
      * <p>
      * You can completely disable asynchronous execution by setting <code>threadsMax</code> to zero.
      * That will ensure that tasks will always execute synchronously in the calling thread and will
      * be completed by the time <code>submit</code> returns.
+     * <p>
+     * Tasks are handed to workers through a lock free LinkedTransferQueue and queue space is
+     * bounded by a Semaphore so submitting callers never contend on a shared monitor and idle workers
+     * are only woken for the task handed to them.  With <code>virtualThreads</code> set the workers
+     * are virtual threads, if the JVM supports them, which makes large <code>threadsMax</code> values
+     * cheap for ApiClients that mostly wait on the network.
+     * <p>
+     * The pool keeps counters for monitoring its health, see {@link #getQueued()}, {@link #getActive()},
+     * {@link #getQueueWaitNanos()}, {@link #getBlocked()} and {@link #getRejected()}.
      */
     public static class Executor {
 
-        final     LinkedList<RunnableFuture> queue        = new LinkedList();
-        final     Vector<Thread>             threads      = new Vector();
-        final     String                     threadPrefix = "executor";
+        final     LinkedTransferQueue<Task> queue            = new LinkedTransferQueue<>();
+        final     String                    threadPrefix     = "executor";
         /**
          * The thread pool will be dynamically contracted to this minimum number of worker threads as the queue length shrinks.
          */
-        protected int                        threadsMin   = 1;
+        protected volatile int              threadsMin       = 1;
         /**
          * The thread pool will by dynamically expanded up to this max number of worker threads as the queue length grows.
          * <p>
          * If this number is less than 1, then tasks will be executed synchronously in the calling thread, not asynchronously.
          */
-        protected int                        threadsMax   = 5;
-        protected int                        queueMax     = 500;
-
-        public Executor() {
-
-        }
-
-        public synchronized Future submit(final Runnable task) {
-            return submit(new RunnableFuture() {
-
-                boolean started = false;
-                boolean canceled = false;
-                boolean done = false;
-
-                @Override
-                public void run() {
-                    try {
-                        if (canceled || done)
-                            return;
-
-                        started = true;
-                        task.run();
-                    } finally {
-                        synchronized (this) {
-                            done = true;
-                            notifyAll();
-                        }
-                    }
-                }
-
-                @Override
-                public boolean cancel(boolean mayInterruptIfRunning) {
-                    canceled = true;
-                    return !started;
-                }
+        protected volatile int              threadsMax       = 5;
+        protected          int              queueMax         = 500;
+        /**
+         * How long, in milliseconds, a worker above <code>threadsMin</code> will wait for a task before exiting.
+         */
+        protected          long             threadsKeepAlive = 1000;
+        /**
+         * How long, in milliseconds, a caller will wait for queue space before the task is rejected.  A value &lt; 0 waits forever.
+         */
+        protected          long             queueTimeout     = -1;
+        /**
+         * Run workers on virtual threads when the JVM supports them.
+         */
+        protected          boolean          virtualThreads   = false;
 
-                @Override
-                public boolean isCancelled() {
-                    return canceled;
-                }
+        Semaphore     slots         = null;
+        ThreadFactory threadFactory = null;
 
-                @Override
-                public boolean isDone() {
-                    return false;
-                }
+        final AtomicInteger threads   = new AtomicInteger();
+        final AtomicInteger idle      = new AtomicInteger();
+        final AtomicInteger queued    = new AtomicInteger();
+        final AtomicInteger active    = new AtomicInteger();
+        final LongAdder     submitted = new LongAdder();
+        final LongAdder     completed = new LongAdder();
+        final LongAdder     blocked   = new LongAdder();
+        final LongAdder     rejected  = new LongAdder();
+        final LongAdder     waitNanos = new LongAdder();
 
-                @Override
-                public Object get() throws InterruptedException, ExecutionException {
-                    synchronized (this) {
-                        while (!done) {
-                            wait();
-                        }
-                    }
-                    return null;
-                }
+        public Executor() {
 
-                @Override
-                public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                    synchronized (this) {
-                        while (!done) {
-                            wait(unit.toMillis(timeout));
-                        }
-                    }
-                    return null;
-                }
+        }
 
-            });
+        public Future submit(final Runnable task) {
+            return submit(new FutureTask<>(task, null));
         }
 
         /**
@@ -1315,10 +2749,13 @@ public class ApiClient {
          *
          * @param task the task to run
          * @return the task submitted
+         * @throws RejectedExecutionException if <code>queueTimeout</code> elapsed before there was space in the queue
          */
-        public synchronized RunnableFuture submit(RunnableFuture task) {
+        public RunnableFuture submit(RunnableFuture task) {
+            submitted.increment();
             if (getThreadsMax() < 1) {
                 task.run();
+                completed.increment();
             } else {
                 put(task);
                 checkStartThread();
@@ -1326,73 +2763,190 @@ public class ApiClient {
             return task;
         }
 
-        synchronized boolean checkStartThread() {
-            if (queue.size() > 0 && threads.size() < threadsMax) {
-                Thread t = new Thread(this::processQueue, threadPrefix + " worker");
-                t.setDaemon(true);
-                threads.add(t);
-                t.start();
-                return true;
+        /**
+         * Starts a worker if there are more queued tasks than idle workers and the pool is not at <code>threadsMax</code>.
+         */
+        boolean checkStartThread() {
+            while (queued.get() > idle.get()) {
+                int count = threads.get();
+                if (count >= threadsMax)
+                    return false;
+                if (threads.compareAndSet(count, count + 1)) {
+                    try {
+                        Thread t = getThreadFactory().newThread(this::processQueue);
+                        t.start();
+                    } catch (Throwable ex) {
+                        threads.decrementAndGet();
+                        throw ex;
+                    }
+                    return true;
+                }
             }
             return false;
         }
 
-        synchronized boolean checkEndThread() {
-            if (queue.size() == 0 && threads.size() > threadsMin) {
-                threads.remove(Thread.currentThread());
-                return true;
-            }
-            return false;
+        /**
+         * Called by a worker that has been idle for <code>threadsKeepAlive</code>.
+         *
+         * @return true if the worker was released from the pool and should exit
+         */
+        boolean checkEndThread() {
+            int count;
+            do {
+                count = threads.get();
+                if (count <= threadsMin)
+                    return false;
+            } while (!threads.compareAndSet(count, count - 1));
+
+            //-- a task may have been queued while this worker was on its way out
+            if (queued.get() > 0)
+                checkStartThread();
+            return true;
         }
 
         int queued() {
-            synchronized (queue) {
-                return queue.size();
-            }
+            return queued.get();
         }
 
         void put(RunnableFuture task) {
-            synchronized (queue) {
-                while (queue.size() >= queueMax) {
+            Semaphore slots = getSlots();
+            if (!slots.tryAcquire()) {
+                blocked.increment();
+                if (queueTimeout < 0) {
+                    slots.acquireUninterruptibly();
+                } else {
+                    boolean acquired = false;
                     try {
-                        queue.wait();
-                    } catch (Exception ex) {
-                        //intentionally empty
+                        acquired = slots.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (!acquired) {
+                        rejected.increment();
+                        throw new RejectedExecutionException("The executor queue is full");
                     }
                 }
-                queue.add(task);
-                queue.notifyAll();
             }
+            queued.incrementAndGet();
+            queue.offer(new Task(task));
         }
 
-        RunnableFuture take() {
-            RunnableFuture t;
-            synchronized (queue) {
-                while (queue.size() == 0) {
-                    try {
-                        queue.wait();
-                    } catch (InterruptedException ex) {
-                        //intentionally empty
-                    }
+        Task take() {
+            Task task = null;
+            while (task == null) {
+                idle.incrementAndGet();
+                try {
+                    task = queue.poll(threadsKeepAlive, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    //intentionally empty
+                } finally {
+                    idle.decrementAndGet();
                 }
-
-                t = queue.removeFirst();
-                queue.notifyAll();
+                if (task == null && checkEndThread())
+                    return null;
             }
-            return t;
+            queued.decrementAndGet();
+            getSlots().release();
+            waitNanos.add(System.nanoTime() - task.queuedAt);
+            return task;
         }
 
         void processQueue() {
-            try {
-                while (!checkEndThread()) {
-                    do {
-                        RunnableFuture task = take();
-                        task.run();
-                    } while (queue.size() > 0);
+            Task task;
+            while ((task = take()) != null) {
+                active.incrementAndGet();
+                try {
+                    task.future.run();
+                } catch (Throwable ex) {
+                    ex.printStackTrace();
+                } finally {
+                    active.decrementAndGet();
+                    completed.increment();
+                }
+            }
+        }
+
+        Semaphore getSlots() {
+            Semaphore slots = this.slots;
+            if (slots == null) {
+                synchronized (this) {
+                    if (this.slots == null)
+                        this.slots = new Semaphore(Math.max(1, queueMax));
+                    slots = this.slots;
+                }
+            }
+            return slots;
+        }
+
+        ThreadFactory getThreadFactory() {
+            ThreadFactory factory = this.threadFactory;
+            if (factory == null) {
+                synchronized (this) {
+                    if (this.threadFactory == null) {
+                        ThreadFactory tf = virtualThreads ? VirtualThreads.newThreadFactory(threadPrefix + "-worker-") : null;
+                        if (tf == null) {
+                            tf = r -> {
+                                Thread t = new Thread(r, threadPrefix + " worker");
+                                t.setDaemon(true);
+                                return t;
+                            };
+                        }
+                        this.threadFactory = tf;
+                    }
+                    factory = this.threadFactory;
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
             }
+            return factory;
+        }
+
+        /**
+         * @return the number of tasks waiting in the queue
+         */
+        public int getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * @return the number of workers currently running a task
+         */
+        public int getActive() {
+            return active.get();
+        }
+
+        /**
+         * @return the number of live worker threads
+         */
+        public int getThreads() {
+            return threads.get();
+        }
+
+        public long getSubmitted() {
+            return submitted.sum();
+        }
+
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /**
+         * @return the number of submits that had to wait for queue space
+         */
+        public long getBlocked() {
+            return blocked.sum();
+        }
+
+        /**
+         * @return the number of tasks rejected because <code>queueTimeout</code> elapsed
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return the total time tasks have spent in the queue before a worker picked them up
+         */
+        public long getQueueWaitNanos() {
+            return waitNanos.sum();
         }
 
         public int getThreadsMin() {
@@ -1410,6 +2964,7 @@ public class ApiClient {
 
         public Executor withThreadsMax(int threadsMax) {
             this.threadsMax = threadsMax;
+            checkStartThread();
             return this;
         }
 
@@ -1417,10 +2972,53 @@ public class ApiClient {
             return queueMax;
         }
 
-        public Executor withQueueMax(int queueMax) {
+        /**
+         * @param queueMax the queue capacity, this can not be changed once the first task has been submitted
+         * @return this
+         */
+        public synchronized Executor withQueueMax(int queueMax) {
+            if (slots != null)
+                throw new IllegalStateException("The queueMax can not be changed after tasks have been submitted");
             this.queueMax = queueMax;
             return this;
         }
+
+        public long getThreadsKeepAlive() {
+            return threadsKeepAlive;
+        }
+
+        public Executor withThreadsKeepAlive(long threadsKeepAlive) {
+            this.threadsKeepAlive = threadsKeepAlive;
+            return this;
+        }
+
+        public long getQueueTimeout() {
+            return queueTimeout;
+        }
+
+        public Executor withQueueTimeout(long queueTimeout) {
+            this.queueTimeout = queueTimeout;
+            return this;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public synchronized Executor withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            this.threadFactory = null;
+            return this;
+        }
+
+        static class Task {
+            final RunnableFuture future;
+            final long           queuedAt = System.nanoTime();
+
+            Task(RunnableFuture future) {
+                this.future = future;
+            }
+        }
     }
 
     /**
@@ -1467,8 +3065,9 @@ public class ApiClient {
         final List<Consumer<Response>> successListeners  = new ArrayList<>();
         final List<Consumer<Response>> failureListeners  = new ArrayList<>();
         final List<Consumer<Response>> responseListeners = new ArrayList<>();
-        final Request                  request;
-        Response response = null;
+        final Request                     request;
+        final CompletableFuture<Response> completion = new CompletableFuture<>();
+        volatile Response response = null;
 
         FutureResponse(Request request) {
             this.request = request;
@@ -1592,31 +3191,33 @@ public class ApiClient {
                         log.error("Error handling callbacks in setResponse", ex);
                     }
                 }
-
-                notifyAll();
             }
+            completion.complete(response);
+        }
+
+        /**
+         * Exposes the response as a CompletableFuture so callers can compose it with other
+         * asynchronous work instead of blocking a thread in {@link #get()}.
+         * <p>
+         * The returned future is a copy, completing or cancelling it does not affect this FutureResponse.
+         *
+         * @return a future that completes with the response after all listeners have been notified
+         */
+        public CompletableFuture<Response> toCompletableFuture() {
+            return completion.copy();
         }
 
         /**
          * Blocks indefinitely until <code>response</code> is not null.
+         * <p>
+         * The calling thread is parked instead of waiting on a monitor so virtual threads
+         * blocked here do not pin their carrier thread.
          *
          * @return the response
          */
         @Override
         public Response get() {
-            while (response == null) {
-                synchronized (this) {
-                    if (response == null) {
-                        try {
-                            wait();
-                        } catch (InterruptedException ex) {
-                            //ignore
-                        }
-                    }
-                }
-            }
-
-            return response;
+            return completion.join();
         }
 
         /**
@@ -1627,22 +3228,17 @@ public class ApiClient {
          */
         @Override
         public Response get(long timeout, TimeUnit unit) throws TimeoutException {
-            long start = System.currentTimeMillis();
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
             while (response == null) {
-                synchronized (this) {
-                    if (response == null) {
-                        try {
-                            timeout = TimeUnit.MILLISECONDS.convert(timeout, unit);
-                            timeout -= System.currentTimeMillis() - start;
-
-                            if (timeout < 1)
-                                break;
-
-                            wait(timeout);
-                        } catch (InterruptedException e) {
-                            //ignore
-                        }
-                    }
+                long remaining = deadline - System.nanoTime();
+                if (remaining < 1)
+                    break;
+                try {
+                    return completion.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    break;
+                } catch (InterruptedException | ExecutionException ex) {
+                    //ignore
                 }
             }
 
@@ -24,6 +24,7 @@ import io.inversion.utils.Utils;
 import org.apache.commons.collections4.map.CaseInsensitiveMap;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public final class Chain {
 
@@ -69,6 +70,13 @@ public final class Chain {
         return stack.isEmpty() || stack.size() == 1;
     }
 
+    /**
+     * @return true if the current thread is running a task wrapped by {@link #propagate(Callable)} on behalf of a request
+     */
+    public static boolean isPropagated() {
+        return chainLocal.get() instanceof PropagatedStack;
+    }
+
     public static Chain first() {
         Stack<Chain> stack = get();
         if (!stack.empty()) {
@@ -105,7 +113,46 @@ public final class Chain {
     }
 
     public static Chain pop() {
-        return get().pop();
+        Stack<Chain> stack = get();
+        Chain        chain = stack.pop();
+
+        //-- don't leave an empty stack behind on pooled or virtual threads
+        if (stack.isEmpty())
+            chainLocal.remove();
+
+        return chain;
+    }
+
+    /**
+     * Wraps <code>task</code> so that it can be run on another thread with a copy of the calling
+     * thread's Chain stack.
+     * <p>
+     * Actions that hand work off to an executor use this so that {@link #peek()}, {@link #getUser()} and
+     * recursive {@link Engine#service(Request, Response)} calls made by the task see the Chain of the
+     * request that submitted it.  The task's thread has its original stack, if any, restored when the task completes.
+     *
+     * @param task the work to run on another thread
+     * @param <T>  the result type
+     * @return a Callable that runs <code>task</code> with the current Chain stack
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        List<Chain> chains = new ArrayList<>(get());
+        return () -> {
+            ThreadLocal<Stack<Chain>> local    = chainLocal;
+            Stack<Chain>              previous = local.get();
+
+            Stack<Chain> stack = chains.isEmpty() ? new Stack<>() : new PropagatedStack();
+            stack.addAll(chains);
+            local.set(stack);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null)
+                    local.remove();
+                else
+                    local.set(previous);
+            }
+        };
     }
 
     public static User getUser() {
@@ -404,6 +451,13 @@ public final class Chain {
         return response;
     }
 
+    /**
+     * Marks a Chain stack copied onto another thread by {@link #propagate(Callable)}.
+     */
+    static class PropagatedStack extends Stack<Chain> {
+
+    }
+
     public static class ActionMatch implements Comparable<ActionMatch> {
         final Path   rule;
         final Path   path;
@@ -16,6 +16,8 @@
  */
 package io.inversion;
 
+import io.inversion.rql.Term;
+import io.inversion.utils.LruCache;
 import io.inversion.utils.Path;
 import io.inversion.utils.Utils;
 import org.apache.commons.codec.binary.Hex;
@@ -23,6 +25,7 @@ import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -97,6 +100,21 @@ public class Collection  extends Rule<Collection>  implements Serializable {
      */
     protected boolean exclude = false;
 
+    /**
+     * Column name mapped RQL terms keyed by the raw request params that produced them.
+     * <p>
+     * Cleared whenever Properties, Indexes or Relationships are added or removed.
+     *
+     * @see Db#select(Collection, Map)
+     */
+    transient volatile QueryPlans queryPlans = null;
+
+    /**
+     * Incremented whenever any Collection's query plans are cleared.  Plans built against
+     * an earlier version are ignored.
+     */
+    static final AtomicLong queryPlanVersion = new AtomicLong();
+
     public Collection() {
 
     }
@@ -323,6 +341,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
             if (prop.getCollection() != this)
                 prop.withCollection(this);
         }
+        clearQueryPlans();
         return this;
     }
 
@@ -353,6 +372,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
 
     public void removeProperty(Property prop) {
         properties.remove(prop);
+        clearQueryPlans();
     }
 
     /**
@@ -440,7 +460,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
             if (index.getCollection() != this)
                 index.withCollection(this);
         }
-
+        clearQueryPlans();
         return this;
     }
 
@@ -505,6 +525,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
 
     public void removeIndex(Index index) {
         indexes.remove(index);
+        clearQueryPlans();
     }
 
     public boolean isExclude() {
@@ -537,6 +558,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
 
     public void removeRelationship(Relationship relationship) {
         relationships.remove(relationship);
+        clearQueryPlans();
     }
 
     /**
@@ -566,6 +588,7 @@ public class Collection  extends Rule<Collection>  implements Serializable {
             if (relationship.getCollection() != this)
                 relationship.withCollection(this);
         }
+        clearQueryPlans();
         return this;
     }
 
@@ -771,6 +794,51 @@ public class Collection  extends Rule<Collection>  implements Serializable {
         return null;
     }
 
+    List<Term> getQueryPlan(String key) {
+        QueryPlans queryPlans = this.queryPlans;
+        return queryPlans != null && queryPlans.version == queryPlanVersion.get() ? queryPlans.get(key) : null;
+    }
+
+    /**
+     * Caches <code>plan</code> unless a Collection has been changed since <code>version</code> was read.
+     *
+     * @param key     the plan key
+     * @param plan    the column mapped terms
+     * @param version the value of {@link #queryPlanVersion} read before the plan was built
+     */
+    void withQueryPlan(String key, List<Term> plan, long version) {
+        if (version != queryPlanVersion.get())
+            return;
+
+        QueryPlans queryPlans = this.queryPlans;
+        if (queryPlans == null || queryPlans.version != version) {
+            queryPlans = new QueryPlans(version);
+            this.queryPlans = queryPlans;
+        }
+        queryPlans.put(key, plan);
+    }
+
+    /**
+     * Discards cached query plans, call this if you change the Properties,
+     * Indexes or Relationships of a Collection that has already been queried.
+     * <p>
+     * Dotted paths let a plan for one Collection map property names through the
+     * Relationships of others so this invalidates the plans of every Collection.
+     */
+    public void clearQueryPlans() {
+        queryPlans = null;
+        queryPlanVersion.incrementAndGet();
+    }
+
+    static class QueryPlans extends LruCache<String, List<Term>> {
+        final long version;
+
+        QueryPlans(long version) {
+            super(100);
+            this.version = version;
+        }
+    }
+
     /**
      * Encodes the resourceKey from the values using column names from the primary index.
      *
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion;
+
+import io.inversion.json.JSList;
+import io.inversion.json.JSMap;
+import io.inversion.json.JSNode;
+import io.inversion.json.JSParser;
+import io.inversion.utils.ISO8601Utils;
+import io.inversion.utils.Utils;
+
+import java.net.URL;
+import java.text.ParsePosition;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts values to and from the Java type that corresponds to a {@link Property#getType()}.
+ * <p>
+ * The type string is only inspected once, when the Converter is created, so converting a value is a
+ * single virtual call instead of a lower casing and switch on the type name for every value.
+ * Converters are stateless and shared by all Properties with the same type.
+ *
+ * @see Db#castJsonInput(String, Object)
+ * @see Db#castDbOutput(Property, Object)
+ */
+public final class Converter {
+
+    static final Map<String, Converter> converters = new ConcurrentHashMap<>();
+
+    static final Converter UNTYPED = new Converter(null, Converter::castUntyped, value -> value, true);
+
+    @FunctionalInterface
+    interface Cast {
+        Object cast(Object value) throws Exception;
+    }
+
+    final String  type;
+    final Cast    input;
+    final Cast    output;
+    final boolean outputPreservesPrimitives;
+
+    Converter(String type, Cast input, Cast output, boolean outputPreservesPrimitives) {
+        this.type = type;
+        this.input = input;
+        this.output = output;
+        this.outputPreservesPrimitives = outputPreservesPrimitives;
+    }
+
+    /**
+     * Finds the shared Converter for <code>type</code>.
+     *
+     * @param type the case insensitive Property type, may be null
+     * @return the Converter for <code>type</code>
+     */
+    public static Converter forType(String type) {
+        if (type == null)
+            return UNTYPED;
+
+        Converter converter = converters.get(type);
+        if (converter == null) {
+            converter = converters.computeIfAbsent(type.toLowerCase(), Converter::build);
+            converters.putIfAbsent(type, converter);
+        }
+        return converter;
+    }
+
+    static Converter build(String type) {
+        Cast    input;
+        Cast    output                    = Converter::castDefaultOutput;
+        boolean outputPreservesPrimitives = true;
+
+        switch (type) {
+            case "char":
+            case "nchar":
+            case "clob":
+                input = value -> value.toString().trim();
+                output = Converter::castTrimOutput;
+                outputPreservesPrimitives = false;
+                break;
+            case "s":
+            case "string":
+            case "varchar":
+            case "nvarchar":
+            case "longvarchar":
+            case "longnvarchar":
+                input = Object::toString;
+                break;
+            case "json":
+                input = Object::toString;
+                output = Converter::castJsonOutput;
+                outputPreservesPrimitives = false;
+                break;
+            case "n":
+            case "number":
+            case "numeric":
+            case "decimal":
+                input = Converter::castNumber;
+                break;
+            case "bool":
+            case "boolean":
+            case "bit":
+                input = Converter::castBoolean;
+                break;
+            case "tinyint":
+                input = value -> value instanceof Byte ? value : Byte.parseByte(value.toString());
+                break;
+            case "smallint":
+                input = value -> value instanceof Short ? value : Short.parseShort(value.toString());
+                break;
+            case "integer":
+                input = value -> value instanceof Integer ? value : Integer.parseInt(value.toString());
+                break;
+            case "bigint":
+                input = Converter::castLong;
+                break;
+            case "float":
+            case "real":
+            case "double":
+                input = Converter::castDouble;
+                break;
+            case "datalink":
+                input = value -> new URL(value.toString());
+                break;
+            case "binary":
+            case "varbinary":
+            case "longvarbinary":
+                input = value -> Utils.hexToBytes(value.toString());
+                break;
+            case "date":
+            case "datetime":
+                input = value -> new java.sql.Date(castDate(value).getTime());
+                output = Converter::castDateOutput;
+                break;
+            case "timestamp":
+                input = value -> new java.sql.Timestamp(castDate(value).getTime());
+                output = Converter::castDateOutput;
+                break;
+            case "array":
+                input = value -> value instanceof JSList ? value : JSParser.asJSList(value + "");
+                break;
+            case "object":
+                input = Converter::castObject;
+                break;
+            default:
+                input = value -> {
+                    throw ApiException.new500InternalServerError("Error casting '{}' as type '{}'", value, type);
+                };
+        }
+        return new Converter(type, input, output, outputPreservesPrimitives);
+    }
+
+    /**
+     * @return the lower case type this Converter was built for, null for untyped values
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Casts a value supplied by the caller, generally a json property or RQL token, to the
+     * Java type that should be supplied to the Db.
+     *
+     * @param value the value to cast
+     * @return <code>value</code> cast to this Converter's type
+     */
+    public Object castJsonInput(Object value) {
+        if (value == null)
+            return null;
+        try {
+            return input.cast(value);
+        } catch (Exception ex) {
+            Utils.rethrow(ex);
+        }
+        return null;
+    }
+
+    /**
+     * Casts a value returned from the Db to the value that should be output as json.
+     *
+     * @param value the value to cast
+     * @return <code>value</code> cast for json output
+     */
+    public Object castDbOutput(Object value) {
+        if (value == null)
+            return null;
+        try {
+            return output.cast(value);
+        } catch (Exception ex) {
+            Utils.rethrow(ex);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if {@link #castDbOutput(Object)} returns Integer, Long, Double and Boolean values unchanged
+     */
+    public boolean isOutputPreservesPrimitives() {
+        return outputPreservesPrimitives;
+    }
+
+    static Object castUntyped(Object value) {
+        if (value instanceof Long || value instanceof Double)
+            return value;
+
+        String str = value.toString();
+        try {
+            if (!str.contains(".")) {
+                return Long.parseLong(str);
+            } else {
+                return Double.parseDouble(str);
+            }
+        } catch (Exception ex) {
+            //must not have been an number
+        }
+        return str;
+    }
+
+    static Object castNumber(Object value) {
+        if (value instanceof Long || value instanceof Double)
+            return value;
+        if (value instanceof Integer)
+            return ((Integer) value).longValue();
+
+        String str = value.toString();
+        if (!str.contains("."))
+            return Long.parseLong(str);
+        else
+            return Double.parseDouble(str);
+    }
+
+    static Object castLong(Object value) {
+        if (value instanceof Long)
+            return value;
+        if (value instanceof Integer)
+            return ((Integer) value).longValue();
+        return Long.parseLong(value.toString());
+    }
+
+    static Object castDouble(Object value) {
+        if (value instanceof Double)
+            return value;
+        if (value instanceof Integer || value instanceof Long)
+            return ((Number) value).doubleValue();
+        return Double.parseDouble(value.toString());
+    }
+
+    static Object castBoolean(Object value) {
+        if (value instanceof Boolean)
+            return value;
+
+        if ("1".equals(value))
+            value = "true";
+        else if ("0".equals(value))
+            value = "false";
+
+        return Boolean.parseBoolean(value.toString());
+    }
+
+    static Object castObject(Object value) {
+        if (value instanceof JSNode)
+            return value;
+
+        String json = value.toString().trim();
+        if (json.length() > 0) {
+            char c = json.charAt(0);
+            if (c == '[' || c == '{')
+                return JSParser.parseJson(value + "");
+        }
+        return json;
+    }
+
+    /**
+     * Parses ISO8601 strings, by far the most common input, with {@link ISO8601Utils}
+     * before falling back to the more forgiving but slower {@link Utils#date(String)}.
+     *
+     * @param value a Date or date string
+     * @return the parsed date
+     */
+    static Date castDate(Object value) {
+        if (value instanceof Date)
+            return (Date) value;
+
+        String str = value.toString();
+        try {
+            ParsePosition pos  = new ParsePosition(0);
+            Date          date = ISO8601Utils.parse(str, pos);
+            if (pos.getIndex() == str.length())
+                return date;
+        } catch (Exception ex) {
+            //not a strict ISO8601 date
+        }
+        return Utils.date(str);
+    }
+
+    static Object castDefaultOutput(Object value) {
+        if (value instanceof byte[])
+            return Utils.bytesToHex((byte[]) value);
+        return value;
+    }
+
+    static Object castTrimOutput(Object value) {
+        if (value instanceof byte[])
+            return Utils.bytesToHex((byte[]) value);
+        return value.toString().trim();
+    }
+
+    static Object castDateOutput(Object value) {
+        if (value instanceof byte[])
+            return Utils.bytesToHex((byte[]) value);
+        if (value instanceof Date)
+            return Utils.formatIso8601((Date) value);
+        return value;
+    }
+
+    static Object castJsonOutput(Object value) {
+        String json = value.toString().trim();
+        if (json.isEmpty())
+            return new JSMap();
+        return JSParser.parseJson(json);
+    }
+}
@@ -16,18 +16,17 @@
  */
 package io.inversion;
 
-import io.inversion.json.JSList;
+import io.inversion.json.JSColumnList;
 import io.inversion.json.JSMap;
-import io.inversion.json.JSNode;
-import io.inversion.json.JSParser;
 import io.inversion.rql.Rql;
 import io.inversion.rql.Term;
+import io.inversion.utils.Columns;
 import io.inversion.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URL;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -114,112 +113,16 @@ public class Db<T extends Db> extends Rule<T> {
         return false;
     }
 
+    /**
+     * Casts value to as type.
+     *
+     * @param type  the type to cast to
+     * @param value the value to cast
+     * @return <code>value</code> cast to <code>type</code>
+     * @see Converter
+     */
     public static Object castJsonInput(String type, Object value) {
-        try {
-            if (value == null)
-                return null;
-
-            if (type == null) {
-                try {
-                    if (!value.toString().contains(".")) {
-                        return Long.parseLong(value.toString());
-                    } else {
-                        return Double.parseDouble(value.toString());
-                    }
-                } catch (Exception ex) {
-                    //must not have been an number
-                }
-                return value.toString();
-            }
-
-            switch (type.toLowerCase()) {
-                case "char":
-                case "nchar":
-                case "clob":
-                    return value.toString().trim();
-                case "s":
-                case "string":
-                case "varchar":
-                case "nvarchar":
-                case "longvarchar":
-                case "longnvarchar":
-                case "json":
-                    return value.toString();
-                case "n":
-                case "number":
-                case "numeric":
-                case "decimal":
-                    if (!value.toString().contains("."))
-                        return Long.parseLong(value.toString());
-                    else
-                        return Double.parseDouble(value.toString());
-
-                case "bool":
-                case "boolean":
-                case "bit": {
-                    if ("1".equals(value))
-                        value = "true";
-                    else if ("0".equals(value))
-                        value = "false";
-
-                    return Boolean.parseBoolean(value.toString());
-                }
-
-                case "tinyint":
-                    return Byte.parseByte(value.toString());
-                case "smallint":
-                    return Short.parseShort(value.toString());
-                case "integer":
-                    return Integer.parseInt(value.toString());
-                case "bigint":
-                    return Long.parseLong(value.toString());
-                case "float":
-                case "real":
-                case "double":
-                    return Double.parseDouble(value.toString());
-                case "datalink":
-                    return new URL(value.toString());
-
-                case "binary":
-                case "varbinary":
-                case "longvarbinary":
-                    return Utils.hexToBytes(value.toString());
-
-                case "date":
-                case "datetime":
-                    return new java.sql.Date(Utils.date(value.toString()).getTime());
-                case "timestamp":
-                    return new java.sql.Timestamp(Utils.date(value.toString()).getTime());
-
-                case "array":
-
-                    if (value instanceof JSList)
-                        return value;
-                    else
-                        return JSParser.asJSList(value + "");
-
-                case "object":
-                    if (value instanceof JSNode)
-                        return value;
-                    else {
-                        String json = value.toString().trim();
-                        if (json.length() > 0) {
-                            char c = json.charAt(0);
-                            if (c == '[' || c == '{')
-                                return JSParser.parseJson(value + "");
-                        }
-                        return json;
-                    }
-
-                default:
-                    throw ApiException.new500InternalServerError("Error casting '{}' as type '{}'", value, type);
-            }
-        } catch (Exception ex) {
-            Utils.rethrow(ex);
-            //throw new RuntimeException("Error casting '" + value + "' as type '" + type + "'", ex);
-        }
-
-        return null;
+        return Converter.forType(type).castJsonInput(value);
     }
 
     /**
@@ -325,6 +228,130 @@ public class Db<T extends Db> extends Rule<T> {
      */
     public final Results select(Collection collection, Map<String, String> params) throws ApiException {
 
+        //-- the column mapped terms for a given set of params are cached
+        //-- per Collection so repeat queries skip parsing and mapping
+        String     planKey     = null;
+        long       planVersion = 0;
+        List<Term> mappedTerms = null;
+        if (collection != null) {
+            planVersion = Collection.queryPlanVersion.get();
+            planKey = getQueryPlanKey(params);
+
+            List<Term> plan = collection.getQueryPlan(planKey);
+            if (plan != null)
+                mappedTerms = copyTerms(plan);
+        }
+
+        if (mappedTerms == null) {
+            mappedTerms = buildQueryTerms(collection, params);
+            if (planKey != null)
+                collection.withQueryPlan(planKey, copyTerms(mappedTerms), planVersion);
+        }
+
+        Results results = doSelect(collection, mappedTerms);
+
+        if (results.getColumns() != null) {
+            results.withRows(toColumnList(collection, results.getColumns()));
+        } else if (results.size() > 0) {
+
+            for (int i = 0; i < results.size(); i++) {
+                //convert the map into a JSNode
+                Map<String, Object> row = results.getRow(i);
+
+                if (collection == null) {
+                    JSMap node = new JSMap(row);
+                    results.setRow(i, node);
+                } else {
+                    results.setRow(i, toJsonRow(collection, row));
+                }
+            }
+
+        } // end if results.size() > 0
+
+        //------------------------------------------------
+        //the "next" params come from the db encoded with db col names
+        //have to convert them to their attribute equivalents
+        for (Term term : ((List<Term>) results.getNext())) {
+            mapToJsonNames(collection, term);
+        }
+
+        return results;
+    }
+
+    /**
+     * Converts a row of column names to values into a JSMap of Property jsonNames to values.
+     * <p>
+     * Mapped properties are copied first, in Property order, with {@link #castDbOutput(Property, Object)}
+     * applied, followed by any unmapped columns in alphabetical order.  The resource index properties
+     * are moved to the front.
+     *
+     * @param collection the collection the row was selected from
+     * @param row        the column name keyed row, mapped columns are removed from it
+     * @return the json name keyed row
+     */
+    protected JSMap toJsonRow(Collection collection, Map<String, Object> row) {
+        JSMap node = new JSMap();
+
+        //------------------------------------------------
+        //copy over defined attributes first, if the select returned
+        //extra columns they will be copied over last
+        for (Property attr : collection.getProperties()) {
+            String attrName = attr.getJsonName();
+            String colName  = attr.getColumnName();
+
+            boolean rowHas = row.containsKey(colName);
+            if (rowHas)
+            //if (resourceKey != null || rowHas)
+            {
+                //-- if the resourceKey was null don't create
+                //-- empty props for fields that were not
+                //-- returned from the db
+                Object val = row.remove(colName);
+                //if (!node.containsKey(attrName))
+                {
+                    val = castDbOutput(attr, val);
+                    node.put(attrName, val);
+                }
+            }
+        }
+
+        //------------------------------------------------
+        // next, if the db returned extra columns that
+        // are not mapped to attributes, just straight copy them
+        List<String> sorted = new ArrayList(row.keySet());
+        Collections.sort(sorted);
+        for (String key : sorted) {
+            if (!key.equalsIgnoreCase("href") && !node.containsKey(key)) {
+                Object value = row.get(key);
+                node.put(key, value);
+            }
+        }
+
+        //------------------------------------------------
+        // put any primary key fields at the top of the object
+        Index idx = collection.getResourceIndex();
+        if (idx != null) {
+            for (int j = idx.size() - 1; j >= 0; j--) {
+                Property prop = idx.getProperty(j);
+                if (node.containsKey(prop.getJsonName()))
+                    node.putFirst(prop.getJsonName(), node.get(prop.getJsonName()));
+            }
+        }
+
+        //if(links.size() > 0)
+        //    node.putFirst("_links", links);
+
+        return node;
+    }
+
+    /**
+     * Parses the request params into RQL terms and maps them from json property names to column names.
+     *
+     * @param collection the collection to query
+     * @param params     the request params
+     * @return the column mapped terms to pass to {@link #doSelect(Collection, List)}
+     */
+    protected List<Term> buildQueryTerms(Collection collection, Map<String, String> params) {
         List<Term> terms = new ArrayList<>();
 
         for (String key : params.keySet()) {
@@ -342,6 +369,8 @@ public class Db<T extends Db> extends Rule<T> {
                 //dotted path expressions.  If you don't use dotted path expressions the includes values
                 //can be used to limit the sql select clause...however if any of the columns are actually
                 //dotted paths, don't pass on to the Query the extra stuff will be removed by the rest action.
+                //DbGetAction resolves dotted paths into the properties each query needs before calling
+                //select() so, for GETs, the includes seen here should not be dotted.  See QueryProjection.
                 boolean dottedInclude = false;
                 for (int i = 1; i < term.size(); i++) {
                     String str = term.getToken(i);
@@ -385,84 +414,124 @@ public class Db<T extends Db> extends Rule<T> {
         Collections.sort(terms);
 
         List<Term> mappedTerms = new ArrayList<>();
-        terms.forEach(term -> mappedTerms.addAll(mapToColumnNames(collection, term.copy())));
+        terms.forEach(term -> mappedTerms.addAll(mapToColumnNames(collection, term)));
+        return mappedTerms;
+    }
 
-        Results results = doSelect(collection, mappedTerms);
+    /**
+     * Builds the query plan cache key for <code>params</code>.
+     * <p>
+     * {@link #buildQueryTerms(Collection, Map)} sorts the terms it produces so the params
+     * are keyed in name order, the same query gets the same plan whatever the map order.
+     *
+     * @param params the request params
+     * @return the key for {@link Collection#getQueryPlan(String)}
+     */
+    static String getQueryPlanKey(Map<String, String> params) {
+        List<String> keys = new ArrayList<>(params.keySet());
+        Collections.sort(keys);
+
+        StringBuilder buff = new StringBuilder();
+        for (String key : keys)
+            buff.append(key).append('\u0000').append(params.get(key)).append('\u0001');
+        return buff.toString();
+    }
 
-        if (results.size() > 0) {
+    static List<Term> copyTerms(List<Term> terms) {
+        List<Term> copies = new ArrayList<>(terms.size());
+        for (Term term : terms)
+            copies.add(term.copy());
+        return copies;
+    }
 
-            for (int i = 0; i < results.size(); i++) {
-                //convert the map into a JSNode
-                Map<String, Object> row = results.getRow(i);
+    /**
+     * Creates a JSColumnList that outputs the same properties, in the same order, with the same
+     * {@link #castDbOutput(Property, Object)} conversions as {@link #select(Collection, Map)} applies
+     * to each row of a row oriented Results.
+     * <p>
+     * The mapping is computed once for the whole table instead of once per row.
+     *
+     * @param collection the collection that was queried, may be null
+     * @param columns    the column oriented results of {@link #doSelect(Collection, List)}
+     * @return a JSList of JSMaps that writes directly from <code>columns</code>
+     */
+    protected JSColumnList toColumnList(Collection collection, Columns columns) {
+        if (collection == null)
+            return new JSColumnList(columns);
 
-                if (collection == null) {
-                    JSMap node = new JSMap(row);
-                    results.setRow(i, node);
-                } else {
-                    JSMap node = new JSMap();
-                    results.setRow(i, node);
+        //-- values are the column index and, for mapped columns, the Property to cast with
+        JSMap     plan     = new JSMap();
+        boolean[] consumed = new boolean[columns.width()];
 
-                    //------------------------------------------------
-                    //copy over defined attributes first, if the select returned
-                    //extra columns they will be copied over last
-                    for (Property attr : collection.getProperties()) {
-                        String attrName = attr.getJsonName();
-                        String colName  = attr.getColumnName();
-
-                        boolean rowHas = row.containsKey(colName);
-                        if (rowHas)
-                        //if (resourceKey != null || rowHas)
-                        {
-                            //-- if the resourceKey was null don't create
-                            //-- empty props for fields that were not
-                            //-- returned from the db
-                            Object val = row.remove(colName);
-                            //if (!node.containsKey(attrName))
-                            {
-                                val = castDbOutput(attr, val);
-                                node.put(attrName, val);
-                            }
-                        }
-                    }
+        //------------------------------------------------
+        //copy over defined attributes first, if the select returned
+        //extra columns they will be copied over last
+        for (Property attr : collection.getProperties()) {
+            int col = columns.indexOf(attr.getColumnName());
+            if (col > -1 && !consumed[col]) {
+                consumed[col] = true;
+                plan.put(attr.getJsonName(), new Object[]{col, attr});
+            }
+        }
 
-                    //------------------------------------------------
-                    // next, if the db returned extra columns that
-                    // are not mapped to attributes, just straight copy them
-                    List<String> sorted = new ArrayList(row.keySet());
-                    Collections.sort(sorted);
-                    for (String key : sorted) {
-                        if (!key.equalsIgnoreCase("href") && !node.containsKey(key)) {
-                            Object value = row.get(key);
-                            node.put(key, value);
-                        }
-                    }
+        //------------------------------------------------
+        // next, if the db returned extra columns that
+        // are not mapped to attributes, just straight copy them
+        List<String> sorted = new ArrayList<>();
+        for (int col = 0; col < columns.width(); col++) {
+            if (!consumed[col])
+                sorted.add(columns.getKey(col));
+        }
+        Collections.sort(sorted);
+        for (String key : sorted) {
+            if (!key.equalsIgnoreCase("href") && !plan.containsKey(key))
+                plan.put(key, new Object[]{columns.indexOf(key), null});
+        }
 
-                    //------------------------------------------------
-                    // put any primary key fields at the top of the object
-                    Index idx = collection.getResourceIndex();
-                    if (idx != null) {
-                        for (int j = idx.size() - 1; j >= 0; j--) {
-                            Property prop = idx.getProperty(j);
-                            if (node.containsKey(prop.getJsonName()))
-                                node.putFirst(prop.getJsonName(), node.get(prop.getJsonName()));
-                        }
-                    }
+        //------------------------------------------------
+        // put any primary key fields at the top of the object
+        Index idx = collection.getResourceIndex();
+        if (idx != null) {
+            for (int j = idx.size() - 1; j >= 0; j--) {
+                Property prop = idx.getProperty(j);
+                if (plan.containsKey(prop.getJsonName()))
+                    plan.putFirst(prop.getJsonName(), plan.get(prop.getJsonName()));
+            }
+        }
 
-                    //if(links.size() > 0)
-                    //    node.putFirst("_links", links);
-                }
+        boolean overridesCast = isCastDbOutputOverridden();
+
+        List<String>               keys    = new ArrayList<>(plan.keySet());
+        String[]                   names   = new String[keys.size()];
+        int[]                      indexes = new int[keys.size()];
+        Function<Object, Object>[] casts   = new Function[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            Object[] entry = (Object[]) plan.get(keys.get(i));
+            Property attr  = (Property) entry[1];
+            names[i] = keys.get(i);
+            indexes[i] = (Integer) entry[0];
+
+            //-- most converters do not change int/long/double/boolean values
+            //-- so those columns can be written without boxing
+            if (attr != null) {
+                Converter converter = attr.getConverter();
+                boolean   primitive = columns.getType(indexes[i]) != Columns.TYPE_OBJECT;
+                if (overridesCast)
+                    casts[i] = value -> castDbOutput(attr, value);
+                else if (!primitive || !converter.isOutputPreservesPrimitives())
+                    casts[i] = converter::castDbOutput;
             }
+        }
 
-        } // end if results.size() > 0
+        return new JSColumnList(columns, names, indexes, casts);
+    }
 
-        //------------------------------------------------
-        //the "next" params come from the db encoded with db col names
-        //have to convert them to their attribute equivalents
-        for (Term term : ((List<Term>) results.getNext())) {
-            mapToJsonNames(collection, term);
+    boolean isCastDbOutputOverridden() {
+        try {
+            return getClass().getMethod("castDbOutput", Property.class, Object.class).getDeclaringClass() != Db.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
         }
-
-        return results;
     }
 
     /**
@@ -476,6 +545,25 @@ public class Db<T extends Db> extends Rule<T> {
         return new Results(null);
     }
 
+    /**
+     * Returns true if this Db can select the related resources of a MANY_TO_MANY <code>relationship</code>
+     * with a single query that joins through the link table.
+     * <p>
+     * When true, DbGetAction queries <code>relationship.getRelated()</code> with a
+     * <code>_related(inverseRelationshipName, parentKey1, parentKey2...)</code> term instead of first
+     * querying the link table for the related keys.  When more than one parent key is supplied, each
+     * returned row must also contain the link table columns of the inverse relationship's fkIndex2,
+     * in order, named "~~related_0", "~~related_1"... so the rows can be paired back up with their parents.
+     * <p>
+     * The default implementation returns false.
+     *
+     * @param relationship a MANY_TO_MANY relationship whose related collection is stored in this Db
+     * @return true if doSelect() supports the _related() term for this relationship
+     */
+    public boolean isJoinable(Relationship relationship) {
+        return false;
+    }
+
 
 
 
@@ -528,6 +616,69 @@ public class Db<T extends Db> extends Rule<T> {
         return doUpsert(collection, rows);
     }
 
+    /**
+     * Upserts <code>records</code> just like {@link #upsert(Collection, List)} but returns the persisted rows,
+     * formatted just like {@link #select(Collection, Map)} would return them, from the write itself.
+     * <p>
+     * This lets an Action respond with the written resources without running a separate query.
+     *
+     * @param collection the collection being modified
+     * @param records    the records being modified
+     * @return the persisted rows in the same order as <code>records</code> or null if this Db can not return them from the write
+     * @see #doUpsertReturning(Collection, List)
+     */
+    public final List<JSMap> upsertReturning(Collection collection, List<Map<String, Object>> records) throws ApiException {
+        return toJsonRows(collection, doUpsertReturning(collection, mapToColumnNames(collection, records)));
+    }
+
+    /**
+     * Optional override for data sources that can return the complete persisted row from an upsert, for
+     * example with an SQL RETURNING or OUTPUT clause, instead of just the key.
+     * <p>
+     * The default implementation returns null indicating that returning rows is not supported.
+     *
+     * @param collection the collection being modified
+     * @param records    the column name keyed records being modified
+     * @return the column name keyed persisted rows in the same order as <code>records</code> or null if not supported
+     */
+    public List<Map<String, Object>> doUpsertReturning(Collection collection, List<Map<String, Object>> records) throws ApiException {
+        return null;
+    }
+
+    /**
+     * Patches <code>records</code> just like {@link #patch(Collection, List)} but returns the persisted rows,
+     * formatted just like {@link #select(Collection, Map)} would return them, from the write itself.
+     *
+     * @param collection the collection to patch
+     * @param records    the key/value pairs to update on existing records
+     * @return the rows that were modified or null if this Db can not return them from the write
+     * @see #doPatchReturning(Collection, List)
+     */
+    public final List<JSMap> patchReturning(Collection collection, List<Map<String, Object>> records) throws ApiException {
+        return toJsonRows(collection, doPatchReturning(collection, mapToColumnNames(collection, records)));
+    }
+
+    /**
+     * The default implementation simply calls doUpsertReturning() just as doPatch() calls doUpsert().
+     *
+     * @param collection the collection to patch
+     * @param rows       the column name keyed key/value pairs to update on existing records
+     * @return the column name keyed rows that were modified or null if not supported
+     */
+    public List<Map<String, Object>> doPatchReturning(Collection collection, List<Map<String, Object>> rows) throws ApiException {
+        return doUpsertReturning(collection, rows);
+    }
+
+    List<JSMap> toJsonRows(Collection collection, List<Map<String, Object>> rows) {
+        if (rows == null)
+            return null;
+
+        List<JSMap> nodes = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows)
+            nodes.add(toJsonRow(collection, row));
+        return nodes;
+    }
+
     /**
      * Deletes rows identified by the unique index values from the underlying data source.
      * <p>
@@ -953,30 +1104,9 @@ public class Db<T extends Db> extends Rule<T> {
      * @return <code>value</code> cast to <code>Property.type</code>
      */
     public Object castDbOutput(Property property, Object value) {
-        String type = property.getType();
-        if (type == null || value == null)
+        if (property == null)
             return value;
-
-        type = type.toLowerCase();
-
-        if ("json".equalsIgnoreCase(type)) {
-            String json = value.toString().trim();
-            if (json.isEmpty())
-                return new JSMap();
-            return JSParser.parseJson(json);
-        }
-
-        if (value instanceof byte[])// && ((byte[])value).length == 16)
-            value = Utils.bytesToHex((byte[]) value);
-
-        else if (Utils.in(type, "char", "nchar", "clob"))
-            value = value.toString().trim();
-
-        else if (value instanceof Date && Utils.in(type, "date", "datetime", "timestamp"))
-            value = Utils.formatIso8601((Date) value);
-
-
-        return value;
+        return property.getConverter().castDbOutput(value);
     }
 
     /**
@@ -988,7 +1118,7 @@ public class Db<T extends Db> extends Rule<T> {
      * @see Db#castJsonInput(String, Object)
      */
     public Object castJsonInput(Property property, Object value) {
-        return castJsonInput(property != null ? property.getType() : null, value);
+        return (property != null ? property.getConverter() : Converter.forType(null)).castJsonInput(value);
     }
 
 //    /**
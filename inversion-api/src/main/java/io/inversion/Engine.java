@@ -32,7 +32,9 @@ import io.inversion.json.JSParser;
 import io.inversion.rql.Rql;
 import io.inversion.rql.Term;
 import io.inversion.utils.Path;
+import io.inversion.utils.SingleFlight;
 import io.inversion.utils.Utils;
+import io.inversion.utils.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +42,16 @@ import java.io.File;
 import java.lang.reflect.Type;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -85,6 +97,44 @@ public class Engine {
 
     protected final List<Action> filters = new ArrayList();
 
+    /**
+     * The executor {@link #serviceAsync(Request, Response)} runs requests on.
+     * <p>
+     * If null, a shared executor that starts a virtual thread per request, or a bounded
+     * daemon thread pool on JVMs without virtual threads, is used.
+     *
+     * @see #getDefaultExecutor()
+     */
+    protected transient ExecutorService executor = null;
+
+    static ExecutorService defaultExecutor = null;
+
+    /**
+     * When true, concurrent identical internal GETs made through {@link #service(String, String, String, Map)},
+     * such as the same reference data being expanded by many inbound requests at once, share a single execution.
+     * <p>
+     * Calls are identical if they have the same url, params, Chain user and root request Authorization header.
+     * Each caller receives its own copy of the Response.
+     * <p>
+     * Only calls made outside of a request or directly by the Actions of a root GET are coalesced.  A root POST,
+     * PUT, PATCH or DELETE may re-read rows it has just written inside its transaction, so it never shares, or
+     * leads, a flight with other requests.  Calls nested
+     * inside another internal request, or made from a worker thread carrying a {@link Chain#propagate(Callable)}
+     * copy of the caller's Chain, always run so they can never end up waiting on a flight their own request is leading.
+     */
+    protected boolean coalesceGets = false;
+
+    /**
+     * How long, in milliseconds, a coalesced GET waits on the in flight call before giving up and running the request itself.
+     */
+    protected long coalesceTimeout = 30000;
+
+    /**
+     * Shares in flight internal GETs when <code>coalesceGets</code> is true.  Set a ttl on this to also share
+     * successful responses for a short time after they complete.
+     */
+    protected final transient SingleFlight<String, Response> singleFlight = new SingleFlight<>();
+
     /**
      * Base value for the CORS "Access-Control-Allow-Headers" response header.
      * <p>
@@ -400,12 +450,84 @@ public class Engine {
             }
         }
 
+        String                        key    = coalesceGets && "GET".equalsIgnoreCase(method) && isCoalescable() ? buildCoalesceKey(req) : null;
+        SingleFlight.Flight<Response> flight = key != null ? singleFlight.join(key) : null;
+        if (flight != null && !flight.isLeader()) {
+            Response shared = awaitFlight(flight);
+            if (shared != null) {
+                Response res = shared.copy();
+                res.withRequest(req);
+                return res;
+            }
+            //-- the leader is taking too long, run the request without joining the flight
+            flight = null;
+        }
+
         Response res = new Response();
+        try {
+            service(req, res);
+        } catch (RuntimeException | Error ex) {
+            if (flight != null)
+                singleFlight.fail(key, flight, ex);
+            throw ex;
+        }
+
+        if (flight != null)
+            singleFlight.complete(key, flight, res.copy(), res.isSuccess());
 
-        service(req, res);
         return res;
     }
 
+    /**
+     * @return true if an internal GET made now may join or lead a flight, see {@link #coalesceGets}
+     */
+    boolean isCoalescable() {
+        if (Chain.getDepth() > 1 || Chain.isPropagated())
+            return false;
+        Chain root = Chain.first();
+        return root == null || root.getRequest().isMethod("GET");
+    }
+
+    /**
+     * @return the leader's Response or null if it did not finish within <code>coalesceTimeout</code>
+     */
+    Response awaitFlight(SingleFlight.Flight<Response> flight) {
+        try {
+            return flight.getFuture().get(coalesceTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ApiException.new500InternalServerError(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw ApiException.new500InternalServerError(cause);
+        }
+    }
+
+    /**
+     * The coalescing key includes the caller's identity so that users never see each other's results.
+     */
+    String buildCoalesceKey(Request req) {
+        StringBuilder key = new StringBuilder(req.getUrl().toString());
+
+        User user = Chain.getUser();
+        if (user != null)
+            key.append("\nuser: ").append(new TreeMap<>(user.getClaims()));
+
+        Chain root = Chain.first();
+        if (root != null && root.getRequest() != null) {
+            String auth = root.getRequest().getHeader("Authorization");
+            if (auth != null)
+                key.append("\nauthorization: ").append(auth);
+        }
+        return key.toString();
+    }
+
     /**
      * The main entry point for processing a Request and generating Response content.
      * <p>
@@ -587,6 +709,42 @@ public class Engine {
         return chain;
     }
 
+    /**
+     * Services the Request off of the calling thread and completes the returned stage with the Response.
+     * <p>
+     * This is the entry point for integrating runtimes, such as an async {@code EngineServlet}, that
+     * want to release their own thread while the Engine runs the Chain.  The entire Chain, including
+     * all filters and ApiListener callbacks, still runs in order on a single thread from {@link #getExecutor()}
+     * so Actions that wrap <code>req.getChain().go()</code> and listeners that rely on thread locals,
+     * such as JdbcDb's connection management, behave exactly as they do with {@link #service(Request, Response)}.
+     * <p>
+     * Errors thrown by Actions are written to the Response as usual, the stage only completes
+     * exceptionally if the Engine itself fails unexpectedly.
+     *
+     * @param req the api Request
+     * @param res the api Response
+     * @return a stage that completes with <code>res</code> once the Chain has finished
+     * @see #service(Request, Response)
+     */
+    public CompletionStage<Response> serviceAsync(Request req, Response res) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        try {
+            //-- a nested call carries the caller's Chain stack over to the worker
+            Callable<Chain> task = Chain.propagate(() -> service(req, res));
+            getExecutor().execute(() -> {
+                try {
+                    task.call();
+                    future.complete(res);
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
     void service0(Chain chain, Request req, Response res) throws ApiException {
 
         Url url = req.getUrl();
@@ -929,6 +1087,82 @@ public class Engine {
     }
 
 
+    public ExecutorService getExecutor() {
+        if (executor != null)
+            return executor;
+        return getDefaultExecutor();
+    }
+
+    public Engine withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Virtual threads are used when the JVM supports them (Java 21+).  Otherwise a fixed size pool
+     * of daemon threads with a bounded queue is used.  When all of its threads are busy and the queue
+     * is full, requests run on the submitting thread which pushes back on the caller instead of
+     * growing the pool or the queue without limit.
+     *
+     * @return the executor shared by Engines that have not been given their own
+     */
+    static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = VirtualThreads.newExecutor("inversion-engine-");
+            if (defaultExecutor == null) {
+                AtomicInteger      threadNum = new AtomicInteger(0);
+                int                threads   = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+                ThreadPoolExecutor pool      = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 16), r -> {
+                    Thread t = new Thread(r, "inversion-engine-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+                pool.allowCoreThreadTimeOut(true);
+                defaultExecutor = pool;
+            }
+        }
+        return defaultExecutor;
+    }
+
+    public boolean isCoalesceGets() {
+        return coalesceGets;
+    }
+
+    public Engine withCoalesceGets(boolean coalesceGets) {
+        this.coalesceGets = coalesceGets;
+        return this;
+    }
+
+    /**
+     * @param coalesceTtl how long, in milliseconds, a successful coalesced GET response is shared after it completes
+     * @return this
+     */
+    public Engine withCoalesceTtl(long coalesceTtl) {
+        singleFlight.withTtl(coalesceTtl);
+        return this;
+    }
+
+    public long getCoalesceTtl() {
+        return singleFlight.getTtl();
+    }
+
+    public long getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+    /**
+     * @param coalesceTimeout how long, in milliseconds, a coalesced GET waits on the in flight call before running the request itself
+     * @return this
+     */
+    public Engine withCoalesceTimeout(long coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+        return this;
+    }
+
+    public SingleFlight<String, Response> getSingleFlight() {
+        return singleFlight;
+    }
+
     public Engine withAllowHeaders(String allowHeaders) {
         this.corsAllowHeaders = allowHeaders;
         return this;
@@ -1067,6 +1301,10 @@ public class Engine {
     }
 
     protected static void exclude(Request req, Response res) {
+        //-- the Db queries already selected exactly what was requested or the body is not json to prune
+        if (res.isProjected() || res.isRawBody())
+            return;
+
         JSList data = res.data();
         if (data == null)
             return;
@@ -1106,7 +1344,7 @@ public class Engine {
         }
     }
 
-    protected static boolean exclude(String path, Set<String> includes, Set<String> excludes) {
+    public static boolean exclude(String path, Set<String> includes, Set<String> excludes) {
         boolean exclude = false;
 
         if (includes != null && includes.size() > 0)
@@ -1139,7 +1377,7 @@ public class Engine {
         return found;
     }
 
-    static Set getXcludesSet(String str) {
+    public static Set getXcludesSet(String str) {
         if (str == null)
             return null;
 
@@ -21,6 +21,11 @@ import io.inversion.utils.StreamBuffer;
 import io.inversion.utils.Utils;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
+import io.inversion.utils.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,15 +33,52 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 
 public class EngineServlet extends HttpServlet {
+
+    /**
+     * The servlet init parameter, system property or environment variable that turns on {@link #isAsync()}.
+     */
+    public static final String ASYNC_PROP = "inversion.async";
+
+    /**
+     * The servlet init parameter, system property or environment variable that turns on {@link #isVirtualThreads()}.
+     */
+    public static final String VIRTUAL_THREADS_PROP = "inversion.virtualThreads";
+
+    static final Logger log = LoggerFactory.getLogger(EngineServlet.class);
+
+    /**
+     * File bodies smaller than this are copied instead of being handed to container sendfile, which matches Tomcat's default.
+     */
+    static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
     Engine engine = null;//new Engine();
 
+    /**
+     * When true, each request is put into async mode and handed to {@link Engine#serviceAsync(Request, Response)}
+     * so the container thread is returned to the pool right away and blocking JDBC, ApiClient and SDK calls
+     * made by the Engine do not hold a container thread.  The response is written by the Engine thread once
+     * the Chain completes.
+     */
+    protected boolean async = false;
+
+    /**
+     * When true, requests are serviced asynchronously on the Engine's executor which, unless
+     * {@link Engine#withExecutor(java.util.concurrent.ExecutorService)} was called, starts a virtual
+     * thread per request when the JVM supports them.  This implies {@link #isAsync()}.
+     */
+    protected boolean virtualThreads = false;
+
     public static String readBody(HttpServletRequest request) throws ApiException {
         if (request == null)
             return null;
@@ -76,6 +118,21 @@ public class EngineServlet extends HttpServlet {
     }
 
     public void init(ServletConfig config) {
+        String prop = config.getInitParameter(ASYNC_PROP);
+        if (prop == null)
+            prop = Utils.getSysEnvProp(ASYNC_PROP);
+        if (prop != null)
+            async = Utils.atob(prop);
+
+        prop = config.getInitParameter(VIRTUAL_THREADS_PROP);
+        if (prop == null)
+            prop = Utils.getSysEnvProp(VIRTUAL_THREADS_PROP);
+        if (prop != null)
+            virtualThreads = Utils.atob(prop);
+
+        if (virtualThreads && !VirtualThreads.isSupported())
+            log.warn("Virtual threads are not supported by this JVM, requests will be serviced on platform threads.");
+
         engine.startup();
     }
 
@@ -87,120 +144,214 @@ public class EngineServlet extends HttpServlet {
         this.engine = engine;
     }
 
+    public boolean isAsync() {
+        return async || virtualThreads;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     @Override
     public void service(HttpServletRequest httpReq, HttpServletResponse httpResp) throws ServletException, IOException {
-        EngineServletLocal.set(httpReq, httpResp);
-
-        Response res;
-        Request  req;
+        if (isAsync() && httpReq.isAsyncSupported())
+            serviceAsync(httpReq, httpResp);
+        else
+            service0(httpReq, httpResp);
+    }
 
+    protected void service0(HttpServletRequest httpReq, HttpServletResponse httpResp) throws ServletException, IOException {
+        EngineServletLocal.set(httpReq, httpResp);
         try {
-            String method = httpReq.getMethod();
-            String urlstr = httpReq.getRequestURL().toString();
+            Request req = buildRequest(httpReq, httpResp);
+            if (req != null) {
+                Response res = new Response();
+                engine.service(req, res);
+                writeResponse(httpReq, req, res, httpResp);
+            }
+        } catch (Throwable ex) {
+            writeError(ex, httpResp);
+        } finally {
+            EngineServletLocal.clear();
+        }
+    }
 
-            if (!urlstr.endsWith("/"))
-                urlstr = urlstr + "/";
+    /**
+     * Reads the request on the container thread, then suspends it while the Engine services
+     * the Chain on its own executor.  The response is written, and the request completed, by
+     * the Engine thread.
+     * <p>
+     * {@link EngineServletLocal} is not populated in async mode because the Chain does not
+     * run on the container thread.
+     */
+    protected void serviceAsync(HttpServletRequest httpReq, HttpServletResponse httpResp) throws ServletException, IOException {
+        Request req;
+        try {
+            req = buildRequest(httpReq, httpResp);
+        } catch (Throwable ex) {
+            writeError(ex, httpResp);
+            return;
+        }
 
-            String query = httpReq.getQueryString();
-            if (!Utils.empty(query)) {
-                urlstr += "?" + query;
+        if (req == null)
+            return;
+
+        AsyncContext asyncCtx = httpReq.startAsync(httpReq, httpResp);
+        asyncCtx.setTimeout(0);
+
+        engine.serviceAsync(req, new Response()).whenComplete((res, error) -> {
+            try {
+                if (error != null)
+                    writeError(error, httpResp);
+                else
+                    //-- container sendfile is not used for async requests
+                    writeResponse(null, req, res, httpResp);
+            } catch (Throwable ex) {
+                log.error("Error writing async response", ex);
+            } finally {
+                asyncCtx.complete();
             }
+        });
+    }
 
-            String lower = urlstr;
-            if (lower.equals("http://localhost")
-                    || lower.startsWith("http://localhost/")
-                    || lower.startsWith("http://localhost:")
-                    || lower.equals("https://localhost")
-                    || lower.startsWith("https://localhost/")
-                    || lower.startsWith("https://localhost:")
-            ) {
-
-                urlstr = Pattern.compile("localhost", Pattern.CASE_INSENSITIVE).matcher(urlstr).replaceFirst("127.0.0.1");
-                httpResp.sendRedirect(urlstr);
-                return;
-            }
+    /**
+     * @return the Request to service or null if the client was redirected instead
+     */
+    protected Request buildRequest(HttpServletRequest httpReq, HttpServletResponse httpResp) throws Exception {
+        String method = httpReq.getMethod();
+        String urlstr = httpReq.getRequestURL().toString();
 
+        if (!urlstr.endsWith("/"))
+            urlstr = urlstr + "/";
 
-            ArrayListValuedHashMap headers    = new ArrayListValuedHashMap<>();
-            Enumeration<String>    headerEnum = httpReq.getHeaderNames();
-            while (headerEnum.hasMoreElements()) {
-                String      key    = headerEnum.nextElement();
-                Enumeration values = httpReq.getHeaders(key);
-                while (values.hasMoreElements()) {
-                    String val = (String) values.nextElement();
-                    headers.put(key, val);
-                }
-            }
+        String query = httpReq.getQueryString();
+        if (!Utils.empty(query)) {
+            urlstr += "?" + query;
+        }
 
-            Map<String, String> params       = new HashMap<>();
-            Enumeration<String> paramsEnumer = httpReq.getParameterNames();
-            while (paramsEnumer.hasMoreElements()) {
-                String   key    = paramsEnumer.nextElement();
-                String[] values = httpReq.getParameterValues(key);
-                String   value  = values == null ? null : (values.length == 1 ? values[0] : Utils.implode(",", values));
-                params.put(key, value);
-            }
+        String lower = urlstr;
+        if (lower.equals("http://localhost")
+                || lower.startsWith("http://localhost/")
+                || lower.startsWith("http://localhost:")
+                || lower.equals("https://localhost")
+                || lower.startsWith("https://localhost/")
+                || lower.startsWith("https://localhost:")
+        ) {
+
+            urlstr = Pattern.compile("localhost", Pattern.CASE_INSENSITIVE).matcher(urlstr).replaceFirst("127.0.0.1");
+            httpResp.sendRedirect(urlstr);
+            return null;
+        }
 
-            String body = readBody(httpReq);
 
-            if (body != null && body.startsWith("--") && body.indexOf("Content-Disposition") > 0) {
-                throw ApiException.new400BadRequest("Received invalid multipart content.");
+        ArrayListValuedHashMap headers    = new ArrayListValuedHashMap<>();
+        Enumeration<String>    headerEnum = httpReq.getHeaderNames();
+        while (headerEnum.hasMoreElements()) {
+            String      key    = headerEnum.nextElement();
+            Enumeration values = httpReq.getHeaders(key);
+            while (values.hasMoreElements()) {
+                String val = (String) values.nextElement();
+                headers.put(key, val);
             }
+        }
 
+        Map<String, String> params       = new HashMap<>();
+        Enumeration<String> paramsEnumer = httpReq.getParameterNames();
+        while (paramsEnumer.hasMoreElements()) {
+            String   key    = paramsEnumer.nextElement();
+            String[] values = httpReq.getParameterValues(key);
+            String   value  = values == null ? null : (values.length == 1 ? values[0] : Utils.implode(",", values));
+            params.put(key, value);
+        }
 
-            req = new Request(method, urlstr, body, params, headers);
-            req.withRemoteAddr(httpReq.getRemoteAddr());
+        String body = readBody(httpReq);
 
-            req.withUploader(() -> {
-                try {
-                    List uploads = new ArrayList<>();
-                    for (Part part : httpReq.getParts()) {
-                        String      partName    = part.getName();
-                        String      fileName    = part.getSubmittedFileName();
-                        InputStream inputStream = part.getInputStream();
-                        long        fileSize    = part.getSize();
-                        String      fileType    = part.getContentType();
-
-                        //application/octet-stream
-
-                        if (fileName != null && inputStream != null) {
-                            uploads.add(new Upload(partName, fileName, fileSize, fileType, inputStream));
-                        }
+        if (body != null && body.startsWith("--") && body.indexOf("Content-Disposition") > 0) {
+            throw ApiException.new400BadRequest("Received invalid multipart content.");
+        }
+
+
+        Request req = new Request(method, urlstr, body, params, headers);
+        req.withRemoteAddr(httpReq.getRemoteAddr());
+
+        req.withUploader(() -> {
+            try {
+                List uploads = new ArrayList<>();
+                for (Part part : httpReq.getParts()) {
+                    String      partName    = part.getName();
+                    String      fileName    = part.getSubmittedFileName();
+                    InputStream inputStream = part.getInputStream();
+                    long        fileSize    = part.getSize();
+                    String      fileType    = part.getContentType();
+
+                    //application/octet-stream
+
+                    if (fileName != null && inputStream != null) {
+                        uploads.add(new Upload(partName, fileName, fileSize, fileType, inputStream));
                     }
-                    return uploads;
-                } catch (Exception ex) {
-                    Utils.rethrow(ex);
                 }
-                return null;
-            });
+                return uploads;
+            } catch (Exception ex) {
+                Utils.rethrow(ex);
+            }
+            return null;
+        });
 
-            res = new Response();
-            engine.service(req, res);
-            writeResponse(req, res, httpResp);
-        } catch (Throwable ex) {
-            JSNode       json  = Engine.buildErrorJson(ex);
-            OutputStream out   = httpResp.getOutputStream();
-            byte[]       bytes = json.toString().getBytes(StandardCharsets.UTF_8);
-            out.write(bytes);
-            out.flush();
-            out.close();
-        }
+        return req;
     }
 
-    void writeResponse(Request req, Response res, HttpServletResponse http) throws Exception {
+    void writeError(Throwable ex, HttpServletResponse http) throws IOException {
+        JSNode       json  = Engine.buildErrorJson(ex);
+        OutputStream out   = http.getOutputStream();
+        byte[]       bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        out.flush();
+        out.close();
+    }
+
+    void writeResponse(HttpServletRequest httpReq, Request req, Response res, HttpServletResponse http) throws Exception {
 
         http.setStatus(res.getStatusCode());
-        OutputStream out = http.getOutputStream();
 
         ArrayListValuedHashMap<String, String> headers = res.getHeaders();
-        headers.keySet().forEach(key -> http.setHeader(key, Utils.implode(",", res.getHeaders().get(key))));
+        headers.keySet().forEach(key -> http.setHeader(key, res.getHeader(key)));
+
+        if (res.getBodyFile() != null && !req.isMethod("OPTIONS") && !(req.isDebug() && req.isExplain())) {
+            http.setContentType(res.getContentType());
+            writeBodyFile(httpReq, res, http);
+            return;
+        }
+
+        OutputStream out = http.getOutputStream();
 
         if (req.isMethod("OPTIONS")) {
-            //
+            Utils.close(res.getBodyStream());
         } else {
             String contentType = res.getContentType();
             http.setContentType(contentType);
 
+            if (res.isStreaming() && !(req.isDebug() && req.isExplain())) {
+                //-- forward a live body, such as a proxied ApiClient response, without buffering it
+                //-- the client may abort mid copy so the body is closed even when the pipe throws
+                InputStream in = res.getBodyStream();
+                try {
+                    Utils.pipe(in, out, true, false);
+                } finally {
+                    Utils.close(in);
+                }
+                out.flush();
+                out.close();
+                return;
+            }
+
             StreamBuffer buffer = res.getBody();
             if (buffer != null) {
                 http.setContentLength(buffer.getLength());
@@ -211,6 +362,43 @@ public class EngineServlet extends HttpServlet {
         out.close();
     }
 
+    /**
+     * Sends a file region set with {@link Response#withBodyFile(File, long, long)}.
+     * <p>
+     * When the container supports it, Tomcat's sendfile request attributes hand the region to the
+     * kernel so it never passes through the JVM.  Otherwise it is copied with FileChannel.transferTo, which
+     * only avoids copying through a heap buffer when the container's output stream is itself a channel.
+     */
+    void writeBodyFile(HttpServletRequest httpReq, Response res, HttpServletResponse http) throws IOException {
+        File file   = res.getBodyFile();
+        long start  = res.getBodyFileStart();
+        long length = res.getBodyFileLength();
+
+        http.setContentLengthLong(length);
+
+        if (httpReq != null && length >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(httpReq.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            httpReq.setAttribute("org.apache.tomcat.sendfile.filename", file.getCanonicalPath());
+            httpReq.setAttribute("org.apache.tomcat.sendfile.start", start);
+            httpReq.setAttribute("org.apache.tomcat.sendfile.end", start + length);
+            return;
+        }
+
+        OutputStream out = http.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = out instanceof WritableByteChannel ? (WritableByteChannel) out : Channels.newChannel(out);
+            long                pos    = start;
+            long                end    = start + length;
+            while (pos < end) {
+                long count = channel.transferTo(pos, end - pos, target);
+                if (count <= 0)
+                    break;
+                pos += count;
+            }
+        }
+        out.flush();
+        out.close();
+    }
+
     static class EngineServletLocal {
         static final ThreadLocal<HttpServletRequest>  request  = new ThreadLocal();
         static final ThreadLocal<HttpServletResponse> response = new ThreadLocal();
@@ -220,6 +408,11 @@ public class EngineServlet extends HttpServlet {
             response.set(res);
         }
 
+        public static void clear() {
+            request.remove();
+            response.remove();
+        }
+
         public static HttpServletRequest getRequest() {
             return request.get();
         }
@@ -39,6 +39,12 @@ public final class Property implements Serializable {
     protected boolean revisionColumn  = false;
     protected boolean timestampColumn = false;
 
+    /**
+     * Chosen from <code>type</code> the first time it is needed so values are
+     * not cast by switching on the type name for every value.
+     */
+    transient Converter converter = null;
+
 
     public void setCollection(Collection collection) {
         this.collection = collection;
@@ -132,6 +138,8 @@ public final class Property implements Serializable {
      */
     public Property withColumnName(String name) {
         this.columnName = name;
+        if (collection != null)
+            collection.clearQueryPlans();
         return this;
     }
 
@@ -152,11 +160,15 @@ public final class Property implements Serializable {
      */
     public Property withJsonName(String name) {
         this.name = name;
+        if (collection != null)
+            collection.clearQueryPlans();
         return this;
     }
 
     public Property withName(String name) {
         this.name = name;
+        if (collection != null)
+            collection.clearQueryPlans();
         return this;
     }
 
@@ -172,11 +184,25 @@ public final class Property implements Serializable {
      * @return this
      */
     public Property withType(String type) {
-        if (!Utils.empty(type) && !"null".equalsIgnoreCase(type))
+        if (!Utils.empty(type) && !"null".equalsIgnoreCase(type)) {
             this.type = type;
+            this.converter = null;
+        }
         return this;
     }
 
+    /**
+     * @return the Converter for this Property's type
+     */
+    public Converter getConverter() {
+        Converter converter = this.converter;
+        if (converter == null) {
+            converter = Converter.forType(type);
+            this.converter = converter;
+        }
+        return converter;
+    }
+
     /**
      * @return the collection that owns this property
      */
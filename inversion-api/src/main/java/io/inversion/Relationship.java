@@ -131,6 +131,8 @@ public final class Relationship implements Serializable {
      */
     public Relationship withRelated(Collection related) {
         this.related = related;
+        if (collection != null)
+            collection.clearQueryPlans();
         return this;
     }
 
@@ -167,6 +169,8 @@ public final class Relationship implements Serializable {
      */
     public Relationship withName(String name) {
         this.name = name;
+        if (collection != null)
+            collection.clearQueryPlans();
         return this;
     }
 
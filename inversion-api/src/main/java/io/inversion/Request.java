@@ -21,6 +21,7 @@ import io.inversion.utils.Path;
 import io.inversion.utils.Utils;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
+import java.io.InputStream;
 import java.util.*;
 
 public class Request implements Headers, JSFind {
@@ -61,8 +62,9 @@ public class Request implements Headers, JSFind {
     List<Chain.ActionMatch> actionMatches = new ArrayList();
     Map<String, String>     pathParams    = new HashMap<>();
 
-    String body = null;
-    JSNode json = null;
+    String      body       = null;
+    InputStream bodyStream = null;
+    JSNode      json       = null;
 
     Uploader uploader = null;
 
@@ -442,6 +444,28 @@ public class Request implements Headers, JSFind {
         return this;
     }
 
+    /**
+     * @return the streaming body set with {@link #withBodyStream(InputStream)} or null
+     */
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * Supplies the body as a stream instead of a String.
+     * <p>
+     * When the Request is sent by an {@link ApiClient} the stream is copied straight to the
+     * connection, compressing on the fly if configured, instead of being held in memory.
+     * The stream can only be read once and takes precedence over {@link #getBody()}.
+     *
+     * @param bodyStream the body content
+     * @return this
+     */
+    public Request withBodyStream(InputStream bodyStream) {
+        this.bodyStream = bodyStream;
+        return this;
+    }
+
     public JSNode getJson() throws ApiException {
         if (json != null)
             return json;
@@ -541,6 +565,42 @@ public class Request implements Headers, JSFind {
         return getHeader("referrer");
     }
 
+    /**
+     * Checks the Accept-Encoding header honoring quality values so "gzip;q=0" is a refusal.
+     * <p>
+     * An explicit entry for <code>coding</code> takes precedence over a "*" entry.
+     *
+     * @param coding a content coding such as "gzip"
+     * @return true if the Accept-Encoding header lists <code>coding</code>, or "*", with a quality value above zero
+     */
+    public boolean acceptsEncoding(String coding) {
+        String accept = getHeader("Accept-Encoding");
+        if (accept == null)
+            return false;
+
+        Double wildcard = null;
+        for (String part : accept.split(",")) {
+            String[] params = part.split(";");
+            String   name   = params[0].trim();
+            double   q      = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException ex) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding))
+                return q > 0;
+            if (name.equals("*"))
+                wildcard = q;
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
 
     public Chain getChain() {
         return chain;
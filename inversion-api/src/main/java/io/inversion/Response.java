@@ -22,9 +22,14 @@ import io.inversion.utils.StreamBuffer;
 import io.inversion.utils.Utils;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -50,8 +55,30 @@ public class Response implements JSFind {
     protected String       text   = null;
     protected StreamBuffer stream = null;
 
+    /**
+     * A live body stream, such as the entity of an {@link ApiClient} response in streaming mode, that has not been buffered.
+     */
+    protected InputStream bodyStream = null;
+
+    /**
+     * A region of a local file to send as the body, see {@link #withBodyFile(File, long, long)}.
+     */
+    protected File bodyFile       = null;
+    protected long bodyFileStart  = 0;
+    protected long bodyFileLength = 0;
+
     protected Throwable error = null;
 
+    /**
+     * True when the data was selected with the request's includes and excludes already applied.
+     */
+    protected boolean projected = false;
+
+    /**
+     * True when the body is final, for example already gzipped or a region of a file, and must be sent as is.
+     */
+    protected boolean rawBody = false;
+
     protected final StringBuilder debug   = new StringBuilder();
     protected final List<Change>  changes = new ArrayList<>();
 
@@ -76,8 +103,12 @@ public class Response implements JSFind {
      */
     public Response withJson(JSNode json) {
         this.json = json;
+        this.bodyFile = null;
         this.text = null;
         this.stream = null;
+        closeBodyStream();
+        this.projected = false;
+        this.rawBody = false;
         return this;
     }
 
@@ -91,8 +122,11 @@ public class Response implements JSFind {
 
     public Response withText(String text) {
         this.text = text;
+        this.bodyFile = null;
         this.json = null;
         this.stream = null;
+        closeBodyStream();
+        this.rawBody = false;
         return this;
     }
 
@@ -104,14 +138,126 @@ public class Response implements JSFind {
 
     public Response withBody(StreamBuffer stream) {
         this.text = null;
+        this.bodyFile = null;
         this.json = null;
         this.stream = stream;
+        closeBodyStream();
         if (getContentType() == null && stream.getContentType() != null)
             withContentType(stream.getContentType());
         return this;
     }
 
+    /**
+     * Sets a live stream as the body without reading it.
+     * <p>
+     * Callers that want to forward the body without holding it in memory should use {@link #getBodyStream()}.
+     * The other body accessors will read the stream into a {@code StreamBuffer} the first time they are called.
+     * A live stream that is replaced by another body before it is read is closed.
+     *
+     * @param bodyStream the body content
+     * @return this
+     */
+    public Response withBodyStream(InputStream bodyStream) {
+        this.text = null;
+        this.bodyFile = null;
+        this.json = null;
+        this.stream = null;
+        if (this.bodyStream != bodyStream)
+            closeBodyStream();
+        this.bodyStream = bodyStream;
+        return this;
+    }
+
+    /**
+     * Sets a region of a local file as the body without reading it.
+     * <p>
+     * The EngineServlet hands the region to the container's sendfile support when it has it, otherwise it is
+     * copied to the output with FileChannel.transferTo.  The other body accessors will read the region into a
+     * {@code StreamBuffer} the first time they are called.
+     *
+     * @param file   the file to send
+     * @param start  the offset of the first byte to send
+     * @param length the number of bytes to send
+     * @return this
+     */
+    public Response withBodyFile(File file, long start, long length) {
+        withBodyStream(null);
+        this.bodyFile = file;
+        this.bodyFileStart = start;
+        this.bodyFileLength = length;
+        return this;
+    }
+
+    public File getBodyFile() {
+        return bodyFile;
+    }
+
+    public long getBodyFileStart() {
+        return bodyFileStart;
+    }
+
+    public long getBodyFileLength() {
+        return bodyFileLength;
+    }
+
+    /**
+     * Hands the live body stream to the caller who is then responsible for closing it.
+     *
+     * @return the unread body stream set with {@link #withBodyStream(InputStream)} or null if there is no live stream
+     */
+    public InputStream getBodyStream() {
+        InputStream in = bodyStream;
+        bodyStream = null;
+        return in;
+    }
+
+    void closeBodyStream() {
+        InputStream in = getBodyStream();
+        if (in != null)
+            Utils.close(in);
+    }
+
+    /**
+     * @return true if the body is a live stream that has not been read yet
+     */
+    public boolean isStreaming() {
+        return bodyStream != null;
+    }
+
+    void bufferBodyStream() {
+        if (bodyFile != null) {
+            try (FileChannel channel = FileChannel.open(bodyFile.toPath(), StandardOpenOption.READ)) {
+                StreamBuffer buffer = new StreamBuffer();
+                long         pos    = bodyFileStart;
+                long         end    = bodyFileStart + bodyFileLength;
+                while (pos < end) {
+                    long count = channel.transferTo(pos, end - pos, Channels.newChannel(buffer));
+                    if (count <= 0)
+                        break;
+                    pos += count;
+                }
+                withBody(buffer);
+            } catch (Exception ex) {
+                throw new ApiException(ex);
+            }
+        }
+
+        InputStream in = getBodyStream();
+        if (in != null) {
+            try {
+                StreamBuffer buffer = new StreamBuffer();
+                Utils.pipe(in, buffer);
+                withBody(buffer);
+            } catch (Exception ex) {
+                throw new ApiException(ex);
+            } finally {
+                Utils.close(in);
+            }
+        }
+    }
+
     public JSNode getJson() {
+        bufferBodyStream();
         if (stream != null) {
             if (!MimeTypes.TYPE_APPLICATION_JSON.equalsIgnoreCase(getContentType()))
                 return null;
@@ -139,6 +285,7 @@ public class Response implements JSFind {
     }
 
     public String getText() {
+        bufferBodyStream();
         if (stream != null) {
             try {
                 text = Utils.read(stream.getInputStream());
@@ -168,6 +315,7 @@ public class Response implements JSFind {
     }
 
     public StreamBuffer getBody(boolean explain) {
+        bufferBodyStream();
 
         StreamBuffer output = stream;
         try {
@@ -256,6 +404,42 @@ public class Response implements JSFind {
         return this;
     }
 
+    public boolean isProjected() {
+        return projected;
+    }
+
+    /**
+     * Flags that the data already contains exactly the properties requested by the
+     * "include" and "exclude" params so the Engine does not need to prune it.
+     * <p>
+     * Anything that adds properties to the data after it is flagged must clear the flag.
+     *
+     * @param projected true if the data does not need to be pruned
+     * @return this
+     */
+    public Response withProjected(boolean projected) {
+        this.projected = projected;
+        return this;
+    }
+
+    public boolean isRawBody() {
+        return rawBody;
+    }
+
+    /**
+     * Flags that the body is final, for example already encoded or a region of a file, so the
+     * Engine and response filters must not parse it as json or prune it.
+     * <p>
+     * Setting json or text as the body clears the flag.
+     *
+     * @param rawBody true if the body must be sent as is
+     * @return this
+     */
+    public Response withRawBody(boolean rawBody) {
+        this.rawBody = rawBody;
+        return this;
+    }
+
     public Response withUrl(String url) {
         if (!Utils.empty(url)) {
             url = url.trim();
@@ -286,6 +470,44 @@ public class Response implements JSFind {
         return url;
     }
 
+    /**
+     * Creates an independent copy of the status, headers, error and body of this Response that can be handed to
+     * another caller, for example one that was coalesced onto the same request.
+     * <p>
+     * JSON bodies are deep copied.  A buffered body is shared, after being closed for writing, because each
+     * {@code StreamBuffer.getInputStream()} returns a new stream.  A live body stream is buffered first.
+     * The Chain and Request are not copied.
+     *
+     * @return a copy of this Response
+     */
+    public Response copy() {
+        bufferBodyStream();
+
+        Response copy = new Response(url);
+        copy.statusCode = statusCode;
+        copy.statusMesg = statusMesg;
+        copy.fileName = fileName;
+        copy.headers.putAll(headers);
+        copy.error = error;
+        copy.projected = projected;
+        copy.rawBody = rawBody;
+        copy.startAt = startAt;
+        copy.endAt = endAt;
+        copy.json = json == null ? null : json.copy();
+        copy.text = text;
+
+        if (stream != null) {
+            try {
+                //-- closes the buffer for writing so it can be read concurrently from here on
+                stream.getInputStream().close();
+            } catch (IOException ex) {
+                throw new ApiException(ex);
+            }
+            copy.stream = stream;
+        }
+        return copy;
+    }
+
     public Response withRequest(Request request) {
         this.request = request;
         return this;
@@ -523,6 +745,15 @@ public class Response implements JSFind {
     }
 
     public Response withRecords(List records) {
+        if (records instanceof JSColumnList && !(getJson() instanceof JSList)) {
+            //-- a column backed list can be used directly so the rows
+            //-- are not materialized unless something needs to change them
+            Object data = getJson().get("data");
+            if (data == null || (data instanceof JSList && ((JSList) data).isEmpty())) {
+                getJson().put("data", records);
+                return this;
+            }
+        }
         for (Object record : records)
             withRecord(record);
         return this;
@@ -608,6 +839,8 @@ public class Response implements JSFind {
 
     public String getHeader(String key) {
         List<String> vals = headers.get(key);
+        if (vals != null && vals.size() == 1)
+            return vals.get(0);
         if (vals != null && vals.size() > 0)
             return Utils.implode(",", vals);
         return null;
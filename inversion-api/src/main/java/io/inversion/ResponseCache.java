@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion;
+
+import io.inversion.json.JSList;
+import io.inversion.json.JSMap;
+import io.inversion.json.JSParser;
+import io.inversion.utils.LruCache;
+import io.inversion.utils.StreamBuffer;
+import io.inversion.utils.Utils;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for the {@link ApiClient} HTTP cache.
+ * <p>
+ * ApiClient decides what may be stored and for how long based on the Cache-Control, Expires, ETag,
+ * Last-Modified and Vary headers of downstream responses, implementations simply hold {@link Entry}s.
+ * <p>
+ * {@link InMemory}, a size bounded LRU, is used by default.  Caches shared between instances, for example
+ * one backed by Redis, can store {@link Entry#toJson()} with the supplied ttl and rebuild the entry
+ * with {@link Entry#fromJson(String)}.
+ *
+ * @see ApiClient#withCaching(boolean)
+ * @see ApiClient#withResponseCache(ResponseCache)
+ */
+public interface ResponseCache {
+
+    /**
+     * @param key the cache key
+     * @return the entry stored for <code>key</code> or null
+     */
+    Entry get(String key);
+
+    /**
+     * @param key   the cache key
+     * @param entry the entry to store
+     * @param ttl   how long, in milliseconds, the entry is useful including the time it can be served stale or revalidated
+     */
+    void put(String key, Entry entry, long ttl);
+
+    void remove(String key);
+
+    /**
+     * A size bounded, least recently used, in memory ResponseCache.
+     */
+    class InMemory implements ResponseCache {
+
+        final LruCache<String, Object[]> cache;
+
+        public InMemory(int maxEntries) {
+            cache = new LruCache<>(maxEntries);
+        }
+
+        public Entry get(String key) {
+            Object[] slot = cache.get(key);
+            if (slot == null)
+                return null;
+
+            if (System.currentTimeMillis() >= (Long) slot[1]) {
+                cache.remove(key);
+                return null;
+            }
+            return (Entry) slot[0];
+        }
+
+        public void put(String key, Entry entry, long ttl) {
+            cache.put(key, new Object[]{entry, System.currentTimeMillis() + ttl});
+        }
+
+        public void remove(String key) {
+            cache.remove(key);
+        }
+
+        public int size() {
+            return cache.size();
+        }
+
+        public void clear() {
+            cache.clear();
+        }
+    }
+
+    /**
+     * An immutable snapshot of a cacheable Response and its freshness information.
+     */
+    class Entry {
+
+        static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+        final String                                 url;
+        final int                                    statusCode;
+        final String                                 statusMesg;
+        final ArrayListValuedHashMap<String, String> headers;
+        final byte[]                                 body;
+
+        /**
+         * The request header values the response varies on.
+         */
+        final Map<String, String> vary;
+
+        /**
+         * When the response was generated, adjusted by any Age header.
+         */
+        final long    storedAt;
+        final long    maxAge;
+        final long    staleWhileRevalidate;
+        final long    staleIfError;
+        final boolean mustRevalidate;
+
+        Entry(String url, int statusCode, String statusMesg, ArrayListValuedHashMap<String, String> headers, byte[] body, Map<String, String> vary, long storedAt) {
+            this.url = url;
+            this.statusCode = statusCode;
+            this.statusMesg = statusMesg;
+            this.headers = headers;
+            this.body = body;
+            this.vary = vary;
+            this.storedAt = storedAt;
+
+            Map<String, String> cacheControl = parseCacheControl(header(headers, "Cache-Control"));
+
+            long maxAge = -1;
+            if (cacheControl.containsKey("no-cache"))
+                maxAge = 0;
+            else if (cacheControl.containsKey("max-age"))
+                maxAge = seconds(cacheControl.get("max-age"));
+            else if (header(headers, "Expires") != null)
+                maxAge = Math.max(0, parseDate(header(headers, "Expires"), 0) - parseDate(header(headers, "Date"), storedAt));
+
+            this.maxAge = Math.max(0, maxAge);
+            this.staleWhileRevalidate = seconds(cacheControl.get("stale-while-revalidate"));
+            this.staleIfError = seconds(cacheControl.get("stale-if-error"));
+            this.mustRevalidate = cacheControl.containsKey("must-revalidate") || cacheControl.containsKey("proxy-revalidate");
+        }
+
+        /**
+         * Snapshots <code>response</code> if HTTP caching rules allow it to be stored.
+         *
+         * @param request     the request that was sent
+         * @param response    the response received for <code>request</code>
+         * @param maxBodySize responses with larger bodies are not stored
+         * @return the new entry or null if the response may not be stored
+         */
+        public static Entry of(Request request, Response response, long maxBodySize) {
+            if (response.getError() != null || response.isStreaming() || !Utils.in(response.getStatusCode(), 200, 203, 204, 300, 301, 404, 410))
+                return null;
+
+            ArrayListValuedHashMap<String, String> headers      = response.getHeaders();
+            Map<String, String>                    cacheControl = parseCacheControl(header(headers, "Cache-Control"));
+            if (cacheControl.containsKey("no-store"))
+                return null;
+
+            boolean explicit   = cacheControl.containsKey("max-age") || header(headers, "Expires") != null;
+            boolean validators = header(headers, "ETag") != null || header(headers, "Last-Modified") != null;
+            if (!explicit && !validators)
+                return null;
+
+            Map<String, String> vary       = new LinkedHashMap<>();
+            String              varyHeader = header(headers, "Vary");
+            if (varyHeader != null) {
+                for (String name : Utils.explode(",", varyHeader)) {
+                    if ("*".equals(name))
+                        return null;
+                    vary.put(name.toLowerCase(), request.getHeader(name));
+                }
+            }
+
+            byte[] body = readBody(response, maxBodySize);
+            if (body == null)
+                return null;
+
+            long now = System.currentTimeMillis();
+            long age = seconds(header(headers, "Age"));
+
+            ArrayListValuedHashMap<String, String> copy = new ArrayListValuedHashMap<>(headers);
+            return new Entry(response.getUrl(), response.getStatusCode(), response.getStatusMesg(), copy, body, vary, now - age);
+        }
+
+        static byte[] readBody(Response response, long maxBodySize) {
+            try {
+                if (response.stream != null) {
+                    if (response.stream.getLength() > maxBodySize)
+                        return null;
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(response.stream.getLength());
+                    Utils.pipe(response.stream.getInputStream(), out);
+                    return out.toByteArray();
+                }
+                String text = response.text != null ? response.text : response.json != null ? response.json.toString() : "";
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                return bytes.length > maxBodySize ? null : bytes;
+            } catch (IOException ex) {
+                throw new ApiException(ex);
+            }
+        }
+
+        /**
+         * Applies the headers of a 304 Not Modified response to this entry.
+         *
+         * @param notModified the 304 response to a conditional request
+         * @return a new entry whose freshness starts over
+         */
+        public Entry refresh(Response notModified) {
+            ArrayListValuedHashMap<String, String> headers = new ArrayListValuedHashMap<>(this.headers);
+            for (String name : notModified.getHeaders().keySet()) {
+                if (Utils.in(name.toLowerCase(), "content-length", "content-encoding", "transfer-encoding"))
+                    continue;
+                for (String existing : headers.keySet().toArray(new String[0])) {
+                    if (existing.equalsIgnoreCase(name))
+                        headers.remove(existing);
+                }
+                headers.putAll(name, notModified.getHeaders().get(name));
+            }
+            long age = seconds(header(notModified.getHeaders(), "Age"));
+            return new Entry(url, statusCode, statusMesg, headers, body, vary, System.currentTimeMillis() - age);
+        }
+
+        /**
+         * @param request the request to answer
+         * @return a new Response, with an Age header, that can be handed to a caller
+         */
+        public Response toResponse(Request request) {
+            Response response = new Response(url);
+            response.withStatusCode(statusCode);
+            response.withStatusMesg(statusMesg);
+            for (String name : headers.keySet()) {
+                if (!"age".equalsIgnoreCase(name))
+                    response.getHeaders().putAll(name, headers.get(name));
+            }
+            response.withHeader("Age", Long.toString(getAge() / 1000));
+            response.withRequest(request);
+
+            try {
+                StreamBuffer buffer = new StreamBuffer();
+                buffer.write(body);
+                response.withBody(buffer);
+            } catch (IOException ex) {
+                throw new ApiException(ex);
+            }
+            return response;
+        }
+
+        /**
+         * @return true if <code>request</code> has the same values as the original request for the headers named by the response's Vary header
+         */
+        public boolean matches(Request request) {
+            for (Map.Entry<String, String> entry : vary.entrySet()) {
+                String value = request.getHeader(entry.getKey());
+                if (value == null ? entry.getValue() != null : !value.equals(entry.getValue()))
+                    return false;
+            }
+            return true;
+        }
+
+        public long getAge() {
+            return Math.max(0, System.currentTimeMillis() - storedAt);
+        }
+
+        public boolean isFresh() {
+            return getAge() < maxAge;
+        }
+
+        /**
+         * @return true if the entry is stale but may still be served while it is revalidated in the background
+         */
+        public boolean isStaleWhileRevalidate() {
+            return !mustRevalidate && getAge() < maxAge + staleWhileRevalidate;
+        }
+
+        /**
+         * @param defaultStaleIfError the stale-if-error window, in milliseconds, to use if the response did not specify one
+         * @return true if the entry may be served in place of an error response
+         */
+        public boolean isStaleIfError(long defaultStaleIfError) {
+            return !mustRevalidate && getAge() < maxAge + Math.max(staleIfError, defaultStaleIfError);
+        }
+
+        /**
+         * @return true if the entry can be revalidated with a conditional request
+         */
+        public boolean hasValidators() {
+            return getETag() != null || getLastModified() != null;
+        }
+
+        public String getETag() {
+            return header(headers, "ETag");
+        }
+
+        public String getLastModified() {
+            return header(headers, "Last-Modified");
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return the response freshness lifetime in milliseconds
+         */
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        /**
+         * @param defaultStaleIfError the stale-if-error window, in milliseconds, to use if the response did not specify one
+         * @param keepForRevalidation how long, in milliseconds, to keep entries that have validators after they can no longer be served
+         * @return how long from now, in milliseconds, the entry remains useful
+         */
+        public long getTtl(long defaultStaleIfError, long keepForRevalidation) {
+            long ttl = maxAge + (mustRevalidate ? 0 : Math.max(staleWhileRevalidate, Math.max(staleIfError, defaultStaleIfError)));
+            if (hasValidators())
+                ttl += keepForRevalidation;
+            return Math.max(0, ttl - getAge());
+        }
+
+        public String toJson() {
+            JSMap headers = new JSMap();
+            for (String name : this.headers.keySet())
+                headers.put(name, new JSList(this.headers.get(name).toArray()));
+
+            JSMap vary = new JSMap();
+            vary.putAll(this.vary);
+
+            JSMap json = new JSMap("url", url, "statusCode", statusCode, "statusMesg", statusMesg, "storedAt", storedAt);
+            json.put("headers", headers);
+            json.put("vary", vary);
+            json.put("body", Base64.getEncoder().encodeToString(body));
+            return json.toString(false);
+        }
+
+        public static Entry fromJson(String json) {
+            JSMap map = (JSMap) JSParser.parseJson(json);
+
+            ArrayListValuedHashMap<String, String> headers = new ArrayListValuedHashMap<>();
+            JSMap                                  h       = map.getMap("headers");
+            for (String name : h.keySet()) {
+                for (Object value : h.getList(name))
+                    headers.put(name, (String) value);
+            }
+
+            Map<String, String> vary = new LinkedHashMap<>();
+            JSMap               v    = map.getMap("vary");
+            for (String name : v.keySet())
+                vary.put(name, v.getString(name));
+
+            return new Entry(map.getString("url"), map.getInt("statusCode"), map.getString("statusMesg"), headers, Base64.getDecoder().decode(map.getString("body")), vary, map.getLong("storedAt"));
+        }
+
+        //--------------------------------------------------------------------------------------
+        //-- Header Parsing
+
+        /**
+         * @return the comma joined values for <code>name</code> matched case insensitively
+         */
+        static String header(ArrayListValuedHashMap<String, String> headers, String name) {
+            for (String key : headers.keySet()) {
+                if (key.equalsIgnoreCase(name)) {
+                    List<String> values = headers.get(key);
+                    return values.size() > 0 ? Utils.implode(",", values) : null;
+                }
+            }
+            return null;
+        }
+
+        static Map<String, String> parseCacheControl(String cacheControl) {
+            Map<String, String> directives = new LinkedHashMap<>();
+            if (cacheControl != null) {
+                for (String directive : Utils.explode(",", cacheControl)) {
+                    int    eq    = directive.indexOf('=');
+                    String name  = (eq < 0 ? directive : directive.substring(0, eq)).trim().toLowerCase();
+                    String value = eq < 0 ? null : Utils.dequote(directive.substring(eq + 1).trim());
+                    directives.put(name, value);
+                }
+            }
+            return directives;
+        }
+
+        /**
+         * @return <code>value</code> seconds in milliseconds or 0 if it is not a number
+         */
+        static long seconds(String value) {
+            try {
+                return value == null ? 0 : Math.max(0, Long.parseLong(value.trim())) * 1000;
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+
+        static long parseDate(String date, long defaultValue) {
+            try {
+                return date == null ? defaultValue : ZonedDateTime.parse(date.trim(), HTTP_DATE).toInstant().toEpochMilli();
+            } catch (Exception ex) {
+                //-- invalid dates, like "0", mean already expired
+                return 0;
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package io.inversion;
 
 import io.inversion.rql.Query;
 import io.inversion.rql.Term;
+import io.inversion.utils.Columns;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -54,6 +55,14 @@ public final class Results<M extends Map<String, ?>> implements Iterable<M> {
      * Actions should map them to the corresponding json property names before returning to the caller.
      */
     protected List<M> rows = new ArrayList<>();
+    /**
+     * An optional column oriented form of the data the query produced.
+     * <p>
+     * When a Db supplies columns, <code>rows</code> are only created from the columns if they are requested
+     * before {@link Db#select(Collection, Map)} replaces them with a {@link io.inversion.json.JSColumnList}
+     * that serializes directly from these columns.
+     */
+    protected Columns columns = null;
     /**
      * The total number of rows (if known) in the Db that match the query, not the number of rows returned in this Results.
      * <p>
@@ -84,33 +93,56 @@ public final class Results<M extends Map<String, ?>> implements Iterable<M> {
 
     @Override
     public Iterator<M> iterator() {
-        return rows.iterator();
+        return getRows().iterator();
     }
 
     public int size() {
-        return rows.size();
+        if (rows == null && columns != null)
+            return columns.size();
+        return getRows().size();
     }
 
     public M getRow(int index) {
-        return rows.get(index);
+        return getRows().get(index);
     }
 
     public Results setRow(int index, M row) {
-        rows.set(index, row);
+        getRows().set(index, row);
         return this;
     }
 
     public List<M> getRows() {
+        if (rows == null)
+            rows = columns != null ? (List<M>) columns.toRows() : new ArrayList<>();
         return rows;
     }
 
     public Results withRows(List rows) {
         this.rows = rows;
+        this.columns = null;
         return this;
     }
 
     public Results withRow(M row) {
-        rows.add(row);
+        getRows().add(row);
+        return this;
+    }
+
+    public Columns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Sets the column oriented data for these Results.
+     * <p>
+     * Any existing rows are discarded and will be lazily recreated from <code>columns</code> if requested.
+     *
+     * @param columns the query data
+     * @return this
+     */
+    public Results withColumns(Columns columns) {
+        this.columns = columns;
+        this.rows = null;
         return this;
     }
 
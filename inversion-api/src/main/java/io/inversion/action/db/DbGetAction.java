@@ -26,17 +26,34 @@ import io.inversion.rql.Term;
 import io.inversion.utils.*;
 import io.inversion.utils.Utils;
 import org.apache.commons.collections4.KeyValue;
-import org.apache.commons.collections4.ListValuedMap;
 import org.apache.commons.collections4.keyvalue.DefaultKeyValue;
 import org.apache.commons.collections4.map.MultiKeyMap;
-import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DbGetAction<A extends DbGetAction> extends Action<A>  {
 
+    static final String EXPAND_PERMITS_KEY = DbGetAction.class.getName() + ".expandPermits";
+
+    static ExecutorService defaultExpandExecutor = null;
+
     protected int maxRows = 100;
 
+    /**
+     * The maximum number of threads, including the request thread, that a single request may use to
+     * expand relationships to different Collections at the same time.  The default of 1 expands
+     * every relationship on the request thread.
+     */
+    protected int expandConcurrency = 1;
+
+    /**
+     * Runs concurrent relationship expansions, defaults to a shared virtual thread per task
+     * executor when the JVM supports them.
+     */
+    protected ExecutorService expandExecutor = null;
+
     public DbGetAction() {
 //        Param expand = new Param();
 //        expand.withDescription("An optional comma separated lists of relationship names that should be expanded in the response. You can reference any number of nesting using 'dot' path notation.");
@@ -199,19 +216,26 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
 
             } else if (rel.isManyToMany()) {
                 //-- CONVERTS: http://localhost/northwind/source/employees/1/territories
+                //-- TO THIS : http://localhost/northwind/source/territories?_related(employees,'1')
+                //-- when the Db can join through the link table, otherwise
                 //-- TO THIS : http://localhost/northwind/source/territories/06897,19713
 
-                List<KeyValue<String, String>> rows = getRelatedKeys(rel, rel.getFkIndex1(), rel.getFkIndex2(), Collections.singletonList(resourceKey));
-                if (rows.size() > 0) {
-                    List<String> foreignKeys = new ArrayList<>();
-                    rows.forEach(k -> foreignKeys.add(k.getValue()));
+                Collection relatedCollection = rel.getRelated();
+                if (relatedCollection.getDb().isJoinable(rel)) {
+                    Term related = Term.term(null, "_related", rel.getInverse().getName(), "'" + resourceKey + "'");
+                    newHref = new StringBuilder(Chain.buildLink(relatedCollection) + "?" + Url.toQueryString(Utils.addToMap(new LinkedHashMap<>(), related.toString(), null)));
+                } else {
+                    List<KeyValue<String, String>> rows = getRelatedKeys(rel, rel.getFkIndex1(), rel.getFkIndex2(), Collections.singletonList(resourceKey));
+                    if (rows.size() > 0) {
+                        List<String> foreignKeys = new ArrayList<>();
+                        rows.forEach(k -> foreignKeys.add(k.getValue()));
 
-                    Collection relatedCollection = rel.getRelated();
-                    String     resourceKeys      = Utils.implode(",", foreignKeys.toArray());
+                        String resourceKeys = Utils.implode(",", foreignKeys.toArray());
 
-                    newHref = new StringBuilder(Chain.buildLink(relatedCollection, resourceKeys));
-                } else {
-                    return;
+                        newHref = new StringBuilder(Chain.buildLink(relatedCollection, resourceKeys));
+                    } else {
+                        return;
+                    }
                 }
             }
 //            else if(rel.isOneToOneParent() || rel.isOneToOneChild()){
@@ -375,7 +399,17 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
 
             results = db.select(null, req.getUrl().getParams());
         } else {
-            results = collection.getDb().select(collection, req.getUrl().getParams());
+            Map<String, String> params     = req.getUrl().getParams();
+            QueryProjection     projection = QueryProjection.of(req.getUrl());
+            if (projection != null)
+                params = projection.pushDown(collection, "", params);
+
+            results = collection.getDb().select(collection, params);
+
+            //-- the Engine can skip pruning the response if every query selects exactly what was
+            //-- requested, expand() clears this if an expanded query returns anything extra
+            if (projection != null && Chain.isRoot())
+                req.getChain().getResponse().withProjected(projection.isExact(collection, "") && projection.matches(collection, "", (List<JSMap>) results.getRows()));
         }
 
         if (results.size() > 0) {
@@ -394,6 +428,10 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
      * which could mean hundreds and hundreds of queries per document.  This should
      * result in number of queries proportional to the number of expands terms that does
      * not increase with the number of results at any level of the expansion.
+     * <p>
+     * Relationships to different Collections are independent of each other so, if <code>expandConcurrency</code>
+     * is greater than one, they are fetched concurrently.  The parent and child objects and the pkCache are
+     * only ever modified by the calling thread after all of the fetches for this level have completed.
      *
      * @param request     the request being serviced
      * @param collection  the collection being queried
@@ -417,6 +455,7 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
         if (expandsPath == null)
             expandsPath = "";
 
+        List<Expansion> expansions = new ArrayList<>();
         for (Relationship rel : collection.getRelationships()) {
             boolean shouldExpand = shouldExpand(expands, expandsPath, rel);
 
@@ -438,126 +477,251 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
                     }
                 }
 
-                //ONE_TO_MANY - Location.id <- Player.locationId
-                //MANY_TO_ONE - Player.locationId -> Location.id (one playe
-                //MANY_TO_MANY, ex going from Category(id)->CategoryBooks(categoryId, bookId)->Book(id)
-
-                final Collection relatedCollection = rel.getRelated();
-                //            Column toMatchCol = null;
-                //            Column toRetrieveCol = null;
-
-                Index          idxToMatch    = null;
-                Index          idxToRetrieve = null;
-                List<KeyValue> relatedEks    = null;
+                expansions.add(prepare(collection, rel, parentObjs, expandPath(expandsPath, rel.getName())));
+            }
+        }
 
-                if (rel.isManyToOne()) {
-                    idxToMatch = collection.getResourceIndex();
-                    idxToRetrieve = rel.getFkIndex1();
+        if (expansions.size() == 0)
+            return;
 
-                    //NOTE: expands() is only getting the paired up related keys.  For a MANY_TO_ONE
-                    //relationship that data is already in the parent object you are trying to expand
-                    //so we don't need to query the db to find those relationships as we do for the
-                    //MANY_TO relationships.
-                    //
-                    //However if you were to comment out the following block, the output of the algorithm
-                    //would be exactly the same you would just end up running an extra db query
-
-                    relatedEks = new ArrayList<>();
-                    for (JSMap parentObj : parentObjs) {
-                        String parentEk = getResourceKey(collection, parentObj);
-                        String childEk  = getForeignKey(rel, parentObj);
-                        if (childEk != null) {
-                            relatedEks.add(new DefaultKeyValue(parentEk, childEk));
-                        }
-                    }
-                } else if (rel.isOneToMany()) {
-                    idxToMatch = rel.getFkIndex1();
-                    idxToRetrieve = rel.getRelated().getResourceIndex();
-                } else if (rel.isManyToMany()) {
-                    idxToMatch = rel.getFkIndex1();
-                    idxToRetrieve = rel.getFkIndex2();
-                } else if(rel.isOneToOneParent()){
-                    relatedEks = new ArrayList<>();
-                    for (JSMap parentObj : parentObjs) {
-                        String parentEk = getResourceKey(collection, parentObj);
-                        String childEk  = parentEk; //TODO: this will not work if the columns are not in the same order
-                        if (childEk != null) {
-                            relatedEks.add(new DefaultKeyValue(parentEk, childEk));
-                        }
-                    }
+        //-- expansions of the same related Collection are fetched in order by the same
+        //-- task so that they can share the objects they retrieve with each other
+        Map<Collection, List<Expansion>> groups = new LinkedHashMap<>();
+        for (Expansion expansion : expansions)
+            groups.computeIfAbsent(expansion.rel.getRelated(), k -> new ArrayList<>()).add(expansion);
+
+        fetch(request, new ArrayList<>(groups.values()), pkCache);
+
+        for (Expansion expansion : expansions) {
+            Relationship rel               = expansion.rel;
+            Collection   relatedCollection = rel.getRelated();
+
+            //-- the fetches only read from the pkCache so the new objects are added here
+            List<JSMap> newChildObjs = new ArrayList<>();
+            for (JSMap node : expansion.newChildObjs) {
+                String relatedEk = getResourceKey(relatedCollection, node);
+                if (!pkCache.containsKey(relatedCollection, relatedEk)) {
+                    pkCache.put(relatedCollection, relatedEk, node);
+                    newChildObjs.add(node);
                 }
-                else if(rel.isOneToOneChild()){
-                    relatedEks = new ArrayList<>();
-                    for (JSMap parentObj : parentObjs) {
-                        String parentEk = getResourceKey(collection, parentObj);
-                        String childEk  = parentEk; //TODO: this will not work if the columns are not in the same order
-                        if (childEk != null) {
-                            relatedEks.add(new DefaultKeyValue(parentEk, childEk));
-                        }
-                    }
-                }
-
+            }
 
-                if (relatedEks == null) {
-                    List toMatchEks = new ArrayList<>();
-                    for (JSMap parentObj : parentObjs) {
-                        String parentEk = getResourceKey(collection, parentObj);
-                        if (!toMatchEks.contains(parentEk)) {
-                            if (parentObj.get(rel.getName()) instanceof JSList)
-                                throw ApiException.new500InternalServerError("This relationship seems to have already been expanded.");//-- this is an implementation logic error. If it ever happens...FIX IT.
+            for (KeyValue<String, String> row : expansion.relatedEks) {
+                String parentEk  = row.getKey();
+                String relatedEk = row.getValue();
 
-                            toMatchEks.add(parentEk);
+                JSNode parentObj = (JSNode) pkCache.get(collection, parentEk);
+                JSNode childObj  = (JSNode) pkCache.get(relatedCollection, relatedEk);
 
-                            if (rel.isManyToOne()) {
-                                parentObj.remove(rel.getName());
-                            } else {
-                                parentObj.put(rel.getName(), new JSList());
-                            }
-                        }
+                if (rel.isManyToOne() || rel.isOneToOneParent() || rel.isOneToOneChild()) {
+                    parentObj.put(rel.getName(), childObj);
+                } else {
+                    if (childObj != null) {
+                        parentObj.getList(rel.getName()).add(childObj);
                     }
-                    relatedEks = getRelatedKeys(rel, idxToMatch, idxToRetrieve, toMatchEks);
                 }
+            }
 
-                List                          unfetchedChildEks = new ArrayList<>();
-                ListValuedMap<String, String> fkCache           = new ArrayListValuedHashMap<>();
+            if (newChildObjs.size() > 0) {
+                expand(request, relatedCollection, newChildObjs, expands, expansion.path, pkCache);
+            }
+        }
+    }
 
-                for (KeyValue<String, String> row : relatedEks) {
-                    //the values in the many_to_many link table may have different names than the target columns so you have to
-                    //use the index not the name to build the child resource key.
+    /**
+     * Pairs up the parent and related keys that can be computed from the <code>parentObjs</code> themselves
+     * and prepares the <code>parentObjs</code> to receive the related objects.
+     * <p>
+     * This is always called on the request thread.
+     */
+    protected Expansion prepare(Collection collection, Relationship rel, List<JSMap> parentObjs, String path) {
+        //ONE_TO_MANY - Location.id <- Player.locationId
+        //MANY_TO_ONE - Player.locationId -> Location.id (one playe
+        //MANY_TO_MANY, ex going from Category(id)->CategoryBooks(categoryId, bookId)->Book(id)
+
+        Expansion expansion = new Expansion(rel, path);
+
+        if (rel.isManyToOne()) {
+            expansion.idxToMatch = collection.getResourceIndex();
+            expansion.idxToRetrieve = rel.getFkIndex1();
+
+            //NOTE: expands() is only getting the paired up related keys.  For a MANY_TO_ONE
+            //relationship that data is already in the parent object you are trying to expand
+            //so we don't need to query the db to find those relationships as we do for the
+            //MANY_TO relationships.
+            //
+            //However if you were to comment out the following block, the output of the algorithm
+            //would be exactly the same you would just end up running an extra db query
+
+            expansion.relatedEks = new ArrayList<>();
+            for (JSMap parentObj : parentObjs) {
+                String parentEk = getResourceKey(collection, parentObj);
+                String childEk  = getForeignKey(rel, parentObj);
+                if (childEk != null) {
+                    expansion.relatedEks.add(new DefaultKeyValue(parentEk, childEk));
+                }
+            }
+        } else if (rel.isOneToMany()) {
+            expansion.idxToMatch = rel.getFkIndex1();
+            expansion.idxToRetrieve = rel.getRelated().getResourceIndex();
+        } else if (rel.isManyToMany()) {
+            expansion.idxToMatch = rel.getFkIndex1();
+            expansion.idxToRetrieve = rel.getFkIndex2();
+        } else if (rel.isOneToOneParent()) {
+            expansion.relatedEks = new ArrayList<>();
+            for (JSMap parentObj : parentObjs) {
+                String parentEk = getResourceKey(collection, parentObj);
+                String childEk  = parentEk; //TODO: this will not work if the columns are not in the same order
+                if (childEk != null) {
+                    expansion.relatedEks.add(new DefaultKeyValue(parentEk, childEk));
+                }
+            }
+        } else if (rel.isOneToOneChild()) {
+            expansion.relatedEks = new ArrayList<>();
+            for (JSMap parentObj : parentObjs) {
+                String parentEk = getResourceKey(collection, parentObj);
+                String childEk  = parentEk; //TODO: this will not work if the columns are not in the same order
+                if (childEk != null) {
+                    expansion.relatedEks.add(new DefaultKeyValue(parentEk, childEk));
+                }
+            }
+        }
 
-                    String parentEk  = row.getKey();
-                    String relatedEk = row.getValue();
+        if (expansion.relatedEks == null) {
+            expansion.toMatchEks = new ArrayList<>();
+            for (JSMap parentObj : parentObjs) {
+                String parentEk = getResourceKey(collection, parentObj);
+                if (!expansion.toMatchEks.contains(parentEk)) {
+                    if (parentObj.get(rel.getName()) instanceof JSList)
+                        throw ApiException.new500InternalServerError("This relationship seems to have already been expanded.");//-- this is an implementation logic error. If it ever happens...FIX IT.
 
-                    fkCache.put(relatedEk, parentEk);
+                    expansion.toMatchEks.add(parentEk);
 
-                    if (!pkCache.containsKey(relatedCollection, relatedEk)) {
-                        unfetchedChildEks.add(relatedEk);
+                    if (rel.isManyToOne()) {
+                        parentObj.remove(rel.getName());
+                    } else {
+                        parentObj.put(rel.getName(), new JSList());
                     }
                 }
+            }
+        }
+        return expansion;
+    }
 
-                //this recursive call populates the pkCache
-                List<JSMap> newChildObjs = recursiveGet(pkCache, relatedCollection, unfetchedChildEks, expandPath(expandsPath, rel.getName()));
-
-                for (KeyValue<String, String> row : relatedEks) {
-                    String parentEk  = row.getKey();
-                    String relatedEk = row.getValue();
-
-                    JSNode parentObj = (JSNode) pkCache.get(collection, parentEk);
-                    JSNode childObj  = (JSNode) pkCache.get(relatedCollection, relatedEk);
+    /**
+     * Runs the queries for each group of expansions, concurrently if allowed, and waits for them all to complete.
+     * <p>
+     * Each group is fetched in order by a single task.  Up to <code>expandConcurrency - 1</code> groups per request
+     * are handed off to the {@link #getExpandExecutor() expandExecutor}, any others run on the calling thread.
+     * Expansions are only run concurrently for GET requests so that they never need to see uncommitted writes
+     * made on the calling thread's connections.
+     */
+    protected void fetch(Request request, List<List<Expansion>> groups, MultiKeyMap pkCache) {
+        Semaphore permits = null;
+        if (groups.size() > 1 && expandConcurrency > 1 && request.isGet() && !request.isDebug()) {
+            Chain root = Chain.first();
+            if (root != null) synchronized (root) {
+                permits = (Semaphore) root.get(EXPAND_PERMITS_KEY);
+                if (permits == null) {
+                    permits = new Semaphore(expandConcurrency - 1);
+                    root.put(EXPAND_PERMITS_KEY, permits);
+                }
+            }
+        }
 
-                    if (rel.isManyToOne() || rel.isOneToOneParent() || rel.isOneToOneChild()) {
-                        parentObj.put(rel.getName(), childObj);
-                    } else {
-                        if (childObj != null) {
-                            parentObj.getList(rel.getName()).add(childObj);
+        List<Future> futures = new ArrayList<>();
+        try {
+            for (List<Expansion> group : groups) {
+                if (permits != null && group != groups.get(groups.size() - 1) && permits.tryAcquire()) {
+                    final Semaphore acquired = permits;
+                    futures.add(getExpandExecutor().submit(Chain.propagate(() -> {
+                        try {
+                            fetch(group, pkCache);
+                        } finally {
+                            acquired.release();
                         }
-                    }
+                        return null;
+                    })));
+                } else {
+                    fetch(group, pkCache);
                 }
+            }
+        } finally {
+            //-- always wait so no task is left running against this request after it completes
+            Throwable error = null;
+            for (Future future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (error == null)
+                        error = ex.getCause();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    if (error == null)
+                        error = ex;
+                }
+            }
+            if (error != null)
+                Utils.rethrow(error);
+        }
+    }
 
-                if (newChildObjs.size() > 0) {
-                    expand(request, relatedCollection, newChildObjs, expands, expandPath(expandsPath, rel.getName()), pkCache);
+    /**
+     * Retrieves the related keys and related objects for each expansion in a group.
+     * <p>
+     * This may be called on a thread other than the request thread so it must not modify the
+     * <code>pkCache</code> or any object in it.  Objects are retrieved into a MultiKeyMap private
+     * to the group and merged into the <code>pkCache</code> by {@link #expand(Request, Collection, List, Set, String, MultiKeyMap)}.
+     */
+    protected void fetch(List<Expansion> group, MultiKeyMap pkCache) {
+        MultiKeyMap fetched = new MultiKeyMap();
+        for (Expansion expansion : group) {
+            Relationship rel               = expansion.rel;
+            Collection   relatedCollection = rel.getRelated();
+
+            if (expansion.relatedEks == null) {
+                if (rel.isManyToMany() && relatedCollection.getDb().isJoinable(rel)) {
+                    //-- selects the related rows and their link table keys in one query
+                    expansion.relatedEks = new ArrayList<>();
+                    expansion.newChildObjs = joinedGet(fetched, rel, expansion.toMatchEks, expansion.path, expansion.relatedEks);
+                    continue;
+                } else {
+                    expansion.relatedEks = getRelatedKeys(rel, expansion.idxToMatch, expansion.idxToRetrieve, expansion.toMatchEks);
                 }
             }
+
+            List unfetchedChildEks = new ArrayList<>();
+            for (KeyValue<String, String> row : expansion.relatedEks) {
+                //the values in the many_to_many link table may have different names than the target columns so you have to
+                //use the index not the name to build the child resource key.
+                String relatedEk = row.getValue();
+
+                if (!pkCache.containsKey(relatedCollection, relatedEk) && !fetched.containsKey(relatedCollection, relatedEk) && !unfetchedChildEks.contains(relatedEk)) {
+                    unfetchedChildEks.add(relatedEk);
+                }
+            }
+
+            expansion.newChildObjs = recursiveGet(fetched, relatedCollection, unfetchedChildEks, expansion.path);
+            if (expansion.newChildObjs == null)
+                expansion.newChildObjs = Collections.EMPTY_LIST;
+        }
+    }
+
+    /**
+     * The state of a single relationship being expanded for a list of parent objects.
+     */
+    protected static class Expansion {
+        final Relationship                   rel;
+        final String                         path;
+        Index                                idxToMatch    = null;
+        Index                                idxToRetrieve = null;
+        List<String>                         toMatchEks    = null;
+        List<KeyValue<String, String>>       relatedEks    = null;
+        List<JSMap>                          newChildObjs  = null;
+
+        Expansion(Relationship rel, String path) {
+            this.rel = rel;
+            this.path = path;
         }
     }
 
@@ -618,12 +782,80 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
         return related;
     }
 
+    /**
+     * Selects the related resources of a MANY_TO_MANY relationship for all of the <code>parentEks</code>
+     * with a single <code>_related()</code> query that joins through the link table instead of querying
+     * the link table with {@link #getRelatedKeys(Relationship, Index, Index, List)} and then the related
+     * collection with {@link #recursiveGet(MultiKeyMap, Collection, java.util.Collection, String)}.
+     *
+     * @param pkCache     the resources retrieved so far, newly retrieved related resources are added
+     * @param rel         the relationship being expanded
+     * @param parentEks   the resource keys of the parents being expanded
+     * @param expandsPath the path of the relationship being expanded
+     * @param relatedEks  receives a (parentEk, relatedEk) pair for each link table row
+     * @return the related resources that were not already in the pkCache
+     * @see Db#isJoinable(Relationship)
+     */
+    protected List<JSMap> joinedGet(MultiKeyMap pkCache, Relationship rel, List<String> parentEks, String expandsPath, List<KeyValue<String, String>> relatedEks) throws ApiException {
+        if (parentEks.size() == 0)
+            return Collections.EMPTY_LIST;
+
+        Collection collection = rel.getRelated();
+        Term       related    = Term.term(null, "_related", rel.getInverse().getName());
+        parentEks.forEach(parentEk -> related.withTerm(Term.term(related, "'" + parentEk + "'")));
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put(related.toString(), null);
+
+        QueryProjection projection = QueryProjection.of(Chain.peek().getRequest().getUrl());
+        if (projection != null)
+            params = projection.pushDown(collection, expandsPath, params);
+
+        Response res = Chain.peek().getEngine().get(Chain.buildLink(collection) + "?" + Url.toQueryString(params));
+        int      sc  = res.getStatusCode();
+        if (sc == 401 || sc == 403 || sc == 404)//unauthorized || forbidden
+            return Collections.EMPTY_LIST;
+        else if (sc != 200)
+            res.rethrow();
+
+        Index       linkIdx      = rel.getFkIndex1();
+        List<JSMap> newChildObjs = new ArrayList<>();
+        for (JSMap node : res.data().asMapList()) {
+            String parentEk = parentEks.get(0);
+            if (parentEks.size() > 1) {
+                List linkVals = new ArrayList<>();
+                for (int i = 0; i < linkIdx.size(); i++)
+                    linkVals.add(node.remove("~~related_" + i));
+                parentEk = Collection.encodeKey(linkVals);
+            }
+
+            String relatedEk = getResourceKey(collection, node);
+            relatedEks.add(new DefaultKeyValue<>(parentEk, relatedEk));
+
+            //-- a resource related to more than one parent is returned once for each parent
+            if (!pkCache.containsKey(collection, relatedEk)) {
+                pkCache.put(collection, relatedEk, node);
+                newChildObjs.add(node);
+            }
+        }
+
+        if (projection != null && !projection.matches(collection, expandsPath, newChildObjs))
+            Chain.peek().getResponse().withProjected(false);
+
+        return newChildObjs;
+    }
+
     protected List<JSMap> recursiveGet(MultiKeyMap pkCache, Collection collection, java.util.Collection resourceKeys, String expandsPath) throws ApiException {
         if (resourceKeys.size() == 0)
             return Collections.EMPTY_LIST;
 
         String url = Chain.buildLink(collection, Utils.implode(",", resourceKeys));
 
+        //-- only select what this level of the expansion needs
+        QueryProjection projection = QueryProjection.of(Chain.peek().getRequest().getUrl());
+        if (projection != null)
+            url += "?" + Url.toQueryString(projection.pushDown(collection, expandsPath, Collections.emptyMap()));
+
         //      //--
         //      //-- Nested param support
         //      //TODO: don't remember the use case here.  need to find and make a test case
@@ -661,6 +893,9 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
         } else if (sc == 200) {
             List<JSMap> nodes = res.data().asMapList();
 
+            if (projection != null && !projection.matches(collection, expandsPath, nodes))
+                Chain.peek().getResponse().withProjected(false);
+
             for (JSMap node : nodes) {
                 Object resourceKey = getResourceKey(collection, node);
                 if (pkCache.containsKey(collection, resourceKey)) {
@@ -714,4 +949,45 @@ public class DbGetAction<A extends DbGetAction> extends Action<A>  {
         return this;
     }
 
+    public int getExpandConcurrency() {
+        return expandConcurrency;
+    }
+
+    public DbGetAction withExpandConcurrency(int expandConcurrency) {
+        this.expandConcurrency = expandConcurrency;
+        return this;
+    }
+
+    public ExecutorService getExpandExecutor() {
+        if (expandExecutor == null)
+            return getDefaultExpandExecutor();
+        return expandExecutor;
+    }
+
+    public DbGetAction withExpandExecutor(ExecutorService expandExecutor) {
+        this.expandExecutor = expandExecutor;
+        return this;
+    }
+
+    /**
+     * Virtual threads are used when the JVM supports them (Java 21+).  Otherwise a pool of daemon threads
+     * is used that runs tasks on the submitting thread when all of its threads are busy.
+     *
+     * @return the executor shared by DbGetActions that have not been given their own
+     */
+    static synchronized ExecutorService getDefaultExpandExecutor() {
+        if (defaultExpandExecutor == null) {
+            defaultExpandExecutor = VirtualThreads.newExecutor("inversion-expand-");
+            if (defaultExpandExecutor == null) {
+                AtomicInteger threadNum = new AtomicInteger(0);
+                defaultExpandExecutor = new ThreadPoolExecutor(0, Math.max(4, Runtime.getRuntime().availableProcessors() * 4), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "inversion-expand-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return defaultExpandExecutor;
+    }
+
 }
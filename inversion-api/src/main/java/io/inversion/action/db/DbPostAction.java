@@ -94,14 +94,19 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
             }
         }
 
-        List<String> resourceKeys = req.getCollection().getDb().patch(req.getCollection(), req.getJson().asMapList());
+        Collection   collection = req.getCollection();
+        List<JSMap>  persisted  = isGetResponse() ? collection.getDb().patchReturning(collection, req.getJson().asMapList()) : null;
+        List<String> resourceKeys = persisted != null ? encodeKeys(collection, persisted) : collection.getDb().patch(collection, req.getJson().asMapList());
 
         if (resourceKeys.size() == req.getJson().asMapList().size()) {
             res.withStatus(Status.SC_201_CREATED);
-            String location = Chain.buildLink(req.getCollection(), Utils.implode(",", resourceKeys));
+            String location = Chain.buildLink(collection, Utils.implode(",", resourceKeys));
             res.withHeader("Location", location);
 
-            if(isGetResponse()){
+            if(persisted != null){
+                res.getJson().put("data", new JSList(persisted));
+            }
+            else if(isGetResponse()){
                 Response getResponse = req.getChain().getEngine().service("GET", location);
                 res.getJson().put("data", getResponse.data());
             }
@@ -125,6 +130,7 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         Collection   collection = req.getCollection();
         List<Change> changes    = new ArrayList<>();
         List         resourceKeys;
+        JSList       nodes;
         JSNode       body        = req.getJson();
 
         swapRefsWithActualReferences(body);
@@ -132,7 +138,7 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         JSList bodyArr = body.asList();
         Map visited = new HashMap();
         for(int i=0; i<bodyArr.size(); i++){
-            swapLogicalDuplicateReferences(collection, (JSNode)bodyArr.get(i), bodyArr, i + "0", visited);
+            swapLogicalDuplicateReferences(collection, (JSNode)bodyArr.get(i), bodyArr, i + "", visited);
         }
 
 
@@ -158,16 +164,24 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
             if (!Utils.empty(req.getResourceKey())) {
                 throw ApiException.new400BadRequest("You can't batch '{}' an array of objects to a specific resource url.  You must '{}' them to a collection.", req.getMethod(), req.getMethod());
             }
-            resourceKeys = upsert(req, collection, (JSList) body);
+            nodes = (JSList) body;
         } else {
             String href = body.getString("href");
             if (req.isPut() && href != null && req.getResourceKey() != null && !req.getUrl().toString().startsWith(href)) {
                 throw ApiException.new400BadRequest("You are PUT-ing an resource with a different href property than the resource URL you are PUT-ing to.");
             }
 
-            resourceKeys = upsert(req, collection, new JSList(body));
+            nodes = new JSList(body);
         }
 
+        //-- flat documents can be written and returned in one step, nested
+        //-- documents go through the recursive upsert and are read back with a GET
+        List<JSMap> persisted = null;
+        if (isGetResponse() && isFlat(collection, nodes))
+            persisted = collection.getDb().upsertReturning(collection, nodes.asMapList());
+
+        resourceKeys = persisted != null ? encodeKeys(collection, persisted) : upsert(req, collection, nodes);
+
         res.withChanges(changes);
 
         //-- take all of the hrefs and combine into a
@@ -192,7 +206,10 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
             String location = Chain.buildLink(collection, buff.substring(1, buff.length()));
             res.withHeader("Location", location);
 
-            if(isGetResponse()){
+            if(persisted != null){
+                res.getJson().put("data", new JSList(persisted));
+            }
+            else if(isGetResponse()){
                 Response getResponse = req.getChain().getEngine().service("GET", location);
                 if(getResponse.isSuccess()){
                     res.getJson().put("data", getResponse.data());
@@ -212,6 +229,40 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         }
     }
 
+    /**
+     * @param collection the collection being modified
+     * @param nodes      the records to write
+     * @return true if none of the <code>nodes</code> contain nested documents for any relationship
+     */
+    protected boolean isFlat(Collection collection, JSList nodes) {
+        for (Object node : nodes) {
+            if (!(node instanceof JSMap))
+                return false;
+
+            for (Relationship rel : collection.getRelationships()) {
+                if (((JSMap) node).get(rel.getName()) instanceof JSNode)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param collection the collection that was modified
+     * @param persisted  the rows returned from the write
+     * @return the encoded resource key of each row
+     */
+    protected List<String> encodeKeys(Collection collection, List<JSMap> persisted) {
+        List<String> resourceKeys = new ArrayList<>();
+        for (JSMap row : persisted) {
+            String resourceKey = collection.encodeKeyFromJsonNames(row);
+            if (resourceKey == null)
+                throw ApiException.new500InternalServerError("Unable to determine the resource key of a written row: {}", row);
+            resourceKeys.add(resourceKey);
+        }
+        return resourceKeys;
+    }
+
     /**
      * README README README README
      * <p>
@@ -223,10 +274,12 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
      * keys back to this collection's table, not the direct modification of the single table
      * underlying this collection.
      * <p>
-     * Step 2: For each relationship POST back through the "front door".  This is the primary
+     * Step 2: For each related collection POST back through the "front door".  This is the primary
      * recursion that enables nested documents to submitted all at once by client.  Putting
      * this step first ensures that all new objects are POSTed, with their newly created hrefs
      * placed back in the JSON prior to any PUTs that depend on relationship keys to exist.
+     * The children of every node, across every relationship to the same collection, are sent
+     * in one POST so that the child collection's actions and security rules apply to them.
      * <p>
      * Step 3: PKs generated for child documents which are actually relationship parents, are set
      * as foreign keys back on the parent json (which is actually the one-to-many child)
@@ -250,7 +303,7 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         //-- Step 1. Upsert this generation including many-to-one relationships where the fk is known
         //--
 
-        System.out.println("UPSERT: " + collection.getName() + ":\r\n" + nodes);
+        log.debug("UPSERT: {}:\r\n{}", collection.getName(), nodes);
         List<String> returnList = collection.getDb().upsert(collection, nodes);
 
         for (int i = 0; i < nodes.size(); i++) {
@@ -278,9 +331,13 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         //-- SENDS THE "CHILD GENERATION" AS A POST BACK TO THE ENGINE WHICH WOULD LAND AT
         //-- THE ACTION (MAYBE THIS ONE) THAT HANDLES THE UPSERT FOR THAT CHILD COLLECTION
         //-- AND ITS DESCENDANTS.
+        //--
+        //-- The children of every node in this generation are collected first so that
+        //-- each related collection is written with one batched POST per generation
+        //-- instead of one POST per parent node or per relationship.
+        LinkedHashMap<Collection, LinkedHashMap<String, List<JSMap>>> children = new LinkedHashMap<>();
         for (Relationship rel : collection.getRelationships()) {
-            Relationship                  inverse    = rel.getInverse();
-            LinkedHashMap<String, JSMap> childMap = new LinkedHashMap<>();
+            LinkedHashMap<String, List<JSMap>> childMap = children.computeIfAbsent(rel.getRelated(), c -> new LinkedHashMap<>());
             for (JSNode node : nodes.asMapList()) {
                 Object value = node.get(rel.getName());
 
@@ -288,45 +345,46 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
                     for (JSMap child : ((JSNode) value).asMapList()) {
                         String resourceKey = rel.getRelated().encodeKeyFromJsonNames(child);
                         String hashKey     = resourceKey != null ? resourceKey : "_child:" + childMap.size();
-                        if(!childMap.containsKey(hashKey))
-                            childMap.put(hashKey, child);
+                        List<JSMap> dupes = childMap.computeIfAbsent(hashKey, k -> new ArrayList<>());
+                        if (dupes.stream().noneMatch(dupe -> dupe == child))
+                            dupes.add(child);
                     }
                 }
+            }
+        }
 
-                if (childMap.size() > 0) {
-                    String   path = Chain.buildLink(rel.getRelated());
+        for (Map.Entry<Collection, LinkedHashMap<String, List<JSMap>>> entry : children.entrySet()) {
+            Collection                         related  = entry.getKey();
+            LinkedHashMap<String, List<JSMap>> childMap = entry.getValue();
+            if (childMap.size() == 0)
+                continue;
 
-                    JSList childArr = new JSList();
-                    for (String key : childMap.keySet()) {
-                        childArr.add(childMap.get(key));
-                    }
+            String path     = Chain.buildLink(related);
+            JSList childArr = new JSList();
+            for (List<JSMap> dupes : childMap.values()) {
+                childArr.add(dupes.get(0));
+            }
 
-                    Response res  = req.getEngine().post(path, childArr);
-                    if (!res.isSuccess())
-                        res.rethrow();
+            Response res = req.getEngine().post(path, childArr);
+            if (!res.isSuccess())
+                res.rethrow();
 
-                    if(res.data().size() != childMap.size()){
-                        throw new ApiException("Can not determine if all children submitted were updated.  Request size = {}.  Response size = {}", childMap.size(), res.data().size());
-                    }
+            if (res.data().size() != childMap.size()) {
+                throw new ApiException("Can not determine if all children submitted were updated.  Request size = {}.  Response size = {}", childMap.size(), res.data().size());
+            }
 
-                    //-- now get response and set properties BACK on the source from this generation
-                    int                 i            = -1;
-                    Map<String, JSNode> updatedKeys  = new HashMap();
-                    Map<JSNode, String> updatedNodes = new HashMap();
-                    for (String childKey : childMap.keySet()) {
-                        i++;
-                        JSMap newChild = (JSMap) res.data().getMap(i);
-                        String newKey = rel.getRelated().encodeKeyFromJsonNames(newChild);
-                        if(newKey == null)
-                            throw new ApiException("New child key was null {}", newChild);
-
-                        JSMap oldChild = childMap.get(childKey);
-                        oldChild.clear();
-                        oldChild.putAll(newChild);
-
-                        updatedNodes.put(oldChild, newKey);
-                        updatedKeys.put(newKey, oldChild);
-                    }
+            //-- now get response and set properties BACK on the source from this generation
+            int i = -1;
+            for (List<JSMap> dupes : childMap.values()) {
+                i++;
+                JSMap  newChild = (JSMap) res.data().getMap(i);
+                String newKey   = related.encodeKeyFromJsonNames(newChild);
+                if (newKey == null)
+                    throw new ApiException("New child key was null {}", newChild);
+
+                for (JSMap oldChild : dupes) {
+                    oldChild.clear();
+                    oldChild.putAll(newChild);
                 }
             }
         }
@@ -435,36 +493,48 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
         //--     )
         //--
 
+        //-- the kept keys for every parent node are grouped by relationship so that each
+        //-- relationship is upserted and searched for now invalid rows once per generation
+        LinkedHashMap<Relationship, List<Term>> unlinkTerms = new LinkedHashMap<>();
+        LinkedHashMap<Relationship, List<Map>>  linkUpserts = new LinkedHashMap<>();
+        LinkedHashMap<Relationship, Set>        includes    = new LinkedHashMap<>();
+
         for (Map.Entry<MultiKey<? extends Object>, ArrayList> entry : keepRels.entrySet()) {
 
             Relationship rel       = (Relationship) entry.getKey().getKey(0);
             Map          parentKey = (Map) entry.getKey().getKey(1);
-            List<Map>    childKeys = (List) keepRels.get(rel, parentKey);
-
-            System.out.println("rel: " + rel.getName());
-            System.out.println("parentKey: " + parentKey);
-            System.out.println("child keys: " + childKeys);
+            List<Map>    childKeys = entry.getValue();
 
             //-- this set will contain the columns we need to update/delete outdated relationships
-            Set includesKeys = new HashSet();
+            Set includesKeys = includes.computeIfAbsent(rel, r -> new HashSet());
             includesKeys.addAll(parentKey.keySet());
             includesKeys.addAll(rel.getRelated().getResourceIndex().getJsonNames());
 
-            Term childNot = Term.term(null, "not");
-            Term childOr  = Term.term(childNot, "or");
+            List<Term> parentTerms = new ArrayList<>();
+            for (Object parentKeyProp : parentKey.keySet()) {
+                parentTerms.add(Term.term(null, "eq", parentKeyProp, parentKey.get(parentKeyProp)));
+            }
 
-            List<Map> upserts = new ArrayList();
-            for (Map childKey : childKeys) {
-                includesKeys.addAll(childKey.keySet());
-                childOr.withTerm(asTerm(childKey));
-                upserts.add(childKey);
+            if (childKeys.size() > 0) {
+                Term childNot = Term.term(null, "not");
+                Term childOr  = Term.term(childNot, "or");
+                for (Map childKey : childKeys) {
+                    includesKeys.addAll(childKey.keySet());
+                    childOr.withTerm(asTerm(childKey));
+                }
+                parentTerms.add(childNot);
             }
 
-            Collection coll = rel.isOneToMany() ? rel.getRelated() : rel.getFk1Col1().getCollection();
+            linkUpserts.computeIfAbsent(rel, r -> new ArrayList<>()).addAll(childKeys);
+            unlinkTerms.computeIfAbsent(rel, r -> new ArrayList<>()).add(asTerm("and", parentTerms));
+        }
+
+        for (Relationship rel : unlinkTerms.keySet()) {
+            Collection coll    = rel.isOneToMany() ? rel.getRelated() : rel.getFk1Col1().getCollection();
+            List<Map>  upserts = linkUpserts.get(rel);
 
-            if (rel.isManyToMany()) {
+            if (rel.isManyToMany() && upserts.size() > 0) {
                 //TODO: go through front door?
-                System.out.println("updating relationship: " + rel + " -> " + coll + " -> " + upserts);
                 coll.getDb().upsert(coll, upserts);
             }
 
@@ -473,27 +543,18 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
 
             Map<String, String> queryTerms = new HashMap<>();
             queryTerms.put("limit", "100");
-            queryTerms.put("include", Utils.implode(",", includesKeys));
-
-            for (Object parentKeyProp : parentKey.keySet()) {
-                queryTerms.put(parentKeyProp.toString(), parentKey.get(parentKeyProp).toString());
-            }
-
-            if (childOr.size() > 0) {
-                queryTerms.put(childNot.toString(), null);
-            }
+            queryTerms.put("include", Utils.implode(",", includes.get(rel)));
+            queryTerms.put(asTerm("or", unlinkTerms.get(rel)).toString(), null);
 
             String next = Chain.buildLink(coll);
             while (true) {
-                log.warn("...looking for one-to-many and many-to-many foreign keys: " + rel + " -> " + queryTerms);
+                log.debug("...looking for one-to-many and many-to-many foreign keys: " + rel + " -> " + queryTerms);
 
                 Response toUnlink = req.getEngine().get(next, queryTerms).assertOk();
 
                 if (toUnlink.data().size() == 0)
                     break;
 
-                toUnlink.dump();
-
                 if (rel.isOneToMany()) {
                     for (JSNode node : toUnlink.data().asMapList()) {
                         for (String prop : rel.getFkIndex1().getJsonNames()) {
@@ -621,6 +682,18 @@ class DbPostAction<A extends DbPostAction> extends Action<A>  {
 
 
 
+    /**
+     * @return the only term in <code>terms</code> or all of them wrapped in a <code>token</code> term
+     */
+    Term asTerm(String token, List<Term> terms) {
+        if (terms.size() == 1)
+            return terms.get(0);
+
+        Term t = Term.term(null, token);
+        terms.forEach(t::withTerm);
+        return t;
+    }
+
     Term asTerm(Map row) {
         Term t = null;
         for (Object key : row.keySet()) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.action.db;
+
+import io.inversion.Collection;
+import io.inversion.Engine;
+import io.inversion.Index;
+import io.inversion.Property;
+import io.inversion.Relationship;
+import io.inversion.Url;
+import io.inversion.json.JSMap;
+import io.inversion.utils.Utils;
+
+import java.util.*;
+
+/**
+ * Resolves the "include", "exclude" and "expand" params of a request into the properties that each Db query,
+ * the root query and one for each level of expansion, needs to select.
+ * <p>
+ * A property is selected at a path if {@link Engine#exclude(String, Set, Set)} would keep it in the final
+ * response or if it is needed to assemble the response: the resource index properties of expanded, expanding
+ * or linked to resources and the foreign key properties of MANY_TO_ONE relationships that are expanded or linked to.
+ * Requested properties are selected in the order they were requested, so a plain include list is passed on as is.
+ * <p>
+ * Projections are only pushed down when there is an include list that does not contain wildcards or functions.
+ * Without an include list a Db query has to select everything so that unmapped columns are still returned.
+ * Queries with distinct, group or aggregate terms are not pushed down either because selecting extra key
+ * properties would change the rows they return.
+ * <p>
+ * When every property selected at every path would also be kept, the response is exactly what the
+ * includes and excludes describe and {@link Engine} does not need to prune it again.
+ *
+ * @see DbGetAction#select(io.inversion.Request, Collection, io.inversion.Api)
+ */
+public class QueryProjection {
+
+    /**
+     * Params that make a query return one row per distinct selected value or group instead of one per resource.
+     */
+    static final Set<String> ROW_SHAPING_FUNCTIONS = Collections.unmodifiableSet(Utils.add(new LinkedHashSet(), "distinct", "group", "as", "count", "sum", "min", "max"));
+
+    protected final Set<String> includes;
+    protected final Set<String> excludes;
+    protected final Set<String> expands;
+
+    protected QueryProjection(Set<String> includes, Set<String> excludes, Set<String> expands) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.expands = expands;
+    }
+
+    /**
+     * @param url the request url
+     * @return the projection for the request or null if it can not be pushed down
+     */
+    public static QueryProjection of(Url url) {
+        Set<String> includes = Engine.getXcludesSet(url.getParam("include"));
+        if (includes == null || includes.size() == 0)
+            return null;
+
+        for (String include : includes) {
+            if (include.length() == 0 || include.indexOf('*') > -1 || include.indexOf('?') > -1 || include.indexOf('(') > -1)
+                return null;
+        }
+
+        for (String param : url.getParams().keySet()) {
+            int paren = param.indexOf('(');
+            if (ROW_SHAPING_FUNCTIONS.contains((paren > -1 ? param.substring(0, paren) : param).trim().toLowerCase()))
+                return null;
+        }
+
+        Set<String> excludes = Engine.getXcludesSet(url.getParam("exclude"));
+        if (excludes == null)
+            excludes = Collections.emptySet();
+
+        String      expandsStr = url.getParam("expand");
+        Set<String> expands    = expandsStr == null ? Collections.emptySet() : new LinkedHashSet<>(Utils.explode(",", expandsStr));
+
+        return new QueryProjection(includes, excludes, expands);
+    }
+
+    /**
+     * Returns a copy of <code>params</code> with the include param replaced by the properties that the
+     * Db query for <code>collection</code> at <code>path</code> needs to select.
+     *
+     * @param collection the collection being queried
+     * @param path       the expansion path, empty for the root query
+     * @param params     the request params
+     * @return the params to pass to the Db
+     */
+    public Map<String, String> pushDown(Collection collection, String path, Map<String, String> params) {
+        Map<String, String> pushed = new JSMap();
+        pushed.putAll(params);
+        pushed.put("include", Utils.implode(",", getProperties(collection, path)));
+        return pushed;
+    }
+
+    /**
+     * @param collection the collection being queried
+     * @param path       the expansion path, empty for the root query
+     * @return the names of the properties the query needs to select
+     */
+    public Set<String> getProperties(Collection collection, String path) {
+        Set<String> names  = new LinkedHashSet<>();
+        String      prefix = path.length() == 0 ? "" : path.toLowerCase() + ".";
+
+        //-- requested names first and in the order they were requested, names that
+        //-- are not known properties could still be unmapped columns so they are
+        //-- passed through like they always have been
+        for (String include : includes) {
+            if (!include.startsWith(prefix))
+                continue;
+
+            String name = include.substring(prefix.length());
+            if (name.indexOf('.') > -1 || name.equals("href") || collection.getRelationship(name) != null)
+                continue;
+
+            Property prop = collection.getProperty(name);
+            if (prop == null)
+                names.add(name);
+            else if (keeps(path, name))
+                names.add(prop.getJsonName());
+        }
+
+        //-- properties kept because a parent path was included
+        for (Property prop : collection.getProperties()) {
+            if (keeps(path, prop.getJsonName()))
+                names.add(prop.getJsonName());
+        }
+
+        Index pk = collection.getResourceIndex();
+        if (pk != null && needsResourceKey(collection, path))
+            names.addAll(pk.getJsonNames());
+
+        for (Relationship rel : collection.getRelationships()) {
+            if (rel.isManyToOne() && (DbGetAction.shouldExpand(expands, path, rel) || keeps(path, rel.getName())))
+                names.addAll(rel.getFkIndex1().getJsonNames());
+        }
+
+        return names;
+    }
+
+    /**
+     * The resource key is needed to pair up expanded resources with their parents, to build
+     * an href that was requested and to link to related resources.
+     *
+     * @param collection the collection being queried
+     * @param path       the expansion path, empty for the root query
+     * @return true if the resource index properties have to be selected at <code>path</code>
+     */
+    protected boolean needsResourceKey(Collection collection, String path) {
+        if (path.length() > 0 || includes.contains(toPath(path, "href")))
+            return true;
+
+        for (Relationship rel : collection.getRelationships()) {
+            if (DbGetAction.shouldExpand(expands, path, rel) || (!rel.isManyToOne() && keeps(path, rel.getName())))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param collection the root collection
+     * @param path       the expansion path, empty for the root query
+     * @return true if everything selected at <code>path</code> and every expanded path below it is kept
+     */
+    public boolean isExact(Collection collection, String path) {
+        for (String name : getProperties(collection, path)) {
+            if (!keeps(path, name))
+                return false;
+        }
+
+        for (Relationship rel : collection.getRelationships()) {
+            if (DbGetAction.shouldExpand(expands, path, rel)) {
+                if (!keeps(path, rel.getName()) || !isExact(rel.getRelated(), toPath(path, rel.getName())))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that a Db honored the pushed down projection by making sure the first row
+     * does not contain anything that was not selected.
+     *
+     * @param collection the collection that was queried
+     * @param path       the expansion path, empty for the root query
+     * @param rows       the rows returned by the query
+     * @return true if <code>rows</code> is empty or its first row only contains selected properties
+     */
+    public boolean matches(Collection collection, String path, List<JSMap> rows) {
+        if (rows.size() == 0)
+            return true;
+
+        Set<String> selected = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        selected.addAll(getProperties(collection, path));
+        return selected.containsAll(rows.get(0).keySet());
+    }
+
+    protected boolean keeps(String path, String name) {
+        return !Engine.exclude(toPath(path, name), includes, excludes);
+    }
+
+    static String toPath(String path, String name) {
+        return (path.length() == 0 ? name : path + "." + name).toLowerCase();
+    }
+}
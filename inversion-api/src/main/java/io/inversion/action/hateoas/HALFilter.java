@@ -28,7 +28,7 @@ public class HALFilter extends HATEOASFilter<HALFilter> {
 
         req.getChain().go();
 
-        if (res.isSuccess()) {
+        if (res.isSuccess() && !res.isRawBody()) {
             JSNode node = res.getJson();
             if (!(node instanceof JSMap))
                 return;
@@ -108,6 +108,7 @@ public class HALFilter extends HATEOASFilter<HALFilter> {
                 if (res.isSuccess() && res.getJson() != null) {
                     Collection coll = req.getRelationship() != null ? req.getRelationship().getRelated() : req.getCollection();
                     res.data().stream().filter(n -> n instanceof JSMap).forEach(n -> addLinks(coll, (JSMap) n));
+                    res.withProjected(false);
                 }
             }
         }
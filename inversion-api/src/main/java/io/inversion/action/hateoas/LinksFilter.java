@@ -33,9 +33,10 @@ public class LinksFilter extends HATEOASFilter<LinksFilter> {
 
             req.getChain().go();
 
-            if (res.isSuccess() && res.getJson() != null){
+            if (res.isSuccess() && !res.isRawBody() && res.getJson() != null){
                 Collection coll = req.getRelationship() != null ? req.getRelationship().getRelated() : req.getCollection();
                 res.data().stream().filter(node -> node instanceof JSMap).forEach(node -> addLinks(coll, (JSMap) node));
+                res.withProjected(false);
             }
         }
     }
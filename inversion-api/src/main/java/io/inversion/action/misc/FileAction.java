@@ -17,18 +17,44 @@
 package io.inversion.action.misc;
 
 import io.inversion.*;
-import io.inversion.utils.Path;
-import io.inversion.utils.StreamBuffer;
-import io.inversion.utils.Utils;
+import io.inversion.json.JSNode;
+import io.inversion.utils.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Serves static files from <code>baseDir</code>, the filesystem or the classpath.
+ * <p>
+ * Files that are on the local filesystem, including classpath resources in an exploded directory, are served with
+ * an ETag and Last-Modified header and support conditional GETs and single byte range requests, with If-Range.
+ * Their bodies are not read by the Engine, the EngineServlet sends them with container sendfile when it is
+ * available or FileChannel.transferTo.  Files no larger than <code>cacheMaxFileSize</code> are instead cached in memory, along
+ * with a gzipped copy when their content type compresses well, until they are modified.
+ */
 public class FileAction <A extends FileAction> extends Action<A> {
     protected String baseDir = null;
     protected Set<String> files = new HashSet<>();
 
+    /**
+     * Files no larger than this are cached in memory, set to 0 to turn off the cache.
+     */
+    protected long   cacheMaxFileSize = 64 * 1024;
+    protected int    cacheMaxFiles    = 256;
+    protected String cacheControl     = "no-cache";
+
+    protected transient LruCache<String, CachedFile> cache = new LruCache<>(cacheMaxFiles);
+
     public void doGet(Request req, Response res) throws ApiException {
         serveFile(req, res);
     }
@@ -48,10 +74,24 @@ public class FileAction <A extends FileAction> extends Action<A> {
     }
 
     protected void serveFile(Request req, Response res, String filePath, boolean filterMode){
+        //-- never let a path escape baseDir through either lookup
+        if (filePath != null && new Path(filePath).parts().contains(".."))
+            throw ApiException.new404NotFound("File '{}' could not be found", filePath);
+
         if(filePath != null) {
+            File file = findFile(filePath);
+            if (file != null) {
+                serveFile(req, res, file);
+                if (filterMode)
+                    req.getChain().cancel();
+
+                return;
+            }
+
             InputStream is = findStream(filePath);
             if (is != null) {
                 res.withBody(new StreamBuffer(is));
+                res.withRawBody(true);
                 if (filterMode)
                     req.getChain().cancel();
 
@@ -62,6 +102,267 @@ public class FileAction <A extends FileAction> extends Action<A> {
             throw ApiException.new404NotFound("File '{}' could not be found", filePath);
     }
 
+    /**
+     * Serves a file on the local filesystem honoring conditional and range request headers.
+     */
+    protected void serveFile(Request req, Response res, File file) {
+        long   length       = file.length();
+        long   lastModified = file.lastModified();
+        String etag         = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+
+        String contentType = null;
+        int    dot         = file.getName().lastIndexOf('.');
+        if (dot > 0)
+            contentType = MimeTypes.getMimeType(file.getName().substring(dot + 1));
+
+        res.getHeaders().remove("Cache-Control");
+        if (cacheControl != null)
+            res.withHeader("Cache-Control", cacheControl);
+        res.withHeader("Last-Modified", formatDate(lastModified));
+        res.withHeader("Accept-Ranges", "bytes");
+        if (contentType != null)
+            res.withContentType(contentType);
+
+        //-- the body is final so keep the Engine from reading it
+        res.withRawBody(true);
+
+        CachedFile cached = length <= cacheMaxFileSize ? findCachedFile(file, length, lastModified, contentType) : null;
+        boolean    gzip   = cached != null && cached.gzip != null && req.acceptsEncoding("gzip") && req.getHeader("Range") == null;
+        if (cached != null && cached.gzip != null)
+            res.withHeader("Vary", "Accept-Encoding");
+        res.withHeader("ETag", gzip ? etag.substring(0, etag.length() - 1) + "-gzip\"" : etag);
+
+        if (isNotModified(req, etag, lastModified)) {
+            res.withStatus(Status.SC_304_NOT_MODIFIED);
+            res.withJson((JSNode) null);
+            return;
+        }
+
+        long start = 0;
+        long end   = length;
+
+        String range = req.getHeader("Range");
+        if (range != null && isRangeCurrent(req.getHeader("If-Range"), etag, lastModified)) {
+            long[] bytes = parseRange(range, length);
+            if (bytes != null && bytes.length == 0) {
+                res.withStatus(Status.SC_416_RANGE_NOT_SATISFIABLE);
+                res.withHeader("Content-Range", "bytes */" + length);
+                res.withJson((JSNode) null);
+                return;
+            }
+            if (bytes != null) {
+                start = bytes[0];
+                end = bytes[1];
+                res.withStatus(Status.SC_206_PARTIAL_CONTENT);
+                res.withHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+
+        if (cached != null) {
+            StreamBuffer buffer = new StreamBuffer();
+            try {
+                if (gzip) {
+                    buffer.write(cached.gzip);
+                    res.withHeader("Content-Encoding", "gzip");
+                } else {
+                    buffer.write(cached.bytes, (int) start, (int) (end - start));
+                }
+            } catch (Exception ex) {
+                throw new ApiException(ex);
+            }
+            res.withBody(buffer);
+        } else {
+            res.withBodyFile(file, start, end - start);
+        }
+    }
+
+    /**
+     * @return the file if <code>filePath</code> is on the local filesystem, resolved like {@link #findStream(String)}
+     */
+    protected File findFile(String filePath) {
+        try {
+            Path path = new Path(filePath);
+            if (path.parts().contains(".."))
+                return null;
+
+            if (baseDir != null && new File(baseDir).isAbsolute()) {
+                File file = new File(baseDir, path.toString());
+                return file.isFile() ? file : null;
+            }
+
+            filePath = baseDir != null ? new Path(baseDir, filePath).toString() : path.toString();
+            File file = new File(filePath);
+            if (!file.isFile()) {
+                URL url = getClass().getClassLoader().getResource(filePath);
+                if (url == null || !"file".equals(url.getProtocol()))
+                    return null;
+                file = new File(url.toURI());
+            }
+            return file.isFile() ? file : null;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    CachedFile findCachedFile(File file, long length, long lastModified, String contentType) {
+        if (cache == null)
+            return null;
+
+        String     key    = file.getAbsolutePath();
+        CachedFile cached = cache.get(key);
+        if (cached == null || cached.length != length || cached.lastModified != lastModified) {
+            try {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                if (bytes.length != length)
+                    return null;
+
+                cached = new CachedFile(bytes, isCompressible(contentType) ? gzip(bytes) : null, length, lastModified);
+                cache.put(key, cached);
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+        return cached;
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null)
+            return false;
+
+        contentType = contentType.toLowerCase();
+        return contentType.startsWith("text/") || contentType.contains("json") || contentType.contains("javascript") || contentType.contains("xml");
+    }
+
+    static byte[] gzip(byte[] bytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        byte[] gzipped = out.toByteArray();
+        return gzipped.length < bytes.length ? gzipped : null;
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since.
+     */
+    static boolean isNotModified(Request req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String tag = etag.substring(1, etag.length() - 1);
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*"))
+                    return true;
+                if (candidate.startsWith("W/"))
+                    candidate = candidate.substring(2);
+                candidate = candidate.replace("\"", "");
+                if (candidate.endsWith("-gzip"))
+                    candidate = candidate.substring(0, candidate.length() - 5);
+                if (candidate.equals(tag))
+                    return true;
+            }
+            return false;
+        }
+
+        long since = parseDate(req.getHeader("If-Modified-Since"));
+        return since > -1 && lastModified / 1000 <= since / 1000;
+    }
+
+    /**
+     * A range is only honored if the If-Range validator, when there is one, still matches the file.  Weak ETags never match.
+     */
+    static boolean isRangeCurrent(String ifRange, String etag, long lastModified) {
+        if (ifRange == null)
+            return true;
+
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);
+
+        long date = parseDate(ifRange);
+        return date > -1 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * Parses a single "bytes=" range.  Multiple ranges and invalid ranges are ignored and the whole file is served.
+     *
+     * @return the start and exclusive end of the range, an empty array if it can not be satisfied, or null to ignore it
+     */
+    public static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') > -1)
+            return null;
+
+        String spec = range.substring(6).trim();
+        int    dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last  = spec.substring(dash + 1).trim();
+
+            if (first.length() == 0) {
+                if (last.length() == 0)
+                    return null;
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0)
+                    return new long[0];
+                return new long[]{Math.max(0, length - suffix), length};
+            }
+
+            long start = Long.parseLong(first);
+            long end   = last.length() == 0 ? length - 1 : Long.parseLong(last);
+            if (start >= length)
+                return new long[0];
+            if (end < start)
+                return null;
+            return new long[]{start, Math.min(end, length - 1) + 1};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * For callers, such as proxies, that don't know the length and forward the range as is.
+     *
+     * @return true if <code>range</code> is a single "bytes=" range that {@link #parseRange(String, long)} would not ignore
+     */
+    public static boolean isSingleRange(String range) {
+        return parseRange(range, Long.MAX_VALUE) != null;
+    }
+
+    public static String formatDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    /**
+     * @return the RFC 1123 <code>date</code> in milliseconds or -1 if it is missing or invalid
+     */
+    public static long parseDate(String date) {
+        if (date == null)
+            return -1;
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    static class CachedFile {
+        final byte[] bytes;
+        final byte[] gzip;
+        final long   length;
+        final long   lastModified;
+
+        CachedFile(byte[] bytes, byte[] gzip, long length, long lastModified) {
+            this.bytes = bytes;
+            this.gzip = gzip;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
     protected InputStream findStream(String filePath){
         if(baseDir != null)
             filePath = new Path(baseDir, filePath).toString();
@@ -94,6 +395,34 @@ public class FileAction <A extends FileAction> extends Action<A> {
         return this;
     }
 
+    public long getCacheMaxFileSize() {
+        return cacheMaxFileSize;
+    }
+
+    public FileAction withCacheMaxFileSize(long cacheMaxFileSize) {
+        this.cacheMaxFileSize = cacheMaxFileSize;
+        return this;
+    }
+
+    public int getCacheMaxFiles() {
+        return cacheMaxFiles;
+    }
+
+    public FileAction withCacheMaxFiles(int cacheMaxFiles) {
+        this.cacheMaxFiles = cacheMaxFiles;
+        this.cache = cacheMaxFiles > 0 ? new LruCache<>(cacheMaxFiles) : null;
+        return this;
+    }
+
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    public FileAction withCacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+        return this;
+    }
+
     public Set<String> getFiles() {
         return files;
     }
@@ -16,14 +16,18 @@
  */
 package io.inversion.action.openapi;
 
+import io.inversion.Api;
 import io.inversion.ApiException;
 import io.inversion.Request;
 import io.inversion.Response;
+import io.inversion.Status;
 import io.inversion.action.misc.FileAction;
 import io.inversion.json.JSList;
 import io.inversion.json.JSNode;
 import io.inversion.json.JSParser;
+import io.inversion.utils.MimeTypes;
 import io.inversion.utils.Path;
+import io.inversion.utils.StreamBuffer;
 import io.inversion.utils.Utils;
 import io.swagger.parser.OpenAPIParser;
 import io.swagger.v3.core.util.Json;
@@ -31,8 +35,14 @@ import io.swagger.v3.core.util.Yaml;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.parser.core.models.SwaggerParseResult;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -43,6 +53,11 @@ import java.io.InputStream;
  * https://swagger.io/tools/open-source/open-source-integrations/
  * https://github.com/swagger-api/swagger-core
  * https://swagger.io/specification/
+ * <p>
+ * Generating the document is expensive so, unless the request is in debug mode, the JSON and YAML documents are
+ * generated once per Api and url path, stored serialized and gzipped, and served with an ETag.  Clients that send a
+ * matching If-None-Match get a 304.  The cached documents are regenerated when the Api is replaced, for example
+ * when it is reloaded, or its hash changes.
  */
 public class OpenAPIAction<A extends OpenAPIAction> extends FileAction<A> {
 
@@ -53,6 +68,13 @@ public class OpenAPIAction<A extends OpenAPIAction> extends FileAction<A> {
 
     protected boolean copyToOutputDirInDevMode = true;
 
+    /**
+     * When true, generated documents are cached, see the class comments.
+     */
+    protected boolean cacheDocs = true;
+
+    protected transient final Map<String, OpenApiDoc> docs = new ConcurrentHashMap<>();
+
     public OpenAPIAction() {
         withFiles("rapidoc.html", "openapi.json", "openapi.yml");
     }
@@ -99,37 +121,160 @@ public class OpenAPIAction<A extends OpenAPIAction> extends FileAction<A> {
             return;
 
         try {
-
-            File debug = new File("./openapi.json");
-            if(debug.exists()){
-                JSNode json = (JSNode) JSParser.parseJson(debug.toURI().toURL().openStream());
-                res.withJson(json);
+            boolean yaml = file.toLowerCase().endsWith(".yaml");
+
+            if (!cacheDocs || req.isDebug()) {
+                OpenApiDoc doc = buildOpenApiDoc(req);
+                if (yaml) {
+                    res.withJson((JSNode) null);
+                    res.withContentType("application/yaml");
+                    res.withText(new String(doc.yaml, StandardCharsets.UTF_8));
+                } else {
+                    res.withJson(doc.json);
+                }
+                if (req.isDebug()) {
+                    writeFile(req, res, outputBaseDir, "openapi.json", doc.json.toString());
+                    writeFile(req, res, outputBaseDir, "openapi.yaml", new String(doc.yaml, StandardCharsets.UTF_8));
+                }
                 return;
             }
 
+            OpenApiDoc doc  = findOpenApiDoc(req);
+            boolean    gzip = req.acceptsEncoding("gzip");
+            String     etag = gzip ? doc.etagGzip : doc.etag;
 
+            res.getHeaders().remove("Cache-Control");
+            res.withHeader("Cache-Control", "no-cache");
+            res.withHeader("ETag", etag);
+            res.withHeader("Vary", "Accept-Encoding");
 
-            OpenAPI openApi = generateOpenApi(req);
-            JSNode  json    = writeOpenAPI(req, openApi);
-            openApi = Json.mapper().readValue(json.toString(), OpenAPI.class);
-
-            if (file.toLowerCase().endsWith(".yaml")) {
-                res.withJson((JSNode)null);
-                res.withContentType("application/yaml");
-                res.withText(Yaml.pretty(openApi));
-            }
-            else{
-                res.withJson(json);
-            }
-            if(req.isDebug()){
-                writeFile(req, res, outputBaseDir, "openapi.json", json.toString());
-                writeFile(req, res, outputBaseDir, "openapi.yaml", Yaml.pretty(openApi));
+            if (matchesEtag(req.getHeader("If-None-Match"), doc.etag)) {
+                res.withStatus(Status.SC_304_NOT_MODIFIED);
+                res.withJson((JSNode) null);
+                return;
             }
+
+            byte[]       bytes  = yaml ? (gzip ? doc.yamlGzip : doc.yaml) : (gzip ? doc.jsonGzip : doc.jsonBytes);
+            StreamBuffer buffer = new StreamBuffer();
+            buffer.write(bytes);
+            res.withContentType(yaml ? "application/yaml" : MimeTypes.TYPE_APPLICATION_JSON);
+            res.withBody(buffer);
+            if (gzip)
+                res.withHeader("Content-Encoding", "gzip");
+
+            //-- the body is already final, and possibly gzipped, so keep the Engine from parsing it
+            res.withRawBody(true);
         } catch (Exception ex) {
             throw ApiException.new500InternalServerError(ex);
         }
     }
 
+    /**
+     * Finds the cached documents for the request's Api and path, generating them if they
+     * don't exist or if the Api has been replaced or its hash has changed.
+     */
+    protected OpenApiDoc findOpenApiDoc(Request req) throws Exception {
+        Api    api  = req.getApi();
+        Path   path = req.getUrl().getPath();
+        String key  = api.getName() + "|" + (path.size() > 0 ? path.subpath(0, path.size() - 1) : path);
+
+        OpenApiDoc doc = docs.get(key);
+        if (doc == null || !doc.isCurrent(api)) {
+            synchronized (this) {
+                doc = docs.get(key);
+                if (doc == null || !doc.isCurrent(api)) {
+                    doc = buildOpenApiDoc(req);
+                    docs.put(key, doc);
+                }
+            }
+        }
+        return doc;
+    }
+
+    protected OpenApiDoc buildOpenApiDoc(Request req) throws Exception {
+        JSNode json  = null;
+        File   debug = new File("./openapi.json");
+        if (debug.exists())
+            json = (JSNode) JSParser.parseJson(debug.toURI().toURL().openStream());
+
+        if (json == null)
+            json = writeOpenAPI(req, generateOpenApi(req));
+
+        OpenAPI openApi = Json.mapper().readValue(json.toString(), OpenAPI.class);
+        return new OpenApiDoc(req.getApi(), json, Yaml.pretty(openApi));
+    }
+
+    /**
+     * Removes all cached documents so they are regenerated on their next request.
+     */
+    public void clearCache() {
+        docs.clear();
+    }
+
+    /**
+     * The gzipped variants have their own ETag so either one revalidates the document.
+     */
+    static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+
+        String tag = etag.substring(1, etag.length() - 1);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*"))
+                return true;
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            candidate = candidate.replace("\"", "");
+            if (candidate.endsWith("-gzip"))
+                candidate = candidate.substring(0, candidate.length() - 5);
+            if (candidate.equals(tag))
+                return true;
+        }
+        return false;
+    }
+
+    static byte[] gzip(byte[] bytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A generated document serialized and gzipped as JSON and as YAML.
+     */
+    protected static class OpenApiDoc {
+        final Api    api;
+        final String hash;
+        final JSNode json;
+        final byte[] jsonBytes;
+        final byte[] jsonGzip;
+        final byte[] yaml;
+        final byte[] yamlGzip;
+        final String etag;
+        final String etagGzip;
+
+        OpenApiDoc(Api api, JSNode json, String yaml) throws Exception {
+            this.api = api;
+            this.hash = api.getHash();
+            this.json = json;
+            this.jsonBytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            this.jsonGzip = gzip(jsonBytes);
+            this.yaml = yaml.getBytes(StandardCharsets.UTF_8);
+            this.yamlGzip = gzip(this.yaml);
+
+            String tag = Utils.sha1(jsonBytes);
+            this.etag = "\"" + tag + "\"";
+            this.etagGzip = "\"" + tag + "-gzip\"";
+        }
+
+        boolean isCurrent(Api api) {
+            return this.api == api && Objects.equals(hash, api.getHash());
+        }
+    }
+
     /**
      * Override me to manually edit the OpenAPI pojo before it is serialized to JSON
      * OR to edit the JSNode model after it has been serialized.
@@ -221,6 +366,15 @@ public class OpenAPIAction<A extends OpenAPIAction> extends FileAction<A> {
         return this;
     }
 
+    public boolean isCacheDocs() {
+        return cacheDocs;
+    }
+
+    public OpenAPIAction withCacheDocs(boolean cacheDocs) {
+        this.cacheDocs = cacheDocs;
+        return this;
+    }
+
     public OpenAPISpecWriter getWriter() {
         return writer;
     }
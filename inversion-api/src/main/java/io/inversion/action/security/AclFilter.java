@@ -17,10 +17,14 @@
 package io.inversion.action.security;
 
 import io.inversion.*;
+import io.inversion.utils.LruCache;
+import io.inversion.utils.Path;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The AclAction secures an API by making sure that a requests matches one or
@@ -29,10 +33,30 @@ import java.util.List;
  * AclRules specify the roles and permissions that a user must have to access
  * specific method/path combinations and can also specify input/output
  * parameters that are either required or restricted
+ * <p>
+ * The sorted rules are compiled into a table of the rules that could possibly
+ * match each HTTP method and the outcome of evaluating the table is memoized
+ * for each method/path/principal combination.  A principal is identified by the
+ * roles, permissions and scopes of the Chain user as those are the only user
+ * properties an AclRule considers.  The memoized outcome is identical to
+ * walking every rule, including the MATCH_INFO debug output.
+ * <p>
+ * If an AclRule subclass overrides <code>ruleMatches</code> or <code>match</code>
+ * the outcome could depend on anything about the request so nothing is memoized.
+ * <p>
+ * The compiled table is rebuilt when rules are added via {@link #withAclRules(AclRule...)}.
+ * If you modify an AclRule after requests have been processed, call {@link #clearCache()}.
  */
 public class AclFilter extends Filter<AclFilter> {
     protected final List<AclRule> aclRules = new ArrayList<>();
 
+    /**
+     * The maximum number of method/path/principal decisions to remember, 0 disables memoization.
+     */
+    protected int decisionCacheSize = 10000;
+
+    protected transient volatile Compiled compiled = null;
+
     public AclFilter orRequireAllPerms(String permissions, String... includedOn) {
         withAclRules(AclRule.requireAllPerms(permissions, includedOn));
         return this;
@@ -71,6 +95,7 @@ public class AclFilter extends Filter<AclFilter> {
         }
 
         Collections.sort(aclRules);
+        clearCache();
         return this;
     }
 
@@ -78,35 +103,187 @@ public class AclFilter extends Filter<AclFilter> {
         return new ArrayList<>(aclRules);
     }
 
+    public int getDecisionCacheSize() {
+        return decisionCacheSize;
+    }
+
+    public AclFilter withDecisionCacheSize(int decisionCacheSize) {
+        this.decisionCacheSize = decisionCacheSize;
+        clearCache();
+        return this;
+    }
+
+    /**
+     * Discards the compiled rule table and all memoized decisions.
+     */
+    public void clearCache() {
+        compiled = null;
+    }
+
     @Override
     public void run(Request req, Response resp) throws ApiException {
 
         log.debug("Request Path: " + req.getUrl().getPath());
-        boolean allowed = false;
 
-        for (AclRule aclRule : aclRules) {
+        Decision decision = decide(req);
+        decision.debug();
+
+        if (!decision.allowed)
+            throw ApiException.new403Forbidden();
+    }
+
+    protected Decision decide(Request req) {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled(aclRules, decisionCacheSize);
+            this.compiled = compiled;
+        }
+
+        String    method = req.getMethod();
+        AclRule[] rules  = compiled.getRules(method);
+
+        if (!compiled.memoizable)
+            return evaluate(rules, req);
+
+        String key = method + " " + req.getPath() + " " + fingerprint(Chain.getUser());
+        return compiled.decisions.get(key, k -> evaluate(rules, req));
+    }
+
+    /**
+     * Walks <code>rules</code> in order stopping at the first rule that explicitly allows or denies the request.
+     *
+     * @param rules the candidate rules in priority order
+     * @param req   the request to check
+     * @return the outcome along with any informational rules that matched along the way
+     */
+    protected Decision evaluate(AclRule[] rules, Request req) {
+        List<AclRule> info = null;
+        for (AclRule aclRule : rules) {
             if (aclRule.ruleMatches(req)) {
-                //log.debug("Matched AclAction: " + aclRule.getName());
                 if (!aclRule.isAllow()) {
-                    Chain.debug("AclAction: MATCH_DENY" + aclRule);
+                    return new Decision(false, aclRule, info);
+                } else if (!aclRule.isInfo()) {
+                    return new Decision(true, aclRule, info);
+                } else {
+                    if (info == null)
+                        info = new ArrayList<>();
+                    info.add(aclRule);
+                }
+            }
+        }
+        return new Decision(false, null, info);
+    }
 
-                    allowed = false;
+    /**
+     * @param user the Chain user
+     * @return a key identifying the user properties that an AclRule considers
+     */
+    protected String fingerprint(User user) {
+        if (user == null)
+            return "null";
+        return user.getRoles() + "|" + user.getPermissions() + "|" + user.getScopes();
+    }
+
+    /**
+     * The outcome of evaluating the rules for a request.
+     */
+    protected static class Decision {
+        final boolean       allowed;
+        final AclRule       matched;
+        final List<AclRule> info;
+
+        Decision(boolean allowed, AclRule matched, List<AclRule> info) {
+            this.allowed = allowed;
+            this.matched = matched;
+            this.info = info;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        public AclRule getMatched() {
+            return matched;
+        }
+
+        void debug() {
+            if (info != null) {
+                for (AclRule rule : info)
+                    Chain.debug("AclAction: MATCH_INFO " + rule);
+            }
+
+            if (matched != null) {
+                if (allowed)
+                    Chain.debug("AclAction: MATCH_ALLOW " + matched);
+                else
+                    Chain.debug("AclAction: MATCH_DENY" + matched);
+            }
+
+            if (!allowed)
+                Chain.debug("AclAction: NO_MATCH_DENY");
+        }
+    }
+
+    /**
+     * The sorted rules pruned down to the rules that could match each HTTP method.
+     */
+    protected static class Compiled {
+        final AclRule[]                  rules;
+        final Map<String, AclRule[]>     byMethod = new ConcurrentHashMap<>();
+        final LruCache<String, Decision> decisions;
+        final boolean                    memoizable;
+
+        Compiled(List<AclRule> aclRules, int decisionCacheSize) {
+            this.rules = aclRules.toArray(new AclRule[0]);
+            this.decisions = new LruCache<>(decisionCacheSize);
+
+            boolean memoizable = true;
+            for (AclRule rule : rules) {
+                if (isOverridden(rule.getClass(), "ruleMatches", Request.class)//
+                        || isOverridden(rule.getClass(), "match", String.class, Path.class, boolean.class)) {
+                    memoizable = false;
                     break;
-                } else {
-                    if (!aclRule.isInfo() && aclRule.isAllow()) {
-                        Chain.debug("AclAction: MATCH_ALLOW " + aclRule);
-                        allowed = true;
-                        break;
-                    } else {
-                        Chain.debug("AclAction: MATCH_INFO " + aclRule);
-                    }
                 }
             }
+            this.memoizable = memoizable;
         }
 
-        if (!allowed) {
-            Chain.debug("AclAction: NO_MATCH_DENY");
-            throw ApiException.new403Forbidden();
+        AclRule[] getRules(String method) {
+            if (method == null)
+                return rules;
+            return byMethod.computeIfAbsent(method.toUpperCase(), m -> {
+                List<AclRule> candidates = new ArrayList<>();
+                for (AclRule rule : rules) {
+                    if (!memoizable || canMatch(rule, m))
+                        candidates.add(rule);
+                }
+                return candidates.toArray(new AclRule[0]);
+            });
+        }
+
+        /**
+         * Mirrors {@link Rule#match(String, Path, boolean)}: a rule can only match a method
+         * if it has no include paths at all or one of its includers accepts the method.
+         * <p>
+         * This may keep a rule that can not actually match but it never drops one that can.
+         */
+        static boolean canMatch(AclRule rule, String method) {
+            if (rule.getAllIncludePaths().size() == 0)
+                return true;
+
+            for (Rule.RuleMatcher includer : rule.getIncludeMatchers()) {
+                if (includer.hasMethod(method))
+                    return true;
+            }
+            return false;
+        }
+
+        static boolean isOverridden(Class clazz, String name, Class... params) {
+            try {
+                return clazz.getMethod(name, params).getDeclaringClass() != (name.equals("match") ? Rule.class : AclRule.class);
+            } catch (NoSuchMethodException ex) {
+                return true;
+            }
         }
     }
 }
@@ -29,15 +29,19 @@ import io.inversion.json.JSList;
 import io.inversion.json.JSMap;
 import io.inversion.json.JSNode;
 import io.inversion.json.JSParser;
+import io.inversion.utils.LruCache;
+import io.inversion.utils.Utils;
 import org.apache.commons.collections.map.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.UnsupportedEncodingException;
-import java.util.Base64;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.*;
 
 public class BearerScheme extends HttpAuthScheme {
 
@@ -58,6 +62,26 @@ public class BearerScheme extends HttpAuthScheme {
 
     protected SecretDao secretDao = null;
 
+    /**
+     * Optional source of asymmetric (RS*, ES*) signing keys
+     */
+    protected JwksKeyProvider jwks = null;
+
+    /**
+     * The maximum number of verified tokens to cache, set to 0 to disable caching
+     */
+    protected int tokenCacheSize = 10000;
+
+    /**
+     * The maximum number of milliseconds to cache a verified token, tokens are never cached past their "exp"
+     */
+    protected long tokenCacheMaxAge = 1000 * 60 * 15;
+
+    /**
+     * Verified tokens keyed by their SHA-256 digest
+     */
+    protected transient volatile LruCache<String, VerifiedToken> tokenCache = null;
+
 
     public BearerScheme() {
         withHttpScheme(HttpAuthScheme.HttpScheme.bearer);
@@ -85,20 +109,87 @@ public class BearerScheme extends HttpAuthScheme {
 
         token = token.substring(requiredTokenPrefix.length()).trim();
 
-        DecodedJWT jwt = null;
-        for (String secret : secretDao.getSecrets(req)) {
-            jwt = decodeJWT(token, secret);
-            if (jwt != null)
+        LruCache<String, VerifiedToken> tokenCache = getTokenCache();
+        String                          digest     = tokenCache != null ? digest(token) : null;
+
+        List<String> secrets = secretDao != null ? secretDao.getSecrets(req) : Collections.emptyList();
+
+        if (digest != null) {
+            VerifiedToken verified = tokenCache.get(digest);
+            if (verified != null) {
+                //-- the secret that verified the token must still be valid for this request
+                if (verified.expiresAt > System.currentTimeMillis() && (verified.secret == null || secrets.contains(verified.secret)))
+                    return buildUser(verified.jwt);
+                tokenCache.remove(digest);
+            }
+        }
+
+        DecodedJWT jwt    = null;
+        String     secret = null;
+        for (String candidate : secrets) {
+            jwt = decodeJWT(token, candidate);
+            if (jwt != null) {
+                secret = candidate;
                 break;
+            }
         }
 
+        if (jwt == null && jwks != null)
+            jwt = decodeJWT(token, jwks);
+
         User user = null;
-        if (jwt != null)
+        if (jwt != null) {
             user = buildUser(jwt);
 
+            if (digest != null) {
+                long expiresAt = System.currentTimeMillis() + tokenCacheMaxAge;
+                if (jwt.getExpiresAt() != null)
+                    expiresAt = Math.min(expiresAt, jwt.getExpiresAt().getTime());
+                tokenCache.put(digest, new VerifiedToken(jwt, secret, expiresAt));
+            }
+        }
+
         return user;
     }
 
+    protected LruCache<String, VerifiedToken> getTokenCache() {
+        if (tokenCacheSize <= 0)
+            return null;
+
+        if (tokenCache == null) {
+            synchronized (this) {
+                if (tokenCache == null)
+                    tokenCache = new LruCache<>(tokenCacheSize);
+            }
+        }
+        return tokenCache;
+    }
+
+    static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception ex) {
+            throw Utils.ex(ex);
+        }
+    }
+
+    /**
+     * A JWT whose signature has already been verified along with the
+     * secret that verified it, null if it was verified with a JWKS key.
+     */
+    protected static class VerifiedToken {
+        final DecodedJWT jwt;
+        final String     secret;
+        final long       expiresAt;
+
+        VerifiedToken(DecodedJWT jwt, String secret, long expiresAt) {
+            this.jwt = jwt;
+            this.secret = secret;
+            this.expiresAt = expiresAt;
+        }
+    }
+
 
     public User buildUser(DecodedJWT jwt) {
         User   user    = new User();
@@ -165,7 +256,54 @@ public class BearerScheme extends HttpAuthScheme {
         } catch (Exception ex) {
             //-- this is not an error yet because there can be multiple signing keys in the list
             //-- and this jwt may be using an older/different but still supported one in the list
-            log.info("Error decoding jwt:", ex.getMessage());
+            log.info("Error decoding jwt: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Verifies an RS256/384/512 or ES256/384/512 signed token with the key identified by the token's "kid" header.
+     *
+     * @param token the encoded JWT
+     * @param jwks  the source of public keys
+     * @return the verified JWT or null if the token could not be verified
+     */
+    public DecodedJWT decodeJWT(String token, JwksKeyProvider jwks) {
+        try {
+            DecodedJWT decoded = JWT.decode(token);
+            PublicKey  key     = jwks.getKey(decoded.getKeyId());
+            if (key == null) {
+                log.info("Error decoding jwt: no JWKS key for kid '{}'", decoded.getKeyId());
+                return null;
+            }
+
+            Algorithm algorithm;
+            switch (decoded.getAlgorithm()) {
+                case "RS256":
+                    algorithm = Algorithm.RSA256((RSAPublicKey) key, null);
+                    break;
+                case "RS384":
+                    algorithm = Algorithm.RSA384((RSAPublicKey) key, null);
+                    break;
+                case "RS512":
+                    algorithm = Algorithm.RSA512((RSAPublicKey) key, null);
+                    break;
+                case "ES256":
+                    algorithm = Algorithm.ECDSA256((ECPublicKey) key, null);
+                    break;
+                case "ES384":
+                    algorithm = Algorithm.ECDSA384((ECPublicKey) key, null);
+                    break;
+                case "ES512":
+                    algorithm = Algorithm.ECDSA512((ECPublicKey) key, null);
+                    break;
+                default:
+                    log.info("Error decoding jwt: unsupported JWKS algorithm '{}'", decoded.getAlgorithm());
+                    return null;
+            }
+            return JWT.require(algorithm).acceptLeeway(1).build().verify(decoded);
+        } catch (Exception ex) {
+            log.info("Error decoding jwt: {}", ex.getMessage());
         }
         return null;
     }
@@ -179,6 +317,38 @@ public class BearerScheme extends HttpAuthScheme {
         return this;
     }
 
+    public JwksKeyProvider getJwks() {
+        return jwks;
+    }
+
+    public BearerScheme withJwks(JwksKeyProvider jwks) {
+        this.jwks = jwks;
+        return this;
+    }
+
+    public BearerScheme withJwksUrl(String jwksUrl) {
+        return withJwks(new JwksKeyProvider(jwksUrl));
+    }
+
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    public BearerScheme withTokenCacheSize(int tokenCacheSize) {
+        this.tokenCacheSize = tokenCacheSize;
+        this.tokenCache = null;
+        return this;
+    }
+
+    public long getTokenCacheMaxAge() {
+        return tokenCacheMaxAge;
+    }
+
+    public BearerScheme withTokenCacheMaxAge(long tokenCacheMaxAge) {
+        this.tokenCacheMaxAge = tokenCacheMaxAge;
+        return this;
+    }
+
     public interface SecretDao {
         List<String> getSecrets(Request request);
     }
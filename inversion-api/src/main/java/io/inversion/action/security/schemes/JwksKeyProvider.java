@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2015-2021 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.action.security.schemes;
+
+import io.inversion.json.JSMap;
+import io.inversion.json.JSParser;
+import io.inversion.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads RSA and EC public keys from a JSON Web Key Set document and caches them by "kid".
+ * <p>
+ * The document is fetched on first use.  After <code>refreshInterval</code> the cached keys
+ * continue to be served while a background thread fetches a fresh copy.  A request for an
+ * unknown kid, which happens when the issuer rotates keys, forces a synchronous reload but
+ * no more than once per <code>minRefreshInterval</code>.
+ * <p>
+ * The url can be anything {@link Utils#read(Object, String)} can read including file and classpath resources.
+ *
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc7517">RFC 7517 JSON Web Key</a>
+ */
+public class JwksKeyProvider {
+
+    static final Logger log = LoggerFactory.getLogger(JwksKeyProvider.class);
+
+    static ExecutorService refresher = null;
+
+    protected String url                = null;
+    protected long   refreshInterval    = 1000 * 60 * 15;
+    protected long   minRefreshInterval = 1000 * 30;
+
+    protected volatile Map<String, PublicKey> keys     = null;
+    protected volatile long                   loadedAt = 0;
+
+    final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public JwksKeyProvider() {
+
+    }
+
+    public JwksKeyProvider(String url) {
+        withUrl(url);
+    }
+
+    /**
+     * Finds the public key with the given key id, loading or refreshing the key set as needed.
+     *
+     * @param kid the key id from the JWT header, may be null if the key set contains a single key
+     * @return the public key or null if no key matches
+     */
+    public PublicKey getKey(String kid) {
+        Map<String, PublicKey> keys = this.keys;
+        if (keys == null) {
+            synchronized (this) {
+                if (this.keys == null)
+                    refresh();
+                keys = this.keys;
+            }
+        } else if (System.currentTimeMillis() - loadedAt > refreshInterval) {
+            refreshInBackground();
+        }
+
+        PublicKey key = findKey(keys, kid);
+        if (key == null && System.currentTimeMillis() - loadedAt > minRefreshInterval) {
+            synchronized (this) {
+                if (System.currentTimeMillis() - loadedAt > minRefreshInterval)
+                    refresh();
+            }
+            key = findKey(this.keys, kid);
+        }
+        return key;
+    }
+
+    PublicKey findKey(Map<String, PublicKey> keys, String kid) {
+        if (keys == null)
+            return null;
+        if (kid == null)
+            return keys.size() == 1 ? keys.values().iterator().next() : null;
+        return keys.get(kid);
+    }
+
+    /**
+     * Synchronously fetches the key set.  If the fetch fails any previously loaded keys are retained.
+     */
+    public synchronized void refresh() {
+        try {
+            keys = Collections.unmodifiableMap(parseJwks(Utils.read(this, url)));
+        } catch (Exception ex) {
+            log.warn("Unable to load JWKS from '{}': {}", url, ex.getMessage());
+            if (keys == null)
+                keys = Collections.emptyMap();
+        }
+        loadedAt = System.currentTimeMillis();
+    }
+
+    protected void refreshInBackground() {
+        if (refreshing.compareAndSet(false, true)) {
+            getRefresher().execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+
+    static synchronized ExecutorService getRefresher() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "inversion-jwks-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return refresher;
+    }
+
+    /**
+     * Parses the RSA and EC keys from a JWKS document, other key types and EC curves are ignored.
+     *
+     * @param json the JWKS document
+     * @return the public keys keyed by kid, keys without a kid are keyed by their index in the set
+     * @throws Exception if a key can not be constructed
+     */
+    public static Map<String, PublicKey> parseJwks(String json) throws Exception {
+        Map<String, PublicKey> keys = new HashMap<>();
+        JSMap                  doc  = JSParser.asJSMap(json);
+
+        int i = 0;
+        for (JSMap jwk : doc.getList("keys").asMapList()) {
+            String use = jwk.getString("use");
+            if (use != null && !"sig".equals(use))
+                continue;
+
+            PublicKey key = parseJwk(jwk);
+            if (key != null) {
+                String kid = jwk.getString("kid");
+                keys.put(kid != null ? kid : i + "", key);
+            }
+            i++;
+        }
+        return keys;
+    }
+
+    static PublicKey parseJwk(JSMap jwk) throws Exception {
+        String kty = jwk.getString("kty");
+        if ("RSA".equals(kty)) {
+            BigInteger n = decodeUnsigned(jwk.getString("n"));
+            BigInteger e = decodeUnsigned(jwk.getString("e"));
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(n, e));
+        } else if ("EC".equals(kty)) {
+            String curve;
+            switch (jwk.getString("crv") + "") {
+                case "P-256":
+                    curve = "secp256r1";
+                    break;
+                case "P-384":
+                    curve = "secp384r1";
+                    break;
+                case "P-521":
+                    curve = "secp521r1";
+                    break;
+                default:
+                    log.warn("Skipping JWK '{}' with unsupported curve '{}'", jwk.getString("kid"), jwk.getString("crv"));
+                    return null;
+            }
+            AlgorithmParameters params = AlgorithmParameters.getInstance("EC");
+            params.init(new ECGenParameterSpec(curve));
+            ECParameterSpec spec  = params.getParameterSpec(ECParameterSpec.class);
+            ECPoint         point = new ECPoint(decodeUnsigned(jwk.getString("x")), decodeUnsigned(jwk.getString("y")));
+            return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, spec));
+        }
+        return null;
+    }
+
+    static BigInteger decodeUnsigned(String base64Url) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(base64Url));
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public JwksKeyProvider withUrl(String url) {
+        this.url = url;
+        return this;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public JwksKeyProvider withRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        return this;
+    }
+
+    public long getMinRefreshInterval() {
+        return minRefreshInterval;
+    }
+
+    public JwksKeyProvider withMinRefreshInterval(long minRefreshInterval) {
+        this.minRefreshInterval = minRefreshInterval;
+        return this;
+    }
+}
@@ -17,6 +17,7 @@
 
 package io.inversion.rql;
 
+import io.inversion.utils.LruCache;
 import io.inversion.utils.Utils;
 
 import java.util.ArrayList;
@@ -24,6 +25,12 @@ import java.util.List;
 
 public class Rql {
 
+    /**
+     * Parsed Terms keyed by the raw clause string.  These are never handed
+     * out directly, only copies, so they can not be modified by callers.
+     */
+    static final LruCache<String, Term> parseCache = new LruCache<>(1000);
+
     public static Term parse(String paramName, String paramValue) {
         String termStr;
         if (Utils.empty(paramValue) && paramName.contains("(")) {
@@ -38,7 +45,23 @@ public class Rql {
         return term;
     }
 
+    /**
+     * Parses <code>clause</code> into a Term tree.
+     * <p>
+     * Parsed trees are cached by the raw clause string and a deep copy of the cached
+     * tree is returned so callers are free to modify the result.
+     *
+     * @param clause the rql string to parse
+     * @return a Term tree representing <code>clause</code>
+     */
     public static Term parse(String clause) {
+        if (clause == null)
+            return parse0(null);
+
+        return parseCache.get(clause, Rql::parse0).copy();
+    }
+
+    static Term parse0(String clause) {
         TermStack    tb = new TermStack();
         RqlTokenizer t  = new RqlTokenizer(clause);
 
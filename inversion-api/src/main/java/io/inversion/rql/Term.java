@@ -80,7 +80,13 @@ public class Term implements Comparable<Term> {
         copy.quote = quote;
         copy.token = token;
 
-        terms.forEach(child -> copy.withTerm(child.copy()));
+        //-- the copied children are known to be unique so this bypasses
+        //-- the duplicate and parent checks in withTerm
+        for (Term child : terms) {
+            Term childCopy = child.copy();
+            childCopy.parent = copy;
+            copy.terms.add(childCopy);
+        }
 
         return copy;
     }
@@ -0,0 +1,153 @@
+package io.inversion;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiClientCacheTest {
+
+    HttpServer    server = null;
+    AtomicInteger hits   = new AtomicInteger();
+
+    interface Behavior {
+        /**
+         * @return the status code to respond with after adding any response headers
+         */
+        int respond(int hit, HttpExchange exchange);
+    }
+
+    String startServer(Behavior behavior) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            int    hit    = hits.incrementAndGet();
+            int    status = behavior.respond(hit, exchange);
+            byte[] body   = ("hit " + hit).getBytes(StandardCharsets.UTF_8);
+            if (status == 304) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        if (server != null)
+            server.stop(0);
+    }
+
+    @Test
+    public void test_fresh_responses_are_served_from_cache() throws Exception {
+        String url = startServer((hit, exchange) -> {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            return 200;
+        });
+        ApiClient client = new ApiClient().withUrl(url).withCaching(true);
+
+        assertEquals("hit 1", client.get("things").get().getText());
+        Response res = client.get("things").get();
+        assertEquals(200, res.getStatusCode());
+        assertEquals("hit 1", res.getText());
+        assertNotNull(res.getHeader("Age"));
+        assertEquals(1, hits.get());
+        assertEquals(1, client.getCounters().getCacheHits());
+
+        //-- a different identity does not share the entry
+        ArrayListValuedHashMap<String, String> headers = new ArrayListValuedHashMap<>();
+        headers.put("Authorization", "Bearer other");
+        assertEquals("hit 2", client.call("GET", "things", null, null, headers).get().getText());
+
+        //-- unsafe methods invalidate the url
+        client.post("things", "{}").get();
+        assertEquals("hit 4", client.get("things").get().getText());
+    }
+
+    @Test
+    public void test_stale_responses_are_revalidated_with_etags() throws Exception {
+        String url = startServer((hit, exchange) -> {
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            return "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ? 304 : 200;
+        });
+        ApiClient client = new ApiClient().withUrl(url).withCaching(true);
+
+        assertEquals("hit 1", client.get("things").get().getText());
+        Response res = client.get("things").get();
+        assertEquals(200, res.getStatusCode());
+        assertEquals("hit 1", res.getText());
+        assertEquals(2, hits.get());
+        assertEquals(1, client.getCounters().getCacheRevalidations());
+        assertEquals(1, client.getCounters().getCacheNotModified());
+    }
+
+    @Test
+    public void test_stale_responses_are_served_on_error() throws Exception {
+        String url = startServer((hit, exchange) -> {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=0, stale-if-error=60");
+            return hit == 1 ? 200 : 500;
+        });
+        ApiClient client = new ApiClient().withUrl(url).withCaching(true);
+
+        assertEquals("hit 1", client.get("things").get().getText());
+        Response res = client.get("things").get();
+        assertEquals(200, res.getStatusCode());
+        assertEquals("hit 1", res.getText());
+        assertEquals(2, hits.get());
+        assertEquals(1, client.getCounters().getCacheStale());
+    }
+
+    @Test
+    public void test_stale_while_revalidate_refreshes_in_the_background() throws Exception {
+        String url = startServer((hit, exchange) -> {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=0, stale-while-revalidate=60");
+            return 200;
+        });
+        ApiClient client = new ApiClient().withUrl(url).withCaching(true);
+
+        assertEquals("hit 1", client.get("things").get().getText());
+        assertEquals("hit 1", client.get("things").get().getText());
+
+        for (int i = 0; i < 100 && (hits.get() < 2 || !client.revalidating.isEmpty()); i++)
+            Thread.sleep(20);
+
+        assertEquals(2, hits.get());
+        assertEquals("hit 2", client.get("things").get().getText());
+    }
+
+    @Test
+    public void test_entries_round_trip_through_json() {
+        Request  req = new Request("GET", "http://localhost/things");
+        Response res = new Response("http://localhost/things");
+        res.withHeader("Cache-Control", "max-age=60");
+        res.withHeader("ETag", "\"abc\"");
+        res.withText("hello");
+
+        ResponseCache.Entry entry = ResponseCache.Entry.of(req, res, 1024);
+        ResponseCache.Entry copy  = ResponseCache.Entry.fromJson(entry.toJson());
+
+        assertEquals(60000, copy.getMaxAge());
+        assertEquals("\"abc\"", copy.getETag());
+        assertEquals("hello", copy.toResponse(req).getText());
+        assertTrue(copy.isFresh());
+
+        res.withHeader("Cache-Control", "no-store");
+        assertNull(ResponseCache.Entry.of(req, res, 1024));
+    }
+}
@@ -0,0 +1,227 @@
+package io.inversion;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiClientResilienceTest {
+
+    HttpServer      server   = null;
+    ExecutorService executor = null;
+    AtomicInteger   hits     = new AtomicInteger();
+
+    /**
+     * Starts a stub server.  <code>behavior</code> is passed the 1 based hit number and returns the
+     * status code to respond with, negative values sleep for that many milliseconds and respond 200.
+     */
+    String startServer(IntUnaryOperator behavior) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            int status = behavior.applyAsInt(hits.incrementAndGet());
+            if (status < 0) {
+                try {
+                    Thread.sleep(-status);
+                } catch (InterruptedException ex) {
+                    //ignore
+                }
+                status = 200;
+            }
+            byte[] body = ("{\"status\":" + status + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String restartServer(IntUnaryOperator behavior) throws Exception {
+        stopServer();
+        hits.set(0);
+        return startServer(behavior);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        if (server != null)
+            server.stop(0);
+        if (executor != null)
+            executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    @Test
+    public void test_idempotent_requests_are_retried_with_backoff() throws Exception {
+        String url = startServer(hit -> hit <= 2 ? 503 : 200);
+
+        ApiClient client = new ApiClient().withUrl(url).withThreadsMax(0).withRetryMax(3).withRetryBaseDelay(1);
+        Response  res    = client.get("things").get();
+
+        assertEquals(200, res.getStatusCode());
+        assertEquals(3, hits.get());
+        assertEquals(2, client.getCounters().getRetries());
+        assertEquals(3, client.getCounters().getAttempts());
+
+        //-- a POST is not idempotent so it is never retried
+        hits.set(0);
+        res = client.post("things", "{}").get();
+        assertEquals(503, res.getStatusCode());
+        assertEquals(1, hits.get());
+
+        //-- 404 is not a retryable status
+        client = new ApiClient().withUrl(restartServer(hit -> 404)).withThreadsMax(0).withRetryMax(3).withRetryBaseDelay(1);
+        assertEquals(404, client.get("things").get().getStatusCode());
+        assertEquals(0, client.getCounters().getRetries());
+    }
+
+    @Test
+    public void test_retry_delays_do_not_hold_a_worker_thread() throws Exception {
+        String url = startServer(hit -> hit == 1 ? 503 : 200);
+
+        ApiClient client = new ApiClient() {
+            @Override
+            protected long computeRetryDelay(int attempt, Response response) {
+                return 1000;
+            }
+        }.withUrl(url).withThreadsMax(1).withRetryMax(1);
+
+        ApiClient.FutureResponse retried = client.get("retried");
+        while (hits.get() < 1)
+            Thread.sleep(5);
+
+        //-- the only worker thread is free to run another request while the first waits to retry
+        Response other = client.get("other").get(500, TimeUnit.MILLISECONDS);
+        assertEquals(200, other.getStatusCode());
+        assertFalse(retried.isDone());
+
+        assertEquals(200, retried.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(1, client.getCounters().getRetries());
+    }
+
+    @Test
+    public void test_circuit_opens_fails_fast_and_closes_after_a_successful_probe() throws Exception {
+        int[]  status = {500};
+        String url    = startServer(hit -> status[0]);
+
+        ApiClient client = new ApiClient().withUrl(url).withThreadsMax(0).withCircuitFailureThreshold(2).withCircuitOpenTime(200);
+
+        assertEquals(500, client.get("a").get().getStatusCode());
+        assertFalse(client.isCircuitOpen(url));
+        assertEquals(500, client.get("a").get().getStatusCode());
+        assertTrue(client.isCircuitOpen(url));
+        assertEquals(1, client.getCounters().getCircuitOpens());
+
+        Response res = client.get("a").get();
+        assertEquals(503, res.getStatusCode());
+        assertEquals(2, hits.get());
+        assertEquals(1, client.getCounters().getShortCircuited());
+
+        status[0] = 200;
+        Thread.sleep(250);
+        assertEquals(200, client.get("a").get().getStatusCode());
+        assertFalse(client.isCircuitOpen(url));
+        assertEquals(200, client.get("a").get().getStatusCode());
+        assertEquals(4, hits.get());
+    }
+
+    @Test
+    public void test_route_concurrency_limit_rejects_excess_requests() throws Exception {
+        String url = startServer(hit -> -300);
+
+        ApiClient client = new ApiClient().withUrl(url).withThreadsMax(2).withRouteConcurrencyMax(1).withConnectionRequestTimeout(50);
+
+        ApiClient.FutureResponse first  = client.get("slow");
+        Thread.sleep(50);
+        ApiClient.FutureResponse second = client.get("slow");
+
+        assertEquals(200, first.get().getStatusCode());
+        assertEquals(503, second.get().getStatusCode());
+        assertEquals(1, hits.get());
+        assertEquals(1, client.getCounters().getRouteRejected());
+    }
+
+    @Test
+    public void test_slow_gets_are_hedged() throws Exception {
+        //-- the 11th hit stalls, its hedge, the 12th hit, responds right away
+        String url = startServer(hit -> hit == 11 ? -3000 : 200);
+
+        ApiClient client = new ApiClient().withUrl(url).withThreadsMax(0).withHedgePercentile(90).withHedgeMinSamples(5);
+        for (int i = 0; i < 10; i++)
+            assertEquals(200, client.get("fast").get().getStatusCode());
+
+        //-- on a busy machine a warmup call can be slow enough to be hedged itself so only count from here
+        hits.set(10);
+        long hedges    = client.getCounters().getHedges();
+        long hedgeWins = client.getCounters().getHedgeWins();
+
+        long     start = System.currentTimeMillis();
+        Response res   = client.get("fast").get();
+        long     took  = System.currentTimeMillis() - start;
+
+        assertEquals(200, res.getStatusCode());
+        assertTrue(took < 2000, "the hedge should have responded long before the stalled request, took " + took);
+        assertEquals(hedges + 1, client.getCounters().getHedges());
+        assertEquals(hedgeWins + 1, client.getCounters().getHedgeWins());
+    }
+
+    @Test
+    public void test_concurrent_identical_gets_are_coalesced() throws Exception {
+        String    url    = startServer(hit -> -200);
+        ApiClient client = new ApiClient().withUrl(url).withCoalesceGets(true);
+
+        int                  callers = 8;
+        CountDownLatch       ready   = new CountDownLatch(1);
+        ExecutorService      pool    = Executors.newFixedThreadPool(callers);
+        List<Future<Response>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> {
+                ready.await();
+                return client.get("things").get();
+            }));
+        }
+        ready.countDown();
+
+        Response first = null;
+        for (Future<Response> result : results) {
+            Response res = result.get(10, TimeUnit.SECONDS);
+            assertEquals(200, res.getStatusCode());
+            assertEquals("{\"status\":200}", res.getText());
+            assertNotSame(first, res);
+            first = res;
+        }
+        pool.shutdown();
+
+        assertEquals(1, hits.get());
+        assertEquals(callers - 1, client.getSingleFlight().getFollowers());
+
+        //-- different credentials are never coalesced
+        ArrayListValuedHashMap<String, String> headers = new ArrayListValuedHashMap<>();
+        headers.put("Authorization", "Bearer other");
+        client.call("GET", "things", null, null, headers).get();
+        assertEquals(2, hits.get());
+
+        //-- completed responses are reused within the ttl
+        client.withCoalesceTtl(60000);
+        client.get("things").get();
+        client.get("things").get();
+        assertEquals(3, hits.get());
+        assertEquals(1, client.getSingleFlight().getHits());
+    }
+}
@@ -3,12 +3,26 @@ package io.inversion;
 import io.inversion.ApiClient.FutureResponse;
 import io.inversion.utils.Utils;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ApiClientTest {
 
@@ -190,4 +204,262 @@ public class ApiClientTest {
         }
     }
 
+    @Test
+    public void test_futureResponse_completes_completableFuture() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ApiClient client = new ApiClient() {
+            protected Response doRequest(Request request) {
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                    Utils.rethrow(ex);
+                }
+                return new Response().withStatus(Status.SC_200_OK);
+            }
+        }.withUrl("http://somehost");
+
+        FutureResponse future = client.get("somepath");
+        assertNull(future.get(10, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<Integer> status = future.toCompletableFuture().thenApply(Response::getStatusCode);
+        assertFalse(status.isDone());
+
+        latch.countDown();
+        assertEquals(200, status.get(5, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+        assertSame(future.get(), future.get(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void test_executor_runs_all_tasks_and_counts_them() throws Exception {
+        ApiClient.Executor executor = new ApiClient.Executor().withThreadsMax(4).withQueueMax(10);
+        AtomicInteger      ran      = new AtomicInteger();
+
+        Future[] futures = new Future[100];
+        for (int i = 0; i < futures.length; i++)
+            futures[i] = executor.submit(ran::incrementAndGet);
+
+        for (Future future : futures)
+            future.get(5, TimeUnit.SECONDS);
+
+        assertEquals(100, ran.get());
+        assertEquals(100, executor.getSubmitted());
+        assertTrue(executor.getThreads() <= 4);
+        assertEquals(0, executor.getQueued());
+        assertEquals(0, executor.getRejected());
+
+        long start = System.currentTimeMillis();
+        while (executor.getCompleted() < 100 && System.currentTimeMillis() - start < 5000)
+            Thread.sleep(5);
+        assertEquals(100, executor.getCompleted());
+    }
+
+    @Test
+    public void test_executor_blocks_then_rejects_when_queue_is_full() throws Exception {
+        CountDownLatch     latch    = new CountDownLatch(1);
+        ApiClient.Executor executor = new ApiClient.Executor().withThreadsMax(1).withQueueMax(1).withQueueTimeout(50);
+
+        Runnable blocker = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                Utils.rethrow(ex);
+            }
+        };
+
+        Future running = executor.submit(blocker);
+        long   start   = System.currentTimeMillis();
+        while (executor.getActive() < 1 && System.currentTimeMillis() - start < 5000)
+            Thread.sleep(5);
+
+        Future queued = executor.submit(blocker);
+        assertEquals(1, executor.getQueued());
+
+        try {
+            executor.submit(blocker);
+            fail("the queue is full so the submit should have been rejected");
+        } catch (RejectedExecutionException ex) {
+            //expected
+        }
+        assertEquals(1, executor.getBlocked());
+        assertEquals(1, executor.getRejected());
+
+        latch.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        assertTrue(executor.getQueueWaitNanos() > 0);
+    }
+
+    @Test
+    public void test_executor_runs_synchronously_without_threads() {
+        ApiClient.Executor executor = new ApiClient.Executor().withThreadsMax(0);
+        Thread[]           ranOn    = new Thread[1];
+        Future             future   = executor.submit(() -> ranOn[0] = Thread.currentThread());
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), ranOn[0]);
+        assertEquals(0, executor.getThreads());
+    }
+
+    /**
+     * Starts a server that echoes the decompressed request body back prefixed with the request's Content-Encoding.
+     */
+    HttpServer startEchoServer() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String      encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            InputStream in       = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(encoding))
+                in = new GZIPInputStream(in);
+            byte[] body = ((encoding == null ? "none" : encoding) + ":" + Utils.read(in)).getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void test_request_body_is_streamed_and_compressed() throws Exception {
+        HttpServer server = startEchoServer();
+        try {
+            ApiClient client = new ApiClient().withUrl("http://127.0.0.1:" + server.getAddress().getPort()).withThreadsMax(0);
+
+            StringBuilder big = new StringBuilder();
+            for (int i = 0; i < 10000; i++)
+                big.append("line ").append(i).append("\n");
+
+            Response res = client.post("echo", big.toString()).get();
+            assertEquals(200, res.getStatusCode());
+            assertEquals("gzip:" + big, res.getText());
+
+            res = client.post("echo", "tiny").get();
+            assertEquals("none:tiny", res.getText());
+
+            Request req = new Request("POST", "http://127.0.0.1:" + server.getAddress().getPort() + "/echo");
+            req.withBodyStream(new ByteArrayInputStream("streamed".getBytes(StandardCharsets.UTF_8)));
+            res = client.call(req).get();
+            assertEquals("gzip:streamed", res.getText());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test_streamResponses_exposes_live_entity_stream() throws Exception {
+        HttpServer server = startEchoServer();
+        try {
+            ApiClient client = new ApiClient().withUrl("http://127.0.0.1:" + server.getAddress().getPort()).withThreadsMax(0).withStreamResponses(true);
+
+            Response res = client.post("echo", "hello streaming").get();
+            assertTrue(res.isStreaming());
+
+            InputStream in = res.getBodyStream();
+            assertFalse(res.isStreaming());
+            assertEquals("none:hello streaming", Utils.read(in));
+            in.close();
+
+            //-- the connection was released so the next call does not hang on the pool
+            res = client.post("echo", "again").get();
+            assertEquals("none:again", res.getText());
+            assertFalse(res.isStreaming());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test_replaced_body_stream_is_closed() {
+        AtomicInteger closed = new AtomicInteger();
+        Response      res    = new Response();
+
+        res.withBodyStream(new ByteArrayInputStream("live".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        });
+        res.withJson("{\"error\":true}");
+        assertEquals(1, closed.get());
+        assertFalse(res.isStreaming());
+        assertEquals(true, res.getJson().get("error"));
+    }
+
+    @Test
+    public void test_jdk_transport_sends_and_decompresses() throws Exception {
+        HttpServer server = startEchoServer();
+        server.createContext("/gzipped", exchange -> {
+            String                accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(("accept:" + accept).getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes.toByteArray());
+            }
+        });
+        try {
+            ApiClient client = new ApiClient().withUrl("http://127.0.0.1:" + server.getAddress().getPort()).withThreadsMax(0).withTransport(ApiClient.TRANSPORT_JDK);
+
+            StringBuilder big = new StringBuilder();
+            for (int i = 0; i < 10000; i++)
+                big.append("line ").append(i).append("\n");
+
+            Response res = client.post("echo", big.toString()).get();
+            assertEquals(200, res.getStatusCode());
+            assertEquals("gzip:" + big, res.getText());
+            assertEquals("none:tiny", client.post("echo", "tiny").get().getText());
+
+            res = client.get("gzipped").get();
+            assertEquals(200, res.getStatusCode());
+            assertEquals("accept:gzip", res.getText());
+            assertNull(res.getHeader("Content-Encoding"));
+
+            client.withStreamResponses(true);
+            res = client.post("echo", "streamed").get();
+            assertTrue(res.isStreaming());
+            try (InputStream in = res.getBodyStream()) {
+                assertEquals("none:streamed", Utils.read(in));
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new ApiClient().withTransport("carrier-pigeon"));
+    }
+
+    @Test
+    public void test_jdk_transport_resends_the_body_when_following_a_redirect() throws Exception {
+        HttpServer server = startEchoServer();
+        server.createContext("/moved", exchange -> {
+            Utils.read(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Location", "/echo");
+            exchange.sendResponseHeaders(307, -1);
+            exchange.close();
+        });
+        try {
+            ApiClient client = new ApiClient().withUrl("http://127.0.0.1:" + server.getAddress().getPort()).withThreadsMax(0).withTransport(ApiClient.TRANSPORT_JDK);
+
+            StringBuilder big = new StringBuilder();
+            for (int i = 0; i < 10000; i++)
+                big.append("line ").append(i).append("\n");
+
+            Response res = client.post("moved", big.toString()).get();
+            assertEquals(200, res.getStatusCode());
+            assertEquals("gzip:" + big, res.getText());
+
+            //-- a body stream can only be read once so it is never replayed empty
+            Request req = new Request("POST", "http://127.0.0.1:" + server.getAddress().getPort() + "/moved");
+            req.withBodyStream(new ByteArrayInputStream("streamed".getBytes(StandardCharsets.UTF_8)));
+            res = client.call(req).get();
+            assertEquals(500, res.getStatusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion;
+
+import io.inversion.json.JSMap;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConverterTest {
+
+    @Test
+    public void test_castJsonInput_matches_types() {
+        assertEquals(5L, Db.castJsonInput("bigint", "5"));
+        assertEquals(5L, Db.castJsonInput("BIGINT", 5));
+        assertEquals(5, Db.castJsonInput("integer", "5"));
+        assertEquals(5.5d, Db.castJsonInput("double", "5.5"));
+        assertEquals(5.0d, Db.castJsonInput("double", 5));
+        assertEquals(5L, Db.castJsonInput("numeric", "5"));
+        assertEquals(5.5d, Db.castJsonInput("numeric", "5.5"));
+        assertEquals(true, Db.castJsonInput("bit", "1"));
+        assertEquals(false, Db.castJsonInput("boolean", "false"));
+        assertEquals("abc", Db.castJsonInput("char", " abc "));
+        assertEquals(" abc ", Db.castJsonInput("varchar", " abc "));
+        assertEquals(5L, Db.castJsonInput((String) null, "5"));
+        assertEquals(5.5d, Db.castJsonInput((String) null, "5.5"));
+        assertEquals("abc", Db.castJsonInput((String) null, "abc"));
+        assertNull(Db.castJsonInput("integer", null));
+        assertThrows(ApiException.class, () -> Db.castJsonInput("unknown_type", "abc"));
+    }
+
+    @Test
+    public void test_castJsonInput_iso8601_fast_path_matches_utils_date() {
+        for (String date : new String[]{"2021-03-04T05:06:07Z", "2021-03-04T05:06:07.123Z", "2021-03-04T05:06:07+05:00", "2021-03-04", "20210304"}) {
+            Timestamp ts = (Timestamp) Db.castJsonInput("timestamp", date);
+            assertEquals(Utils.date(date).getTime(), ts.getTime(), date);
+        }
+
+        Date now = new Date();
+        assertEquals(now.getTime(), ((Timestamp) Db.castJsonInput("timestamp", now)).getTime());
+        assertEquals(Utils.date("04/03/2021").getTime(), ((java.sql.Date) Db.castJsonInput("date", "04/03/2021")).getTime());
+    }
+
+    @Test
+    public void test_castDbOutput_matches_types() {
+        Db db = new MockDb();
+
+        Date date = new Date();
+        assertEquals(Utils.formatIso8601(date), db.castDbOutput(new Property("a", "timestamp"), date));
+        assertEquals("abc", db.castDbOutput(new Property("a", "nchar"), "abc  "));
+        assertEquals("0A0B", db.castDbOutput(new Property("a", "varchar"), new byte[]{10, 11}));
+        assertEquals(5, db.castDbOutput(new Property("a", "integer"), 5));
+        assertEquals("value", ((JSMap) db.castDbOutput(new Property("a", "json"), "{\"key\":\"value\"}")).get("key"));
+        assertNull(db.castDbOutput(new Property("a", "json"), null));
+    }
+
+    @Test
+    public void test_property_converter_follows_type() {
+        Property prop = new Property("a", "integer");
+        assertSame(Converter.forType("integer"), prop.getConverter());
+        prop.withType("timestamp");
+        assertSame(Converter.forType("TIMESTAMP"), prop.getConverter());
+        assertFalse(Converter.forType("json").isOutputPreservesPrimitives());
+        assertTrue(Converter.forType("integer").isOutputPreservesPrimitives());
+    }
+}
@@ -0,0 +1,83 @@
+package io.inversion;
+
+import io.inversion.rql.Term;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DbQueryPlanTest {
+
+    static class PlanDb extends MockDb {
+        int        builds = 0;
+        List<Term> terms  = null;
+
+        @Override
+        protected List<Term> buildQueryTerms(Collection collection, Map<String, String> params) {
+            builds += 1;
+            return super.buildQueryTerms(collection, params);
+        }
+
+        @Override
+        public Results doSelect(Collection table, List<Term> columnMappedTerms) throws ApiException {
+            terms = columnMappedTerms;
+            return new Results(null);
+        }
+    }
+
+    static Map<String, String> params(String... keyValues) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            params.put(keyValues[i], keyValues[i + 1]);
+        return params;
+    }
+
+    @Test
+    public void test_plan_key_does_not_depend_on_param_order() {
+        PlanDb     db     = new PlanDb();
+        Collection orders = new Collection("orders").withProperties(new Property("ORDER_ID", "int").withJsonName("orderId"), new Property("SHIP_CITY", "varchar").withJsonName("shipCity"));
+
+        db.select(orders, params("orderId", "1", "shipCity", "Reims"));
+        String first = db.terms.toString();
+
+        db.select(orders, params("shipCity", "Reims", "orderId", "1"));
+        assertEquals(1, db.builds);
+        assertEquals(first, db.terms.toString());
+    }
+
+    @Test
+    public void test_plans_are_cleared_when_a_related_collection_changes() {
+        PlanDb     db        = new PlanDb();
+        Collection customers = new Collection("customers").withProperties(new Property("CUSTOMER_ID", "int").withJsonName("customerId"), new Property("CUST_NAME", "varchar").withJsonName("name"));
+        customers.withIndex("customers_pk", Index.TYPE_PRIMARY_KEY, true, "customerId");
+        Collection orders = new Collection("orders").withProperties(new Property("ORDER_ID", "int").withJsonName("orderId"), new Property("CUSTOMER_ID", "int").withJsonName("customerId"));
+        orders.withManyToOneRelationship("customer", customers, "customerId");
+
+        db.select(orders, params("eq(customer.name,Fuller)", null));
+        assertEquals("[eq(customer.CUST_NAME,Fuller)]", db.terms.toString());
+
+        db.select(orders, params("eq(customer.name,Fuller)", null));
+        assertEquals(1, db.builds);
+
+        customers.getProperty("name").withColumnName("CONTACT_NAME");
+        db.select(orders, params("eq(customer.name,Fuller)", null));
+        assertEquals(2, db.builds);
+        assertEquals("[eq(customer.CONTACT_NAME,Fuller)]", db.terms.toString());
+    }
+
+    @Test
+    public void test_cached_plans_are_copies() {
+        PlanDb     db     = new PlanDb();
+        Collection orders = new Collection("orders").withProperties(new Property("ORDER_ID", "int").withJsonName("orderId"));
+
+        db.select(orders, params("orderId", "1"));
+        db.terms.get(0).getTerm(0).withToken("changed");
+
+        db.select(orders, params("orderId", "1"));
+        assertEquals(1, db.builds);
+        assertEquals("[eq(ORDER_ID,1)]", db.terms.toString());
+    }
+}
@@ -27,11 +27,173 @@ import io.inversion.utils.Utils;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class EngineTest {
 
+    @Test
+    public void test_default_executor_is_bounded_without_virtual_threads() {
+        ExecutorService executor = Engine.getDefaultExecutor();
+        if (!(executor instanceof ThreadPoolExecutor))
+            return;//-- virtual threads are available
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        assertTrue(pool.getMaximumPoolSize() < Integer.MAX_VALUE);
+        assertTrue(pool.getQueue().remainingCapacity() < Integer.MAX_VALUE);
+        assertTrue(pool.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.CallerRunsPolicy);
+    }
+
+    @Test
+    public void test_coalesced_get_runs_the_request_when_the_leader_times_out() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger  calls   = new AtomicInteger();
+        Engine         engine  = new BlockingEngine(calls, release).withCoalesceGets(true).withCoalesceTimeout(100);
+
+        Thread leader = new Thread(() -> engine.service("GET", "http://localhost/things", null, null));
+        leader.start();
+        while (calls.get() < 1)
+            Thread.sleep(5);
+
+        Response res = engine.service("GET", "http://localhost/things", null, null);
+        assertEquals(200, res.getStatusCode());
+        assertEquals(2, calls.get());
+        assertEquals(1, engine.getSingleFlight().getFollowers());
+
+        release.countDown();
+        leader.join(5000);
+    }
+
+    @Test
+    public void test_nested_and_propagated_gets_are_not_coalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger  calls   = new AtomicInteger();
+        Engine         engine  = new BlockingEngine(calls, release).withCoalesceGets(true).withCoalesceTimeout(5000);
+
+        Thread leader = new Thread(() -> engine.service("GET", "http://localhost/things", null, null));
+        leader.start();
+        while (calls.get() < 1)
+            Thread.sleep(5);
+
+        try {
+            Chain.push(engine, new Request("GET", "http://localhost/root"), new Response());
+
+            //-- a worker running on behalf of the root request
+            Chain.propagate(() -> engine.service("GET", "http://localhost/things", null, null)).call();
+            assertEquals(2, calls.get());
+
+            //-- a call made inside another internal request
+            Chain.push(engine, new Request("GET", "http://localhost/nested"), new Response());
+            engine.service("GET", "http://localhost/things", null, null);
+            assertEquals(3, calls.get());
+            Chain.pop();
+        } finally {
+            Chain.pop();
+            release.countDown();
+            leader.join(5000);
+        }
+        assertEquals(0, engine.getSingleFlight().getFollowers());
+    }
+
+    @Test
+    public void test_gets_made_by_a_root_write_are_not_coalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger  calls   = new AtomicInteger();
+        Engine         engine  = new BlockingEngine(calls, release).withCoalesceGets(true).withCoalesceTimeout(5000);
+
+        Thread leader = new Thread(() -> engine.service("GET", "http://localhost/things", null, null));
+        leader.start();
+        while (calls.get() < 1)
+            Thread.sleep(5);
+
+        try {
+            //-- a POST re-reading what it wrote must not be handed another request's response
+            Chain.push(engine, new Request("POST", "http://localhost/things"), new Response());
+            engine.service("GET", "http://localhost/things", null, null);
+            assertEquals(2, calls.get());
+        } finally {
+            Chain.pop();
+            release.countDown();
+            leader.join(5000);
+        }
+        assertEquals(0, engine.getSingleFlight().getFollowers());
+    }
+
+    /**
+     * Answers every request with a 200, holding the first one until <code>release</code> opens.
+     */
+    static class BlockingEngine extends Engine {
+        final AtomicInteger  calls;
+        final CountDownLatch release;
+
+        BlockingEngine(AtomicInteger calls, CountDownLatch release) {
+            this.calls = calls;
+            this.release = release;
+        }
+
+        @Override
+        public Chain service(Request req, Response res) {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            res.withStatus(Status.SC_200_OK);
+            return null;
+        }
+    }
+
+    @Test
+    public void test_serviceAsync_runs_on_executor_and_completes_with_response() throws Exception {
+        AtomicInteger   submitted = new AtomicInteger();
+        ExecutorService pool      = Executors.newSingleThreadExecutor();
+        try {
+            Engine engine = new Engine().withExecutor(new AbstractExecutorService() {
+                public void execute(Runnable command) {
+                    submitted.incrementAndGet();
+                    pool.execute(command);
+                }
+
+                public void shutdown() {
+                }
+
+                public List<Runnable> shutdownNow() {
+                    return null;
+                }
+
+                public boolean isShutdown() {
+                    return false;
+                }
+
+                public boolean isTerminated() {
+                    return false;
+                }
+
+                public boolean awaitTermination(long timeout, TimeUnit unit) {
+                    return true;
+                }
+            });
+
+            Response res      = new Response();
+            Response returned = engine.serviceAsync(new Request("GET", "nothing/here"), res).toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+            assertSame(res, returned);
+            assertEquals(1, submitted.get());
+            assertTrue(res.getStatusCode() > 0);
+            assertNull(Chain.peek());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
     @Test
     public void test_simple_request() {
@@ -1,7 +1,30 @@
 package io.inversion;
 
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class RequestTest {
 
+    @Test
+    public void test_acceptsEncoding_honors_quality_values() {
+        assertFalse(new Request("GET", "http://localhost/").acceptsEncoding("gzip"));
+        assertTrue(accepts("gzip, deflate"));
+        assertTrue(accepts("deflate, GZIP;q=0.5"));
+        assertTrue(accepts("*"));
+        assertFalse(accepts("gzip;q=0"));
+        assertFalse(accepts("gzip; q=0.0, deflate"));
+        assertFalse(accepts("deflate, *;q=0"));
+        assertFalse(accepts("x-gzip"));
+        assertTrue(accepts("gzip;q=1, *;q=0"));
+        assertFalse(accepts("gzip;q=0, *"));
+    }
+
+    static boolean accepts(String acceptEncoding) {
+        return new Request("GET", "http://localhost/").withHeaders("Accept-Encoding", acceptEncoding).acceptsEncoding("gzip");
+    }
+
 //   JSNode singleNode = new JSMap("key1", "value1", "key2", "value2");
 //
 //   @Test
@@ -16,9 +16,18 @@
  */
 package io.inversion.action.db;
 
+import io.inversion.Chain;
+import io.inversion.Engine;
+import io.inversion.Request;
+import io.inversion.Response;
+import org.apache.commons.collections4.map.MultiKeyMap;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.fail;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class DbGetActionTest {
     @Test
@@ -73,4 +82,77 @@ public class DbGetActionTest {
     //         assertEquals(test[2], stripped);
     //      }
     //   }
+
+    @Test
+    public void test_fetch_runs_independent_groups_concurrently() {
+        Set<Thread>    threads = Collections.synchronizedSet(new HashSet<>());
+        List<Chain>    chains  = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch   = new CountDownLatch(3);
+
+        DbGetAction<DbGetAction> action = new DbGetAction<DbGetAction>() {
+            @Override
+            protected void fetch(List<Expansion> group, MultiKeyMap pkCache) {
+                threads.add(Thread.currentThread());
+                chains.add(Chain.peek());
+                try {
+                    //-- only completes if all three groups are being fetched at the same time
+                    latch.countDown();
+                    assertTrue(latch.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException ex) {
+                    fail(ex);
+                }
+            }
+        }.withExpandConcurrency(3);
+
+        Request req   = new Request("GET", "http://localhost/employees");
+        Chain   chain = Chain.push(new Engine(), req, new Response());
+        try {
+            action.fetch(req, Arrays.asList(groups("territories", "orders", "manager")), new MultiKeyMap());
+        } finally {
+            Chain.pop();
+        }
+
+        assertEquals(3, threads.size());
+        assertEquals(3, chains.size());
+        chains.forEach(c -> assertSame(chain, c));
+    }
+
+    @Test
+    public void test_fetch_concurrency_is_capped_per_request() {
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+
+        DbGetAction<DbGetAction> action = new DbGetAction<DbGetAction>() {
+            @Override
+            protected void fetch(List<Expansion> group, MultiKeyMap pkCache) {
+                threads.add(Thread.currentThread());
+            }
+        }.withExpandConcurrency(2);
+
+        Request req = new Request("GET", "http://localhost/employees");
+        Chain.push(new Engine(), req, new Response());
+        try {
+            action.fetch(req, Arrays.asList(groups("territories", "orders", "manager", "reportsTo")), new MultiKeyMap());
+        } finally {
+            Chain.pop();
+        }
+        assertTrue(threads.size() <= 2);
+        assertTrue(threads.contains(Thread.currentThread()));
+
+        threads.clear();
+        req = new Request("POST", "http://localhost/employees");
+        Chain.push(new Engine(), req, new Response());
+        try {
+            action.fetch(req, Arrays.asList(groups("territories", "orders")), new MultiKeyMap());
+        } finally {
+            Chain.pop();
+        }
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    List<DbGetAction.Expansion>[] groups(String... paths) {
+        List<DbGetAction.Expansion>[] groups = new List[paths.length];
+        for (int i = 0; i < paths.length; i++)
+            groups[i] = Collections.singletonList(new DbGetAction.Expansion(null, paths[i]));
+        return groups;
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.action.db;
+
+import io.inversion.Collection;
+import io.inversion.Url;
+import io.inversion.json.JSMap;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryProjectionTest {
+
+    Collection books;
+    Collection authors;
+
+    QueryProjectionTest() {
+        books = new Collection("books")
+                .withProperty("bookId", "int", false)//
+                .withProperty("authorId", "int")//
+                .withProperty("isbn", "string")//
+                .withProperty("title", "string")//
+                .withIndex("primaryIndex", "primary", true, "bookId");
+
+        authors = new Collection("authors")
+                .withProperty("authorId", "int")//
+                .withProperty("name", "string")//
+                .withProperty("bio", "string")//
+                .withIndex("primaryIndex", "primary", true, "authorId");
+
+        authors.withOneToManyRelationship("books", books, "authorId");
+        books.withManyToOneRelationship("author", authors, "authorId");
+    }
+
+    QueryProjection projection(String queryString) {
+        return QueryProjection.of(new Url("http://localhost/books?" + queryString));
+    }
+
+    @Test
+    public void test_dotted_includes_are_resolved_per_expansion_level() {
+        QueryProjection projection = projection("include=title,author.name&expand=author");
+
+        assertEquals("[authorId, bookId, title]", sorted(projection.getProperties(books, "")));
+        assertEquals("[authorId, name]", sorted(projection.getProperties(authors, "author")));
+
+        //-- the keys needed to assemble the response were not requested
+        assertFalse(projection.isExact(books, ""));
+    }
+
+    @Test
+    public void test_one_to_many_expansion_selects_child_keys() {
+        QueryProjection projection = projection("include=name,books.title&expand=books");
+
+        assertEquals("[authorId, name]", sorted(projection.getProperties(authors, "")));
+        assertEquals("[bookId, title]", sorted(projection.getProperties(books, "books")));
+    }
+
+    @Test
+    public void test_exact_when_keys_are_included() {
+        QueryProjection projection = projection("include=bookId,title,authorId,author.authorId,author.name&expand=author");
+        assertTrue(projection.isExact(books, ""));
+
+        projection = projection("include=bookId,title,authorId,author.authorId|name&expand=author");
+        assertTrue(projection.isExact(books, ""));
+
+        //-- the expanded relationship itself is not included
+        projection = projection("include=bookId,title,authorId&expand=author");
+        assertFalse(projection.isExact(books, ""));
+        assertEquals("[authorId]", sorted(projection.getProperties(authors, "author")));
+    }
+
+    @Test
+    public void test_excludes_are_not_selected() {
+        QueryProjection projection = projection("include=bookId,title,isbn&exclude=isbn");
+        assertEquals("[bookId, title]", sorted(projection.getProperties(books, "")));
+        assertTrue(projection.isExact(books, ""));
+
+        //-- required keys are selected even if they are excluded
+        projection = projection("include=bookId,title&exclude=bookId&expand=author");
+        assertEquals("[authorId, bookId, title]", sorted(projection.getProperties(books, "")));
+        assertFalse(projection.isExact(books, ""));
+    }
+
+    @Test
+    public void test_keys_are_only_selected_when_needed() {
+        //-- nothing is expanded, linked to or keyed by href so the include list is passed on as is
+        assertEquals("[title, isbn]", projection("include=title,isbn").getProperties(books, "").toString());
+
+        assertEquals("[title, bookId]", projection("include=title,href").getProperties(books, "").toString());
+        assertEquals("[name, authorId]", projection("include=name,books").getProperties(authors, "").toString());
+    }
+
+    @Test
+    public void test_requested_properties_keep_their_order() {
+        assertEquals("[isbn, title, bookId, authorId]", projection("include=isbn,title&expand=author").getProperties(books, "").toString());
+    }
+
+    @Test
+    public void test_linked_relationship_selects_foreign_key() {
+        QueryProjection projection = projection("include=title,author");
+        assertEquals("[authorId, title]", sorted(projection.getProperties(books, "")));
+    }
+
+    @Test
+    public void test_unknown_and_column_names_pass_through() {
+        QueryProjection projection = projection("include=bookId,someColumn,href");
+        assertEquals("[bookId, somecolumn]", sorted(projection.getProperties(books, "")));
+        assertTrue(projection.isExact(books, ""));
+    }
+
+    @Test
+    public void test_not_pushed_down() {
+        assertNull(projection(""));
+        assertNull(projection("exclude=isbn"));
+        assertNull(projection("include=title,author.*&expand=author"));
+        assertNull(projection("include=t?tle"));
+
+        //-- extra key properties would change the rows these return
+        assertNull(projection("distinct&include=title"));
+        assertNull(projection("group(authorId)&as(count(*),books)&include=authorId,books"));
+        assertNull(projection("sum(bookId)&include=title"));
+        assertNull(projection("include=title&count(isbn)"));
+    }
+
+    @Test
+    public void test_push_down_replaces_include_param() {
+        QueryProjection          projection = projection("include=title,author.name&expand=author&sort=title");
+        Map<String, String> params     = projection.pushDown(books, "", new Url("http://localhost/books?include=title,author.name&expand=author&sort=title").getParams());
+        assertEquals("title", params.get("sort"));
+        assertEquals("[authorId, bookId, title]", sorted(Utils.explode(",", params.get("include"))));
+    }
+
+    @Test
+    public void test_matches_detects_dbs_that_ignore_includes() {
+        QueryProjection projection = projection("include=bookId,title");
+        assertTrue(projection.matches(books, "", Collections.emptyList()));
+        assertTrue(projection.matches(books, "", Arrays.asList(new JSMap("BOOKID", 1, "title", "a"))));
+        assertFalse(projection.matches(books, "", Arrays.asList(new JSMap("bookId", 1, "title", "a", "isbn", "b"))));
+    }
+
+    static String sorted(java.util.Collection<String> names) {
+        Set<String> sorted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        sorted.addAll(names);
+        return sorted.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package io.inversion.action.misc;
+
+import io.inversion.ApiException;
+import io.inversion.Request;
+import io.inversion.Response;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileActionTest {
+
+    @TempDir
+    File dir;
+
+    File write(String name, String content) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    Response get(FileAction action, String file, String... headers) {
+        Request req = new Request("GET", "http://localhost/" + file);
+        for (int i = 0; i < headers.length - 1; i += 2)
+            req.withHeaders(headers[i], headers[i + 1]);
+
+        Response res = new Response();
+        action.serveFile(req, res, file, false);
+        return res;
+    }
+
+    @Test
+    public void test_small_files_are_cached_and_revalidated() throws Exception {
+        String     content = Utils.implode("", "<html>", "hello world hello world hello world hello world", "</html>");
+        File       file    = write("index.html", content);
+        FileAction action  = new FileAction().withBaseDir(dir.getAbsolutePath());
+
+        Response res = get(action, "index.html");
+        assertEquals(200, res.getStatusCode());
+        assertEquals("text/html", res.getContentType());
+        assertEquals("bytes", res.getHeader("Accept-Ranges"));
+        assertTrue(res.isRawBody());
+        assertNull(res.getBodyFile());
+        assertEquals(content, res.getText());
+
+        String etag         = res.getHeader("ETag");
+        String lastModified = res.getHeader("Last-Modified");
+        assertEquals(304, get(action, "index.html", "If-None-Match", etag).getStatusCode());
+        assertEquals(304, get(action, "index.html", "If-Modified-Since", lastModified).getStatusCode());
+
+        Response gzip = get(action, "index.html", "Accept-Encoding", "gzip");
+        assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+        assertEquals(content, Utils.read(new GZIPInputStream(new ByteArrayInputStream(gzip.getBody().getInputStream().readAllBytes()))));
+        assertEquals(304, get(action, "index.html", "If-None-Match", gzip.getHeader("ETag")).getStatusCode());
+
+        //-- a modified file is reloaded
+        Files.write(file.toPath(), "<html>changed</html>".getBytes("UTF-8"));
+        file.setLastModified(file.lastModified() + 5000);
+        res = get(action, "index.html", "If-None-Match", etag);
+        assertEquals(200, res.getStatusCode());
+        assertEquals("<html>changed</html>", res.getText());
+    }
+
+    @Test
+    public void test_large_files_are_sent_as_file_regions() throws Exception {
+        write("bundle.js", "0123456789");
+        FileAction action = new FileAction().withBaseDir(dir.getAbsolutePath()).withCacheMaxFileSize(0);
+
+        Response res = get(action, "bundle.js");
+        assertNotNull(res.getBodyFile());
+        assertEquals(10, res.getBodyFileLength());
+        assertEquals("0123456789", res.getText());
+
+        res = get(action, "bundle.js", "Range", "bytes=2-5");
+        assertEquals(206, res.getStatusCode());
+        assertEquals("bytes 2-5/10", res.getHeader("Content-Range"));
+        assertEquals(2, res.getBodyFileStart());
+        assertEquals("2345", res.getText());
+
+        res = get(action, "bundle.js", "Range", "bytes=-3");
+        assertEquals("bytes 7-9/10", res.getHeader("Content-Range"));
+        assertEquals("789", res.getText());
+
+        res = get(action, "bundle.js", "Range", "bytes=20-");
+        assertEquals(416, res.getStatusCode());
+        assertEquals("bytes */10", res.getHeader("Content-Range"));
+
+        res = get(action, "bundle.js", "Range", "bytes=2-5", "If-Range", "\"stale\"");
+        assertEquals(200, res.getStatusCode());
+        assertEquals("0123456789", res.getText());
+
+        String etag = res.getHeader("ETag");
+        res = get(action, "bundle.js", "Range", "bytes=8-", "If-Range", etag);
+        assertEquals(206, res.getStatusCode());
+        assertEquals("89", res.getText());
+    }
+
+    @Test
+    public void test_parseRange() {
+        assertArrayEquals(new long[]{0, 10}, FileAction.parseRange("bytes=0-", 10));
+        assertArrayEquals(new long[]{5, 10}, FileAction.parseRange("bytes=5-100", 10));
+        assertArrayEquals(new long[]{0, 10}, FileAction.parseRange("bytes=-100", 10));
+        assertArrayEquals(new long[0], FileAction.parseRange("bytes=10-", 10));
+        assertNull(FileAction.parseRange("bytes=0-1,3-4", 10));
+        assertNull(FileAction.parseRange("bytes=5-2", 10));
+        assertNull(FileAction.parseRange("items=0-1", 10));
+
+        assertTrue(FileAction.isSingleRange("bytes=-5"));
+        assertTrue(FileAction.isSingleRange("bytes=100-"));
+        assertFalse(FileAction.isSingleRange("bytes=0-1,3-4"));
+        assertFalse(FileAction.isSingleRange("bytes=5-2"));
+    }
+
+    @Test
+    public void test_paths_can_not_escape_the_base_dir() throws Exception {
+        write("secret.txt", "secret");
+        File       sub    = new File(dir, "public");
+        sub.mkdirs();
+        FileAction action = new FileAction().withBaseDir(sub.getAbsolutePath());
+        assertNull(action.findFile("../secret.txt"));
+
+        //-- neither the file nor the stream lookup is tried, even when running as a filter
+        ApiException ex = assertThrows(ApiException.class, () -> action.serveFile(new Request("GET", "http://localhost/"), new Response(), "../secret.txt", false));
+        assertEquals(404, ex.getStatusCode());
+        ex = assertThrows(ApiException.class, () -> action.serveFile(new Request("GET", "http://localhost/"), new Response(), "public/../../secret.txt", true));
+        assertEquals(404, ex.getStatusCode());
+    }
+}
@@ -0,0 +1,121 @@
+package io.inversion.action.openapi;
+
+import io.inversion.Api;
+import io.inversion.Request;
+import io.inversion.Response;
+import io.inversion.json.JSMap;
+import io.inversion.utils.Utils;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.info.Info;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenAPIActionCacheTest {
+
+    static class CountingAction extends OpenAPIAction<CountingAction> {
+        final AtomicInteger generated = new AtomicInteger();
+
+        CountingAction() {
+            withTemplateBaseDir(null);
+            withPatchesBaseDir(null);
+        }
+
+        @Override
+        public OpenAPI generateOpenApi(Request req) {
+            generated.incrementAndGet();
+            return new OpenAPI().info(new Info().title(req.getApi().getName()).version("1"));
+        }
+    }
+
+    Response get(OpenAPIAction action, Api api, String file, String... headers) {
+        Request req = new Request("GET", "http://localhost/" + file).withApi(api);
+        for (int i = 0; i < headers.length - 1; i += 2)
+            req.withHeaders(headers[i], headers[i + 1]);
+
+        Response res = new Response();
+        action.serveOpenApi(req, res, file);
+        return res;
+    }
+
+    @Test
+    public void test_documents_are_generated_once_and_revalidated_with_etags() throws Exception {
+        CountingAction action = new CountingAction();
+        Api            api    = new Api("petstore");
+
+        Response json = get(action, api, "openapi.json");
+        String   etag = json.getHeader("ETag");
+        assertNotNull(etag);
+        assertEquals("no-cache", json.getHeader("Cache-Control"));
+        assertTrue(json.getText().contains("\"title\" : \"petstore\""));
+
+        Response yaml = get(action, api, "openapi.yaml");
+        assertEquals("application/yaml", yaml.getContentType());
+        assertTrue(yaml.getText().contains("title: petstore"));
+        assertEquals(1, action.generated.get());
+
+        Response notModified = get(action, api, "openapi.json", "If-None-Match", etag);
+        assertEquals(304, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+        assertEquals(1, action.generated.get());
+
+        //-- a reloaded Api is a new instance
+        get(action, new Api("petstore"), "openapi.json");
+        assertEquals(2, action.generated.get());
+
+        api.withHash("changed");
+        get(action, api, "openapi.json");
+        assertEquals(3, action.generated.get());
+    }
+
+    @Test
+    public void test_gzipped_documents_are_served_when_accepted() throws Exception {
+        CountingAction action = new CountingAction();
+        Api            api    = new Api("petstore");
+
+        Response res = get(action, api, "openapi.json", "Accept-Encoding", "gzip, deflate");
+        assertEquals("gzip", res.getHeader("Content-Encoding"));
+        String etag = res.getHeader("ETag");
+        assertTrue(etag.endsWith("-gzip\""));
+
+        String text = Utils.read(new GZIPInputStream(new ByteArrayInputStream(res.getBody().getInputStream().readAllBytes())));
+        assertTrue(text.contains("\"title\" : \"petstore\""));
+
+        assertEquals(304, get(action, api, "openapi.json", "If-None-Match", etag).getStatusCode());
+        assertEquals(1, action.generated.get());
+
+        //-- a zero quality value refuses gzip
+        res = get(action, api, "openapi.json", "Accept-Encoding", "gzip;q=0, deflate");
+        assertNull(res.getHeader("Content-Encoding"));
+        assertTrue(res.getText().contains("\"title\" : \"petstore\""));
+    }
+
+    @Test
+    public void test_cached_documents_are_flagged_as_raw_so_the_engine_does_not_parse_them() {
+        Response res = get(new CountingAction(), new Api("petstore"), "openapi.json", "Accept-Encoding", "gzip");
+        assertTrue(res.isRawBody());
+        assertFalse(res.isProjected());
+
+        //-- replacing the body clears the flag
+        res.withJson(new JSMap());
+        assertFalse(res.isRawBody());
+    }
+
+    @Test
+    public void test_caching_can_be_disabled() {
+        CountingAction action = new CountingAction();
+        action.withCacheDocs(false);
+        Api            api    = new Api("petstore");
+
+        Response res = get(action, api, "openapi.json");
+        assertNull(res.getHeader("ETag"));
+        assertTrue(res.getJson() instanceof JSMap);
+
+        get(action, api, "openapi.json");
+        assertEquals(2, action.generated.get());
+    }
+}
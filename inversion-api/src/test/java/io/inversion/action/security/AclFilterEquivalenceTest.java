@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.action.security;
+
+import io.inversion.*;
+import io.inversion.utils.Path;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AclFilterEquivalenceTest {
+
+    static final String[] METHODS = {"GET", "POST", "PUT", "PATCH", "DELETE"};
+    static final String[] PATHS   = {"*", "books/*", "books/[id]", "books/{id}/author", "authors/*", "authors", "admin/*", "books/123"};
+    static final String[] NAMES   = {"reader", "writer", "admin", "auditor"};
+
+    @Test
+    public void test_compiled_decisions_match_linear_evaluation() {
+        Random random = new Random(20201019);
+
+        for (int round = 0; round < 50; round++) {
+            AclFilter filter = new AclFilter();
+            int       count  = 1 + random.nextInt(12);
+            for (int i = 0; i < count; i++)
+                filter.withAclRules(randomRule(random, i));
+
+            List<AclRule> rules = filter.getAclRules();
+
+            for (int i = 0; i < 200; i++) {
+                Request req  = randomRequest(random);
+                User    user = randomUser(random);
+
+                Chain.push(null, req, new Response()).withUser(user);
+                try {
+                    Object[]          expected = linear(rules, req);
+                    AclFilter.Decision actual   = filter.decide(req);
+
+                    assertEquals(expected[0], actual.isAllowed(), req.getMethod() + " " + req.getPath());
+                    assertSame(expected[1], actual.getMatched(), req.getMethod() + " " + req.getPath());
+                    assertEquals(expected[2], actual.info == null ? new ArrayList<>() : actual.info);
+
+                    boolean forbidden = false;
+                    try {
+                        filter.run(req, req.getChain().getResponse());
+                    } catch (ApiException ex) {
+                        assertTrue(ex.getStatus().startsWith("403"));
+                        forbidden = true;
+                    }
+                    assertEquals(!(Boolean) expected[0], forbidden);
+                } finally {
+                    Chain.pop();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_adding_rules_invalidates_compiled_table() {
+        AclFilter filter = new AclFilter().withAclRules(AclRule.allowAll("POST,books/*"));
+        Request   req    = new Request("GET", "http://localhost/books/1").withEndpointPath(new Path()).withActionPath(new Path("books/1"));
+
+        Chain.push(null, req, new Response()).withUser(new User().withRoles("reader"));
+        try {
+            assertFalse(filter.decide(req).isAllowed());
+            filter.withAclRules(AclRule.allowAll("GET,books/*"));
+            assertTrue(filter.decide(req).isAllowed());
+        } finally {
+            Chain.pop();
+        }
+    }
+
+    /**
+     * The original AclFilter algorithm.
+     */
+    Object[] linear(List<AclRule> rules, Request req) {
+        List<AclRule> info = new ArrayList<>();
+        for (AclRule aclRule : rules) {
+            if (aclRule.ruleMatches(req)) {
+                if (!aclRule.isAllow()) {
+                    return new Object[]{false, aclRule, info};
+                } else {
+                    if (!aclRule.isInfo() && aclRule.isAllow()) {
+                        return new Object[]{true, aclRule, info};
+                    } else {
+                        info.add(aclRule);
+                    }
+                }
+            }
+        }
+        return new Object[]{false, null, info};
+    }
+
+    AclRule randomRule(Random random, int order) {
+        AclRule rule = new AclRule().withName("rule" + order).withOrder(random.nextInt(5));
+
+        int includes = random.nextInt(3);
+        for (int i = 0; i < includes; i++)
+            rule.withIncludeOn(randomMethods(random) + "," + pick(random, PATHS));
+
+        if (random.nextInt(4) == 0)
+            rule.withExcludeOn(randomMethods(random) + "," + pick(random, PATHS));
+
+        if (random.nextBoolean())
+            rule.withRoles(randomNames(random));
+        if (random.nextInt(3) == 0)
+            rule.withPermissions(randomNames(random));
+        if (random.nextInt(5) == 0)
+            rule.withScopes(randomNames(random));
+
+        rule.withAllRolesMustMatch(random.nextBoolean());
+        rule.withAllPermissionsMustMatch(random.nextBoolean());
+        rule.withAllow(random.nextInt(4) != 0);
+        rule.withInfo(random.nextInt(4) == 0);
+        return rule;
+    }
+
+    Request randomRequest(Random random) {
+        String path = pick(random, new String[]{"books", "books/123", "books/456/author", "authors", "authors/1", "admin/users", "other"});
+        return new Request(pick(random, METHODS), "http://localhost/" + path).withEndpointPath(new Path()).withActionPath(new Path(path));
+    }
+
+    User randomUser(Random random) {
+        if (random.nextInt(5) == 0)
+            return null;
+
+        User user = new User();
+        for (String name : NAMES) {
+            if (random.nextBoolean())
+                user.withRoles(name);
+            if (random.nextInt(3) == 0)
+                user.withPermissions(name);
+        }
+        return user;
+    }
+
+    String randomMethods(Random random) {
+        StringBuilder methods = new StringBuilder();
+        for (String method : METHODS) {
+            if (random.nextInt(3) == 0)
+                methods.append(methods.length() > 0 ? "," : "").append(method);
+        }
+        return methods.toString();
+    }
+
+    String randomNames(Random random) {
+        return pick(random, NAMES) + (random.nextBoolean() ? "," + pick(random, NAMES) : "");
+    }
+
+    static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
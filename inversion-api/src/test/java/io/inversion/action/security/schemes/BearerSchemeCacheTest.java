@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015-2022 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.action.security.schemes;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.inversion.Request;
+import io.inversion.User;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BearerSchemeCacheTest {
+
+    static class CountingBearerScheme extends BearerScheme {
+        int verifications = 0;
+
+        @Override
+        public com.auth0.jwt.interfaces.DecodedJWT decodeJWT(String token, String secret) {
+            verifications += 1;
+            return super.decodeJWT(token, secret);
+        }
+    }
+
+    Request request(String token) {
+        return new Request("GET", "http://localhost/test").withHeaders("Authorization", "Bearer " + token);
+    }
+
+    @Test
+    public void test_verifiedTokensAreCached() {
+        List<String>         secrets = new ArrayList<>(Utils.asList("secret1"));
+        CountingBearerScheme scheme  = new CountingBearerScheme();
+        scheme.withSecretDao(req -> secrets);
+
+        User user = new User();
+        user.setSubject("test-user");
+        String token = scheme.buildToken(user, "secret1");
+
+        assertEquals("test-user", scheme.getUser(request(token), null).getSubject());
+        assertEquals("test-user", scheme.getUser(request(token), null).getSubject());
+        assertEquals(1, scheme.verifications);
+        assertNotSame(scheme.getUser(request(token), null), scheme.getUser(request(token), null));
+
+        //-- removing the secret that verified the token invalidates the cached entry
+        secrets.clear();
+        secrets.add("secret2");
+        assertNull(scheme.getUser(request(token), null));
+
+        scheme.withTokenCacheSize(0);
+        secrets.add("secret1");
+        scheme.verifications = 0;
+        scheme.getUser(request(token), null);
+        scheme.getUser(request(token), null);
+        assertEquals(4, scheme.verifications);
+    }
+
+    @Test
+    public void test_expiredTokensAreNotServedFromCache() throws Exception {
+        CountingBearerScheme scheme = new CountingBearerScheme();
+        scheme.withSecretDao(req -> Utils.asList("secret1"));
+
+        String token = JWT.create().withSubject("test-user").withExpiresAt(new Date(System.currentTimeMillis() + 1000)).sign(Algorithm.HMAC256("secret1"));
+        assertNotNull(scheme.getUser(request(token), null));
+
+        Thread.sleep(3500);
+        assertNull(scheme.getUser(request(token), null));
+        assertEquals(2, scheme.verifications);
+    }
+
+    @Test
+    public void test_jwksKeys() throws Exception {
+        KeyPair first  = generate();
+        KeyPair second = generate();
+
+        File jwksFile = File.createTempFile("jwks", ".json");
+        jwksFile.deleteOnExit();
+        Files.write(jwksFile.toPath(), jwks("key1", first).getBytes());
+
+        BearerScheme scheme = new BearerScheme();
+        scheme.withJwks(new JwksKeyProvider(jwksFile.getAbsolutePath()).withMinRefreshInterval(0));
+
+        String token = JWT.create().withKeyId("key1").withSubject("jwks-user").sign(Algorithm.RSA256(null, (RSAPrivateKey) first.getPrivate()));
+        assertEquals("jwks-user", scheme.getUser(request(token), null).getSubject());
+
+        //-- a token signed with the right kid but the wrong key fails
+        String forged = JWT.create().withKeyId("key1").withSubject("jwks-user").sign(Algorithm.RSA256(null, (RSAPrivateKey) second.getPrivate()));
+        assertNull(scheme.getUser(request(forged), null));
+
+        //-- an unknown kid forces a reload of the key set to pick up rotated keys
+        Files.write(jwksFile.toPath(), jwks("key2", second).getBytes());
+        String rotated = JWT.create().withKeyId("key2").withSubject("rotated-user").sign(Algorithm.RSA256(null, (RSAPrivateKey) second.getPrivate()));
+        assertEquals("rotated-user", scheme.getUser(request(rotated), null).getSubject());
+    }
+
+    @Test
+    public void test_jwksKeysWithUnsupportedCurvesAreSkipped() throws Exception {
+        KeyPair rsa = generate();
+        String  ok  = jwks("key1", rsa);
+        String  doc = ok.substring(0, ok.length() - 2) + ",{\"kty\":\"EC\",\"use\":\"sig\",\"kid\":\"key2\",\"crv\":\"secp256k1\",\"x\":\"AQ\",\"y\":\"AQ\"}]}";
+
+        Map<String, PublicKey> keys = JwksKeyProvider.parseJwks(doc);
+        assertEquals(1, keys.size());
+        assertEquals(rsa.getPublic(), keys.get("key1"));
+    }
+
+    KeyPair generate() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        return gen.generateKeyPair();
+    }
+
+    String jwks(String kid, KeyPair pair) {
+        RSAPublicKey key = (RSAPublicKey) pair.getPublic();
+        return "{\"keys\":[{\"kty\":\"RSA\",\"use\":\"sig\",\"alg\":\"RS256\",\"kid\":\"" + kid + "\",\"n\":\"" + base64Url(key.getModulus()) + "\",\"e\":\"" + base64Url(key.getPublicExponent()) + "\"}]}";
+    }
+
+    String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1)
+            bytes = java.util.Arrays.copyOfRange(bytes, 1, bytes.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
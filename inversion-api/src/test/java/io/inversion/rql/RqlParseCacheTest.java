@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.rql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RqlParseCacheTest {
+
+    /**
+     * A sample of query strings taken from the test suites and documentation.
+     */
+    static final String[] CORPUS = new String[]{//
+            "eq(orderId,10248)",//
+            "eq(shipCountry,France)",//
+            "and(eq(shipCity,Reims),gt(freight,30))",//
+            "or(eq(shipName,'Vins et alcools Chevalier'),eq(shipName,\"Toms Spezialitäten\"))",//
+            "in(orderId,10248,10249,10250,10251,10252)",//
+            "sort(-orderDate,orderId)",//
+            "page(2,25)",//
+            "include(orderId,customerId,employeeId,orderDate)",//
+            "expand(customer,employee,orderDetails.product)",//
+            "w(shipName,'et al')",//
+            "sw(customerId,VIN)",//
+            "and(ge(orderDate,'1996-07-04'),le(orderDate,'1996-07-31'),nn(shippedDate),not(eq(shipVia,3)))",//
+            "eq(employees.lastName,Fuller)",//
+            "n(shipRegion)",//
+            "eq(column with spaces,string with spaces)"};
+
+    @Test
+    public void test_parse_returns_independent_copies() {
+        Term first = Rql.parse("and(eq(shipCity,Reims),gt(freight,30))");
+        first.getTerm(0).getTerm(0).withToken("changed");
+        first.removeTerm(first.getTerm(1));
+
+        Term second = Rql.parse("and(eq(shipCity,Reims),gt(freight,30))");
+        assertNotSame(first, second);
+        assertEquals("and(eq(shipCity,Reims),gt(freight,30))", second.toString());
+        assertNull(second.getParent());
+        assertSame(second, second.getTerm(0).getParent());
+    }
+
+    @Test
+    public void test_parse_cached_matches_uncached() {
+        for (String rql : CORPUS) {
+            assertEquals(Rql.parse0(rql).toString(), Rql.parse(rql).toString(), rql);
+            assertEquals(Rql.parse0(rql).toString(), Rql.parse(rql).toString(), rql);
+        }
+    }
+}
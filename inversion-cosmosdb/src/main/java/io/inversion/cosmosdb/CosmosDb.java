@@ -20,6 +20,7 @@ import com.microsoft.azure.documentdb.*;
 import io.inversion.Index;
 import io.inversion.*;
 import io.inversion.json.JSMap;
+import io.inversion.json.JSParser;
 import io.inversion.rql.Term;
 import io.inversion.utils.Utils;
 
@@ -132,6 +133,30 @@ public class CosmosDb extends Db<CosmosDb> {
         return keys;
     }
 
+    /**
+     * Upserts each row just like {@link #doUpsert(Collection, List)} and returns the documents
+     * Cosmos hands back from the write, minus the "_" prefixed system properties, instead of
+     * requiring a follow up query.
+     *
+     * @param table the collection being modified
+     * @param rows  the column name keyed records being modified
+     * @return the persisted documents in the same order as <code>rows</code>
+     */
+    @Override
+    public List<Map<String, Object>> doUpsertReturning(Collection table, List<Map<String, Object>> rows) throws ApiException {
+        List<Map<String, Object>> docs = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            JSMap doc = JSParser.asJSMap(upsertDocument(table, row).toJson());
+            for (String key : new ArrayList<>(doc.keySet())) {
+                if (key.startsWith("_"))
+                    doc.remove(key);
+            }
+            doc.sort();
+            docs.add(doc);
+        }
+        return docs;
+    }
+
     void normalizePartitionKey(Collection collection, Map<String, Object> row) {
         //-- makes sure the partition key is set correctly on the document if there is one.
         Index partitionIdx = collection.getIndexByType(INDEX_TYPE_PARTITION_KEY);
@@ -145,6 +170,15 @@ public class CosmosDb extends Db<CosmosDb> {
     }
 
     public String upsertRow(Collection collection, Map<String, Object> row) throws ApiException {
+        return upsertDocument(collection, row).getId();
+    }
+
+    /**
+     * @param collection the collection being modified
+     * @param row        the column name keyed record to upsert
+     * @return the document as persisted by Cosmos
+     */
+    protected Document upsertDocument(Collection collection, Map<String, Object> row) throws ApiException {
         try {
 
             normalizePartitionKey(collection, row);
@@ -188,7 +222,7 @@ public class CosmosDb extends Db<CosmosDb> {
             if (!Utils.equal(id, returnedId))
                 throw ApiException.new500InternalServerError("The supplied 'id' field does not match the returned 'id' field: '{}' vs. '{}'", id, returnedId);
 
-            return id;
+            return response.getResource();
         } catch (Exception ex) {
             throw ApiException.new500InternalServerError(ex);
         }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.apiclient;
+
+import io.inversion.ApiClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the submit/complete throughput of {@link ApiClient.Executor} with many producer threads.
+ * <p>
+ * Each producer submits tiny tasks as fast as it can for a fixed time so the result is dominated by
+ * the cost of handing tasks to workers and by the contention between producers, workers and the
+ * bounded queue.  A few warmup rounds run before the measured rounds and the executor's queue
+ * wait, blocked and rejected counters are printed with the results.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.apiclient.ApiClientExecutorBenchmarkMain [producers] [threadsMax] [queueMax] [seconds]
+ * </pre>
+ */
+public class ApiClientExecutorBenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        int producers  = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int threadsMax = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int queueMax   = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int seconds    = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        System.out.println("producers=" + producers + " threadsMax=" + threadsMax + " queueMax=" + queueMax);
+
+        for (int i = 0; i < 3; i++)
+            run("warmup " + (i + 1), producers, threadsMax, queueMax, 1);
+
+        for (int i = 0; i < 5; i++)
+            run("round  " + (i + 1), producers, threadsMax, queueMax, seconds);
+    }
+
+    static void run(String label, int producers, int threadsMax, int queueMax, int seconds) throws Exception {
+        ApiClient.Executor executor = new ApiClient.Executor().withThreadsMax(threadsMax).withQueueMax(queueMax);
+        LongAdder          done     = new LongAdder();
+        Runnable           task     = done::increment;
+
+        CountDownLatch go       = new CountDownLatch(1);
+        long[]         deadline = new long[1];
+        List<Thread>   threads  = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                    while (System.nanoTime() < deadline[0])
+                        executor.submit(task);
+                } catch (InterruptedException ex) {
+                    //exit
+                }
+            }, "producer-" + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+
+        long start = System.nanoTime();
+        deadline[0] = start + TimeUnit.SECONDS.toNanos(seconds);
+        go.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        //-- wait for the queue to drain so every submitted task is measured as completed
+        while (executor.getCompleted() < executor.getSubmitted())
+            Thread.sleep(1);
+
+        double elapsed   = (System.nanoTime() - start) / 1_000_000_000d;
+        long   completed = executor.getCompleted();
+        double avgWaitUs = completed == 0 ? 0 : executor.getQueueWaitNanos() / 1000d / completed;
+
+        System.out.println(String.format("%s: %,.0f ops/s  completed=%,d  threads=%d  avgQueueWait=%.1fus  blocked=%,d  rejected=%,d", //
+                label, completed / elapsed, completed, executor.getThreads(), avgWaitUs, executor.getBlocked(), executor.getRejected()));
+
+        if (done.sum() != completed)
+            throw new IllegalStateException("Ran " + done.sum() + " tasks but completed " + completed);
+    }
+}
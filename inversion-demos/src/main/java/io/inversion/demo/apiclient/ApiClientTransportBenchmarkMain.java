@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.apiclient;
+
+import com.sun.net.httpserver.HttpServer;
+import io.inversion.ApiClient;
+import io.inversion.Response;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the Apache and JDK {@link ApiClient} transports making many concurrent calls to a local stub server.
+ * <p>
+ * The stub server waits <code>delayMs</code> before answering each call to simulate a slow downstream.  Each round
+ * fires <code>calls</code> GETs at once through an Executor with a thread per call and reports the wall clock time,
+ * throughput and the slowest call.
+ * <p>
+ * The stub is the JDK's HTTP/1.1 only HttpServer so this measures how each transport behaves under fan-out,
+ * the Apache transport queues on its <code>maxConPerRoute</code> connection pool while the JDK transport opens
+ * connections as needed.  Against an HTTP/2 server the JDK transport multiplexes the same calls over a single
+ * connection.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.apiclient.ApiClientTransportBenchmarkMain [calls] [delayMs] [rounds]
+ * </pre>
+ */
+public class ApiClientTransportBenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        int calls   = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int delayMs = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds  = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        HttpServer server = startServer(calls, delayMs);
+        String     url    = "http://127.0.0.1:" + server.getAddress().getPort();
+        System.out.println("calls=" + calls + " delayMs=" + delayMs);
+
+        try {
+            for (String transport : new String[]{ApiClient.TRANSPORT_APACHE, ApiClient.TRANSPORT_JDK}) {
+                ApiClient client = new ApiClient().withUrl(url).withTransport(transport).withSocketTimeout(120000).withConnectionRequestTimeout(120000);
+                client.withExecutor(new ApiClient.Executor().withThreadsMax(calls).withQueueMax(calls).withVirtualThreads(true));
+
+                run(transport + " warmup", client, Math.min(calls, 100));
+                for (int i = 0; i < rounds; i++)
+                    run(transport + " round " + (i + 1), client, calls);
+            }
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    static void run(String label, ApiClient client, int calls) {
+        long                           start   = System.nanoTime();
+        List<ApiClient.FutureResponse> futures = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++)
+            futures.add(client.get("things/" + i));
+
+        long slowest = 0;
+        int  errors  = 0;
+        for (ApiClient.FutureResponse future : futures) {
+            Response res = future.get();
+            if (res.getStatusCode() != 200)
+                errors += 1;
+            slowest = Math.max(slowest, res.getEndAt() - res.getStartAt());
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000d;
+        System.out.println(String.format("%-16s: %,8.0f calls/s  elapsed=%,.0fms  slowest=%,dms  errors=%d", label, calls / elapsed, elapsed * 1000, slowest, errors));
+    }
+
+    static HttpServer startServer(int backlog, int delayMs) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), backlog * 2);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.converter;
+
+import io.inversion.Converter;
+import io.inversion.Property;
+import io.inversion.utils.Utils;
+
+import java.util.Date;
+
+/**
+ * Compares converting mixed type values with precompiled per Property {@link Converter}s against the
+ * lower case and switch on the type name, for every value, that the Converters replaced.
+ * <p>
+ * Each round casts every input value as JSON input and then back out as Db output.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.converter.ConverterBenchmarkMain [values] [rounds]
+ * </pre>
+ */
+public class ConverterBenchmarkMain {
+
+    public static void main(String[] args) {
+        int count  = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Property[] props  = new Property[]{new Property("a", "integer"), new Property("b", "varchar"), new Property("c", "timestamp"), new Property("d", "double"), new Property("e", "boolean"), new Property("f", "char")};
+        Object[]   inputs = new Object[]{"12345", "some text", "2021-03-04T05:06:07.123Z", "123.45", "true", "  padded  "};
+
+        Object[] precompiled = new Object[count];
+        Object[] switched    = new Object[count];
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Converter converter = props[i % props.length].getConverter();
+                precompiled[i] = converter.castDbOutput(converter.castJsonInput(inputs[i % inputs.length]));
+            }
+            long precompiledNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Property prop = props[i % props.length];
+                switched[i] = switchCastDbOutput(prop.getType(), switchCastJsonInput(prop.getType(), inputs[i % inputs.length]));
+            }
+            long switchedNanos = System.nanoTime() - start;
+
+            for (int i = 0; i < count; i++) {
+                if (!precompiled[i].equals(switched[i]))
+                    throw new IllegalStateException("Converted values differ at " + i + ": " + precompiled[i] + " != " + switched[i]);
+            }
+
+            System.out.println((round == 1 ? "warmup " : "round  ") + round + ": " + count + " values in " + (precompiledNanos / 1000000) + "ms precompiled, " + (switchedNanos / 1000000) + "ms switching on the type name");
+        }
+    }
+
+    /**
+     * The per value type switch that Db.castJsonInput used before Converters, limited to the benchmarked types.
+     */
+    static Object switchCastJsonInput(String type, Object value) {
+        if (value == null)
+            return null;
+
+        switch (type.toLowerCase()) {
+            case "char":
+            case "nchar":
+            case "clob":
+                return value.toString().trim();
+            case "string":
+            case "varchar":
+            case "nvarchar":
+                return value.toString();
+            case "bool":
+            case "boolean":
+            case "bit": {
+                if ("1".equals(value))
+                    value = "true";
+                else if ("0".equals(value))
+                    value = "false";
+                return Boolean.parseBoolean(value.toString());
+            }
+            case "integer":
+                return Integer.parseInt(value.toString());
+            case "bigint":
+                return Long.parseLong(value.toString());
+            case "float":
+            case "real":
+            case "double":
+                return Double.parseDouble(value.toString());
+            case "date":
+            case "datetime":
+                return new java.sql.Date(Utils.date(value.toString()).getTime());
+            case "timestamp":
+                return new java.sql.Timestamp(Utils.date(value.toString()).getTime());
+            default:
+                throw new IllegalArgumentException("Error casting '" + value + "' as type '" + type + "'");
+        }
+    }
+
+    /**
+     * The per value type checks that Db.castDbOutput used before Converters.
+     */
+    static Object switchCastDbOutput(String type, Object value) {
+        if (type == null || value == null)
+            return value;
+
+        type = type.toLowerCase();
+
+        if (value instanceof byte[])
+            value = Utils.bytesToHex((byte[]) value);
+        else if (Utils.in(type, "char", "nchar", "clob"))
+            value = value.toString().trim();
+        else if (value instanceof Date && Utils.in(type, "date", "datetime", "timestamp"))
+            value = Utils.formatIso8601((Date) value);
+
+        return value;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.zjsonpatch.JsonDiff;
+import com.flipkart.zjsonpatch.JsonPatch;
+import io.inversion.json.JSList;
+import io.inversion.json.JSMap;
+import io.inversion.json.JSNode;
+import io.inversion.json.JSParser;
+
+/**
+ * Diffs and patches a large document with a handful of changes using the native JSON Patch support
+ * in {@link JSNode#diff(JSNode)} and {@link JSNode#patch(JSList)} and compares the elapsed time with
+ * zjsonpatch, including the string round trips through Jackson that using zjsonpatch required.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.json.JSPatchBenchmarkMain [documentKB] [rounds]
+ * </pre>
+ */
+public class JSPatchBenchmarkMain {
+
+    static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        int kb     = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        JSMap  source  = new JSMap("meta", new JSMap("version", 1));
+        JSList records = new JSList();
+        source.put("data", records);
+        for (int i = 0; source.toString(false).length() < kb * 1024; i++) {
+            for (int j = 0; j < 500; j++) {
+                int id = i * 500 + j;
+                records.add(new JSMap("id", id, "name", "record " + id, "price", id * 1.25, "active", id % 2 == 0, "tags", new JSList("a" + id % 7, "b" + id % 11)));
+            }
+        }
+
+        int   size   = records.size();
+        JSMap target = (JSMap) JSParser.asJSNode(source.toString());
+        target.getMap("meta").put("version", 2);
+        target.getList("data").remove(10);
+        target.getList("data").getMap(size / 4).put("name", "changed");
+        target.getList("data").add(size / 2, new JSMap("id", -1, "name", "inserted"));
+        target.getList("data").getMap(size - 10).getList("tags").add("c");
+
+        String expected = target.toString(false);
+        for (int round = 1; round <= rounds; round++) {
+            JSMap copy = (JSMap) JSParser.asJSNode(source.toString());
+
+            long   start   = System.nanoTime();
+            JSList patches = target.diff(copy);
+            copy.patch(patches);
+            long nativeTime = System.nanoTime() - start;
+            check(expected, copy.toString(false), "native");
+
+            copy = (JSMap) JSParser.asJSNode(source.toString());
+            start = System.nanoTime();
+            JsonNode zpatches  = JsonDiff.asJson(mapper.readTree(copy.toString()), mapper.readTree(target.toString()));
+            JSList   zlist     = JSParser.asJSList(zpatches.toPrettyString());
+            JsonNode zpatched  = JsonPatch.apply(mapper.readTree(zlist.toString()), mapper.readTree(copy.toString()));
+            JSNode   result    = JSParser.asJSNode(zpatched.toString());
+            long     zjsonTime = System.nanoTime() - start;
+            check(expected, result.toString(false), "zjsonpatch");
+
+            System.out.println((round == 1 ? "warmup " : "round  ") + round + ": diffed and patched a " + (expected.length() / 1024) + "KB document with " + patches.size() + " patches in " + (nativeTime / 1000000) + "ms natively, " + (zjsonTime / 1000000) + "ms with zjsonpatch and string round trips");
+        }
+    }
+
+    static void check(String expected, String actual, String which) {
+        if (!expected.equals(actual))
+            throw new IllegalStateException("The " + which + " patched document does not match the target");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.json;
+
+import io.inversion.json.JSFind;
+import io.inversion.json.JSNode;
+import io.inversion.json.JSParser;
+import io.inversion.json.JSPath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Evaluates a set of JSON Path, JSON Pointer and 'dot and wildcard' expressions against a small document
+ * with compiled and cached {@link JSPath}s and compares the elapsed time with the original implementation
+ * that tokenized each expression on every call.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.json.JSPathBenchmarkMain [iterations] [rounds]
+ * </pre>
+ */
+public class JSPathBenchmarkMain {
+
+    static final String[] EXPRESSIONS = {//
+            "$..book[?(@.author = 'Herman Melville')]", "$.store..price", "**.store.**.price", "$..book[2]", "**.book.2",//
+            "$..*", "**.*", "$.store.book[*].author", "store.book.*.author", "**.store.book.*.author", "*.store.book.*.author",//
+            "$..book[?(@.price = 12.99)]", "$..book[?(@.price >= 12.99)]", "$..book[?(@.price!=8.99)]", "$..book[?(@.price != 100)]",//
+            "**.bicycle", "**.*.[?(@.price)]", "**.*.[?(@.price != 100)]", "$..[?(@.price != 100)]", "$..[?(@.price!=100)]",//
+            "$..book[?(@.isbn)]", "$..[?(@.*.*.isbn)]", "$..[?(@.price<10)]", "$..[?(@.*.price<30)]", "$..[?(@.bicycle.price)]",//
+            "store.bicycle.price", "*.bicycle.price", "*.*.color", "**.color", "*.*.*.color", "$..[?(@.store.bicycle.price)]",//
+            "$..[?(@.*.*.color)]", "$..[?(@.*.bicycle.price)]", "$..[?(@.bicycle.price>10)]", "$..[?(@.store.bicycle.price>10)]",//
+            "$.store.book[(@.length-1)]", "$.store.book[-1:]", "$.store.book[-2:]", "$.store.book[(@.length-2)]", "$.store.book[:3]",//
+            "$.store.book[1:3]", "**.book[?(@.category)]", "/store/book/0/title", "#/store/bicycle"//
+    };
+
+    static final String DOC = "{'store': {'book': [" //
+            + "{'category': 'reference', 'author': 'Nigel Rees', 'title': 'Sayings of the Century', 'price': 8.95}," //
+            + "{'category': 'fiction', 'author': 'Evelyn Waugh', 'title': 'Sword of Honour', 'price': 12.99}," //
+            + "{'category': 'fiction', 'author': 'Herman Melville', 'title': 'Moby Dick', 'isbn': '0-553-21311-3', 'price': 8.99}," //
+            + "{'category': 'fiction', 'author': 'J. R. R. Tolkien', 'title': 'The Lord of the Rings', 'isbn': '0-395-19395-8', 'price': 22.99}]," //
+            + "'bicycle': {'color': 'red', 'price': 19.95}}}";
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds     = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        JSNode doc = JSParser.asJSNode(DOC.replace('\'', '"'));
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String expression : EXPRESSIONS)
+                    doc.findAll(expression);
+            }
+            long compiled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                for (String expression : EXPRESSIONS)
+                    doc.findAll0(JSFind.fromJsonPath(JSFind.fromJsonPointer(expression)), -1, new ArrayList(), new HashMap());
+            }
+            long original = System.nanoTime() - start;
+
+            System.out.println((round == 1 ? "warmup " : "round  ") + round + ": evaluated " + (iterations * EXPRESSIONS.length) + " expressions in " + (compiled / 1000000) + "ms compiled, " + (original / 1000000) + "ms tokenizing every call");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.rql;
+
+import io.inversion.rql.Rql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares parsing a corpus of RQL clauses that are already in the {@link Rql} parse cache with
+ * parsing clauses that always miss it.
+ * <p>
+ * Each miss is forced by appending a unique literal to the clause so the uncached numbers include
+ * tokenizing, building the Term tree and the cache churn a miss causes.  The threads argument
+ * parses the corpus concurrently to show whether cache hits contend with each other.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java io.inversion.demo.rql.RqlParseBenchmarkMain [iterations] [threads] [rounds]
+ * </pre>
+ */
+public class RqlParseBenchmarkMain {
+
+    /**
+     * A sample of query strings taken from the test suites and documentation.
+     */
+    static final String[] CORPUS = new String[]{//
+            "eq(orderId,10248)",//
+            "eq(shipCountry,France)",//
+            "and(eq(shipCity,Reims),gt(freight,30))",//
+            "or(eq(shipName,'Vins et alcools Chevalier'),eq(shipName,\"Toms Spezialitäten\"))",//
+            "in(orderId,10248,10249,10250,10251,10252)",//
+            "sort(-orderDate,orderId)",//
+            "page(2,25)",//
+            "include(orderId,customerId,employeeId,orderDate)",//
+            "expand(customer,employee,orderDetails.product)",//
+            "w(shipName,'et al')",//
+            "sw(customerId,VIN)",//
+            "and(ge(orderDate,'1996-07-04'),le(orderDate,'1996-07-31'),nn(shippedDate),not(eq(shipVia,3)))",//
+            "eq(employees.lastName,Fuller)",//
+            "n(shipRegion)",//
+            "eq(column with spaces,string with spaces)"};
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int threads    = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int rounds     = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                long uncached = run(executor, threads, iterations, true);
+                long cached   = run(executor, threads, iterations, false);
+                System.out.println((round == 1 ? "warmup " : "round  ") + round + ": " + threads + " thread(s) parsed " + (threads * iterations * CORPUS.length) + " clauses in " + (uncached / 1000000) + "ms uncached, " + (cached / 1000000) + "ms cached");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static long run(ExecutorService executor, int threads, int iterations, boolean miss) throws Exception {
+        long            start   = System.nanoTime();
+        List<Future<?>>     futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    for (String rql : CORPUS) {
+                        if (miss)
+                            Rql.parse("and(" + rql + ",eq(miss," + thread + "_" + i + "))");
+                        else
+                            Rql.parse(rql);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.demo.virtualthreads;
+
+import io.inversion.*;
+import io.inversion.json.JSMap;
+import io.inversion.spring.main.InversionMain;
+import io.inversion.utils.Utils;
+import io.inversion.utils.VirtualThreads;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of the embedded Tomcat with its default platform thread pool to the
+ * throughput with <code>inversion.virtualThreads=true</code> when every request blocks on a slow backend.
+ * <p>
+ * Each request to <code>http://localhost:8080/slow</code> sleeps for <code>backendMillis</code> to simulate a
+ * blocking JDBC, ApiClient or SDK call.  With a 200 thread pool, 2000 concurrent requests need at least
+ * 10 rounds of <code>backendMillis</code> to finish.  With virtual threads they can all block at the same time.
+ * <p>
+ * Virtual threads require Java 21+.  Usage:
+ * <pre>
+ *   java io.inversion.demo.virtualthreads.VirtualThreadsLoadTestMain [concurrentRequests] [backendMillis]
+ * </pre>
+ */
+public class VirtualThreadsLoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        int concurrentRequests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int backendMillis      = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        if (!VirtualThreads.isSupported())
+            System.err.println("Virtual threads are not supported by this JVM, both runs will use platform threads.");
+
+        double platform = run(false, concurrentRequests, backendMillis);
+        double virtual  = run(true, concurrentRequests, backendMillis);
+
+        System.out.println();
+        System.out.println("concurrent requests : " + concurrentRequests);
+        System.out.println("backend latency     : " + backendMillis + "ms");
+        System.out.println("platform threads    : " + String.format("%.1f", platform) + " requests/sec");
+        System.out.println("virtual threads     : " + String.format("%.1f", virtual) + " requests/sec");
+    }
+
+    public static Api buildApi(int backendMillis) {
+        return new Api()//
+                .withEndpoint("GET,slow/*", new Action() {
+                    @Override
+                    public void run(Request req, Response res) throws ApiException {
+                        //-- stands in for a slow, blocking backend call
+                        Utils.sleep(backendMillis);
+                        res.withJson(new JSMap("thread", Thread.currentThread().toString()));
+                    }
+                });
+    }
+
+    static double run(boolean virtualThreads, int concurrentRequests, int backendMillis) throws Exception {
+        InversionMain.run(new String[]{"--" + EngineServlet.VIRTUAL_THREADS_PROP + "=" + virtualThreads, "--server.tomcat.accept-count=" + concurrentRequests, "--server.tomcat.max-connections=" + (concurrentRequests * 2)}, new Api[]{buildApi(backendMillis)});
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+            URI        uri    = URI.create("http://127.0.0.1:8080/slow");
+
+            //-- warm up
+            client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+
+            AtomicInteger              errors  = new AtomicInteger(0);
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            long                       start   = System.nanoTime();
+            for (int i = 0; i < concurrentRequests; i++) {
+                futures.add(client.sendAsync(HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5)).build(), HttpResponse.BodyHandlers.discarding())//
+                        .thenAccept(res -> {
+                            if (res.statusCode() != 200)
+                                errors.incrementAndGet();
+                        }).exceptionally(ex -> {
+                            errors.incrementAndGet();
+                            return null;
+                        }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            System.out.println((virtualThreads ? "virtual" : "platform") + " threads: " + concurrentRequests + " requests in " + millis + "ms with " + errors.get() + " errors");
+            return concurrentRequests * 1000d / Math.max(1, millis);
+        } finally {
+            InversionMain.exit();
+        }
+    }
+}
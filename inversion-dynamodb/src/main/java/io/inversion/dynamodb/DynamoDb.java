@@ -24,6 +24,7 @@ import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
@@ -143,6 +144,32 @@ public class DynamoDb<T extends DynamoDb> extends Db<T> {
         return keys;
     }
 
+    /**
+     * Writes each row with the same UpdateItem call as {@link #doUpsert(Collection, List)} but asks
+     * DynamoDb for <code>ReturnValues.ALL_NEW</code> so the persisted item comes back with the write.
+     *
+     * @param collection the collection being modified
+     * @param rows       the column name keyed records being modified
+     * @return the persisted items in the same order as <code>rows</code>
+     */
+    @Override
+    public List<Map<String, Object>> doUpsertReturning(Collection collection, List<Map<String, Object>> rows) throws ApiException {
+        List<Map<String, Object>> items        = new ArrayList<>();
+        AmazonDynamoDB            dynamoClient = getDynamoClient();
+        DynamoDB                  dynamoDb     = new DynamoDB(dynamoClient);
+        Table                     table        = dynamoDb.getTable(collection.getTableName());
+
+        for (Map<String, Object> row : rows) {
+            UpdateItemSpec spec = buildUpdateItemSpec(collection, row).withReturnValues(ReturnValue.ALL_NEW);
+            Item           item = table.updateItem(spec).getItem();
+            if (item == null)
+                throw ApiException.new500InternalServerError("DynamoDb did not return the updated item for key '{}'", collection.encodeKeyFromColumnNames(row));
+            items.add(item.asMap());
+        }
+
+        return items;
+    }
+
 
     protected UpdateItemSpec buildUpdateItemSpec(Collection collection, Map<String, Object> row) {
         Index         idx      = collection.getResourceIndex();
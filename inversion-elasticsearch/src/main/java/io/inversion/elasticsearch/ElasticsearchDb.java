@@ -35,6 +35,7 @@ import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.*;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.get.GetResult;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 
@@ -205,7 +206,31 @@ public class ElasticsearchDb extends Db<ElasticsearchDb> {
         return keys;
     }
 
+    /**
+     * Upserts each row just like {@link #doUpsert(Collection, List)} but asks Elasticsearch to
+     * include the updated <code>_source</code> in the response so no follow up query is needed.
+     *
+     * @param table the collection being modified
+     * @param rows  the column name keyed records being modified
+     * @return the persisted documents in the same order as <code>rows</code>
+     */
+    @Override
+    public List<Map<String, Object>> doUpsertReturning(Collection table, List<Map<String, Object>> rows) throws ApiException {
+        List<Map<String, Object>> docs = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            GetResult result = upsertRow(table, row, true).getGetResult();
+            if (result == null || result.sourceAsMap() == null)
+                throw ApiException.new500InternalServerError("Elasticsearch did not return the updated source for '{}'", table.encodeKeyFromColumnNames(row));
+            docs.add(new JSMap(result.sourceAsMap()));
+        }
+        return docs;
+    }
+
     public String upsertRow(Collection table, Map<String, Object> columnMappedTermsRow) throws ApiException {
+        return upsertRow(table, columnMappedTermsRow, false).getId();
+    }
+
+    protected UpdateResponse upsertRow(Collection table, Map<String, Object> columnMappedTermsRow, boolean fetchSource) throws ApiException {
         JSMap doc = new JSMap(columnMappedTermsRow);
         String id = doc.getString("id");
         if (id == null) {
@@ -219,6 +244,8 @@ public class ElasticsearchDb extends Db<ElasticsearchDb> {
 
         UpdateRequest updateRequest = new UpdateRequest(table.getTableName(), "doc", id);
         updateRequest.upsert(json, XContentType.JSON);
+        if (fetchSource)
+            updateRequest.fetchSource(true);
 
         Chain.debug("ElasticDb: Upsert " + updateRequest.toString());
 
@@ -238,7 +265,7 @@ public class ElasticsearchDb extends Db<ElasticsearchDb> {
         if (!Utils.equal(id, returnedId))
             throw ApiException.new500InternalServerError("The supplied 'id' field does not match the returned 'id' field: '%s' vs. '%s'", id, returnedId);
 
-        return id;
+        return response;
     }
 
     private void handleAutoSuggestRequest() {
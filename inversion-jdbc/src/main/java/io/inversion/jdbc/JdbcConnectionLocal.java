@@ -20,14 +20,16 @@ import io.inversion.Db;
 
 import java.sql.Connection;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JdbcConnectionLocal {
 
-    static final Map<Db, Map<Thread, Connection>> dbToThreadMap = new Hashtable();
-    static final Map<Thread, Map<Db, Connection>> threadToDbMap = new Hashtable();
+    //-- concurrent maps instead of Hashtables so that thousands of request threads, possibly virtual
+    //-- threads, looking up their own connections don't all contend on the same two monitors
+    static final Map<Db, Map<Thread, Connection>> dbToThreadMap = new ConcurrentHashMap<>();
+    static final Map<Thread, Map<Db, Connection>> threadToDbMap = new ConcurrentHashMap<>();
 
     public static void closeAll() {
         for (Thread thread : threadToDbMap.keySet()) {
@@ -59,10 +61,15 @@ public class JdbcConnectionLocal {
     }
 
     static void putConnection(Db db, Thread thread, Connection connection) {
-        Map<Thread, Connection> threadToConnMap = dbToThreadMap.computeIfAbsent(db, k -> new Hashtable());
-        threadToConnMap.put(thread, connection);
-
-        Map<Db, Connection> dbToConnMap = threadToDbMap.computeIfAbsent(thread, k -> new Hashtable());
+        //-- compute() so a concurrent close() on another thread can't remove the map this is being added to
+        dbToThreadMap.compute(db, (k, threadToConnMap) -> {
+            if (threadToConnMap == null)
+                threadToConnMap = new ConcurrentHashMap<>();
+            threadToConnMap.put(thread, connection);
+            return threadToConnMap;
+        });
+
+        Map<Db, Connection> dbToConnMap = threadToDbMap.computeIfAbsent(thread, k -> new ConcurrentHashMap<>());
         dbToConnMap.put(db, connection);
     }
 
@@ -125,11 +132,10 @@ public class JdbcConnectionLocal {
             {
                 //--
                 //-- cleanup the reverse mapping first
-                Map<Thread, Connection> threadToConnMap = dbToThreadMap.get(db);
-                threadToConnMap.remove(thread);
-
-                if (threadToConnMap.size() == 0)
-                    dbToThreadMap.remove(db);
+                dbToThreadMap.computeIfPresent(db, (k, threadToConnMap) -> {
+                    threadToConnMap.remove(thread);
+                    return threadToConnMap.size() == 0 ? null : threadToConnMap;
+                });
                 //--
                 //--
 
@@ -46,6 +46,21 @@ public class JdbcDb extends Db<JdbcDb> {
     static final Map<String, String> DEFAULT_DRIVERS = new HashMap<>();
     static final Map<Db, DataSource> pools           = new Hashtable<>();
 
+    /**
+     * Maps jdbc type integer codes to strings ex "4" to "INTEGER"
+     */
+    static final Map<String, String> JDBC_TYPES = new HashMap<>();
+
+    static {
+        try {
+            for (Field field : Types.class.getFields()) {
+                JDBC_TYPES.put(field.get(null) + "", field.getName());
+            }
+        } catch (Exception ex) {
+            Utils.rethrow(ex);
+        }
+    }
+
     static {
         DEFAULT_DRIVERS.put("h2", "org.h2.Driver");
         DEFAULT_DRIVERS.put("mysql", "com.mysql.cj.jdbc.Driver");
@@ -282,6 +297,20 @@ public class JdbcDb extends Db<JdbcDb> {
         return query.doSelect();
     }
 
+    /**
+     * MANY_TO_MANY relationships are joinable when the collection, the link table and the related collection are all in this Db.
+     *
+     * @see SqlQuery#printRelated(SqlQuery.Parts, boolean)
+     */
+    @Override
+    public boolean isJoinable(Relationship rel) {
+        return rel.isManyToMany()//
+                && rel.getInverse() != null//
+                && rel.getCollection().getDb() == this//
+                && rel.getRelated().getDb() == this//
+                && rel.getFk1Col1().getCollection().getDb() == this;
+    }
+
     @Override
     public List<String> doUpsert(Collection table, List<Map<String, Object>> rows) throws ApiException {
         try {
@@ -331,6 +360,57 @@ public class JdbcDb extends Db<JdbcDb> {
         }
     }
 
+    /**
+     * Upserts the rows with a RETURNING/OUTPUT clause on databases that support it.
+     *
+     * @return the persisted rows or null if this type of database can not return them from the write
+     * @see JdbcUtils#upsertReturning(Connection, String, List, List)
+     */
+    @Override
+    public List<Map<String, Object>> doUpsertReturning(Collection table, List<Map<String, Object>> rows) throws ApiException {
+        try {
+            Connection conn = getConnection();
+            if (!JdbcUtils.isReturningSupported(conn))
+                return null;
+
+            removeUnknownColumns(table, rows);
+            List<Row> upserted = JdbcUtils.upsertReturning(conn, table.getTableName(), table.getResourceIndex().getColumnNames(), rows);
+            return upserted == null ? null : new ArrayList<>(upserted);
+        } catch (Exception ex) {
+            throw ApiException.new500InternalServerError(ex);
+        }
+    }
+
+    /**
+     * Updates the rows with a RETURNING/OUTPUT clause on databases that support it.
+     *
+     * @return the updated rows or null if this type of database can not return them from the write
+     * @see JdbcUtils#updateReturning(Connection, String, List, List)
+     */
+    @Override
+    public List<Map<String, Object>> doPatchReturning(Collection table, List<Map<String, Object>> rows) throws ApiException {
+        try {
+            Connection conn = getConnection();
+            if (!JdbcUtils.isReturningSupported(conn))
+                return null;
+
+            removeUnknownColumns(table, rows);
+            List<Row> updated = JdbcUtils.updateReturning(conn, table.getTableName(), table.getResourceIndex().getColumnNames(), rows);
+            return updated == null ? null : new ArrayList<>(updated);
+        } catch (Exception ex) {
+            throw ApiException.new500InternalServerError(ex);
+        }
+    }
+
+    void removeUnknownColumns(Collection table, List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            for (String key : new ArrayList<>(row.keySet())) {
+                if (table.getPropertyByColumnName(key) == null)
+                    row.remove(key);
+            }
+        }
+    }
+
     @Override
     public void doDelete(Collection table, List<Map<String, Object>> columnMappedIndexValues) throws ApiException {
         try {
@@ -521,13 +601,6 @@ public class JdbcDb extends Db<JdbcDb> {
 
             DatabaseMetaData dbmd = conn.getMetaData();
 
-            //-- only here to map jdbc type integer codes to strings ex "4" to "BIGINT" or whatever it is
-            Map<String, String> types = new HashMap<>();
-            for (Field field : Types.class.getFields()) {
-                types.put(field.get(null) + "", field.getName());
-            }
-            //--
-
             //-- the first loop through is going to construct all of the
             //-- Tbl and Col objects.  There will be a second loop through
             //-- that caputres all of the foreign key relationships.  You
@@ -590,7 +663,7 @@ public class JdbcDb extends Db<JdbcDb> {
                     while (colsRs.next()) {
                         String colName = colsRs.getString("COLUMN_NAME");
                         Object type    = colsRs.getString("DATA_TYPE");
-                        String colType = types.get(type);
+                        String colType = JDBC_TYPES.get(type);
 
                         boolean nullable      = colsRs.getInt("NULLABLE") == DatabaseMetaData.columnNullable;
                         boolean autoincrement = Utils.in((colsRs.getObject("IS_AUTOINCREMENT") + "").toLowerCase(), "yes", "true", "1");
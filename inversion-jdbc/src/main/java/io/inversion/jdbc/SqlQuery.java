@@ -19,8 +19,8 @@ package io.inversion.jdbc;
 import io.inversion.*;
 import io.inversion.rql.*;
 import io.inversion.rql.Order.Sort;
+import io.inversion.utils.Columns;
 import io.inversion.utils.JdbcUtils;
-import io.inversion.utils.Rows;
 import io.inversion.utils.Utils;
 import org.springframework.util.LinkedCaseInsensitiveMap;
 
@@ -28,6 +28,7 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 /**
@@ -42,6 +43,13 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
 
     LinkedHashMap<String, Term> joins;
 
+    /**
+     * A <code>_related(relationshipName, key1, key2...)</code> term
+     *
+     * @see #printRelated(Parts, boolean)
+     */
+    Term related;
+
 //    public SqlQuery() {
 //
 //    }
@@ -75,6 +83,11 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
                 return true;
         }
 
+        if (term.hasToken("_related")) {
+            related = term;
+            return true;
+        }
+
         if (term.hasToken("join")) {
             if (joins == null)
                 joins = new LinkedHashMap<>();
@@ -113,8 +126,8 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
             //-- generation of the prepared statement above
 
             try {
-                Rows rows = JdbcUtils.selectRows(conn, sql, values);
-                results.withRows(rows);
+                Columns rows = JdbcUtils.selectColumns(conn, sql, values);
+                results.withColumns(rows);
 
                 boolean usesAfter = false;
 
@@ -128,7 +141,7 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
                                 String pkCol = pk.getColumnName(0);
                                 Sort   last  = sorts.get(sorts.size() - 1);
                                 if (last.getProperty().equalsIgnoreCase(pk.getColumnName(0))) {
-                                    String lastPk = collection.encodeKeyFromColumnNames(rows.get(rows.size() - 1));
+                                    String lastPk = collection.encodeKeyFromColumnNames(rows.getRow(rows.size() - 1));
                                     if (lastPk != null) {
                                         usesAfter = true;
                                         if (last.isAsc())
@@ -192,6 +205,7 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
         printTermsSelect(parts, preparedStmt);
         //printJoins(parts, joins);
         printWhereClause(parts, getWhere().getFilters(), preparedStmt);
+        printRelated(parts, preparedStmt);
         printGroupClause(parts, getGroup().getGroupBy());
         printOrderClause(parts, getOrder());
         printLimitClause(parts, getPage().getOffset(), getPage().getLimit());
@@ -356,6 +370,82 @@ public class SqlQuery<D extends Db> extends Query<SqlQuery, D, Select<Select<Sel
         return parts.where;
     }
 
+    /**
+     * Joins through the link table of a MANY_TO_MANY relationship to select only the rows related
+     * to the keys supplied in a <code>_related(relationshipName, key1, key2...)</code> term, where
+     * the keys are resource keys of the relationship's related collection.
+     * <p>
+     * When more than one key is supplied, the link table columns referencing the related collection
+     * are also selected as "~~related_0", "~~related_1"... so the caller can pair each row with its key.
+     * <p>
+     * CONVERTS: territories?_related(employees,1,2)
+     * <p>
+     * TO THIS : SELECT "Territories".*, "EmployeeTerritories"."EmployeeID" AS "~~related_0" FROM "Territories"
+     * JOIN "EmployeeTerritories" ON "Territories"."TerritoryID" = "EmployeeTerritories"."TerritoryID"
+     * WHERE "EmployeeTerritories"."EmployeeID" IN(?, ?)
+     *
+     * @param parts        the sql being composed
+     * @param preparedStmt true if the key values should be printed as prepared statement variables
+     * @see Db#isJoinable(Relationship)
+     */
+    protected void printRelated(Parts parts, boolean preparedStmt) {
+        if (related == null)
+            return;
+
+        Relationship rel = collection == null ? null : collection.getRelationship(related.getToken(0));
+        if (rel == null || !rel.isManyToMany())
+            throw ApiException.new400BadRequest("'{}' is not a MANY_TO_MANY relationship", related.getToken(0));
+
+        String     link   = rel.getFk1Col1().getCollection().getTableName();
+        Index      fk1    = rel.getFkIndex1();
+        Index      fk2    = rel.getFkIndex2();
+        Collection parent = rel.getRelated();
+        List<Term> keys   = related.getTerms().subList(1, related.size());
+
+        StringBuilder join = new StringBuilder(" JOIN ").append(quoteCol(link)).append(" ON ");
+        for (int i = 0; i < fk1.size(); i++) {
+            Property prop = fk1.getProperty(i);
+            if (i > 0)
+                join.append(" AND ");
+            join.append(printCol(prop.getPk().getColumnName())).append(" = ").append(quoteCol(link + "." + prop.getColumnName()));
+        }
+        parts.from += join;
+
+        if (keys.size() > 1) {
+            StringBuilder cols = new StringBuilder();
+            for (int i = 0; i < fk2.size(); i++)
+                cols.append(", ").append(quoteCol(link + "." + fk2.getProperty(i).getColumnName())).append(" AS ").append(quoteCol("~~related_" + i));
+            parts.select = parts.select.trim() + cols + " ";
+        }
+
+        //-- in(link.fk, key1, key2...) or or(and(eq(link.fk1, key1.1),eq(link.fk2, key1.2)), and(...))
+        Term filter = Term.term(null, fk2.size() == 1 ? "in" : "or");
+        if (fk2.size() == 1)
+            filter.withTerm(Term.term(filter, link + "." + fk2.getProperty(0).getColumnName()));
+
+        for (Term key : keys) {
+            Map<String, Object> pk = parent.decodeKeyToColumnNames(parent.getResourceIndex(), key.getToken());
+            Term                and = fk2.size() == 1 ? filter : Term.term(filter, "and");
+            for (int i = 0; i < fk2.size(); i++) {
+                Property prop  = fk2.getProperty(i);
+                Object   value = pk == null ? null : pk.get(prop.getPk().getColumnName());
+                if (value == null)
+                    throw ApiException.new400BadRequest("Unable to decode '{}' for relationship '{}'", key.getToken(), rel);
+
+                if (fk2.size() == 1)
+                    filter.withTerm(Term.term(filter, value.toString()));
+                else
+                    and.withTerm(Term.term(and, "eq", link + "." + prop.getColumnName(), value.toString()));
+            }
+        }
+
+        String where = printTerm(filter, null, preparedStmt);
+        if (Utils.empty(parts.where))
+            parts.where = " WHERE " + where;
+        else
+            parts.where += " AND " + where;
+    }
+
     //   protected Term findJoinTerm(Term term)
     //   {
     //      if (!this.joins.isEmpty())
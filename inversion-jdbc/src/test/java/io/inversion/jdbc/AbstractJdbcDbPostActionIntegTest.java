@@ -16,9 +16,18 @@
  */
 package io.inversion.jdbc;
 
+import io.inversion.Engine;
+import io.inversion.Response;
 import io.inversion.action.db.AbstractDbPostActionIntegTest;
+import io.inversion.utils.JdbcUtils;
+import io.inversion.utils.JdbcUtils.SqlListener;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public abstract class AbstractJdbcDbPostActionIntegTest extends AbstractDbPostActionIntegTest implements AbstractJdbcDbEngineTest {
     public AbstractJdbcDbPostActionIntegTest(String dbType) {
@@ -34,4 +43,44 @@ public abstract class AbstractJdbcDbPostActionIntegTest extends AbstractDbPostAc
     public void afterEach() {
         afterAll_finalizeEngine();
     }
+
+    /**
+     * Nested children are written with one batched POST per related collection per generation,
+     * and each upsert batch is one SQL statement, so the number of statements does not grow with
+     * the number of parent documents.
+     */
+    @Test
+    public void test_nested_children_are_batched_across_parents() {
+        Engine engine = engine();
+
+        int one = countStatements(engine, "employees?employeeId=5&expands=territories");
+        int two = countStatements(engine, "employees?in(employeeId,5,6)&expands=territories");
+
+        assertEquals(one, two, "the number of SQL statements should not depend on the number of parents");
+    }
+
+    int countStatements(Engine engine, String query) {
+        Response res = engine.get(url(query)).assertOk();
+
+        AtomicInteger count = new AtomicInteger();
+        SqlListener listener = new SqlListener() {
+            public void onError(String method, String sql, Object args, Exception ex) {
+            }
+
+            public void beforeStmt(String method, String sql, Object args) {
+                count.incrementAndGet();
+            }
+
+            public void afterStmt(String method, String sql, Object args, Exception ex, Object result) {
+            }
+        };
+
+        JdbcUtils.addSqlListener(listener);
+        try {
+            engine.put(url("employees"), res.data()).assertOk();
+        } finally {
+            JdbcUtils.removeSqlListener(listener);
+        }
+        return count.get();
+    }
 }
@@ -47,7 +47,7 @@ public class JdbcDbFactory {
 
             return new JdbcDb("h2", //
                     "org.h2.Driver", //
-                    "jdbc:h2:mem:" + database + ";IGNORECASE=TRUE;DB_CLOSE_DELAY=-1", //
+                    "jdbc:h2:mem:" + database + ";IGNORECASE=TRUE;DB_CLOSE_DELAY=-1;MODE=LEGACY", //
                     "sa", //
                     "", //
                     ddlUrl);
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.jdbc;
+
+import io.inversion.utils.JdbcUtils;
+import io.inversion.utils.Rows.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcUtilsReturningTest {
+
+    Connection conn = null;
+
+    @BeforeEach
+    public void before() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection("jdbc:h2:mem:" + getClass().getSimpleName() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcUtils.execute(conn, "DROP TABLE IF EXISTS ITEMS");
+        JdbcUtils.execute(conn, "CREATE TABLE ITEMS (ID INT AUTO_INCREMENT PRIMARY KEY, NAME VARCHAR(32), QTY INT DEFAULT 7)");
+        JdbcUtils.execute(conn, "INSERT INTO ITEMS (NAME, QTY) VALUES ('first', 1)");
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    public void test_upsertReturning_inserts_and_updates() throws Exception {
+        assertTrue(JdbcUtils.isReturningSupported(conn));
+
+        List<Row> rows = JdbcUtils.upsertReturning(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(row("ID", 1, "NAME", "updated"), row("NAME", "second")));
+
+        assertEquals(2, rows.size());
+        assertEquals(1, ((Number) rows.get(0).get("ID")).intValue());
+        assertEquals("updated", rows.get(0).get("NAME"));
+        assertEquals(1, ((Number) rows.get(0).get("QTY")).intValue());
+
+        assertEquals(2, ((Number) rows.get(1).get("ID")).intValue());
+        assertEquals("second", rows.get(1).get("NAME"));
+        assertEquals(7, ((Number) rows.get(1).get("QTY")).intValue());
+    }
+
+    @Test
+    public void test_updateReturning_skips_missing_rows() throws Exception {
+        List<Row> rows = JdbcUtils.updateReturning(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(row("ID", 1, "QTY", 5), row("ID", 99, "QTY", 5)));
+
+        assertEquals(1, rows.size());
+        assertEquals("first", rows.get(0).get("NAME"));
+        assertEquals(5, ((Number) rows.get(0).get("QTY")).intValue());
+    }
+
+    @Test
+    public void test_upsertReturning_writes_each_batch_with_one_statement() throws Exception {
+        List<String> sqls = new ArrayList<>();
+        JdbcUtils.SqlListener listener = listener(sqls);
+        JdbcUtils.addSqlListener(listener);
+        try {
+            List<Row> rows = JdbcUtils.upsertReturning(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(//
+                    row("NAME", "a"), row("NAME", "b"), row("NAME", "c"), //
+                    row("ID", 1, "NAME", "x"), row("ID", 3, "NAME", "y"), row("ID", 1, "NAME", "z")));
+
+            //-- the inserts, the keyed upserts and then the repeated key 1
+            assertEquals(3, sqls.size(), sqls.toString());
+            assertEquals(6, rows.size());
+            assertEquals(Arrays.asList("a", "b", "c", "x", "y", "z"), values(rows, "NAME"));
+            assertEquals(Arrays.asList("2", "3", "4", "1", "3", "1"), values(rows, "ID"));
+        } finally {
+            JdbcUtils.removeSqlListener(listener);
+        }
+    }
+
+    @Test
+    public void test_updateReturning_writes_each_batch_with_one_statement() throws Exception {
+        JdbcUtils.execute(conn, "INSERT INTO ITEMS (NAME, QTY) VALUES ('second', 2)");
+        JdbcUtils.execute(conn, "INSERT INTO ITEMS (NAME, QTY) VALUES ('third', 3)");
+
+        List<String> sqls = new ArrayList<>();
+        JdbcUtils.SqlListener listener = listener(sqls);
+        JdbcUtils.addSqlListener(listener);
+        try {
+            List<Row> rows = JdbcUtils.updateReturning(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(row("ID", 3, "QTY", 30), row("ID", 99, "QTY", 5), row("ID", 1, "QTY", null)));
+            assertEquals(1, sqls.size(), sqls.toString());
+            assertEquals(Arrays.asList("third", "first"), values(rows, "NAME"));
+            assertEquals(Arrays.asList("30", "null"), values(rows, "QTY"));
+
+            sqls.clear();
+            rows = JdbcUtils.updateReturning(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(row("ID", 2), row("ID", 1)));
+            assertEquals(1, sqls.size(), sqls.toString());
+            assertEquals(Arrays.asList("second", "first"), values(rows, "NAME"));
+        } finally {
+            JdbcUtils.removeSqlListener(listener);
+        }
+    }
+
+    @Test
+    public void test_upsert_writes_each_batch_with_one_statement() throws Exception {
+        List<String> sqls = new ArrayList<>();
+        JdbcUtils.SqlListener listener = listener(sqls);
+        JdbcUtils.addSqlListener(listener);
+        try {
+            List<Row> keys = JdbcUtils.upsert(conn, "ITEMS", Arrays.asList("ID"), Arrays.asList(row("ID", 1, "NAME", "x"), row("ID", 5, "NAME", "y"), row("ID", 6, "NAME", "z")));
+            assertEquals(1, sqls.size(), sqls.toString());
+            assertEquals(Arrays.asList("1", "5", "6"), values(keys, "ID"));
+        } finally {
+            JdbcUtils.removeSqlListener(listener);
+        }
+
+        assertEquals(Arrays.asList("x", "y", "z"), values(JdbcUtils.selectRows(conn, "SELECT * FROM ITEMS ORDER BY ID"), "NAME"));
+    }
+
+    @Test
+    public void test_buildUpsertReturningSQL_postgres() {
+        Connection postgres = connection("org.postgresql.jdbc.PgConnection@1");
+        String     sql      = JdbcUtils.buildUpsertReturningSQL(postgres, "items", Arrays.asList("id"), Arrays.asList("id", "name"), 2, true).replaceAll("\\s+", " ");
+        assertEquals("INSERT INTO \"items\" (\"id\", \"name\") VALUES (?,?), (?,?) ON CONFLICT (\"id\") DO UPDATE SET \"id\" = EXCLUDED.\"id\", \"name\" = EXCLUDED.\"name\" RETURNING *", sql);
+
+        sql = JdbcUtils.buildUpdateReturningSQL(postgres, "items", Arrays.asList("id"), Arrays.asList("name"), 2).replaceAll("\\s+", " ");
+        assertEquals("WITH \"u0\" AS (UPDATE \"items\" SET \"name\" = ? WHERE \"id\" = ? RETURNING *), \"u1\" AS (UPDATE \"items\" SET \"name\" = ? WHERE \"id\" = ? RETURNING *)" //
+                + " SELECT 0 AS \"inversion_row\", \"u0\".* FROM \"u0\" UNION ALL SELECT 1 AS \"inversion_row\", \"u1\".* FROM \"u1\"", sql);
+    }
+
+    @Test
+    public void test_buildUpsertReturningSQL_sqlserver() {
+        Connection sqlserver = connection("ConnectionID:1 ClientConnectionId: 0000");
+        String     sql       = JdbcUtils.buildUpsertReturningSQL(sqlserver, "items", Arrays.asList("id"), Arrays.asList("id", "name"), 2, true).replaceAll("\\s+", " ");
+        assertEquals("MERGE INTO \"items\" AS \"target\" USING (VALUES (0,?,?), (1,?,?)) AS \"source\" (\"inversion_row\", \"id\", \"name\")" //
+                + " ON \"target\".\"id\" = \"source\".\"id\" WHEN MATCHED THEN UPDATE SET \"name\" = \"source\".\"name\"" //
+                + " WHEN NOT MATCHED THEN INSERT (\"id\", \"name\") VALUES (\"source\".\"id\", \"source\".\"name\") OUTPUT \"source\".\"inversion_row\", INSERTED.*;", sql);
+
+        sql = JdbcUtils.buildUpsertReturningSQL(sqlserver, "items", Arrays.asList("id"), Arrays.asList("name"), 1, false).replaceAll("\\s+", " ");
+        assertEquals("MERGE INTO \"items\" AS \"target\" USING (VALUES (0,?)) AS \"source\" (\"inversion_row\", \"name\") ON 1 = 0" //
+                + " WHEN NOT MATCHED THEN INSERT (\"name\") VALUES (\"source\".\"name\") OUTPUT \"source\".\"inversion_row\", INSERTED.*;", sql);
+
+        sql = JdbcUtils.buildUpdateReturningSQL(sqlserver, "items", Arrays.asList("id"), Arrays.asList("name"), 2).replaceAll("\\s+", " ");
+        assertEquals("MERGE INTO \"items\" AS \"target\" USING (VALUES (0,?,?), (1,?,?)) AS \"source\" (\"inversion_row\", \"id\", \"name\")" //
+                + " ON \"target\".\"id\" = \"source\".\"id\" WHEN MATCHED THEN UPDATE SET \"name\" = \"source\".\"name\" OUTPUT \"source\".\"inversion_row\", INSERTED.*;", sql);
+    }
+
+    /**
+     * A Connection that only knows its toString(), which is all JdbcUtils needs to pick the SQL dialect.
+     */
+    static Connection connection(String description) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("toString"))
+                return description;
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    static JdbcUtils.SqlListener listener(List<String> sqls) {
+        return new JdbcUtils.SqlListener() {
+            public void onError(String method, String sql, Object args, Exception ex) {
+            }
+
+            public void beforeStmt(String method, String sql, Object args) {
+                sqls.add(sql);
+            }
+
+            public void afterStmt(String method, String sql, Object args, Exception ex, Object result) {
+            }
+        };
+    }
+
+    static List<String> values(List<Row> rows, String col) {
+        List<String> values = new ArrayList<>();
+        for (Row row : rows)
+            values.add(row.get(col) + "");
+        return values;
+    }
+
+    Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length - 1; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+}
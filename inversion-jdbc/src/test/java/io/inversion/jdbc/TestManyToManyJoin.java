@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.jdbc;
+
+import io.inversion.Collection;
+import io.inversion.*;
+import io.inversion.utils.JdbcUtils;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class TestManyToManyJoin {
+    JdbcDb db = null;
+
+    @BeforeAll
+    public void beforeAll_initializeDb() {
+        Chain.resetAll();
+        JdbcConnectionLocal.closeAll();
+
+        String url = "jdbc:h2:mem:" + getClass().getSimpleName() + ";IGNORECASE=TRUE;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            JdbcUtils.execute(conn, "CREATE TABLE \"Employees\" (\"EmployeeID\" INT PRIMARY KEY, \"Name\" VARCHAR(32))");
+            JdbcUtils.execute(conn, "CREATE TABLE \"Territories\" (\"TerritoryID\" VARCHAR(20) PRIMARY KEY, \"Description\" VARCHAR(32))");
+            JdbcUtils.execute(conn, "CREATE TABLE \"EmployeeTerritories\" (\"EmployeeID\" INT NOT NULL REFERENCES \"Employees\", \"TerritoryID\" VARCHAR(20) NOT NULL REFERENCES \"Territories\", PRIMARY KEY (\"EmployeeID\", \"TerritoryID\"))");
+            JdbcUtils.execute(conn, "INSERT INTO \"Employees\" VALUES (1, 'Nancy'), (2, 'Andrew'), (3, 'Janet')");
+            JdbcUtils.execute(conn, "INSERT INTO \"Territories\" VALUES ('01581', 'Westboro'), ('01730', 'Bedford'), ('02116', 'Boston')");
+            JdbcUtils.execute(conn, "INSERT INTO \"EmployeeTerritories\" VALUES (1, '01581'), (1, '01730'), (2, '01730'), (2, '02116')");
+        } catch (Exception ex) {
+            Utils.rethrow(ex);
+        }
+
+        db = new JdbcDb("h2", "org.h2.Driver", url, "sa", "");
+        db.startup(new Api("northwind").withDb(db));
+    }
+
+    @AfterAll
+    public void afterAll_finalizeDb() {
+        if (db != null) {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void test_related_selects_through_the_link_table() throws Exception {
+        Collection territories = db.getCollection("territories");
+
+        Results results = db.select(territories, Utils.addToMap(new LinkedHashMap<>(), "_related(employees,'1')", null, "sort", "territoryId"));
+        assertTrue(results.getTestQuery().contains("JOIN \"EmployeeTerritories\" ON \"Territories\".\"TerritoryID\" = \"EmployeeTerritories\".\"TerritoryID\""));
+        assertFalse(results.getTestQuery().contains("~~related_"));
+
+        List<Map<String, Object>> rows = results.getRows();
+        assertEquals(2, rows.size());
+        assertEquals("01581", rows.get(0).get("territoryId"));
+        assertEquals("01730", rows.get(1).get("territoryId"));
+    }
+
+    @Test
+    public void test_related_pairs_rows_with_each_parent() throws Exception {
+        Collection territories = db.getCollection("territories");
+
+        Results results = db.select(territories, Utils.addToMap(new LinkedHashMap<>(), "_related(employees,'1','2')", null, "sort", "territoryId"));
+
+        List<String> pairs = new ArrayList<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) results.getRows())
+            pairs.add(row.get("~~related_0") + "/" + row.get("territoryId"));
+
+        Collections.sort(pairs);
+        assertEquals(Arrays.asList("1/01581", "1/01730", "2/01730", "2/02116"), pairs);
+    }
+
+    @Test
+    public void test_only_many_to_many_relationships_are_joinable() throws Exception {
+        Collection employees = db.getCollection("employees");
+        assertTrue(db.isJoinable(employees.getRelationship("territories")));
+
+        Collection link = db.getCollection("employeeTerritories");
+        for (Relationship rel : link.getRelationships())
+            assertFalse(db.isJoinable(rel));
+    }
+}
@@ -0,0 +1,339 @@
+package io.inversion.json;
+
+import io.inversion.utils.Columns;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A JSList of JSMap rows that is backed by a column oriented {@link Columns} table.
+ * <p>
+ * The column names, their output order, and an optional cast function for each output property are
+ * computed once for the whole table.  When the list is written by {@link JSWriter} the values are
+ * streamed straight from the column arrays to the JsonGenerator without creating a JSMap per row.
+ * <p>
+ * Individual rows are converted into JSMaps the first time they are accessed via {@link #get(int)}, and the
+ * whole list is converted into an ordinary JSList the first time it is iterated or structurally modified.
+ * Once a row has been converted, the JSMap is the source of truth for that row so any changes made to it
+ * by downstream Actions are preserved when the list is written.
+ */
+public class JSColumnList extends JSList {
+
+    protected final Columns                    columns;
+    protected final String[]                   names;
+    protected final int[]                      indexes;
+    protected final Function<Object, Object>[] casts;
+
+    /**
+     * Rows that have been converted into JSMaps via get(int) before the whole list was materialized.
+     */
+    protected JSMap[] rows;
+
+    protected boolean materialized = false;
+
+    /**
+     * Creates a list that outputs every column in its natural order without any casting.
+     *
+     * @param columns the table
+     */
+    public JSColumnList(Columns columns) {
+        this(columns, columns.keyList().toArray(new String[0]), null, null);
+    }
+
+    /**
+     * @param columns the table
+     * @param names   the output property name for each output position
+     * @param indexes the column of <code>columns</code> for each output position, if null the output positions match the columns
+     * @param casts   an optional cast function for each output position, if null or an element is null the raw column value is output
+     */
+    public JSColumnList(Columns columns, String[] names, int[] indexes, Function<Object, Object>[] casts) {
+        if (indexes == null) {
+            indexes = new int[names.length];
+            for (int i = 0; i < indexes.length; i++)
+                indexes[i] = i;
+        }
+
+        if (names.length != indexes.length || (casts != null && casts.length != names.length))
+            throw new IllegalArgumentException("The names, indexes, and casts must be the same length.");
+
+        this.columns = columns;
+        this.names = names;
+        this.indexes = indexes;
+        this.casts = casts;
+        this.rows = new JSMap[columns.size()];
+    }
+
+    /**
+     * @return true if the rows have not been converted into an ordinary JSList
+     */
+    public boolean isColumnar() {
+        return !materialized;
+    }
+
+    public Columns getColumns() {
+        return columns;
+    }
+
+    public int getWidth() {
+        return names.length;
+    }
+
+    public String getName(int pos) {
+        return names[pos];
+    }
+
+    /**
+     * @param row the row number
+     * @return the JSMap for <code>row</code> if it has already been converted, otherwise null
+     */
+    protected JSMap getConverted(int row) {
+        return rows[row];
+    }
+
+    /**
+     * @param row the row number
+     * @param pos the output position
+     * @return the cast value of the column at output position <code>pos</code>
+     */
+    public Object getValue(int row, int pos) {
+        Object value = columns.get(row, indexes[pos]);
+        if (value != null && casts != null && casts[pos] != null)
+            value = casts[pos].apply(value);
+        return value;
+    }
+
+    /**
+     * The cast functions can change the type of a value so only columns
+     * without a cast can be written directly from their primitive arrays.
+     *
+     * @param pos the output position
+     * @return the Columns.TYPE_ of the output position or TYPE_OBJECT if there is a cast
+     */
+    public int getType(int pos) {
+        if (casts != null && casts[pos] != null)
+            return Columns.TYPE_OBJECT;
+        return columns.getType(indexes[pos]);
+    }
+
+    public int getIndex(int pos) {
+        return indexes[pos];
+    }
+
+    protected JSMap convert(int row) {
+        JSMap map = rows[row];
+        if (map == null) {
+            map = new JSMap();
+            for (int i = 0; i < names.length; i++) {
+                map.put(names[i], getValue(row, i));
+            }
+            rows[row] = map;
+        }
+        return map;
+    }
+
+    /**
+     * Converts all rows into JSMaps and stores them in the underlying ArrayList.
+     * <p>
+     * After this is called this JSColumnList behaves exactly like a JSList.
+     */
+    protected void materialize() {
+        if (materialized)
+            return;
+
+        materialized = true;
+        super.ensureCapacity(rows.length);
+        for (int i = 0; i < rows.length; i++)
+            super.add(convert(i));
+        rows = null;
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Read access that does not require materialization
+
+    @Override
+    public int size() {
+        if (!materialized)
+            return rows.length;
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (!materialized) {
+            if (index < 0 || index >= rows.length)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + rows.length);
+            return convert(index);
+        }
+        return super.get(index);
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Everything else materializes
+
+    @Override
+    public Object set(int idx, Object value) {
+        materialize();
+        return super.set(idx, value);
+    }
+
+    @Override
+    public boolean add(Object o) {
+        materialize();
+        return super.add(o);
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        materialize();
+        super.add(index, element);
+    }
+
+    @Override
+    public boolean addAll(java.util.Collection c) {
+        materialize();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, java.util.Collection c) {
+        materialize();
+        return super.addAll(index, c);
+    }
+
+    @Override
+    public Object remove(int index) {
+        materialize();
+        return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        materialize();
+        return super.remove(o);
+    }
+
+    @Override
+    public boolean removeAll(java.util.Collection c) {
+        materialize();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(java.util.Collection c) {
+        materialize();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate filter) {
+        materialize();
+        return super.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator operator) {
+        materialize();
+        super.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator c) {
+        materialize();
+        super.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        materialize();
+        super.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        materialize();
+        return super.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        materialize();
+        return super.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        materialize();
+        return super.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        materialize();
+        return super.toArray();
+    }
+
+    @Override
+    public Object[] toArray(Object[] a) {
+        materialize();
+        return super.toArray(a);
+    }
+
+    @Override
+    public Iterator iterator() {
+        materialize();
+        return super.iterator();
+    }
+
+    @Override
+    public ListIterator listIterator() {
+        materialize();
+        return super.listIterator();
+    }
+
+    @Override
+    public ListIterator listIterator(int index) {
+        materialize();
+        return super.listIterator(index);
+    }
+
+    @Override
+    public List subList(int fromIndex, int toIndex) {
+        materialize();
+        return super.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public void forEach(java.util.function.Consumer action) {
+        materialize();
+        super.forEach(action);
+    }
+
+    @Override
+    public Spliterator spliterator() {
+        materialize();
+        return super.spliterator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        materialize();
+        return super.equals(o);
+    }
+
+    @Override
+    public Object clone() {
+        materialize();
+        return super.clone();
+    }
+}
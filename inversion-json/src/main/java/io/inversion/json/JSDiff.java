@@ -1,28 +1,18 @@
 package io.inversion.json;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flipkart.zjsonpatch.JsonDiff;
-import io.inversion.utils.Utils;
-
 public interface JSDiff {
 
     JSNode getJson();
 
+    /**
+     * Computes the RFC 6902 JSON Patch that would transform <code>source</code> into this node.
+     *
+     * @param source the original document
+     * @return the patch operations
+     * @see JSDiffer
+     */
     default JSList diff(JSNode source) {
-        ObjectMapper mapper = new ObjectMapper();
-
-        JsonNode patch;
-        try {
-            patch = JsonDiff.asJson(mapper.readValue(source.toString(), JsonNode.class), mapper.readValue(getJson().toString(), JsonNode.class));
-            JSList patchesArray = JSParser.asJSList(patch.toPrettyString());
-            return patchesArray;
-        } catch (Exception e) {
-            e.printStackTrace();
-            Utils.rethrow(e);
-        }
-
-        return null;
+        return JSDiffer.diff(source, getJson());
     }
 
 }
@@ -0,0 +1,320 @@
+package io.inversion.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Computes an RFC 6902 JSON Patch that transforms one JSMap/JSList document into another.
+ * <p>
+ * The two documents are walked together without serializing them.  JSMaps are compared property by property
+ * and JSLists are aligned on their longest common subsequence of equal elements, found with Myers' O((N+M)D)
+ * algorithm after trimming any common prefix and suffix, so inserting or removing a few elements from a large
+ * list produces a few operations instead of a replace for every element that shifted.  Elements between
+ * aligned elements are diffed recursively in pairs and any extras are removed or added.
+ * <p>
+ * The generated patch only contains "add", "remove" and "replace" operations.
+ *
+ * @see JSPatcher
+ */
+public class JSDiffer {
+
+    /**
+     * The maximum number of ints the edit graph trace used to align two lists may consume.  If lists differ
+     * by so many elements that aligning them would exceed this, they are diffed pairwise by index instead.
+     */
+    static final long MAX_TRACE_CELLS = 4 * 1024 * 1024;
+
+    final JSList patches = new JSList();
+
+    /**
+     * @param source the original document
+     * @param target the desired document
+     * @return a JSON Patch that will transform <code>source</code> into <code>target</code>
+     */
+    public static JSList diff(JSNode source, JSNode target) {
+        JSDiffer differ = new JSDiffer();
+        differ.diff("", source, target);
+        return differ.patches;
+    }
+
+    void diff(String path, Object source, Object target) {
+        if (source instanceof JSMap && target instanceof JSMap)
+            diffMaps(path, (JSMap) source, (JSMap) target);
+        else if (source instanceof JSList && target instanceof JSList)
+            diffLists(path, (JSList) source, (JSList) target);
+        else if (!equal(source, target))
+            op("replace", path, target);
+    }
+
+    void diffMaps(String path, JSMap source, JSMap target) {
+        //-- JSMap keys are case insensitive, so a property whose name only
+        //-- differs by case has to be removed and added to change its name
+        Map<String, String> sourceKeys = new HashMap<>();
+        for (String key : source.keySet()) {
+            if (target.containsKey(key))
+                sourceKeys.put(key.toLowerCase(), key);
+            else
+                op("remove", path + "/" + JSPatcher.escape(key), null);
+        }
+
+        for (String key : target.keySet()) {
+            String sourceKey = sourceKeys.get(key.toLowerCase());
+            String childPath = path + "/" + JSPatcher.escape(key);
+            if (sourceKey == null) {
+                op("add", childPath, target.get(key));
+            } else if (!sourceKey.equals(key)) {
+                op("remove", path + "/" + JSPatcher.escape(sourceKey), null);
+                op("add", childPath, target.get(key));
+            } else {
+                diff(childPath, source.get(key), target.get(key));
+            }
+        }
+    }
+
+    void diffLists(String path, JSList source, JSList target) {
+        int start      = 0;
+        int sourceSize = source.size();
+        int targetSize = target.size();
+
+        while (start < sourceSize && start < targetSize && equal(source.get(start), target.get(start)))
+            start += 1;
+
+        while (sourceSize > start && targetSize > start && equal(source.get(sourceSize - 1), target.get(targetSize - 1))) {
+            sourceSize -= 1;
+            targetSize -= 1;
+        }
+
+        int sourceLen = sourceSize - start;
+        int targetLen = targetSize - start;
+
+        if (sourceLen == 0 && targetLen == 0)
+            return;
+
+        //-- matches[i] is the target index aligned with source[start + i] or -1
+        int[] matches = new int[sourceLen];
+        Arrays.fill(matches, -1);
+
+        if (sourceLen > 0 && targetLen > 0)
+            align(source, target, start, sourceLen, targetLen, matches);
+
+        int idx = start;
+        int s   = start;
+        int t   = start;
+        for (int i = 0; i <= sourceLen; i++) {
+            int nextS = i < sourceLen ? start + i : sourceSize;
+            int nextT = i < sourceLen ? matches[i] : targetSize;
+            if (nextT < 0)
+                continue;
+
+            //-- diff everything between the previous aligned pair and this one
+            while (s < nextS && t < nextT) {
+                diff(path + "/" + idx, source.get(s++), target.get(t++));
+                idx += 1;
+            }
+            while (s < nextS) {
+                op("remove", path + "/" + idx, null);
+                s += 1;
+            }
+            while (t < nextT) {
+                op("add", path + "/" + idx, target.get(t++));
+                idx += 1;
+            }
+
+            //-- skip over the aligned pair
+            if (i < sourceLen) {
+                s += 1;
+                t += 1;
+                idx += 1;
+            }
+        }
+    }
+
+    /**
+     * Finds the longest common subsequence of equal elements between the two ranges using
+     * Myers' greedy shortest edit script algorithm.
+     * <p>
+     * Each round d extends the furthest reaching path on every diagonal k with d edits, then
+     * the saved rounds are walked backwards from the end to recover the aligned elements.
+     */
+    void align(JSList source, JSList target, int start, int sourceLen, int targetLen, int[] matches) {
+        int[] sourceHashes = new int[sourceLen];
+        int[] targetHashes = new int[targetLen];
+        for (int i = 0; i < sourceLen; i++)
+            sourceHashes[i] = hash(source.get(start + i));
+        for (int j = 0; j < targetLen; j++)
+            targetHashes[j] = hash(target.get(start + j));
+
+        int         max    = sourceLen + targetLen;
+        int         offset = max + 1;
+        int[]       v      = new int[2 * max + 3];
+        List<int[]> trace  = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            if ((long) (d + 1) * v.length > MAX_TRACE_CELLS)
+                return;
+
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < sourceLen && y < targetLen && sourceHashes[x] == targetHashes[y] && equal(source.get(start + x), target.get(start + y))) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+
+                if (x >= sourceLen && y >= targetLen) {
+                    backtrack(trace, offset, sourceLen, targetLen, start, matches);
+                    return;
+                }
+            }
+        }
+    }
+
+    static void backtrack(List<int[]> trace, int offset, int x, int y, int start, int[] matches) {
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v     = trace.get(d);
+            int   k     = x - y;
+            int   prevK = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) ? k + 1 : k - 1;
+            int   prevX = v[offset + prevK];
+            int   prevY = prevX - prevK;
+
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                matches[x] = start + y;
+            }
+            x = prevX;
+            y = prevY;
+        }
+
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            matches[x] = start + y;
+        }
+    }
+
+    void op(String op, String path, Object value) {
+        JSMap patch = new JSMap("op", op, "path", path);
+        if (!"remove".equals(op))
+            patch.put("value", JSPatcher.copy(value));
+        patches.add(patch);
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Structural Equality
+
+    /**
+     * Deep structural equality of JSON values.
+     * <p>
+     * JSMap property names are compared case insensitively.  Integral numbers are equal to integral numbers with the
+     * same value and decimal numbers are equal to decimal numbers with the same value, but an integral number is
+     * never equal to a decimal number, so 1 and 1.0 are considered different.
+     *
+     * @param a a JSON value
+     * @param b a JSON value
+     * @return true if <code>a</code> and <code>b</code> are structurally equal
+     */
+    public static boolean equal(Object a, Object b) {
+        if (a == b)
+            return true;
+        if (a == null || b == null)
+            return false;
+
+        if (a instanceof JSMap && b instanceof JSMap) {
+            JSMap mapA = (JSMap) a;
+            JSMap mapB = (JSMap) b;
+            if (mapA.size() != mapB.size())
+                return false;
+            for (String key : mapA.keySet()) {
+                if (!mapB.containsKey(key) || !equal(mapA.get(key), mapB.get(key)))
+                    return false;
+            }
+            return true;
+        }
+
+        if (a instanceof JSList && b instanceof JSList) {
+            JSList listA = (JSList) a;
+            JSList listB = (JSList) b;
+            if (listA.size() != listB.size())
+                return false;
+            for (int i = 0; i < listA.size(); i++) {
+                if (!equal(listA.get(i), listB.get(i)))
+                    return false;
+            }
+            return true;
+        }
+
+        if (a instanceof Number && b instanceof Number) {
+            boolean integralA = isIntegral((Number) a);
+            if (integralA != isIntegral((Number) b))
+                return false;
+
+            if (integralA) {
+                if (a instanceof BigInteger || b instanceof BigInteger)
+                    return toBigInteger((Number) a).equals(toBigInteger((Number) b));
+                return ((Number) a).longValue() == ((Number) b).longValue();
+            }
+
+            double doubleA = ((Number) a).doubleValue();
+            double doubleB = ((Number) b).doubleValue();
+            if (Double.isNaN(doubleA) || Double.isInfinite(doubleA) || Double.isNaN(doubleB) || Double.isInfinite(doubleB))
+                return Double.valueOf(doubleA).equals(doubleB);
+            if (a instanceof BigDecimal || b instanceof BigDecimal)
+                return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+            return doubleA == doubleB;
+        }
+
+        return a.equals(b);
+    }
+
+    /**
+     * @param value a JSON value
+     * @return a hash code that is consistent with {@link #equal(Object, Object)}
+     */
+    static int hash(Object value) {
+        if (value == null)
+            return 0;
+
+        if (value instanceof JSMap) {
+            JSMap map  = (JSMap) value;
+            int   hash = 1;
+            for (String key : map.keySet())
+                hash += key.toLowerCase().hashCode() ^ hash(map.get(key));
+            return hash;
+        }
+
+        if (value instanceof JSList) {
+            JSList list = (JSList) value;
+            int    hash = 2;
+            for (int i = 0; i < list.size(); i++)
+                hash = 31 * hash + hash(list.get(i));
+            return hash;
+        }
+
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (isIntegral(number)) {
+                if (number instanceof BigInteger && ((BigInteger) number).bitLength() > 63)
+                    return number.hashCode();
+                return Long.hashCode(number.longValue());
+            }
+            double d = number.doubleValue();
+            return d == 0 ? 0 : Double.hashCode(d);
+        }
+
+        return value.hashCode();
+    }
+
+    static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte || number instanceof BigInteger;
+    }
+
+    static BigInteger toBigInteger(Number number) {
+        return number instanceof BigInteger ? (BigInteger) number : BigInteger.valueOf(number.longValue());
+    }
+}
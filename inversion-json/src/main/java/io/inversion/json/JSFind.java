@@ -82,6 +82,8 @@ public interface JSFind {
      * <p>
      * JsonPath bracket-notation such as  "$['store']['book'][0]['title']"
      * is currently not supported.
+     * <p>
+     * Path expressions are compiled once and cached, see {@link JSPath}.
      *
      * @param qty            the maximum number of results
      * @param pathExpressions defines the properties to find
@@ -96,14 +98,17 @@ public interface JSFind {
         for(int i =0; pathExpressions != null && i<pathExpressions.length; i++){
             String pathExpression = pathExpressions[i];
             if(!Utils.empty(pathExpression)){
-                pathExpression = fromJsonPointer(pathExpression);
-                pathExpression = fromJsonPath(pathExpression);
-                found.addAll(findAll0(pathExpression, qty, new ArrayList(), new HashMap()));
+                found.addAll(JSPath.compile(pathExpression).findAll(getJson(), qty));
             }
         }
         return found;
     }
 
+    /**
+     * The original uncompiled implementation that tokenizes <code>pathExpression</code> on every call.
+     * <p>
+     * {@link #findAll(int, String...)} now uses {@link JSPath} which returns identical results.
+     */
     default List findAll0(String pathExpression, int qty, List collected, HashMap<String, Set<JSNode>> visited) {
         JSONPathTokenizer tok = new JSONPathTokenizer(//
                 "['\"", //openQuoteStr
@@ -1,51 +1,37 @@
 package io.inversion.json;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flipkart.zjsonpatch.JsonPatch;
-import io.inversion.utils.Utils;
-
 public interface JSPatch {
 
     JSNode getJson();
 
+    /**
+     * Applies the RFC 6902 JSON Patch operations to this node in place.
+     * <p>
+     * For backwards compatibility, "path" and "from" values that do not start with "/" are
+     * treated as legacy "." separated paths and converted to JSON Pointers.
+     *
+     * @param patches the patch operations
+     * @see JSPatcher
+     */
     default void patch(JSList patches) {
         //-- migrate legacy "." based paths to JSONPointer
         for (JSNode patch : patches.asMapList()) {
             Object pathVal = patch.get("path");
             String path = pathVal != null ? pathVal.toString() : null;
-            if (path != null && !path.startsWith("/")) {
+            if (path != null && path.length() > 0 && !path.startsWith("/")) {
                 path = "/" + path.replace(".", "/");
             }
             patch.put("path", path);
 
             Object fromVal = patch.get("from");
             path = fromVal != null ? fromVal.toString() : null;
-            if (path != null && !path.startsWith("/")) {
+            if (path != null && path.length() > 0 && !path.startsWith("/")) {
                 path = "/" + path.replace(".", "/");
                 patch.put("from", path);
             }
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-
-        try {
-            JsonNode target  = JsonPatch.apply(mapper.readValue(patches.toString(), JsonNode.class), mapper.readValue(getJson().toString(), JsonNode.class));
-            JSNode   patched = JSParser.asJSNode(target.toString());
-            getJson().clear();
-
-            for(String key : patched.keySet()){
-                getJson().put(key, patched.get(key));
-            }
-
-            if (getJson().isList()) {
-                JSList arr = (JSList)getJson();
-                arr.clear();
-                arr.addAll(((JSList) patched));
-            }
-        } catch (Exception e) {
-            Utils.rethrow(e);
-        }
+        JSPatcher.patch(getJson(), patches);
     }
 
 }
@@ -0,0 +1,361 @@
+package io.inversion.json;
+
+import io.inversion.utils.Utils;
+
+import java.util.*;
+
+/**
+ * Applies RFC 6902 JSON Patch operations directly to a JSMap/JSList document.
+ * <p>
+ * Supports the "add", "remove", "replace", "move", "copy" and "test" operations with RFC 6901 JSON Pointer
+ * paths.  The document is modified in place without serializing it, and values taken from a patch are
+ * deep copied so a patch document never ends up sharing nodes with the patched document.
+ * <p>
+ * Patches are atomic.  The first time a JSMap or JSList in the document is modified, a shallow copy of its
+ * entries is saved.  If any operation fails, every modified node is restored from its copy and the error
+ * is rethrown, leaving the document exactly as it was.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc6902">RFC 6902</a>
+ */
+public class JSPatcher {
+
+    final JSNode                          root;
+    final IdentityHashMap<JSNode, Object> snapshots = new IdentityHashMap<>();
+
+    JSPatcher(JSNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Applies <code>patches</code> to <code>doc</code> in place.
+     *
+     * @param doc     the document to modify
+     * @param patches a list of JSON Patch operations
+     * @throws RuntimeException if an operation is invalid or can not be applied, in which case <code>doc</code> is unchanged
+     */
+    public static void patch(JSNode doc, JSList patches) {
+        JSPatcher patcher = new JSPatcher(doc);
+        int       i       = 0;
+        try {
+            for (; i < patches.size(); i++) {
+                patcher.apply((JSMap) patches.get(i));
+            }
+        } catch (RuntimeException ex) {
+            patcher.rollback();
+            throw Utils.ex(ex, "Unable to apply JSON Patch operation {}: {}", i, ex.getMessage());
+        }
+    }
+
+    void apply(JSMap patch) {
+        String op   = patch.getString("op");
+        String path = patch.getString("path");
+
+        if (op == null)
+            throw Utils.ex("Missing 'op'");
+        if (path == null)
+            throw Utils.ex("Missing 'path'");
+
+        switch (op.toLowerCase()) {
+            case "add":
+                add(parse(path), copy(value(patch)));
+                break;
+            case "remove":
+                remove(parse(path));
+                break;
+            case "replace":
+                replace(parse(path), copy(value(patch)));
+                break;
+            case "move": {
+                String from = from(patch);
+                if (from.equals(path))
+                    break;
+                if (path.startsWith(from + "/"))
+                    throw Utils.ex("Can not move '{}' into its own child '{}'", from, path);
+                add(parse(path), remove(parse(from)));
+                break;
+            }
+            case "copy":
+                add(parse(path), copy(get(parse(from(patch)))));
+                break;
+            case "test":
+                if (!JSDiffer.equal(get(parse(path)), value(patch)))
+                    throw Utils.ex("Test failed for '{}'", path);
+                break;
+            default:
+                throw Utils.ex("Unknown op '{}'", op);
+        }
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Operations
+
+    void add(List<String> path, Object value) {
+        if (path.size() == 0) {
+            replaceRoot(value);
+            return;
+        }
+
+        JSNode parent = parent(path);
+        String key    = path.get(path.size() - 1);
+
+        touch(parent);
+        if (parent instanceof JSList) {
+            JSList list = (JSList) parent;
+            int    idx  = "-".equals(key) ? list.size() : index(key, list.size() + 1);
+            list.add(idx, value);
+        } else {
+            parent.put(key, value);
+        }
+    }
+
+    Object remove(List<String> path) {
+        if (path.size() == 0)
+            throw Utils.ex("Can not remove the root document");
+
+        JSNode parent = parent(path);
+        String key    = path.get(path.size() - 1);
+
+        touch(parent);
+        if (parent instanceof JSList) {
+            JSList list = (JSList) parent;
+            return list.remove(index(key, list.size()));
+        } else {
+            JSMap map = (JSMap) parent;
+            if (!map.containsKey(key))
+                throw Utils.ex("Path not found '{}'", toPointer(path));
+            return map.remove(key);
+        }
+    }
+
+    void replace(List<String> path, Object value) {
+        if (path.size() == 0) {
+            replaceRoot(value);
+            return;
+        }
+
+        JSNode parent = parent(path);
+        String key    = path.get(path.size() - 1);
+
+        touch(parent);
+        if (parent instanceof JSList) {
+            JSList list = (JSList) parent;
+            list.set(index(key, list.size()), value);
+        } else {
+            JSMap map = (JSMap) parent;
+            if (!map.containsKey(key))
+                throw Utils.ex("Path not found '{}'", toPointer(path));
+            map.put(key, value);
+        }
+    }
+
+    Object get(List<String> path) {
+        if (path.size() == 0)
+            return root;
+
+        JSNode parent = parent(path);
+        String key    = path.get(path.size() - 1);
+
+        if (parent instanceof JSList) {
+            JSList list = (JSList) parent;
+            return list.get(index(key, list.size()));
+        } else {
+            JSMap map = (JSMap) parent;
+            if (!map.containsKey(key))
+                throw Utils.ex("Path not found '{}'", toPointer(path));
+            return map.get(key);
+        }
+    }
+
+    /**
+     * The root node can not be swapped for a different object so its
+     * contents are replaced with the contents of <code>value</code>.
+     */
+    void replaceRoot(Object value) {
+        touch(root);
+        if (root instanceof JSMap && value instanceof JSMap) {
+            JSMap map = (JSMap) root;
+            map.clear();
+            map.putAll((JSMap) value);
+        } else if (root instanceof JSList && value instanceof JSList) {
+            JSList list = (JSList) root;
+            list.clear();
+            list.addAll((JSList) value);
+        } else {
+            throw Utils.ex("Can not replace the root document with a different type of value");
+        }
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Rollback
+
+    /**
+     * Saves a shallow copy of <code>node</code> the first time it is modified.
+     */
+    void touch(JSNode node) {
+        if (snapshots.containsKey(node))
+            return;
+
+        if (node instanceof JSList) {
+            snapshots.put(node, new ArrayList<>((JSList) node));
+        } else {
+            JSMap                         map  = (JSMap) node;
+            LinkedHashMap<String, Object> copy = new LinkedHashMap<>();
+            for (String key : map.keySet())
+                copy.put(key, map.get(key));
+            snapshots.put(node, copy);
+        }
+    }
+
+    void rollback() {
+        for (Map.Entry<JSNode, Object> entry : snapshots.entrySet()) {
+            JSNode node = entry.getKey();
+            if (node instanceof JSList) {
+                JSList list = (JSList) node;
+                list.clear();
+                list.addAll((List) entry.getValue());
+            } else {
+                JSMap map = (JSMap) node;
+                map.clear();
+                map.putAll((Map) entry.getValue());
+            }
+        }
+        snapshots.clear();
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- JSON Pointer Resolution
+
+    /**
+     * @param path all but the last token are followed from the root
+     * @return the JSMap or JSList that contains the last token of <code>path</code>
+     */
+    JSNode parent(List<String> path) {
+        Object node = root;
+        for (int i = 0; i < path.size() - 1; i++) {
+            String key = path.get(i);
+            if (node instanceof JSList) {
+                JSList list = (JSList) node;
+                node = list.get(index(key, list.size()));
+            } else if (node instanceof JSMap && ((JSMap) node).containsKey(key)) {
+                node = ((JSMap) node).get(key);
+            } else {
+                node = null;
+            }
+
+            if (!(node instanceof JSNode))
+                throw Utils.ex("Path not found '{}'", toPointer(path.subList(0, i + 1)));
+        }
+        return (JSNode) node;
+    }
+
+    /**
+     * @param key  a JSON Pointer array index token
+     * @param size the exclusive upper bound for the index
+     * @return the index
+     */
+    static int index(String key, int size) {
+        int idx = -1;
+        if (key.length() > 0 && key.length() < 10 && (key.length() == 1 || key.charAt(0) != '0')) {
+            idx = 0;
+            for (int i = 0; i < key.length() && idx > -1; i++) {
+                char c = key.charAt(i);
+                idx = c >= '0' && c <= '9' ? idx * 10 + (c - '0') : -1;
+            }
+        }
+        if (idx < 0 || idx >= size)
+            throw Utils.ex("Invalid array index '{}'", key);
+        return idx;
+    }
+
+    /**
+     * Splits an RFC 6901 JSON Pointer into its unescaped reference tokens.
+     *
+     * @param pointer the JSON Pointer
+     * @return the reference tokens, empty for the whole document
+     */
+    static List<String> parse(String pointer) {
+        if (pointer.length() == 0)
+            return Collections.emptyList();
+
+        if (pointer.charAt(0) != '/')
+            throw Utils.ex("Invalid JSON Pointer '{}'", pointer);
+
+        List<String> tokens = new ArrayList<>();
+        int          start  = 1;
+        while (true) {
+            int    end   = pointer.indexOf('/', start);
+            String token = pointer.substring(start, end < 0 ? pointer.length() : end);
+            if (token.indexOf('~') > -1)
+                token = token.replace("~1", "/").replace("~0", "~");
+            tokens.add(token);
+
+            if (end < 0)
+                break;
+            start = end + 1;
+        }
+        return tokens;
+    }
+
+    static String toPointer(List<String> tokens) {
+        StringBuilder buff = new StringBuilder();
+        for (String token : tokens)
+            buff.append('/').append(escape(token));
+        return buff.toString();
+    }
+
+    /**
+     * @param token a property name or array index
+     * @return <code>token</code> with '~' and '/' escaped for use in a JSON Pointer
+     */
+    static String escape(String token) {
+        if (token.indexOf('~') < 0 && token.indexOf('/') < 0)
+            return token;
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Utilities
+
+    static Object value(JSMap patch) {
+        if (!patch.containsKey("value"))
+            throw Utils.ex("Missing 'value'");
+        return patch.get("value");
+    }
+
+    static String from(JSMap patch) {
+        String from = patch.getString("from");
+        if (from == null)
+            throw Utils.ex("Missing 'from'");
+        return from;
+    }
+
+    /**
+     * @param value the value to copy
+     * @return a deep copy of <code>value</code> if it is a JSMap or JSList, otherwise <code>value</code>
+     */
+    static Object copy(Object value) {
+        if (value instanceof JSMap) {
+            JSMap map  = (JSMap) value;
+            JSMap copy = new JSMap();
+            for (String key : map.keySet())
+                copy.put(key, copy(map.get(key)));
+            return copy;
+        } else if (value instanceof JSList) {
+            JSList list = (JSList) value;
+            JSList copy = new JSList();
+            copy.ensureCapacity(list.size());
+            for (int i = 0; i < list.size(); i++)
+                copy.add(copy(list.get(i)));
+            return copy;
+        }
+        return value;
+    }
+}
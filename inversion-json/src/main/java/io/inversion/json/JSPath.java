@@ -0,0 +1,378 @@
+package io.inversion.json;
+
+import io.inversion.utils.LruCache;
+import io.inversion.utils.Utils;
+
+import java.util.*;
+
+/**
+ * A {@link JSFind} path expression compiled into an immutable chain of steps.
+ * <p>
+ * Compiling normalizes JSON Pointer and JSON Path syntax, tokenizes the expression and parses any
+ * JSON Path filters, including their sub paths, exactly once.  Compiled expressions are cached by
+ * their source string so repeated calls with the same expression, such as those made by actions
+ * for every request, skip straight to evaluation.
+ * <p>
+ * Evaluation walks the steps without copying the remaining path for each descent and tracks the
+ * nodes it has visited with a bit per step instead of a Set per stringified path.  The results
+ * are identical to {@link JSFind#findAll0(List, int, List, HashMap)}.
+ *
+ * @see JSFind#findAll(int, String...)
+ */
+public class JSPath {
+
+    static final int PROPERTY  = 0;
+    static final int WILDCARD  = 1;
+    static final int RECURSIVE = 2;
+    static final int FILTER    = 3;
+    static final int SLICE     = 4;
+    static final int EMPTY     = 5;
+
+    static final LruCache<String, JSPath> cache = new LruCache<>(1000);
+
+    final String expression;
+    final Step   first;
+
+    /**
+     * The number of distinct step ids.  Steps that have the same remaining path, including filter
+     * sub paths, share an id so they share infinite recursion protection just like the original.
+     */
+    final int ids;
+
+    JSPath(String expression) {
+        this.expression = expression;
+
+        Map<String, Integer> ids = new HashMap<>();
+        this.first = compile(tokenize(JSFind.fromJsonPath(JSFind.fromJsonPointer(expression))), ids);
+        this.ids = ids.size();
+    }
+
+    /**
+     * @param pathExpression a JSON Pointer, JSON Path or 'dot and wildcard' expression
+     * @return the compiled, and possibly cached, expression
+     * @see JSFind#findAll(int, String...)
+     */
+    public static JSPath compile(String pathExpression) {
+        return cache.get(pathExpression, JSPath::new);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @param node the node to search
+     * @param qty  the maximum number of results, or less than 1 for all
+     * @return the values found
+     */
+    public List findAll(JSNode node, int qty) {
+        return new Search(ids).find(node, first, qty, new ArrayList());
+    }
+
+    public String toString() {
+        return expression;
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Compilation
+
+    static List<String> tokenize(String pathExpression) {
+        return new JSONPathTokenizer(//
+                "['\"", //openQuoteStr
+                "]'\"", //closeQuoteStr
+                "]", //breakIncludedChars
+                ".", //breakExcludedChars
+                "", //unquotedIgnoredChars
+                ". \t", //leadingIgnoredChars
+                pathExpression //chars
+        ).asList();
+    }
+
+    static Step compile(List<String> path, Map<String, Integer> ids) {
+        Step next = new Step(id(path.subList(path.size(), path.size()), ids), EMPTY, null, null);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            int    id      = id(path.subList(i, path.size()), ids);
+            String segment = path.get(i);
+            Step   last    = i == path.size() - 1 ? null : next;
+
+            if ("*".equals(segment))
+                next = new Step(id, WILDCARD, segment, last);
+            else if ("**".equals(segment))
+                next = new Step(id, RECURSIVE, segment, last);
+            else if (segment.startsWith("[") && segment.endsWith("]"))
+                next = compileFilter(id, segment, last, ids);
+            else
+                next = new Step(id, PROPERTY, segment, last);
+        }
+        return next;
+    }
+
+    static int id(List<String> path, Map<String, Integer> ids) {
+        return ids.computeIfAbsent(path.toString(), k -> ids.size());
+    }
+
+    /**
+     * Pre tokenizes a bracketed JSON Path filter into a list of comparisons followed by an optional existence check
+     * following the same rules as the original per evaluation tokenization loop.
+     */
+    static Step compileFilter(int id, String segment, Step next, Map<String, Integer> ids) {
+        String expr = segment.substring(1, segment.length() - 1).trim();
+        if (!(expr.startsWith("?(") && expr.endsWith(")")))
+            return new Step(id, SLICE, expr, next);
+
+        Step filter = new Step(id, FILTER, expr, next);
+        try {
+            JSONPathTokenizer tokenizer = new JSONPathTokenizer(//
+                    "'\"", //openQuoteStr
+                    "'\"", //closeQuoteStr
+                    "?=<>!", //breakIncludedChars...breakAfter
+                    "]=<>! ", //breakExcludedChars...breakBefore
+                    "[()", //unquotedIgnoredChars
+                    "]. \t", //leadingIgnoredChars
+                    expr);
+
+            String token;
+            String func    = null;
+            String subpath = null;
+            String op      = null;
+
+            while ((token = tokenizer.next()) != null) {
+                if (token.equals("?")) {
+                    func = "?";
+                    continue;
+                }
+
+                if (token.startsWith("@_")) {
+                    subpath = token.substring(2);
+                } else if (Utils.in(token, "=", ">", "<", "!")) {
+                    if (op == null)
+                        op = token;
+                    else
+                        op += token;
+                } else if (subpath != null && op != null) {
+                    filter.comparisons.add(new Comparison(compile(tokenize(subpath), ids), op, token));
+                    func = null;
+                    subpath = null;
+                    op = null;
+                }
+            }
+
+            if ("?".equals(func) && subpath != null)
+                filter.exists = compile(tokenize(subpath), ids);
+
+        } catch (RuntimeException ex) {
+            //-- the original only tokenized filters that were reached during a search
+            filter.error = ex;
+        }
+        return filter;
+    }
+
+    static class Step {
+        final int    id;
+        final int    kind;
+        final String segment;
+        final Step   next;
+
+        final List<Comparison> comparisons = new ArrayList<>();
+        Step             exists      = null;
+        RuntimeException error       = null;
+
+        Step(int id, int kind, String segment, Step next) {
+            this.id = id;
+            this.kind = kind;
+            this.segment = segment;
+            this.next = next;
+        }
+    }
+
+    static class Comparison {
+        final Step   path;
+        final String op;
+        final String value;
+
+        Comparison(Step path, String op, String value) {
+            this.path = path;
+            this.op = op;
+            this.value = value;
+        }
+    }
+
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //--------------------------------------------------------------------------------------
+    //-- Evaluation
+
+    static class Search {
+        final int                          words;
+        final IdentityHashMap<JSNode, long[]> visited = new IdentityHashMap<>();
+
+        Search(int ids) {
+            this.words = (ids + 63) / 64;
+        }
+
+        /**
+         * Infinite recursion protection, you can visit a node more than once trying different
+         * parts of the search path but you can only visit a node once for any given step.
+         */
+        boolean visit(JSNode node, Step step) {
+            long[] bits = visited.get(node);
+            if (bits == null) {
+                bits = new long[words];
+                visited.put(node, bits);
+            }
+            long mask = 1L << (step.id & 63);
+            if ((bits[step.id >>> 6] & mask) != 0)
+                return false;
+            bits[step.id >>> 6] |= mask;
+            return true;
+        }
+
+        List find(JSNode json, Step step, int qty, List collected) {
+            if (!visit(json, step))
+                return collected;
+
+            if (qty > 1 && collected.size() >= qty)
+                return collected;
+
+            switch (step.kind) {
+                case WILDCARD:
+                    if (step.next == null) {
+                        for (Object value : json.values()) {
+                            if (!collected.contains(value) && (qty < 1 || collected.size() < qty))
+                                collected.add(value);
+                        }
+                    } else {
+                        for (Object value : json.values()) {
+                            if (value instanceof JSNode)
+                                find((JSNode) value, step.next, qty, collected);
+                        }
+                    }
+                    break;
+                case RECURSIVE:
+                    if (step.next != null) {
+                        find(json, step.next, qty, collected);
+                        for (Object value : json.values()) {
+                            if (value instanceof JSNode)
+                                find((JSNode) value, step, qty, collected);
+                        }
+                    }
+                    break;
+                case FILTER:
+                    filter(json, step, qty, collected);
+                    break;
+                case SLICE:
+                    slice(json, step, collected);
+                    break;
+                case EMPTY:
+                    throw new IndexOutOfBoundsException("Index 0 out of bounds for length 0");
+                default:
+                    Object found = json.get(step.segment);
+                    if (found != null) {
+                        if (step.next == null) {
+                            if (!collected.contains(found) && (qty < 1 || collected.size() < qty))
+                                collected.add(found);
+                        } else if (found instanceof JSNode) {
+                            find((JSNode) found, step.next, qty, collected);
+                        }
+                    }
+            }
+            return collected;
+        }
+
+        void filter(JSNode json, Step step, int qty, List collected) {
+            if (step.error != null)
+                throw step.error;
+
+            for (Comparison comparison : step.comparisons) {
+                if (json.isList()) {
+                    for (Object child : json.values()) {
+                        if (child instanceof JSNode) {
+                            List found = find((JSNode) child, comparison.path, -1, new ArrayList());
+                            for (Object val : found) {
+                                if (JSFind.eval(val, comparison.op, comparison.value)) {
+                                    if (!collected.contains(child) && (qty < 1 || collected.size() < qty))
+                                        collected.add(child);
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    List found = find(json, comparison.path, -1, new ArrayList());
+                    for (Object val : found) {
+                        if (JSFind.eval(val, comparison.op, comparison.value)) {
+                            if (!collected.contains(json) && (qty < 1 || collected.size() < qty)) {
+                                collected.add(json);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+
+            //$..book[?(@.isbn)] -- checks for the existence of a property
+            if (step.exists != null) {
+                if (json.isList()) {
+                    for (Object child : json.values()) {
+                        if (child instanceof JSNode) {
+                            List found = find((JSNode) child, step.exists, -1, new ArrayList());
+                            for (Object val : found) {
+                                if (!collected.contains(child) && (qty < 1 || collected.size() < qty))
+                                    collected.add(child);
+                            }
+                        }
+                    }
+                } else {
+                    List found = find(json, step.exists, -1, new ArrayList());
+                    if (found.size() > 0) {
+                        if (!collected.contains(json) && (qty < 1 || collected.size() < qty))
+                            collected.add(json);
+                    }
+                }
+            }
+        }
+
+        /**
+         * $..book[(@.length-1)], $..book[-1:], $..book[:2] and $..book[0:1]
+         */
+        void slice(JSNode json, Step step, List collected) {
+            if (!json.isList())
+                return;
+
+            String expr   = step.segment;
+            int    length = json.size();
+
+            List found = new ArrayList();
+            if (expr.startsWith("(@_length-")) {
+                int index = Integer.parseInt(expr.substring(expr.indexOf("-") + 1, expr.length() - 1).trim());
+                if (length - index > 0) {
+                    found.add(json.get(length - index));
+                }
+            } else if (expr.startsWith(":")) {
+                int count = Integer.parseInt(expr.substring(1).trim());
+                for (int i = 0; i < length && i < count; i++) {
+                    found.add(json.get(count));
+                }
+            } else if (expr.endsWith(":")) {
+                int idx = Integer.parseInt(expr.substring(0, expr.length() - 1).trim()) * -1;
+                if (idx <= length)
+                    found.add(json.get(length - idx));
+            } else {
+                try {
+                    int start = Integer.parseInt(expr.substring(0, expr.indexOf(":")).trim());
+                    int end   = Integer.parseInt(expr.substring(expr.indexOf(":") + 1).trim());
+                    for (int i = start; i <= end && i < length; i++) {
+                        found.add(json.get(i));
+                    }
+                } catch (Exception ex) {
+                    throw new IllegalArgumentException("Invalid JSON Path slice '[" + expr + "]'", ex);
+                }
+            }
+
+            //-- like the original, slices are only supported as the last step of a path
+            if (found.size() > 0 && step.next == null)
+                collected.addAll(found);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package io.inversion.json;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import io.inversion.utils.Columns;
 import io.inversion.utils.Utils;
 
 import java.io.ByteArrayOutputStream;
@@ -72,6 +73,11 @@ public class JSWriter {
 
         visited.put(object, path);
 
+        if (object instanceof JSColumnList && ((JSColumnList) object).isColumnar()) {
+            private_writeColumnList((JSColumnList) object, json, visited, lowercaseNames, path);
+            return;
+        }
+
         if (object.isList()) {
             private_writeArrayNode(((JSList) object), json, visited, lowercaseNames, path);
             return;
@@ -82,47 +88,105 @@ public class JSWriter {
         for (String key : object.keySet()) {
             Object value = object.get(key);
             String name  = lowercaseNames ? key.toLowerCase() : key;
+            private_writeField(name, value, json, visited, lowercaseNames, path);
+        }
+        json.writeEndObject();
+    }
 
-            if (value == null) {
+    static void private_writeField(String name, Object value, JsonGenerator json, IdentityHashMap<Object, String> visited, boolean lowercaseNames, String path) throws Exception {
+        if (value == null) {
+            json.writeNullField(name);
+        } else if (value instanceof JSNode) {
+            json.writeFieldName(name);
+            private_writeObject((JSNode) value, json, visited, lowercaseNames, path + "/" + name);
+        } else if (value instanceof String) {
+            if (value.equals("null"))
+                json.writeNullField(name);
+            else
+                json.writeStringField(name, (String) value);
+        } else if (value instanceof Boolean) {
+            json.writeBooleanField(name, (Boolean) value);
+        } else if (value instanceof Integer) {
+            json.writeNumberField(name, (Integer) value);
+        } else if (value instanceof Long) {
+            json.writeNumberField(name, (Long) value);
+        } else if (value instanceof Float) {
+            json.writeNumberField(name, (Float) value);
+        } else if (value instanceof Double) {
+            json.writeNumberField(name, (Double) value);
+        } else if (value instanceof BigInteger) {
+            json.writeNumberField(name, ((BigInteger) value).intValue());
+        } else if (value instanceof BigDecimal) {
+            json.writeNumberField(name, (BigDecimal) value);
+        } else if (value instanceof Date) {
+            String dateFormat = "yyyy-MM-dd'T'HH:mmZ";
+            SimpleDateFormat f = new SimpleDateFormat(dateFormat);
+            String dateString = f.format((Date) value);
+            json.writeStringField(name, dateString);
+        } else {
+            String strVal = value + "";
+            if ("null".equals(strVal)) {
                 json.writeNullField(name);
-            } else if (value instanceof JSNode) {
-                json.writeFieldName(name);
-                private_writeObject((JSNode) value, json, visited, lowercaseNames, path + "/" + name);
-            } else if (value instanceof String) {
-                if (value.equals("null"))
-                    json.writeNullField(name);
-                else
-                    json.writeStringField(name, (String) value);
-            } else if (value instanceof Boolean) {
-                json.writeBooleanField(name, (Boolean) value);
-            } else if (value instanceof Integer) {
-                json.writeNumberField(name, (Integer) value);
-            } else if (value instanceof Long) {
-                json.writeNumberField(name, (Long) value);
-            } else if (value instanceof Float) {
-                json.writeNumberField(name, (Float) value);
-            } else if (value instanceof Double) {
-                json.writeNumberField(name, (Double) value);
-            } else if (value instanceof BigInteger) {
-                json.writeNumberField(name, ((BigInteger) value).intValue());
-            } else if (value instanceof BigDecimal) {
-                json.writeNumberField(name, (BigDecimal) value);
-            } else if (value instanceof Date) {
-                String dateFormat = "yyyy-MM-dd'T'HH:mmZ";
-                SimpleDateFormat f = new SimpleDateFormat(dateFormat);
-                String dateString = f.format((Date) value);
-                json.writeStringField(name, dateString);
             } else {
-                String strVal = value + "";
-                if ("null".equals(strVal)) {
-                    json.writeNullField(name);
-                } else {
-                    strVal = encodeStringValue(strVal);
-                    json.writeStringField(name, strVal);
+                strVal = encodeStringValue(strVal);
+                json.writeStringField(name, strVal);
+            }
+        }
+    }
+
+    /**
+     * Writes the rows of a JSColumnList that has not been materialized directly from its Columns
+     * without creating a JSMap for each row.
+     * <p>
+     * Rows that have already been converted to a JSMap are written from that JSMap
+     * so that any changes made to them are preserved.
+     */
+    static void private_writeColumnList(JSColumnList list, JsonGenerator json, IdentityHashMap<Object, String> visited, boolean lowercaseNames, String path) throws Exception {
+        Columns  columns = list.getColumns();
+        int      width   = list.getWidth();
+        String[] names   = new String[width];
+        for (int pos = 0; pos < width; pos++)
+            names[pos] = lowercaseNames ? list.getName(pos).toLowerCase() : list.getName(pos);
+
+        json.writeStartArray();
+        for (int row = 0; row < list.size(); row++) {
+            String rowPath   = path + "/" + row;
+            JSMap  converted = list.getConverted(row);
+            if (converted != null) {
+                private_writeObject(converted, json, visited, lowercaseNames, rowPath);
+                continue;
+            }
+
+            json.writeStartObject();
+            for (int pos = 0; pos < width; pos++) {
+                int col  = list.getIndex(pos);
+                int type = list.getType(pos);
+
+                if (type != Columns.TYPE_OBJECT && columns.isNull(row, col)) {
+                    json.writeNullField(names[pos]);
+                    continue;
+                }
+
+                switch (type) {
+                    case Columns.TYPE_INT:
+                        json.writeNumberField(names[pos], columns.getInt(row, col));
+                        break;
+                    case Columns.TYPE_LONG:
+                        json.writeNumberField(names[pos], columns.getLong(row, col));
+                        break;
+                    case Columns.TYPE_DOUBLE:
+                        json.writeNumberField(names[pos], columns.getDouble(row, col));
+                        break;
+                    case Columns.TYPE_BOOLEAN:
+                        json.writeBooleanField(names[pos], columns.getBoolean(row, col));
+                        break;
+                    default:
+                        private_writeField(names[pos], list.getValue(row, pos), json, visited, lowercaseNames, rowPath);
                 }
             }
+            json.writeEndObject();
         }
-        json.writeEndObject();
+        json.writeEndArray();
     }
 
     static void private_writeArrayNode(JSList array, JsonGenerator json, IdentityHashMap<Object, String> visited, boolean lowercaseNames, String path) throws Exception {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.json;
+
+import io.inversion.utils.Columns;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JSColumnListTest {
+
+    Columns buildColumns() {
+        Columns columns = new Columns(Arrays.asList("id", "name", "price", "active"), new int[]{Columns.TYPE_INT, Columns.TYPE_OBJECT, Columns.TYPE_DOUBLE, Columns.TYPE_BOOLEAN});
+        for (int i = 0; i < 3; i++) {
+            int row = columns.addRow();
+            columns.setInt(row, 0, i + 1);
+            columns.set(row, 1, "name" + i);
+            if (i != 1)
+                columns.setDouble(row, 2, i * 1.5);
+            columns.setBoolean(row, 3, i % 2 == 0);
+        }
+        return columns;
+    }
+
+    JSList buildList() {
+        JSList list = new JSList();
+        for (int i = 0; i < 3; i++) {
+            JSMap map = new JSMap();
+            map.put("id", i + 1);
+            map.put("name", "name" + i);
+            map.put("price", i != 1 ? i * 1.5 : null);
+            map.put("active", i % 2 == 0);
+            list.add(map);
+        }
+        return list;
+    }
+
+    @Test
+    public void test_writer_output_matches_materialized_list() {
+        JSColumnList list = new JSColumnList(buildColumns());
+        assertEquals(buildList().toString(), list.toString());
+        assertTrue(list.isColumnar());
+    }
+
+    @Test
+    public void test_get_converts_single_row_and_changes_are_written() {
+        JSColumnList list = new JSColumnList(buildColumns());
+        assertEquals(3, list.size());
+
+        JSMap row = (JSMap) list.get(1);
+        assertEquals("name1", row.get("NAME"));
+        assertNull(row.get("price"));
+        assertSame(row, list.get(1));
+        assertTrue(list.isColumnar());
+
+        row.put("extra", "value");
+        assertTrue(list.toString().contains("\"extra\" : \"value\""));
+
+        JSList expected = buildList();
+        ((JSMap) expected.get(1)).put("extra", "value");
+        assertEquals(expected.toString(), list.toString());
+    }
+
+    @Test
+    public void test_structural_changes_materialize() {
+        JSColumnList list = new JSColumnList(buildColumns());
+        JSMap        row  = (JSMap) list.get(0);
+
+        list.remove(2);
+        assertFalse(list.isColumnar());
+        assertEquals(2, list.size());
+        assertSame(row, list.get(0));
+
+        int count = 0;
+        for (Object o : list) {
+            assertTrue(o instanceof JSMap);
+            count += 1;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void test_names_order_and_casts() {
+        Function<Object, Object>[] casts = new Function[]{null, v -> v.toString().toUpperCase()};
+
+        JSColumnList list = new JSColumnList(buildColumns(), new String[]{"label", "key"}, new int[]{1, 0}, casts);
+        assertEquals("[{\"label\":\"name0\",\"key\":\"1\"},{\"label\":\"name1\",\"key\":\"2\"},{\"label\":\"name2\",\"key\":\"3\"}]", list.toString(false));
+        assertEquals("1", ((JSMap) list.get(0)).get("key"));
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.zjsonpatch.JsonDiff;
+import com.flipkart.zjsonpatch.JsonPatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JSPatchTest {
+
+    static final ObjectMapper mapper = new ObjectMapper();
+
+    static JSMap doc(String json) {
+        return (JSMap) JSParser.asJSNode(json.replace('\'', '"'));
+    }
+
+    static JSList patches(String json) {
+        return JSParser.asJSList(json.replace('\'', '"'));
+    }
+
+    @Test
+    public void patch_rfc6902_operations() {
+        JSMap doc = doc("{'foo':'bar','list':['a','c'],'a/b':1,'m~n':2,'obj':{'x':1}}");
+        doc.patch(patches("[" +//
+                "{'op':'add','path':'/baz','value':'qux'}," +//
+                "{'op':'add','path':'/list/1','value':'b'}," +//
+                "{'op':'add','path':'/list/-','value':'d'}," +//
+                "{'op':'replace','path':'/a~1b','value':10}," +//
+                "{'op':'remove','path':'/m~0n'}," +//
+                "{'op':'copy','from':'/obj','path':'/copied'}," +//
+                "{'op':'move','from':'/foo','path':'/obj/foo'}," +//
+                "{'op':'test','path':'/list','value':['a','b','c','d']}" +//
+                "]"));
+
+        assertEquals("{\"list\":[\"a\",\"b\",\"c\",\"d\"],\"a/b\":10,\"obj\":{\"x\":1,\"foo\":\"bar\"},\"baz\":\"qux\",\"copied\":{\"x\":1}}", doc.toString(false));
+        assertNotSame(doc.getMap("obj"), doc.getMap("copied"));
+    }
+
+    @Test
+    public void patch_legacy_dot_paths() {
+        JSMap doc = doc("{'a':{'b':[1,2]}}");
+        doc.patch(patches("[{'op':'replace','path':'a.b.1','value':3}]"));
+        assertEquals("{\"a\":{\"b\":[1,3]}}", doc.toString(false));
+    }
+
+    @Test
+    public void patch_values_are_copied() {
+        JSMap  doc     = doc("{}");
+        JSList patches = patches("[{'op':'add','path':'/a','value':{'b':1}}]");
+        doc.patch(patches);
+        assertNotSame(patches.getMap(0).getMap("value"), doc.getMap("a"));
+    }
+
+    @Test
+    public void patch_failure_leaves_document_unchanged() {
+        JSMap  doc    = doc("{'a':1,'list':[1,2,3],'obj':{'b':2,'c':3}}");
+        String before = doc.toString(false);
+
+        String[] failures = {//
+                "[{'op':'remove','path':'/list/0'},{'op':'add','path':'/obj/b','value':5},{'op':'remove','path':'/missing'}]",//
+                "[{'op':'remove','path':'/obj/b'},{'op':'add','path':'/list/9','value':5}]",//
+                "[{'op':'replace','path':'/a','value':2},{'op':'test','path':'/a','value':1}]",//
+                "[{'op':'move','from':'/obj','path':'/obj/child'}]",//
+                "[{'op':'add','path':'/list/01','value':5}]",//
+                "[{'op':'remove','path':'/a'},{'op':'bogus','path':'/a'}]",//
+                "[{'op':'add','path':'/obj/c'}]"//
+        };
+
+        for (String failure : failures) {
+            assertThrows(RuntimeException.class, () -> doc.patch(patches(failure)), failure);
+            assertEquals(before, doc.toString(false), failure);
+        }
+    }
+
+    @Test
+    public void patch_root_and_lists() {
+        JSList list = (JSList) JSParser.asJSNode("[1,2,3]");
+        list.patch(patches("[{'op':'remove','path':'/0'},{'op':'add','path':'/0','value':{'a':1}},{'op':'move','from':'/2','path':'/0'}]"));
+        assertEquals("[3,{\"a\":1},2]", list.toString(false));
+
+        JSMap doc = doc("{'a':1}");
+        doc.patch(patches("[{'op':'replace','path':'','value':{'b':2}}]"));
+        assertEquals("{\"b\":2}", doc.toString(false));
+    }
+
+    @Test
+    public void diff_lists_align_on_common_elements() {
+        JSList source = (JSList) JSParser.asJSNode("[{'id':1},{'id':2},{'id':3},{'id':4}]".replace('\'', '"'));
+        JSList target = (JSList) JSParser.asJSNode("[{'id':1},{'id':3},{'id':4},{'id':5}]".replace('\'', '"'));
+
+        JSList patches = target.diff(source);
+        assertEquals("[{\"op\":\"remove\",\"path\":\"/1\"},{\"op\":\"add\",\"path\":\"/3\",\"value\":{\"id\":5}}]", patches.toString(false));
+
+        source.patch(patches);
+        assertEquals(target.toString(false), source.toString(false));
+    }
+
+    @Test
+    public void diff_property_name_case_change() {
+        JSMap source = doc("{'name':'a','x':1}");
+        JSMap target = doc("{'Name':'a','x':1}");
+        source.patch(target.diff(source));
+        assertTrue(JSDiffer.equal(target, source));
+        assertTrue(source.keySet().contains("Name"));
+    }
+
+    /**
+     * Randomly mutates random documents and verifies that the native diff and patch agree with zjsonpatch.
+     * <p>
+     * The zjsonpatch diffs include "move" and "copy" operations so this exercises those paths of JSPatcher.
+     */
+    @Test
+    public void diff_and_patch_match_zjsonpatch() throws Exception {
+        Random random = new Random(6902);
+        for (int i = 0; i < 500; i++) {
+            JSNode source = randomNode(random, 0, random.nextBoolean());
+            JSNode target = JSParser.asJSNode(source.toString());
+            mutate(random, target, 1 + random.nextInt(6));
+
+            String   expected   = target.toString(false);
+            JsonNode sourceJson = mapper.readTree(source.toString());
+            JsonNode targetJson = mapper.readTree(expected);
+
+            //-- native diff applied natively
+            JSList patches = target.diff(source);
+            JSNode patched = JSParser.asJSNode(source.toString());
+            patched.patch(patches);
+            assertEquals(targetJson, mapper.readTree(patched.toString()), patches.toString());
+
+            //-- native diff applied by zjsonpatch
+            JsonNode zpatched = JsonPatch.apply(mapper.readTree(patches.toString()), sourceJson);
+            assertEquals(targetJson, zpatched, patches.toString());
+
+            //-- zjsonpatch diff applied natively
+            JsonNode zpatches = JsonDiff.asJson(sourceJson, targetJson);
+            patched = JSParser.asJSNode(source.toString());
+            patched.patch(JSParser.asJSList(zpatches.toString()));
+            assertEquals(targetJson, mapper.readTree(patched.toString()), zpatches.toString());
+        }
+    }
+
+    static JSNode randomNode(Random random, int depth, boolean list) {
+        JSNode node  = list ? new JSList() : new JSMap();
+        int    count = random.nextInt(depth == 0 ? 8 : 5);
+        for (int i = 0; i < count; i++) {
+            Object value = randomValue(random, depth + 1);
+            if (list)
+                ((JSList) node).add(value);
+            else
+                node.put("k" + random.nextInt(10), value);
+        }
+        return node;
+    }
+
+    static Object randomValue(Random random, int depth) {
+        switch (random.nextInt(depth < 3 ? 7 : 5)) {
+            case 0:
+                return random.nextInt(5);
+            case 1:
+                return "s" + random.nextInt(5);
+            case 2:
+                return random.nextBoolean();
+            case 3:
+                return null;
+            case 4:
+                return random.nextInt(3) + 0.5;
+            case 5:
+                return randomNode(random, depth, false);
+            default:
+                return randomNode(random, depth, true);
+        }
+    }
+
+    static void mutate(Random random, JSNode root, int mutations) {
+        for (int m = 0; m < mutations; m++) {
+            JSNode node = root;
+            while (node.size() > 0 && random.nextInt(3) > 0) {
+                Object child = node.get(node.keySet().toArray()[random.nextInt(node.size())]);
+                if (!(child instanceof JSNode))
+                    break;
+                node = (JSNode) child;
+            }
+
+            if (node instanceof JSList) {
+                JSList list = (JSList) node;
+                int    op   = random.nextInt(3);
+                if (op == 0 || list.size() == 0)
+                    list.add(random.nextInt(list.size() + 1), randomValue(random, 2));
+                else if (op == 1)
+                    list.remove(random.nextInt(list.size()));
+                else
+                    list.set(random.nextInt(list.size()), randomValue(random, 2));
+            } else {
+                if (node.size() > 0 && random.nextBoolean())
+                    node.remove(node.keySet().toArray()[random.nextInt(node.size())]);
+                else
+                    node.put("k" + random.nextInt(12), randomValue(random, 2));
+            }
+        }
+    }
+}
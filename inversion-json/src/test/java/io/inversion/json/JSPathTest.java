@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.json;
+
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JSPathTest {
+
+    static final String[] EXPRESSIONS = {//
+            "$..book[?(@.author = 'Herman Melville')]", "$.store..price", "**.store.**.price", "$..book[2]", "**.book.2",//
+            "$..*", "**.*", "$.store.book[*].author", "store.book.*.author", "**.store.book.*.author", "*.store.book.*.author",//
+            "$..book[?(@.price = 12.99)]", "$..book[?(@.price >= 12.99)]", "$..book[?(@.price!=8.99)]", "$..book[?(@.price != 100)]",//
+            "**.bicycle", "**.*.[?(@.price)]", "**.*.[?(@.price != 100)]", "$..[?(@.price != 100)]", "$..[?(@.price!=100)]",//
+            "$..book[?(@.isbn)]", "$..[?(@.*.*.isbn)]", "$..[?(@.price<10)]", "$..[?(@.*.price<30)]", "$..[?(@.bicycle.price)]",//
+            "store.bicycle.price", "*.bicycle.price", "*.*.color", "**.color", "*.*.*.color", "$..[?(@.store.bicycle.price)]",//
+            "$..[?(@.*.*.color)]", "$..[?(@.*.bicycle.price)]", "$..[?(@.bicycle.price>10)]", "$..[?(@.store.bicycle.price>10)]",//
+            "$.store.book[(@.length-1)]", "$.store.book[-1:]", "$.store.book[-2:]", "$.store.book[(@.length-2)]", "$.store.book[:3]",//
+            "$.store.book[1:3]", "**.book[?(@.category)]", "/store/book/0/title", "#/store/bicycle",//
+            "data.*.basket.lineItems.*.code", "lineItems.*.code", "lineItems.code", "data.*.basket.*", "**.lineItems.*.code",//
+            "**.shared.value", "**.parent.**.name", "**.[?(@.name = 'child')]"//
+    };
+
+    static final int[] QUANTITIES = {-1, 1, 2, 3};
+
+    JSNode[] docs() {
+        JSMap shared = new JSMap("value", 1);
+        JSMap parent = new JSMap("name", "parent", "a", new JSMap("shared", shared), "b", new JSList(new JSMap("shared", shared)));
+        JSMap child  = new JSMap("name", "child", "parent", parent);
+        parent.put("child", child);
+
+        return new JSNode[]{//
+                JSParser.asJSNode(Utils.read(getClass().getResourceAsStream("testJsonPath1.json"))),//
+                JSParser.asJSNode(Utils.read(getClass().getResourceAsStream("testCollectNodes1.json"))),//
+                parent};
+    }
+
+    /**
+     * Verifies that compiled expressions return exactly the same objects, in the same order,
+     * as the original JSFind.findAll0 implementation.
+     */
+    @Test
+    public void compiled_matches_original() {
+        for (JSNode doc : docs()) {
+            for (String expression : EXPRESSIONS) {
+                for (int qty : QUANTITIES) {
+                    List expected = doc.findAll0(JSFind.fromJsonPath(JSFind.fromJsonPointer(expression)), qty, new ArrayList(), new HashMap());
+                    List actual   = JSPath.compile(expression).findAll(doc, qty);
+                    assertSameElements(expected, actual, expression + " qty=" + qty);
+                    assertSameElements(expected, doc.findAll(qty, expression), expression + " qty=" + qty);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compiled_expressions_are_cached() {
+        assertSame(JSPath.compile("$..book[?(@.isbn)]"), JSPath.compile("$..book[?(@.isbn)]"));
+    }
+
+    @Test
+    public void invalid_slices_throw() {
+        JSNode doc = docs()[0];
+        assertThrows(IllegalArgumentException.class, () -> JSPath.compile("$.store.book[1:x]").findAll(doc, -1));
+    }
+
+    static void assertSameElements(List expected, List actual, String message) {
+        assertEquals(expected.size(), actual.size(), message);
+        for (int i = 0; i < expected.size(); i++)
+            assertSame(expected.get(i), actual.get(i), message);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.redis;
+
+import io.inversion.ResponseCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * An {@link io.inversion.ApiClient} ResponseCache shared by every instance of a service through Redis.
+ * <p>
+ * Redis errors are logged and treated as cache misses so an unavailable Redis only costs the remote calls
+ * the cache would have saved.
+ * <pre>
+ *     ApiClient client = new ApiClient("upstream").withResponseCache(new RedisResponseCache().withHost("redis.internal"));
+ * </pre>
+ */
+public class RedisResponseCache implements ResponseCache {
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    protected transient JedisPool jedis = null;
+
+    protected String host              = null;
+    protected int    port              = 6379;
+    protected int    poolMin           = 4;
+    protected int    poolMax           = 64;
+    protected int    readSocketTimeout = 2500;
+    protected String keyPrefix         = "ApiClient-";
+
+    @Override
+    public Entry get(String key) {
+        try (Jedis jedis = getRedisClient()) {
+            String json = jedis.get(keyPrefix + key);
+            return json == null ? null : Entry.fromJson(json);
+        } catch (Exception ex) {
+            log.warn("Error reading cached response from Redis", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, Entry entry, long ttl) {
+        if (ttl <= 0)
+            return;
+
+        try (Jedis jedis = getRedisClient()) {
+            jedis.psetex(keyPrefix + key, ttl, entry.toJson());
+        } catch (Exception ex) {
+            log.warn("Error writing cached response to Redis", ex);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        try (Jedis jedis = getRedisClient()) {
+            jedis.del(keyPrefix + key);
+        } catch (Exception ex) {
+            log.warn("Error removing cached response from Redis", ex);
+        }
+    }
+
+    protected Jedis getRedisClient() {
+        if (jedis == null) {
+            synchronized (this) {
+                if (jedis == null) {
+                    JedisPoolConfig poolConfig = new JedisPoolConfig();
+                    poolConfig.setMaxTotal(this.poolMax);
+                    poolConfig.setMaxIdle(this.poolMax);
+                    poolConfig.setMinIdle(this.poolMin);
+                    jedis = new JedisPool(poolConfig, this.host, this.port, this.readSocketTimeout);
+                }
+            }
+        }
+        return jedis.getResource();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public RedisResponseCache withHost(String host) {
+        this.host = host;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public RedisResponseCache withPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getPoolMin() {
+        return poolMin;
+    }
+
+    public RedisResponseCache withPoolMin(int poolMin) {
+        this.poolMin = poolMin;
+        return this;
+    }
+
+    public int getPoolMax() {
+        return poolMax;
+    }
+
+    public RedisResponseCache withPoolMax(int poolMax) {
+        this.poolMax = poolMax;
+        return this;
+    }
+
+    public int getReadSocketTimeout() {
+        return readSocketTimeout;
+    }
+
+    public RedisResponseCache withReadSocketTimeout(int readSocketTimeout) {
+        this.readSocketTimeout = readSocketTimeout;
+        return this;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public RedisResponseCache withKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+        return this;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.s3;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import io.inversion.Action;
+import io.inversion.utils.Path;
+
+/**
+ * Client configuration and path validation shared by the S3 Actions.
+ * <p>
+ * If you control the host environment, consider using IAM roles instead of setting the access and secret keys.
+ * Set <code>s3Endpoint</code> to use an S3 compatible service, such as a local stand-in, with path style access.
+ */
+public class S3Action<A extends S3Action> extends Action<A> {
+
+    protected String s3AccessKey = null;
+    protected String s3SecretKey = null;
+    protected String s3AwsRegion = null;
+    protected String s3Endpoint  = null;
+
+    protected String s3Bucket = null;
+
+    protected volatile AmazonS3 s3Client = null;
+
+    protected String allowedCharactersRegex = "^[\\. \\(\\)\\'a-zA-Z0-9_-]*$";
+
+    protected boolean isValidPath(Path path) {
+        if (path == null || path.size() == 0)
+            return false;
+        for (String part : path.parts()) {
+            if (!part.matches(allowedCharactersRegex))
+                return false;
+
+            part = part.replaceAll("[.]+", ".");
+            if (part.equals("."))
+                return false;
+        }
+        return true;
+    }
+
+    public AmazonS3 getS3Client() {
+        if (s3Client == null) {
+            synchronized (this) {
+                if (s3Client == null) {
+                    s3Client = buildS3Client();
+                }
+            }
+        }
+        return s3Client;
+    }
+
+    public A withS3Client(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+        return (A) this;
+    }
+
+    public String getS3Bucket() {
+        return s3Bucket;
+    }
+
+    public A withS3Bucket(String s3Bucket) {
+        this.s3Bucket = s3Bucket;
+        return (A) this;
+    }
+
+    public A withS3Endpoint(String s3Endpoint) {
+        this.s3Endpoint = s3Endpoint;
+        return (A) this;
+    }
+
+    public A withS3Credentials(String s3AccessKey, String s3SecretKey) {
+        this.s3AccessKey = s3AccessKey;
+        this.s3SecretKey = s3SecretKey;
+        return (A) this;
+    }
+
+    public A withS3AwsRegion(String s3AwsRegion) {
+        this.s3AwsRegion = s3AwsRegion;
+        return (A) this;
+    }
+
+    protected AmazonS3 buildS3Client() {
+        //TODO make this work like dynamo client config as art of db
+
+        String accessKey = this.s3AccessKey;
+        String secretKey = this.s3SecretKey;
+        String awsRegion = this.s3AwsRegion;
+
+        AmazonS3ClientBuilder builder;
+        if (accessKey != null) {
+            BasicAWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
+            builder = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(creds));
+        } else {
+            builder = AmazonS3ClientBuilder.standard();
+        }
+
+        if (s3Endpoint != null) {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(s3Endpoint, awsRegion != null ? awsRegion : "us-east-1"));
+            builder.withPathStyleAccessEnabled(true);
+        } else if (awsRegion != null) {
+            builder.withRegion(awsRegion);
+        }
+        return builder.build();
+    }
+}
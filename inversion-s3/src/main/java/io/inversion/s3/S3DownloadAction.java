@@ -16,354 +16,191 @@
  */
 package io.inversion.s3;
 
-import io.inversion.Action;
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import io.inversion.*;
+import io.inversion.action.misc.FileAction;
+import io.inversion.json.JSNode;
+import io.inversion.utils.Path;
+import io.inversion.utils.StreamBuffer;
+import io.inversion.utils.Utils;
+
+import java.io.IOException;
+import java.util.Date;
 
 /**
- * Accepts RQL parameters and responds with json or files to the client.
- * Special request parameters used by the GET handler:
- * 'download' attempts to download the specified key.
- * 'marker' determines where paging should begin
+ * Streams S3 objects to the client.
+ * <p>
+ * The object key is the request path, validated the same way as {@link S3UploadAction} paths.  The object content
+ * is handed to the Response as a live body stream so it is piped to the client without being buffered.
+ * Content-Length, Content-Type, ETag and Last-Modified are forwarded from the object.
  * <p>
- * Supports simple RQL functions: eq,sw
+ * A single "bytes=" Range header, including a suffix range, is forwarded as is on the GetObject and answered with
+ * a 206 and the Content-Range S3 returns.  Multiple and invalid ranges are ignored, as they are by {@link FileAction}.  If-Range is honored by making the ranged GetObject conditional on the validator and
+ * falling back to the whole object when it no longer matches.  If-None-Match is forwarded and answered with a 304.
  * <p>
- * TODO it would be awesome if a user could request several files to be downloaded.
- * The files would be zipped and returned to the client.  A zip would be named
- * either 'files.zip' for various files, or 'sw_x_files.zip' where files that
- * 'start with' x are zipped.
+ * When <code>presignMinSize</code> is greater than 0, objects at least that large are not streamed through the
+ * Engine, the client is instead redirected to a pre-signed url that expires after <code>presignExpireSeconds</code>.
  * <p>
- * TODO what to do about buckets containing '.'s within the name? ex:
- * Missing parent for map compression: api.collections.s3db_files.liftck.coms
- * Missing parent for map compression: api.collections.s3db_static-pages.liftck.coms
- * Missing parent for map compression: s3db.tables.files.liftck.com
- * Missing parent for map compression: s3db.tables.static-pages.liftck.com
+ * Internal calls made by another request's Actions get the content read into the Response, as they never reach
+ * the EngineServlet that would otherwise close the stream.
  * <p>
- * Mar 6, 2019 - If a json body is received, it is expected that a meta update should
- * occur.  If a multipart form is received, it is expected that a binary file
- * was sent and possibly json
+ * A "download" url param adds a Content-Disposition attachment header.
  */
-public class S3DownloadAction extends Action {
-//   protected transient Logger log     = LoggerFactory.getLogger(S3DbRestHandler.class);
-//
-//   int    maxRows = 100;
-//
-//   @Override
-//   public void service(Engine service, Api api, Endpoint endpoint, Action action, Chain chain, Request req, Response res) throws Exception
-//   {
-//      String method = req.getMethod();
-//      if ("GET".equalsIgnoreCase(method))
-//      {
-//         doGet(service, api, endpoint, action, chain, req, res);
-//      }
-//      else if ("POST".equalsIgnoreCase(method))
-//      {
-//         doPost(service, api, endpoint, action, chain, req, res);
-//      }
-//      else if ("PUT".equalsIgnoreCase(method))
-//      {
-//         doPut(service, api, endpoint, action, chain, req, res);
-//      }
-//      else
-//      {
-//         throw new ApiException(SC.SC_400_BAD_REQUEST, "The S3 handler only supports GET and POST/PUT requests");
-//      }
-//   }
-//
-//   /**
-//    * All objects within a bucket can be retrieved by hitting the bucket without any parameters.
-//    * http://hostname/us/s3/bucketName
-//    * 
-//    * To narrow a result list, a prefix can be specified.  Only objects within the bucket with the specified prefix
-//    * will be returned.  To limit the results to those within a 'folder' the prefix include the folder name and end 
-//    * with a '/'.  
-//    * http://hostname/us/s3/bucketName?sw(key,someFolder/)
-//    * The following example would return all objects within 'someFolder' that start with 'xyz'
-//    * http://hostname/us/s3/bucketName?sw(key,someFolder/xyz)
-//    *
-//    * To obtain 'extended' meta of an object, two different methods can be used.  A request with the 
-//    * following params: sw(key,helloThere/)&eq(key,filename.json) is the same as a request with only 
-//    * eq(key,helloThere/filename.json)
-//    * 
-//    * To download an object, the same request as retrieving 'extended' meta is used, but a 'download'
-//    * parameter must be included.
-//    * 
-//    */
-//   public void doGet(Engine service, Api api, Endpoint endpoint, Action action, Chain chain, Request req, Response res) throws Exception
-//   {
-//
-//      Collection collection = findCollectionOrThrow404(api, chain, req);
-//      Table table = collection.getResource().getTable();
-//      S3Db db = (S3Db) table.getDb();
-//
-//      Integer pageSize = req.getParam("pageSize") != null ? Integer.parseInt(req.removeParam("pageSize")) : maxRows;
-//
-//      S3Rql rql = (S3Rql) Rql.getRql(db.getType());
-//      S3Request s3Req = rql.buildS3Request(req, table, pageSize);
-//
-//      ObjectMapper mapper = new ObjectMapper();
-//
-//      if (s3Req.isDownload())
-//      {
-//         // path == /s3/bucketName?eq(key,filename)&download
-//
-//         // If a prefix exists, it must be tacked onto the key.
-//         S3Object s3File = db.getDownload(s3Req);
-//
-//         // relies on Servlet to close the stream.
-//         res.setInputStream(s3File.getObjectContent());
-//         res.setContentType(s3File.getObjectMetadata().getContentType());
-//
-//         res.addHeader("Content-Type", s3File.getObjectMetadata().getContentType());
-//         res.addHeader("Content-Length", Long.toString(s3File.getObjectMetadata().getContentLength()));
-//
-//      }
-//      else if (s3Req.getKey() != null)
-//      {
-//         // Attempt to retrieve the extended meta for the key.
-//         // If that does not exist, attempt to get a list of objects using the key as a prefix.
-//
-//         // path == /s3/bucketName?eq(key,filename)
-//         // path == /s3/bucketName/key
-//         // retrieve the extended meta data of a file.
-//
-//         ObjectNode json = null;
-//
-//         try
-//         {
-//            ObjectMetadata meta = db.getExtendedMetaData(s3Req);
-//
-//            json = JS.toObjectNode(mapper.writeValueAsString(meta));
-//            String pathPrefix = req.getPath().substring(0, req.getPath().indexOf(req.getSubpath()));
-//            json.put("href", req.getApiUrl() + pathPrefix + s3Req.getBucket() + "/" + s3Req.getKey());
-//
-//            res.setJson(json);
-//         }
-//         catch (Exception e)
-//         {
-//            log.warn("Attempting to retrieve as list after failing to obtain extended meta for key: " + s3Req.getKey());
-//         }
-//
-//         if (json == null)
-//         {
-//            // TODO is there a way to prevent the req from adding the '/' onto it's path?
-//
-//            // The key does not exist.  Perhaps the request was intended to be for an objects listing...
-//            // FYI: below, a '/' is added to the prefix for two reasons:
-//            // 1) by default, Inversion adds a '/' to the end of the path which is then removed during stmt creation,
-//            // so we dont know if the '/' is intended or not.
-//            // 2) if a '/' is NOT tacked onto the prefix, then 'this' directory will be returned as a prefix along with all files
-//            // that start with this prefix...meaning, NO inner directories or files will be returned.
-//            // To work around this limitation, if the user wants to specify a directory & file prefix, the 'sw' function should 
-//            // be used.  ex: sw(key,media/c) will return all files/directories that are within the media folder and start with 'c'
-//            getObjectsList(req, res, new S3Request(s3Req.getBucket(), s3Req.getKey() + "/", null, s3Req.getSize(), false, s3Req.getMarker()), db, mapper);
-//         }
-//
-//      }
-//      else
-//      {
-//         getObjectsList(req, res, s3Req, db, mapper);
-//      }
-//
-//      res.setStatus(SC.SC_200_OK);
-//   }
-//
-//   private void getObjectsList(Request req, Response res, S3Request s3Req, S3Db db, ObjectMapper mapper) throws Exception
-//   {
-//
-//
-//   }
-//
-//   /**
-//    * Use the 'sw' function to post a file to a specific location within a bucket; ex: sw(key, media/).  
-//    * Otherwise, the file will be saved to the specified bucket's root.  By default, the uploaded file 
-//    * name will be used when storing the file to s3.  A file name can specified by using the 'eq' function;
-//    * ex: eq(key, newFile.name)
-//    * 
-//    * Custom metadata can be added to the file by setting a 'header prefix' value during configuration of 
-//    * this class.  All headers sent by the client that use this prefix will be applied to the s3 object's
-//    * custom metadata.
-//    * 
-//    * **Note** That user-metadata for an object is limited by the HTTP requestheader limit. All HTTP 
-//    * headers included in a request (including usermetadata headers and other standard HTTP headers) must 
-//    * be less than 8KB
-//    * 
-//    * **NOTE** A 'header prefix' AND custom Content-Type header MUST be applied if you want the correct
-//    * content-type applied to the s3 object.  ex: headerPrefix = "s3-";  The request header would include:
-//    * s3-Content-Type=application/json if you wanted an object stored with a json content type.
-//    */
-//   private void doPost(Engine service, Api api, Endpoint endpoint, Action action, Chain chain, Request req, Response res) throws Exception
-//   {
-//
-//      Collection collection = findCollectionOrThrow404(api, chain, req);
-//      Table table = collection.getResource().getTable();
-//      S3Db db = (S3Db) table.getDb();
-//
-//      S3Rql rql = (S3Rql) Rql.getRql(db.getType());
-//      S3Request s3Req = rql.buildS3Request(req, table, null);
-//
-//      String key = s3Req.getKey();
-//
-//      List<Upload> uploads = req.getUploads();
-//
-//      if (uploads.size() > 0)
-//      {
-//         DigestInputStream uploadStream = null;
-//         Upload upload = uploads.get(0);
-//
-//         uploadStream = new DigestInputStream(upload.getInputStream(), MessageDigest.getInstance("MD5"));
-//
-//         ObjectMetadata meta = new ObjectMetadata();
-//
-//         String metaParam = req.getParam("meta");
-//
-//         // set custom metadata for the file
-//         if (metaParam != null)
-//         {
-//            ObjectNode metaJs = JS.toObjectNode(metaParam);
-//            Map<String, String> metaMap = metaJs.asMap();
-//
-//            for (Map.Entry<String, String> entry : metaMap.entrySet())
-//            {
-//               String metaKey = entry.getKey();
-//
-//               if (metaKey.equalsIgnoreCase("content-type"))
-//               {
-//                  meta.setContentType(entry.getValue());
-//               }
-//               else if (metaKey.equalsIgnoreCase("name"))
-//               {
-//                  key = entry.getValue();
-//               }
-//               else
-//               {
-//                  meta.addUserMetadata(metaKey, entry.getValue());
-//               }
-//            }
-//
-//         }
-//
-//         meta.setContentLength(upload.getFileSize());
-//
-//         PutObjectResult result = db.saveFile(uploadStream, s3Req.getBucket(), key, meta);
-//         if (result == null)
-//            throw new ApiException(SC.SC_500_INTERNAL_SERVER_ERROR, "Failed to POST/PUT file to s3: " + key);
-//
-//         // not including the result object as it contains confusing/pointless data.
-//         // such as a 'content-length' of 0, because it's the content-length of the response, not the 
-//         // size of the upload.
-//         ObjectNode json = new ObjectNode();
-//
-//         json.put("href", req.getApiUrl() + req.getPath() + key);
-//
-//         res.setJson(json);
-//
-//      }
-//
-//      res.setStatus(SC.SC_200_OK);
-//   }
-//
-//   private void doPut(Engine service, Api api, Endpoint endpoint, Action action, Chain chain, Request req, Response res) throws Exception
-//   {
-//      Collection collection = findCollectionOrThrow404(api, chain, req);
-//      Table table = collection.getResource().getTable();
-//      S3Db db = (S3Db) table.getDb();
-//
-//      // Only be updating the meta of a file at this time.  Renaming or moving a file 
-//      // should also be handled by db.updateObject() but neither are currently implemented.
-//
-//      ObjectNode metaJson = req.getJson();
-//
-//      String key = null;
-//      try
-//      {
-//         key = metaJson.getString("name");
-//      }
-//      catch (Exception e)
-//      {
-//         throw new ApiException("When updating metadata, a 'name' must be specified");
-//      }
-//
-//      // All previous metadata will be wiped out.
-//      ObjectMetadata meta = buildMetadata(metaJson);
-//
-//      CopyObjectResult copy = db.updateObject(table.getName(), key, table.getName(), key, meta);
-//      ObjectMapper mapper = new ObjectMapper();
-//
-//      // the copy result doesn't contain much helpful data.
-//      ObjectNode json = JS.toObjectNode(mapper.writeValueAsString(copy));
-//
-//      json.put("href", req.getApiUrl() + req.getPath() + key);
-//
-//      res.setJson(json);
-//      res.setStatus(SC.SC_200_OK);
-//
-//   }
-//
-//   private Collection findCollectionOrThrow404(Api api, Chain chain, Request req) throws Exception
-//   {
-//      Collection collection = api.getCollection(req.getCollectionKey(), S3Db.class);
-//
-//      if (collection == null)
-//      {
-//         throw new ApiException(SC.SC_404_NOT_FOUND, "An s3 bucket is not configured for this collection key, please edit your query or your config and try again.");
-//      }
-//
-//      if (!(collection.getResource().getTable().getDb() instanceof S3Db))
-//      {
-//         throw new ApiException(SC.SC_500_INTERNAL_SERVER_ERROR, "Bad server configuration. The endpoint is hitting the s3 handler, but this collection is not related to a s3db");
-//      }
-//
-//      return collection;
-//   }
-//
-//   private ObjectMetadata buildMetadata(ObjectNode metaJs)
-//   {
-//      ObjectMetadata meta = null;
-//
-//      if (metaJs != null)
-//      {
-//         // All previous metadata will be wiped out.
-//         meta = new ObjectMetadata();
-//
-//         Map<String, String> metaMap = metaJs.asMap();
-//
-//         for (Map.Entry<String, String> entry : metaMap.entrySet())
-//         {
-//            String metaKey = entry.getKey();
-//
-//            switch (metaKey.toLowerCase())
-//            {
-//               case "content-type":
-//                  meta.setContentType(entry.getValue());
-//                  break;
-//               case "name":
-//               case "tenantid":
-//                  break;
-//               default :
-//                  meta.addUserMetadata(metaKey, entry.getValue());
-//            }
-//         }
-//      }
-//
-//      return meta;
-//   }
-//
-//   private ObjectNode buildListObj(String href, Date lastModified, Long size, boolean isFile)
-//   {
-//      ObjectNode jsObj = new ObjectNode();
-//      jsObj.put("href", href);
-//      if (lastModified != null)
-//         jsObj.put("lastModified", lastModified);
-//      if (size != null)
-//         jsObj.put("size", size);
-//      jsObj.put("isFile", isFile);
-//
-//      return jsObj;
-//   }
-//
-//   public static void main(String[] args)
-//   {
-//      System.out.println("hello".compareToIgnoreCase("world")); // -15
-//      System.out.println("world".compareToIgnoreCase("hello")); // 15
-//   }
+public class S3DownloadAction extends S3Action<S3DownloadAction> {
+
+    protected long presignMinSize       = 0;
+    protected int  presignExpireSeconds = 300;
+
+    @Override
+    public void doGet(Request req, Response res) throws ApiException {
+        Path path = req.getPath();
+        if (!isValidPath(path))
+            throw ApiException.new400BadRequest("The supplied file path is contains invalid characters");
+
+        String   key    = path.toString();
+        S3Object object = null;
+        try {
+            String  range       = req.getHeader("Range");
+            String  ifRange     = req.getHeader("If-Range");
+            String  ifNoneMatch = req.getHeader("If-None-Match");
+            boolean ranged      = range != null && FileAction.isSingleRange(range);
+
+            if (ranged) {
+                GetObjectRequest get = buildGetObjectRequest(key, ifNoneMatch);
+                //-- the SDK can't express suffix ranges, the custom header replaces the placeholder range, which
+                //-- is still needed so the SDK does not try to verify the partial content against the whole object's MD5
+                get.withRange(0);
+                get.putCustomRequestHeader("Range", range.trim());
+
+                if (ifRange != null) {
+                    ifRange = ifRange.trim();
+                    //-- an invalid date is sent as the epoch so it never matches
+                    if (ifRange.startsWith("\""))
+                        get.withMatchingETagConstraint(ifRange.substring(1, ifRange.length() - 1));
+                    else
+                        get.withUnmodifiedSinceConstraint(new Date(Math.max(0, FileAction.parseDate(ifRange))));
+                }
+                object = getS3Client().getObject(get);
+
+                if (object == null && ifRange == null) {
+                    notModified(req, res, key);
+                    return;
+                }
+                //-- a null object here means the If-Range validator failed so the whole object is sent
+            }
+
+            if (object == null) {
+                object = getS3Client().getObject(buildGetObjectRequest(key, ifNoneMatch));
+                if (object == null) {
+                    notModified(req, res, key);
+                    return;
+                }
+                ranged = false;
+            }
+
+            ObjectMetadata metadata = object.getObjectMetadata();
+
+            //-- the size comes from the GetObject itself, the content is aborted so it is never downloaded
+            if (presignMinSize > 0 && metadata.getInstanceLength() >= presignMinSize) {
+                object.getObjectContent().abort();
+                Date expiration = new Date(System.currentTimeMillis() + presignExpireSeconds * 1000L);
+                res.withHeader("Location", getS3Client().generatePresignedUrl(s3Bucket, key, expiration, HttpMethod.GET).toString());
+                res.withStatus(Status.SC_307_TEMPORARY_REDIRECT);
+                res.withJson((JSNode) null);
+                return;
+            }
+
+            writeHeaders(res, metadata);
+            res.withHeader("Content-Length", Long.toString(metadata.getContentLength()));
+
+            if (ranged && metadata.getRawMetadataValue(Headers.CONTENT_RANGE) != null) {
+                res.withStatus(Status.SC_206_PARTIAL_CONTENT);
+                res.withHeader("Content-Range", metadata.getRawMetadataValue(Headers.CONTENT_RANGE).toString());
+            }
+
+            if (req.getUrl().getParam("download") != null)
+                res.withHeader("Content-Disposition", "attachment; filename=\"" + path.last() + "\"");
+
+            if (Chain.getDepth() > 1) {
+                //-- an internal call returns to the calling Action, not the EngineServlet, so the content is read here
+                StreamBuffer buffer = new StreamBuffer();
+                Utils.pipe(object.getObjectContent(), buffer);
+                res.withBody(buffer);
+            } else {
+                //-- the Response now owns the stream, it is closed when written out or replaced by another body
+                res.withBodyStream(object.getObjectContent());
+                object = null;
+            }
+
+            //-- the body is final so keep the Engine from reading it
+            res.withRawBody(true);
+
+        } catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404)
+                throw ApiException.new404NotFound("File '{}' could not be found", key);
+
+            if (ex.getStatusCode() == 416) {
+                res.withStatus(Status.SC_416_RANGE_NOT_SATISFIABLE);
+                res.withJson((JSNode) null);
+                return;
+            }
+            throw ApiException.new500InternalServerError(ex);
+        } catch (IOException ex) {
+            throw ApiException.new500InternalServerError(ex);
+        } finally {
+            Utils.close(object);
+        }
+    }
+
+    protected GetObjectRequest buildGetObjectRequest(String key, String ifNoneMatch) {
+        GetObjectRequest get = new GetObjectRequest(s3Bucket, key);
+        if (ifNoneMatch != null) {
+            for (String etag : ifNoneMatch.split(",")) {
+                etag = etag.trim();
+                if (etag.startsWith("W/"))
+                    etag = etag.substring(2);
+                get.withNonmatchingETagConstraint(etag.replace("\"", ""));
+            }
+        }
+        return get;
+    }
+
+    /**
+     * S3 answers a failed If-None-Match with a 304, which the SDK reports as a null object, without
+     * any headers so the current validators are looked up to send with the 304.
+     */
+    void notModified(Request req, Response res, String key) {
+        writeHeaders(res, getS3Client().getObjectMetadata(s3Bucket, key));
+        res.withStatus(Status.SC_304_NOT_MODIFIED);
+        res.withJson((JSNode) null);
+    }
+
+    void writeHeaders(Response res, ObjectMetadata metadata) {
+        res.withHeader("Accept-Ranges", "bytes");
+        if (metadata.getContentType() != null)
+            res.withContentType(metadata.getContentType());
+        if (metadata.getETag() != null)
+            res.withHeader("ETag", "\"" + metadata.getETag() + "\"");
+        if (metadata.getLastModified() != null)
+            res.withHeader("Last-Modified", FileAction.formatDate(metadata.getLastModified().getTime()));
+        if (metadata.getCacheControl() != null) {
+            res.getHeaders().remove("Cache-Control");
+            res.withHeader("Cache-Control", metadata.getCacheControl());
+        }
+    }
+
+    public S3DownloadAction withPresignMinSize(long presignMinSize) {
+        this.presignMinSize = presignMinSize;
+        return this;
+    }
 
+    public S3DownloadAction withPresignExpireSeconds(int presignExpireSeconds) {
+        this.presignExpireSeconds = presignExpireSeconds;
+        return this;
+    }
 }
@@ -16,10 +16,7 @@
  */
 package io.inversion.s3;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
@@ -63,22 +60,13 @@ import java.util.Map;
  * consider using IAM roles to authenticate.  Than way you don't need
  * to config the credentials at all.
  */
-public class S3UploadAction extends Action<S3UploadAction> {
+public class S3UploadAction extends S3Action<S3UploadAction> {
 
-    protected String s3AccessKey = null;
-    protected String s3SecretKey = null;
-    protected String s3AwsRegion = null;
-
-    protected String s3Bucket   = null;
     protected String s3BasePath = "uploads";
     protected String s3DatePath = "yyyy/MM/dd";
 
     protected long maxUploadLength = 1024 * 1000 * 100;
 
-    protected AmazonS3 s3Client = null;
-
-    protected String allowedCharactersRegex = "^[\\. \\(\\)\\'a-zA-Z0-9_-]*$";
-
     private static String getHash(MessageDigest digest) throws IOException {
         byte[]        md5sum = digest.digest();
         BigInteger    bigInt = new BigInteger(1, md5sum);
@@ -220,55 +208,4 @@ public class S3UploadAction extends Action<S3UploadAction> {
 
         return path.toString();
     }
-
-    protected boolean isValidPath(Path path) {
-        if (path == null || path.size() == 0)
-            return false;
-        for (String part : path.parts()) {
-            if (!part.matches(allowedCharactersRegex))
-                return false;
-
-            part = part.replaceAll("[.]+", ".");
-            if (part.equals("."))
-                return false;
-        }
-        return true;
-    }
-
-    public AmazonS3 getS3Client() {
-        if (s3Client == null) {
-            synchronized (this) {
-                if (s3Client == null) {
-                    s3Client = buildS3Client();
-                }
-            }
-        }
-        return s3Client;
-    }
-
-    public S3UploadAction withS3Client(AmazonS3 s3Client) {
-        this.s3Client = s3Client;
-        return this;
-    }
-
-    private AmazonS3 buildS3Client() {
-        //TODO make this work like dynamo client config as art of db
-
-        String accessKey = this.s3AccessKey;
-        String secretKey = this.s3SecretKey;
-        String awsRegion = this.s3AwsRegion;
-
-        AmazonS3ClientBuilder builder;
-        if (accessKey != null) {
-            BasicAWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
-            builder = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(creds));
-        } else {
-            builder = AmazonS3ClientBuilder.standard();
-        }
-
-        if (awsRegion != null) {
-            builder.withRegion(awsRegion);
-        }
-        return builder.build();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015-2022 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.inversion.s3;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.inversion.Chain;
+import io.inversion.Engine;
+import io.inversion.Request;
+import io.inversion.Response;
+import io.inversion.utils.Path;
+import io.inversion.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3DownloadActionTest {
+
+    static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+    static final String ETAG    = Utils.md5(CONTENT);
+
+    HttpServer       server;
+    AtomicInteger    gets  = new AtomicInteger();
+    AtomicInteger    heads = new AtomicInteger();
+    S3DownloadAction action;
+
+    /**
+     * A minimal S3 stand-in that serves a single object with ranges and conditional requests.
+     */
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/bucket/", this::handle);
+        server.start();
+
+        action = new S3DownloadAction()
+                .withS3Endpoint("http://127.0.0.1:" + server.getAddress().getPort())
+                .withS3Credentials("test", "test")
+                .withS3Bucket("bucket");
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    void handle(HttpExchange exchange) throws java.io.IOException {
+        String  key  = exchange.getRequestURI().getPath().substring("/bucket/".length());
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        if (head)
+            heads.incrementAndGet();
+        else
+            gets.incrementAndGet();
+
+        if (!key.equals("docs/readme.txt")) {
+            byte[] error = "<Error><Code>NoSuchKey</Code><Message>not found</Message></Error>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(404, head ? -1 : error.length);
+            if (!head)
+                exchange.getResponseBody().write(error);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().add("ETag", "\"" + ETAG + "\"");
+        exchange.getResponseHeaders().add("Last-Modified", "Mon, 19 Oct 2026 09:00:00 GMT");
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifMatch     = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(ETAG)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (ifMatch != null && !ifMatch.contains(ETAG)) {
+            exchange.sendResponseHeaders(412, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body   = CONTENT;
+        int    status = 200;
+        String range  = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            String[] parts = range.substring(6).split("-", -1);
+            int      start = parts[0].isEmpty() ? Math.max(0, CONTENT.length - Integer.parseInt(parts[1])) : Integer.parseInt(parts[0]);
+            int      end   = parts[0].isEmpty() || parts[1].isEmpty() ? CONTENT.length - 1 : (int) Math.min(Long.parseLong(parts[1]), CONTENT.length - 1);
+            body = Arrays.copyOfRange(CONTENT, start, end + 1);
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length);
+        }
+
+        exchange.getResponseHeaders().add("Content-Length", Integer.toString(body.length));
+        exchange.sendResponseHeaders(status, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    Response get(String key, String... headers) {
+        Request req = new Request("GET", "http://localhost/" + key)//
+                .withEndpointPath(new Path(""))//
+                .withActionPath(new Path(key));
+        for (int i = 0; i < headers.length - 1; i += 2)
+            req.withHeaders(headers[i], headers[i + 1]);
+
+        Response res = new Response();
+        action.doGet(req, res);
+        return res;
+    }
+
+    @Test
+    public void test_objects_are_streamed_with_their_headers() {
+        Response res = get("docs/readme.txt");
+        assertEquals(200, res.getStatusCode());
+        assertTrue(res.isStreaming());
+        assertTrue(res.isRawBody());
+        assertEquals("text/plain", res.getContentType());
+        assertEquals("20", res.getHeader("Content-Length"));
+        assertEquals("\"" + ETAG + "\"", res.getHeader("ETag"));
+        assertEquals(new String(CONTENT, StandardCharsets.UTF_8), res.getText());
+    }
+
+    @Test
+    public void test_ranges_are_translated_to_ranged_gets() {
+        Response res = get("docs/readme.txt", "Range", "bytes=2-5");
+        assertEquals(206, res.getStatusCode());
+        assertEquals("bytes 2-5/20", res.getHeader("Content-Range"));
+        assertEquals("2345", res.getText());
+
+        res = get("docs/readme.txt", "Range", "bytes=18-");
+        assertEquals(206, res.getStatusCode());
+        assertEquals("ij", res.getText());
+
+        //-- suffix ranges are forwarded as is
+        res = get("docs/readme.txt", "Range", "bytes=-3");
+        assertEquals(206, res.getStatusCode());
+        assertEquals("bytes 17-19/20", res.getHeader("Content-Range"));
+        assertEquals("hij", res.getText());
+
+        //-- multiple ranges are ignored
+        res = get("docs/readme.txt", "Range", "bytes=0-1,4-5");
+        assertEquals(200, res.getStatusCode());
+        assertEquals(new String(CONTENT, StandardCharsets.UTF_8), res.getText());
+
+        //-- a stale If-Range gets the whole object
+        res = get("docs/readme.txt", "Range", "bytes=2-5", "If-Range", "\"stale\"");
+        assertEquals(200, res.getStatusCode());
+        assertEquals(new String(CONTENT, StandardCharsets.UTF_8), res.getText());
+
+        res = get("docs/readme.txt", "Range", "bytes=2-5", "If-Range", "\"" + ETAG + "\"");
+        assertEquals(206, res.getStatusCode());
+        assertEquals("2345", res.getText());
+    }
+
+    @Test
+    public void test_if_none_match_returns_304() {
+        Response res = get("docs/readme.txt", "If-None-Match", "\"" + ETAG + "\"");
+        assertEquals(304, res.getStatusCode());
+        assertEquals("\"" + ETAG + "\"", res.getHeader("ETag"));
+        assertFalse(res.isStreaming());
+    }
+
+    @Test
+    public void test_large_objects_are_redirected_to_presigned_urls() {
+        action.withPresignMinSize(10);
+
+        Response res = get("docs/readme.txt");
+        assertEquals(307, res.getStatusCode());
+        assertTrue(res.getHeader("Location").contains("/bucket/docs/readme.txt?"));
+        assertTrue(res.getHeader("Location").contains("Expires") || res.getHeader("Location").contains("X-Amz-Expires"));
+        assertFalse(res.isStreaming());
+
+        //-- the size is taken from the GetObject, not a separate HEAD
+        assertEquals(1, gets.get());
+        assertEquals(0, heads.get());
+
+        //-- the full size decides, not the size of the requested range
+        res = get("docs/readme.txt", "Range", "bytes=0-1");
+        assertEquals(307, res.getStatusCode());
+
+        action.withPresignMinSize(21);
+        res = get("docs/readme.txt");
+        assertEquals(200, res.getStatusCode());
+        assertEquals(0, heads.get());
+    }
+
+    @Test
+    public void test_internal_calls_are_not_streamed() {
+        Chain.push(new Engine(), new Request("GET", "http://localhost/root"), new Response());
+        Chain.push(new Engine(), new Request("GET", "http://localhost/docs/readme.txt"), new Response());
+        try {
+            Response res = get("docs/readme.txt");
+            assertEquals(200, res.getStatusCode());
+            assertFalse(res.isStreaming());
+            assertEquals(new String(CONTENT, StandardCharsets.UTF_8), res.getText());
+        } finally {
+            Chain.resetAll();
+        }
+    }
+
+    @Test
+    public void test_missing_objects_and_invalid_paths() {
+        assertEquals(404, assertThrows(io.inversion.ApiException.class, () -> get("docs/missing.txt")).getStatusCode());
+        assertEquals(400, assertThrows(io.inversion.ApiException.class, () -> get("docs/bad!.txt")).getStatusCode());
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.velocity.app.event.EventCartridge;
 import org.apache.velocity.app.event.implement.IncludeRelativePath;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,24 +53,50 @@ import java.nio.file.FileSystems;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
- *
+ * Runs javascript and velocity scripts found in <code>scriptsDir</code> or the <code>scriptsCollection</code>.
+ * <p>
+ * Scripts found, and not found, and the settings, script and layout chain resolved for each request path are
+ * cached for <code>cacheExpireSeconds</code>.  Velocity templates, including those pulled in by #parse and
+ * #layout, are parsed once and the parsed Templates are cached by the Velocity engine until their script
+ * changes, see {@link VelocityResourceLoader}.  Javascript is parsed into
+ * cached Sources and every Context shares one polyglot Engine so each script is compiled once and the compiled
+ * code is reused by every request.  Up to <code>contextPoolMax</code> unused Contexts are kept warm, and
+ * <code>contextPoolMin</code> are created up front, so requests don't pay to create a Context.  A Context
+ * is only ever used by one request because scripts can leave changes behind, to built-in prototypes for example,
+ * that can't be reliably undone.  Used Contexts are closed and replaced off of the request thread.
  */
 public class ScriptAction extends Action<ScriptAction> {
     static final ThreadLocal<ScriptAction> scriptLocal = new ThreadLocal<>();
     static final ThreadLocal<Chain>        chainLocal  = new ThreadLocal<>();
 
+    /**
+     * Cached in place of scripts that were not found so the lookups are not repeated.
+     */
+    static final JSNode NOT_FOUND = new JSMap();
+
     protected final Logger log = LoggerFactory.getLogger(ScriptAction.class);
     final Map<String, String> scriptTypes = new LinkedHashMap<>();
     String scriptsCollection = "scripts";
     long                cacheExpireSeconds = 60 * 30;
     Map<String, JSNode> CACHE;
-    boolean inited = false;
+    Map<String, Source> SOURCES;
+    Map<String, LinkedHashMap<String, JSNode>> LAYOUTS;
+    volatile boolean inited = false;
     String scriptsDir = "/WEB-INF/scripts";
     VelocityEngine velocity = null;
 
+    int contextPoolMin = 2;
+    int contextPoolMax = Runtime.getRuntime().availableProcessors() * 2;
+
+    org.graalvm.polyglot.Engine     polyglot    = null;
+    BlockingQueue<JavascriptContext> contextPool = null;
+
     //List<String> reservedNames = new ArrayList<String>(Arrays.asList("switch", "layout", "settings"));
 
     public ScriptAction() {
@@ -84,8 +111,11 @@ public class ScriptAction extends Action<ScriptAction> {
         ScriptAction handler = scriptLocal.get();
         Chain        chain   = chainLocal.get();
 
-        //      if (handler.CACHE.containsKey(path))
-        //         return handler.CACHE.get(path);
+        if (handler.CACHE != null) {
+            JSNode cached = handler.CACHE.get(path);
+            if (cached != null)
+                return cached == NOT_FOUND ? null : cached;
+        }
 
         String ext = path.indexOf(".") > 0 ? path.substring(path.lastIndexOf(".") + 1).toLowerCase() : null;
         if (ext != null && !handler.scriptTypes.containsKey(ext)) {
@@ -130,16 +160,24 @@ public class ScriptAction extends Action<ScriptAction> {
             }
         }
 
-        handler.CACHE.put(path, script);
+        if (handler.CACHE != null)
+            handler.CACHE.put(path, script == null ? NOT_FOUND : script);
 
         return script;
     }
 
+    /**
+     * Builds the caches, Velocity and the GraalVM engine once.
+     * <p>
+     * <code>inited</code> is set last so a thread that sees it true, without taking the lock, also sees
+     * <code>polyglot</code> and <code>contextPool</code> fully built.
+     */
     synchronized void init() {
         if (!inited) {
-            inited = true;
             if (cacheExpireSeconds > 0) {
                 CACHE = ExpiringMap.builder().maxSize(500).expiration(cacheExpireSeconds, TimeUnit.SECONDS).build();
+                SOURCES = ExpiringMap.builder().maxSize(500).expiration(cacheExpireSeconds, TimeUnit.SECONDS).build();
+                LAYOUTS = ExpiringMap.builder().maxSize(500).expiration(cacheExpireSeconds, TimeUnit.SECONDS).build();
             }
 
             //---------------------------------------------------------
@@ -150,6 +188,13 @@ public class ScriptAction extends Action<ScriptAction> {
 
             velocity.setProperty(RuntimeConstants.RESOURCE_LOADER, "inversion");
             velocity.setProperty("inversion.resource.loader.class", VelocityResourceLoader.class.getName());
+            if (cacheExpireSeconds > 0) {
+                //-- keep parsed templates until their script changes.  The check reads the script from CACHE, which already
+                //-- expires after cacheExpireSeconds, so it can run every second without stacking a second delay on top
+                velocity.setProperty("inversion.resource.loader.cache", "true");
+                velocity.setProperty("inversion.resource.loader.modification_check_interval", "1");
+                velocity.setProperty(RuntimeConstants.RESOURCE_MANAGER_DEFAULTCACHE_SIZE, "500");
+            }
             velocity.setProperty("userdirective", SwitchDirective.class.getName() + ", " + SaveDirective.class.getName() + ", " + LayoutDirective.class.getName());
             velocity.init();
 
@@ -181,21 +226,112 @@ public class ScriptAction extends Action<ScriptAction> {
             } catch (Exception e) {
                 log.error("Error initializing the javascript language file system", e);
             }
+
+            polyglot = org.graalvm.polyglot.Engine.create();
+            contextPool = new ArrayBlockingQueue<>(Math.max(1, contextPoolMax));
+            try {
+                for (int i = 0; i < Math.min(contextPoolMin, contextPoolMax); i++)
+                    contextPool.offer(newContext());
+            } catch (Exception e) {
+                log.error("Error pre-warming javascript contexts", e);
+            }
+
+            inited = true;
+        }
+    }
+
+    /**
+     * @param path   the script path used as the Source name
+     * @param script the javascript
+     * @return a parsed, and possibly cached, Source for <code>script</code>
+     */
+    Source getSource(String path, String script) {
+        Source source = SOURCES != null ? SOURCES.get(path) : null;
+        if (source == null || !source.getCharacters().toString().equals(script)) {
+            source = Source.newBuilder("js", script, path).cached(true).buildLiteral();
+            if (SOURCES != null)
+                SOURCES.put(path, source);
+        }
+        return source;
+    }
+
+    /**
+     * @return an unused pre-warmed Context or a new one if the pool is empty
+     */
+    JavascriptContext borrowContext() {
+        JavascriptContext context = contextPool != null ? contextPool.poll() : null;
+        return context != null ? context : newContext();
+    }
+
+    /**
+     * Closes <code>context</code> and tops the pool back up with a fresh Context off of the request thread.
+     */
+    void releaseContext(JavascriptContext context) {
+        context.close();
+        if (contextPool != null && contextPool.size() < contextPoolMax) {
+            CompletableFuture.runAsync(() -> {
+                JavascriptContext fresh = newContext();
+                if (!contextPool.offer(fresh))
+                    fresh.close();
+            }).exceptionally(ex -> {
+                log.warn("Error pre-warming a javascript context", ex);
+                return null;
+            });
+        }
+    }
+
+    JavascriptContext newContext() {
+        return new JavascriptContext(Context.newBuilder("js").engine(polyglot).build());
+    }
+
+    /**
+     * A single use javascript Context sharing the compiled code of the polyglot Engine it was built on.
+     */
+    static class JavascriptContext {
+        final Context context;
+
+        JavascriptContext(Context context) {
+            this.context = context;
+        }
+
+        Value getBindings() {
+            return context.getBindings("js");
+        }
+
+        void close() {
+            try {
+                context.close();
+            } catch (Exception ex) {
+                //ignore
+            }
         }
     }
 
     @Override
     public void run(Request req, Response res) throws ApiException {
+        //-- scripts can make recursive Engine calls that run other ScriptActions on this thread
+        ScriptAction previousScript = scriptLocal.get();
+        Chain        previousChain  = chainLocal.get();
+
         scriptLocal.set(this);
         chainLocal.set(req.getChain());
+        try {
+            if (!inited) {
+                init();
+            }
 
-        if (!inited) {
-            init();
-        }
-
-        LinkedHashMap<String, JSNode> scripts = findScripts(req);
-        if (scripts.size() > 0) {
-            runScripts(req, res, scripts);
+            LinkedHashMap<String, JSNode> scripts = findScripts(req);
+            if (scripts.size() > 0) {
+                runScripts(req, res, scripts);
+            }
+        } finally {
+            if (previousScript == null) {
+                scriptLocal.remove();
+                chainLocal.remove();
+            } else {
+                scriptLocal.set(previousScript);
+                chainLocal.set(previousChain);
+            }
         }
     }
 
@@ -223,13 +359,13 @@ public class ScriptAction extends Action<ScriptAction> {
                 }
 
                 if ("javascript".equals(type)) {
-                    Context context = (Context) contexts.get("javascript");
+                    JavascriptContext context = (JavascriptContext) contexts.get("javascript");
 
                     if (context == null) {
-                        context = Context.create("js");
+                        context = borrowContext();
                         contexts.put("javascript", context);
 
-                        Value bindings = context.getBindings("js");
+                        Value bindings = context.getBindings();
 
                         bindings.putMember("engine", req.getEngine());
                         bindings.putMember("api", req.getApi());
@@ -248,11 +384,11 @@ public class ScriptAction extends Action<ScriptAction> {
                         }
                     }
 
-                    context.getBindings("js").putMember("content", content);
+                    context.getBindings().putMember("content", content);
 
-                    context.eval("js", script.getString("script"));
+                    context.context.eval(getSource(path, script.getString("script")));
 
-                    content = context.getBindings("js").getMember("content").asString();
+                    content = context.getBindings().getMember("content").asString();
                 } else if ("velocity".equals(type)) {
                     VelocityContext context = (VelocityContext) contexts.get("velocity");
 
@@ -320,13 +456,26 @@ public class ScriptAction extends Action<ScriptAction> {
             throw ApiException.new500InternalServerError(ex);
         } finally {
             for (Object context : contexts.values()) {
-                if (context instanceof Context)
-                    ((Context) context).close();
+                if (context instanceof JavascriptContext)
+                    releaseContext((JavascriptContext) context);
             }
         }
     }
 
     public LinkedHashMap<String, JSNode> findScripts(Request req) throws ApiException {
+        if (LAYOUTS == null)
+            return findScripts0(req);
+
+        String                        key     = req.getSubpath() + "|" + req.getResourceKey();
+        LinkedHashMap<String, JSNode> scripts = LAYOUTS.get(key);
+        if (scripts == null) {
+            scripts = findScripts0(req);
+            LAYOUTS.put(key, scripts);
+        }
+        return new LinkedHashMap<>(scripts);
+    }
+
+    LinkedHashMap<String, JSNode> findScripts0(Request req) throws ApiException {
         Map<JSNode, String> paths   = new HashMap<>();
         List<JSNode>        scripts = new ArrayList<>();
 
@@ -491,6 +640,24 @@ public class ScriptAction extends Action<ScriptAction> {
         return this;
     }
 
+    public int getContextPoolMin() {
+        return contextPoolMin;
+    }
+
+    public ScriptAction withContextPoolMin(int contextPoolMin) {
+        this.contextPoolMin = contextPoolMin;
+        return this;
+    }
+
+    public int getContextPoolMax() {
+        return contextPoolMax;
+    }
+
+    public ScriptAction withContextPoolMax(int contextPoolMax) {
+        this.contextPoolMax = contextPoolMax;
+        return this;
+    }
+
     public static class Util {
         public void throwApiException(String status, String message) {
             throw ApiException.new500InternalServerError(status, message);
@@ -27,6 +27,13 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
+/**
+ * Loads Velocity templates through {@link ScriptAction#findScript(String)}.
+ * <p>
+ * When ScriptAction turns on Velocity's template cache, parsed templates are reused until a periodic check
+ * finds that the text of their script, from the scripts dir or the scripts collection, has changed.  The check
+ * sees the script through ScriptAction's cache so a change is picked up within <code>cacheExpireSeconds</code>.
+ */
 public class VelocityResourceLoader extends ResourceLoader {
     @Override
     public void init(ExtProperties configuration) {
@@ -50,14 +57,21 @@ public class VelocityResourceLoader extends ResourceLoader {
 
     @Override
     public boolean isSourceModified(Resource resource) {
-        // TODO Auto-generated method stub
-        return false;
+        return getLastModified(resource) != resource.getLastModified();
     }
 
+    /**
+     * Scripts may not come from files so a hash of the script text stands in for the modification time.
+     */
     @Override
     public long getLastModified(Resource resource) {
-        // TODO Auto-generated method stub
-        return 0;
+        try {
+            JSNode script = ScriptAction.findScript(resource.getName());
+            return script == null ? -1 : script.getString("script").hashCode();
+        } catch (Exception ex) {
+            //-- outside of a request, assume the resource is unchanged
+            return resource.getLastModified();
+        }
     }
 
 }
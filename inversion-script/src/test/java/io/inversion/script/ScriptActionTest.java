@@ -0,0 +1,207 @@
+package io.inversion.script;
+
+import io.inversion.*;
+import io.inversion.json.JSNode;
+import io.inversion.script.velocity.VelocityResourceLoader;
+import io.inversion.utils.Path;
+import org.apache.velocity.Template;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScriptActionTest {
+
+    @AfterEach
+    public void cleanup() {
+        ScriptAction.scriptLocal.remove();
+        ScriptAction.chainLocal.remove();
+        Chain.resetAll();
+    }
+
+    @Test
+    public void test_found_and_missing_scripts_are_cached() throws Exception {
+        File script = File.createTempFile("hello", ".js");
+        script.deleteOnExit();
+        Files.write(script.toPath(), "content = 'hello'".getBytes(StandardCharsets.UTF_8));
+
+        List<String> lookups = new ArrayList<>();
+        Engine engine = new Engine() {
+            @Override
+            public URL getResource(String name) {
+                lookups.add(name);
+                try {
+                    return name.endsWith("/hello.js") ? script.toURI().toURL() : null;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+
+        ScriptAction action = new ScriptAction();
+        action.setScriptsCollection(null);
+        action.CACHE = new HashMap<>();
+
+        ScriptAction.scriptLocal.set(action);
+        ScriptAction.chainLocal.set(Chain.push(engine, new Request("GET", "http://localhost/hello"), new Response()));
+
+        assertNull(ScriptAction.findScript("missing"));
+        assertEquals(2, lookups.size());
+        assertNull(ScriptAction.findScript("missing"));
+        assertEquals(2, lookups.size());
+
+        JSNode found = ScriptAction.findScript("hello");
+        assertEquals("javascript", found.getString("type"));
+        assertEquals("content = 'hello'", found.getString("script"));
+        assertEquals(3, lookups.size());
+        assertSame(found, ScriptAction.findScript("hello"));
+        assertEquals(3, lookups.size());
+    }
+
+    @Test
+    public void test_findScripts_resolves_and_memoizes_the_layout_chain() throws Exception {
+        File dir = Files.createTempDirectory("scripts").toFile();
+        write(dir, "pages/about.vm", "about");
+        write(dir, "pages/layout.vm", "pages layout");
+        write(dir, "layout.vm", "root layout");
+
+        List<String> lookups = new ArrayList<>();
+        ScriptAction action  = newScriptAction(dir, lookups);
+        action.LAYOUTS = new HashMap<>();
+
+        Request req = new Request("GET", "http://localhost/pages/about").withActionPath(new Path("pages/about"));
+        ScriptAction.chainLocal.set(Chain.push(ScriptAction.chainLocal.get().getEngine(), req, new Response()));
+
+        LinkedHashMap<String, JSNode> scripts = action.findScripts(req);
+        assertEquals(List.of("pages/about", "pages/layout", "layout"), new ArrayList<>(scripts.keySet()));
+        assertEquals("pages layout", scripts.get("pages/layout").getString("script"));
+
+        int looked = lookups.size();
+        scripts.clear();
+        assertEquals(List.of("pages/about", "pages/layout", "layout"), new ArrayList<>(action.findScripts(req).keySet()));
+        assertEquals(looked, lookups.size());
+    }
+
+    @Test
+    public void test_velocity_templates_are_modified_when_their_script_text_changes() throws Exception {
+        File dir = Files.createTempDirectory("scripts").toFile();
+        write(dir, "page.vm", "version one");
+        newScriptAction(dir, new ArrayList<>());
+
+        VelocityResourceLoader loader   = new VelocityResourceLoader();
+        Template               template = new Template();
+        template.setName("page.vm");
+        template.setLastModified(loader.getLastModified(template));
+
+        assertEquals("version one".hashCode(), template.getLastModified());
+        assertFalse(loader.isSourceModified(template));
+
+        //-- rewriting the same text is not a modification
+        write(dir, "page.vm", "version one");
+        assertFalse(loader.isSourceModified(template));
+
+        write(dir, "page.vm", "version two");
+        assertTrue(loader.isSourceModified(template));
+
+        new File(dir, "page.vm").delete();
+        assertEquals(-1, loader.getLastModified(template));
+        assertTrue(loader.isSourceModified(template));
+
+        //-- outside of a request the template is assumed to be unchanged
+        ScriptAction.scriptLocal.remove();
+        assertEquals(template.getLastModified(), loader.getLastModified(template));
+        assertFalse(loader.isSourceModified(template));
+    }
+
+    @Test
+    public void test_used_contexts_are_closed_and_replaced_never_reused() throws Exception {
+        AtomicInteger                        created = new AtomicInteger();
+        List<ScriptAction.JavascriptContext> closed  = new ArrayList<>();
+
+        ScriptAction action = new ScriptAction() {
+            @Override
+            JavascriptContext newContext() {
+                created.incrementAndGet();
+                return new JavascriptContext(null) {
+                    @Override
+                    void close() {
+                        synchronized (closed) {
+                            closed.add(this);
+                        }
+                    }
+                };
+            }
+        }.withContextPoolMax(2);
+        action.contextPool = new ArrayBlockingQueue<>(2);
+        action.contextPool.offer(action.newContext());
+
+        ScriptAction.JavascriptContext warm = action.contextPool.peek();
+        ScriptAction.JavascriptContext used = action.borrowContext();
+        assertSame(warm, used);
+        assertEquals(1, created.get());
+
+        //-- an empty pool does not block the request
+        ScriptAction.JavascriptContext extra = action.borrowContext();
+        assertNotSame(used, extra);
+        assertEquals(2, created.get());
+
+        action.releaseContext(used);
+        action.releaseContext(extra);
+        assertTrue(closed.contains(used));
+        assertTrue(closed.contains(extra));
+
+        //-- the pool is topped back up with fresh contexts
+        for (int i = 0; i < 200 && action.contextPool.size() < 2; i++)
+            Thread.sleep(10);
+        assertEquals(2, action.contextPool.size());
+        assertFalse(action.contextPool.contains(used));
+        assertFalse(action.contextPool.contains(extra));
+
+        ScriptAction.JavascriptContext next = action.borrowContext();
+        assertNotSame(used, next);
+        assertNotSame(extra, next);
+        assertFalse(closed.contains(next));
+    }
+
+    /**
+     * @return a ScriptAction, set up as if running a request, that finds scripts in <code>dir</code> without caching them
+     */
+    ScriptAction newScriptAction(File dir, List<String> lookups) {
+        Engine engine = new Engine() {
+            @Override
+            public URL getResource(String name) {
+                lookups.add(name);
+                File file = new File(dir, name.substring(name.indexOf("scripts/") + "scripts/".length()));
+                try {
+                    return file.exists() ? file.toURI().toURL() : null;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+
+        ScriptAction action = new ScriptAction().withScriptsDir("scripts");
+        action.setScriptsCollection(null);
+
+        ScriptAction.scriptLocal.set(action);
+        ScriptAction.chainLocal.set(Chain.push(engine, new Request("GET", "http://localhost/"), new Response()));
+        return action;
+    }
+
+    static void write(File dir, String name, String text) throws Exception {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
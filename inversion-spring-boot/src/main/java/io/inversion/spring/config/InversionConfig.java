@@ -19,6 +19,8 @@ package io.inversion.spring.config;
 import io.inversion.*;
 
 import io.inversion.utils.Path;
+import io.inversion.utils.Utils;
+import io.inversion.utils.VirtualThreads;
 import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
@@ -87,6 +89,15 @@ public class InversionConfig {
         TomcatServletWebServerFactory tomcat = new TomcatServletWebServerFactory();
         tomcat.addContextCustomizers(context -> context.setAllowCasualMultipartParsing(true));
 
+        //-- runs each request on its own virtual thread instead of a thread from Tomcat's pool
+        Environment environment = InversionRegistrar.environment;
+        if (environment != null && Utils.atob(environment.getProperty(EngineServlet.VIRTUAL_THREADS_PROP))) {
+            if (VirtualThreads.isSupported())
+                tomcat.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newExecutor("tomcat-handler-")));
+            else
+                System.err.println("  - " + EngineServlet.VIRTUAL_THREADS_PROP + " is true but virtual threads are not supported by this JVM");
+        }
+
         tomcat.addConnectorCustomizers(connector -> {
 //            AbstractHttp11Protocol httpProtocol = (AbstractHttp11Protocol) connector.getProtocolHandler();
 //            httpProtocol.setCompressibleMimeType("text/html,text/xml,text/plain,text/css,text/javascript,application/javascript,application/json");
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.utils;
+
+import io.inversion.utils.Rows.Row;
+import io.inversion.utils.Rows.RowKeys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column oriented alternative to {@link Rows} where the key/column names are stored once and the values
+ * for each column are stored in a single array.
+ * <p>
+ * Columns whose values are known to be <code>int</code>, <code>long</code>, <code>double</code> or <code>boolean</code>
+ * are stored in primitive arrays with a null mask so that consumers, such as a JSON writer, can read
+ * values without boxing.  All other values are stored in an <code>Object[]</code>.
+ * <p>
+ * This was developed so that a JDBC {@link java.sql.ResultSet} can be read and then serialized without
+ * first being copied into a Map per row.
+ *
+ * @see JdbcUtils#selectColumns(java.sql.Connection, String, Object...)
+ */
+public class Columns {
+
+    public static final int TYPE_OBJECT  = 0;
+    public static final int TYPE_INT     = 1;
+    public static final int TYPE_LONG    = 2;
+    public static final int TYPE_DOUBLE  = 3;
+    public static final int TYPE_BOOLEAN = 4;
+
+    /**
+     * The case insensitive column names shared with any Row created by {@link #getRow(int)}
+     */
+    final RowKeys keys;
+
+    /**
+     * One of the TYPE_ constants for each column
+     */
+    final int[] types;
+
+    /**
+     * One int[], long[], double[], boolean[] or Object[] for each column
+     */
+    final Object[] data;
+
+    /**
+     * The rows that are null for each primitive column, null for TYPE_OBJECT columns
+     */
+    final BitSet[] nulls;
+
+    int size     = 0;
+    int capacity = 0;
+
+    /**
+     * Creates a Columns where every column is TYPE_OBJECT
+     *
+     * @param keys the column names
+     */
+    public Columns(List<String> keys) {
+        this(keys, new int[keys.size()]);
+    }
+
+    /**
+     * @param keys  the column names
+     * @param types one of the TYPE_ constants for each column in <code>keys</code>
+     */
+    public Columns(List<String> keys, int[] types) {
+        if (keys.size() != types.length)
+            throw new IllegalArgumentException("You must supply a type for each column");
+
+        this.keys = new RowKeys(keys);
+        if (this.keys.size() != keys.size())
+            throw new IllegalArgumentException("Column names must be unique: " + keys);
+
+        this.types = Arrays.copyOf(types, types.length);
+        this.data = new Object[types.length];
+        this.nulls = new BitSet[types.length];
+
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != TYPE_OBJECT)
+                nulls[i] = new BitSet();
+        }
+        ensureCapacity(16);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int width() {
+        return types.length;
+    }
+
+    /**
+     * @return the ordered key/column names
+     */
+    public List<String> keyList() {
+        return new ArrayList<>(keys.keys);
+    }
+
+    /**
+     * @param col the column number
+     * @return the original case key/column name
+     */
+    public String getKey(int col) {
+        return keys.getKey(col);
+    }
+
+    /**
+     * @param key the column name
+     * @return the case insensitive index of <code>key</code> or -1 if it does not exist
+     */
+    public int indexOf(String key) {
+        return keys.indexOf(key);
+    }
+
+    /**
+     * @param col the column number
+     * @return the TYPE_ constant for the column
+     */
+    public int getType(int col) {
+        return types[col];
+    }
+
+    /**
+     * Adds an empty row, where all values are null, to the end of the table.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        ensureCapacity(size + 1);
+        for (int i = 0; i < nulls.length; i++) {
+            if (nulls[i] != null)
+                nulls[i].set(size);
+        }
+        return size++;
+    }
+
+    public boolean isNull(int row, int col) {
+        checkRow(row);
+        if (nulls[col] != null)
+            return nulls[col].get(row);
+        return ((Object[]) data[col])[row] == null;
+    }
+
+    public int getInt(int row, int col) {
+        checkRow(row);
+        return ((int[]) data[col])[row];
+    }
+
+    public long getLong(int row, int col) {
+        checkRow(row);
+        return ((long[]) data[col])[row];
+    }
+
+    public double getDouble(int row, int col) {
+        checkRow(row);
+        return ((double[]) data[col])[row];
+    }
+
+    public boolean getBoolean(int row, int col) {
+        checkRow(row);
+        return ((boolean[]) data[col])[row];
+    }
+
+    /**
+     * @param row the row number
+     * @param col the column number
+     * @return the value, boxed if the column is a primitive type, or null
+     */
+    public Object get(int row, int col) {
+        if (isNull(row, col))
+            return null;
+
+        switch (types[col]) {
+            case TYPE_INT:
+                return ((int[]) data[col])[row];
+            case TYPE_LONG:
+                return ((long[]) data[col])[row];
+            case TYPE_DOUBLE:
+                return ((double[]) data[col])[row];
+            case TYPE_BOOLEAN:
+                return ((boolean[]) data[col])[row];
+            default:
+                return ((Object[]) data[col])[row];
+        }
+    }
+
+    public void setInt(int row, int col, int value) {
+        checkRow(row);
+        ((int[]) data[col])[row] = value;
+        nulls[col].clear(row);
+    }
+
+    public void setLong(int row, int col, long value) {
+        checkRow(row);
+        ((long[]) data[col])[row] = value;
+        nulls[col].clear(row);
+    }
+
+    public void setDouble(int row, int col, double value) {
+        checkRow(row);
+        ((double[]) data[col])[row] = value;
+        nulls[col].clear(row);
+    }
+
+    public void setBoolean(int row, int col, boolean value) {
+        checkRow(row);
+        ((boolean[]) data[col])[row] = value;
+        nulls[col].clear(row);
+    }
+
+    /**
+     * Sets the value for the row/column unboxing <code>value</code> if the column is a primitive type.
+     *
+     * @param row   the row number
+     * @param col   the column number
+     * @param value the value to set
+     */
+    public void set(int row, int col, Object value) {
+        checkRow(row);
+        if (types[col] == TYPE_OBJECT) {
+            ((Object[]) data[col])[row] = value;
+        } else if (value == null) {
+            nulls[col].set(row);
+        } else {
+            switch (types[col]) {
+                case TYPE_INT:
+                    setInt(row, col, ((Number) value).intValue());
+                    break;
+                case TYPE_LONG:
+                    setLong(row, col, ((Number) value).longValue());
+                    break;
+                case TYPE_DOUBLE:
+                    setDouble(row, col, ((Number) value).doubleValue());
+                    break;
+                case TYPE_BOOLEAN:
+                    setBoolean(row, col, (Boolean) value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Copies the values of a single row into a new Row.
+     * <p>
+     * All Rows returned from this method share the same case insensitive keys.
+     *
+     * @param row the row number
+     * @return a Map of the key/values of <code>row</code>
+     */
+    public Row getRow(int row) {
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = get(row, i);
+        return new Row(keys, values);
+    }
+
+    /**
+     * @return a row oriented copy of this table
+     */
+    public Rows toRows() {
+        Rows rows = new Rows(keyList());
+        for (int i = 0; i < size; i++) {
+            Object[] values = new Object[types.length];
+            for (int j = 0; j < values.length; j++)
+                values[j] = get(i, j);
+            rows.addRow(values);
+        }
+        return rows;
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for size " + size);
+    }
+
+    void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity)
+            return;
+
+        int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case TYPE_INT:
+                    data[i] = data[i] == null ? new int[newCapacity] : Arrays.copyOf((int[]) data[i], newCapacity);
+                    break;
+                case TYPE_LONG:
+                    data[i] = data[i] == null ? new long[newCapacity] : Arrays.copyOf((long[]) data[i], newCapacity);
+                    break;
+                case TYPE_DOUBLE:
+                    data[i] = data[i] == null ? new double[newCapacity] : Arrays.copyOf((double[]) data[i], newCapacity);
+                    break;
+                case TYPE_BOOLEAN:
+                    data[i] = data[i] == null ? new boolean[newCapacity] : Arrays.copyOf((boolean[]) data[i], newCapacity);
+                    break;
+                default:
+                    data[i] = data[i] == null ? new Object[newCapacity] : Arrays.copyOf((Object[]) data[i], newCapacity);
+            }
+        }
+        capacity = newCapacity;
+    }
+}
@@ -406,22 +406,7 @@ public class JdbcUtils {
                     for (int i = 0; i < cols; i++) {
                         Object o = null;
                         try {
-                            o = rs.getObject(i + 1);
-
-                            if (o instanceof Clob) {
-                                Reader        reader = ((Clob) o).getCharacterStream();
-                                char[]        arr    = new char[8 * 1024];
-                                StringBuilder buffer = new StringBuilder();
-                                int           numCharsRead;
-                                while ((numCharsRead = reader.read(arr, 0, arr.length)) != -1) {
-                                    buffer.append(arr, 0, numCharsRead);
-                                }
-                                reader.close();
-                                o = buffer.toString();
-                            } else if (o != null && o.getClass().isArray() && Array.getLength(o) == 0) {
-                                o = null;
-                            }
-
+                            o = getObject(rs, i + 1);
                         } catch (Exception e) {
                             if (ex != null)
                                 ex = e;
@@ -447,6 +432,153 @@ public class JdbcUtils {
         return rows;
     }
 
+    /**
+     * Selects the results of <code>sql</code> into a column oriented {@link Columns} table instead of a {@link Rows}.
+     * <p>
+     * Columns the driver reports as <code>java.lang.Integer</code>, <code>java.lang.Long</code>, <code>java.lang.Double</code>
+     * or <code>java.lang.Boolean</code> are read with the primitive ResultSet getters and stored unboxed.  All other
+     * columns are read exactly as {@link #selectRows(Connection, String, Object...)} would read them.
+     * <p>
+     * If the ResultSet contains duplicate column labels, only the first occurrence is kept, matching the
+     * case insensitive first match lookup of {@link Row#get(String)}.
+     *
+     * @param conn the connection to use
+     * @param sql  the select statement
+     * @param vals prepared statement variables
+     * @return the results of the select
+     * @throws SQLException if the statement fails
+     */
+    public static Columns selectColumns(Connection conn, String sql, Object... vals) throws SQLException {
+        if (vals != null && vals.length == 1 && vals[0] instanceof List)
+            vals = ((List) vals[0]).toArray();
+
+        notifyBefore("selectColumns", sql, vals);
+
+        Exception ex      = null;
+        Statement stmt    = null;
+        ResultSet rs      = null;
+        Columns   columns = null;
+
+        try {
+            if (vals != null && vals.length > 0) {
+                stmt = conn.prepareStatement(sql);
+                for (int i = 0; i < vals.length; i++) {
+                    Object o = vals[i];
+                    ((PreparedStatement) stmt).setObject(i + 1, o);
+                }
+                rs = ((PreparedStatement) stmt).executeQuery();
+            } else {
+                stmt = conn.createStatement();
+                rs = stmt.executeQuery(sql);
+            }
+
+            ResultSetMetaData rsmd    = rs.getMetaData();
+            int               cols    = rsmd.getColumnCount();
+            List<String>      keys    = new ArrayList<>();
+            List<Integer>     types   = new ArrayList<>();
+            List<Integer>     rsCols  = new ArrayList<>();
+            Set<String>       lcKeys  = new HashSet<>();
+
+            for (int i = 1; i <= cols; i++) {
+                String key = rsmd.getColumnLabel(i);
+                if (!lcKeys.add(key.toLowerCase()))
+                    continue;
+
+                keys.add(key);
+                rsCols.add(i);
+
+                String className = rsmd.getColumnClassName(i);
+                if (Integer.class.getName().equals(className))
+                    types.add(Columns.TYPE_INT);
+                else if (Long.class.getName().equals(className))
+                    types.add(Columns.TYPE_LONG);
+                else if (Double.class.getName().equals(className))
+                    types.add(Columns.TYPE_DOUBLE);
+                else if (Boolean.class.getName().equals(className))
+                    types.add(Columns.TYPE_BOOLEAN);
+                else
+                    types.add(Columns.TYPE_OBJECT);
+            }
+
+            int[] typeArr = new int[types.size()];
+            for (int i = 0; i < typeArr.length; i++)
+                typeArr[i] = types.get(i);
+
+            columns = new Columns(keys, typeArr);
+
+            while (rs.next()) {
+                int row = columns.addRow();
+                for (int i = 0; i < typeArr.length; i++) {
+                    int rsCol = rsCols.get(i);
+                    try {
+                        switch (typeArr[i]) {
+                            case Columns.TYPE_INT: {
+                                int val = rs.getInt(rsCol);
+                                if (!rs.wasNull())
+                                    columns.setInt(row, i, val);
+                                break;
+                            }
+                            case Columns.TYPE_LONG: {
+                                long val = rs.getLong(rsCol);
+                                if (!rs.wasNull())
+                                    columns.setLong(row, i, val);
+                                break;
+                            }
+                            case Columns.TYPE_DOUBLE: {
+                                double val = rs.getDouble(rsCol);
+                                if (!rs.wasNull())
+                                    columns.setDouble(row, i, val);
+                                break;
+                            }
+                            case Columns.TYPE_BOOLEAN: {
+                                boolean val = rs.getBoolean(rsCol);
+                                if (!rs.wasNull())
+                                    columns.setBoolean(row, i, val);
+                                break;
+                            }
+                            default:
+                                columns.set(row, i, getObject(rs, rsCol));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        notifyError("selectColumns", sql, vals, e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            notifyError("selectColumns", sql, vals, e);
+            ex = new SQLException(e.getMessage() + " SQL=" + sql + " ERROR=" + e.getMessage(), Utils.getCause(e));
+            throw (SQLException) ex;
+        } finally {
+            close(stmt, rs);
+            notifyAfter("selectColumns", sql, vals, ex, columns);
+        }
+
+        return columns;
+    }
+
+    /**
+     * Reads the column value from the current row converting Clobs to Strings and empty arrays to null.
+     */
+    static Object getObject(ResultSet rs, int col) throws Exception {
+        Object o = rs.getObject(col);
+
+        if (o instanceof Clob) {
+            Reader        reader = ((Clob) o).getCharacterStream();
+            char[]        arr    = new char[8 * 1024];
+            StringBuilder buffer = new StringBuilder();
+            int           numCharsRead;
+            while ((numCharsRead = reader.read(arr, 0, arr.length)) != -1) {
+                buffer.append(arr, 0, numCharsRead);
+            }
+            reader.close();
+            o = buffer.toString();
+        } else if (o != null && o.getClass().isArray() && Array.getLength(o) == 0) {
+            o = null;
+        }
+        return o;
+    }
+
     public static Row selectRow(Connection conn, String sql, Object... vals) throws SQLException {
         Rows rows = selectRows(conn, sql, vals);
         if (rows.size() > 0)
@@ -799,23 +931,9 @@ public class JdbcUtils {
 
     }
 
-    static List h2UpsertBatch(Connection conn, String tableName, List<String> idxCols, List<Map<String, Object>> rows) throws SQLException {
-        List returnKeys = new ArrayList<>();
-        for (Map row : rows) {
-            returnKeys.add(h2UpsertBatch(conn, tableName, idxCols, row));
-        }
-        return returnKeys;
-    }
-
-    static Object h2UpsertBatch(Connection conn, String tableName, List<String> idxCols, Map<String, Object> row) throws SQLException {
-        String sql = "";
-
-        List<String> cols = new ArrayList<>();
-        List<Object> vals = new ArrayList<>();
-        for (String col : row.keySet()) {
-            cols.add(col);
-            vals.add(row.get(col));
-        }
+    static void h2UpsertBatch(Connection conn, String tableName, List<String> idxCols, List<Map<String, Object>> rows) throws SQLException {
+        //-- upsert() only batches rows that share the same columns
+        List<String> cols = new ArrayList<>(rows.get(0).keySet());
 
         StringBuilder keyCols = new StringBuilder();
         for (int i = 0; i < idxCols.size(); i++) {
@@ -824,18 +942,27 @@ public class JdbcUtils {
                 keyCols.append(", ");
         }
 
-        sql += " MERGE INTO " + quoteCol(conn, tableName) + " (" + JdbcUtils.getColumnStr(conn, cols) + ")  KEY(" + keyCols + ") VALUES (" + getQuestionMarkStr(vals.size()) + ")";
+        String sql = "MERGE INTO " + quoteCol(conn, tableName) + " (" + JdbcUtils.getColumnStr(conn, cols) + ")  KEY(" + keyCols + ") VALUES (" + getQuestionMarkStr(cols.size()) + ")";
 
-        Exception ex = null;
+        Exception         ex   = null;
+        PreparedStatement stmt = conn.prepareStatement(sql);
         try {
-            notifyBefore("upsert", sql, row);
-            return execute(conn, sql, vals);
+            notifyBefore("upsert", sql, rows);
+
+            for (Map<String, Object> row : rows) {
+                for (int i = 0; i < cols.size(); i++) {
+                    stmt.setObject(i + 1, row.get(cols.get(i)));
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
         } catch (Exception e) {
             ex = e;
-            notifyError("upsert", sql, row, ex);
+            notifyError("upsert", sql, rows, ex);
             throw e;
         } finally {
-            notifyAfter("upsert", sql, row, ex, null);
+            close(stmt);
+            notifyAfter("upsert", sql, rows, ex, null);
         }
     }
 
@@ -947,9 +1074,10 @@ public class JdbcUtils {
      * https://stackoverflow.com/questions/108403/solutions-for-insert-or-update-on-sql-server
      */
     static List sqlserverUpsertBatch(Connection conn, String tableName, List<String> idxCols, List<Map<String, Object>> rows) throws SQLException {
+        sqlserverUpsertBatch0(conn, tableName, idxCols, rows);
+
         List<Object> returnKeys = new ArrayList<>();
         for (Map row : rows) {
-            sqlserverUpsertBatch(conn, tableName, idxCols, row);
             returnKeys.add(row.get(idxCols.get(0)));
         }
         return returnKeys;
@@ -959,10 +1087,12 @@ public class JdbcUtils {
      * UPDATE "orders" SET "CustomerID" = ? , "ShipCity" = ? , "ShipCountry" = ?  WHERE "OrderID" = ?
      * IF @@ROWCOUNT = 0
      * INSERT INTO "orders" ("OrderID", "CustomerID", "ShipCity", "ShipCountry") VALUES (?,?,?,?)
+     *
+     * upsert() only batches rows that share the same columns so every row binds to the same statement.
      */
-    static void sqlserverUpsertBatch(Connection conn, String tableName, List<String> indexCols, Map<String, Object> row) throws SQLException {
-        List<String> updateCols = new ArrayList<>(row.keySet());
-        List<String> insertCols = new ArrayList<>(row.keySet());
+    static void sqlserverUpsertBatch0(Connection conn, String tableName, List<String> indexCols, List<Map<String, Object>> rows) throws SQLException {
+        List<String> updateCols = new ArrayList<>(rows.get(0).keySet());
+        List<String> insertCols = new ArrayList<>(rows.get(0).keySet());
 
         if (indexCols.size() < updateCols.size())
             updateCols.removeAll(indexCols);
@@ -976,35 +1106,433 @@ public class JdbcUtils {
 
         PreparedStatement stmt = conn.prepareStatement(sql);
         try {
-            notifyBefore("upsert", sql, row);
+            notifyBefore("upsert", sql, rows);
 
-            int colNum = 1;
-            for (String col : updateCols) {
-                Object value = row.get(col);
-                stmt.setObject(colNum++, value);
+            for (Map<String, Object> row : rows) {
+                int colNum = 1;
+                for (String col : updateCols) {
+                    Object value = row.get(col);
+                    stmt.setObject(colNum++, value);
+                }
+                for (String key : indexCols) {
+                    Object value = row.get(key);
+                    stmt.setObject(colNum++, value);
+                }
+                for (String col : insertCols) {
+                    Object value = row.get(col);
+                    stmt.setObject(colNum++, value);
+                }
+                stmt.addBatch();
             }
-            for (String key : indexCols) {
-                Object value = row.get(key);
-                stmt.setObject(colNum++, value);
+            stmt.executeBatch();
+        } catch (Exception e) {
+            ex = e;
+            notifyError("upsert", sql, rows, ex);
+            throw e;
+        } finally {
+            close(stmt);
+            notifyAfter("upsert", sql, rows, ex, null);
+        }
+    }
+
+   /*
+   +------------------------------------------------------------------------------+
+   | RETURNING UTILS
+   +------------------------------------------------------------------------------+
+    */
+
+    /**
+     * The name of the literal column used to match rows from a SQL Server OUTPUT or a Postgres
+     * writable CTE back to the rows that were written.
+     */
+    static final String RETURNING_ROW_COL = "inversion_row";
+
+    /**
+     * Batches are limited to this many parameters so a statement stays under SQL Server's limit of 2100.
+     */
+    static final int MAX_RETURNING_PARAMS = 2000;
+
+    /**
+     * @param conn the jdbc connection
+     * @return true if {@link #upsertReturning(Connection, String, List, List)} and {@link #updateReturning(Connection, String, List, List)}
+     * can return the written rows for this type of database
+     */
+    public static boolean isReturningSupported(Connection conn) {
+        return Utils.in(getDbType(conn), "h2", "postgres", "sqlserver");
+    }
+
+    /**
+     * Upserts the rows and returns the complete persisted rows from the writes themselves.
+     * <p>
+     * Consecutive rows with the same columns are written with one statement per batch using
+     * "SELECT * FROM FINAL TABLE (MERGE...)" on H2, "INSERT...VALUES (...), (...) ON CONFLICT...RETURNING *"
+     * on Postgres and "MERGE...USING (VALUES (...), (...))...OUTPUT INSERTED.*" on SQL Server.
+     * <p>
+     * Rows that are missing primaryKeyCols values are inserted.
+     *
+     * @param conn           the jdbc connection
+     * @param tableName      the table to upsert into
+     * @param primaryKeyCols a unique key for the table that will constrain the upsert
+     * @param rows           the data to upsert
+     * @return the persisted rows in the same order as <code>rows</code> or null if the database type is not supported
+     * @throws SQLException when the upsert fails
+     * @see #isReturningSupported(Connection)
+     * @see #buildUpsertReturningSQL(Connection, String, List, List, int, boolean)
+     */
+    public static List<Row> upsertReturning(Connection conn, String tableName, List<String> primaryKeyCols, List<Map<String, Object>> rows) throws SQLException {
+        if (!isReturningSupported(conn))
+            return null;
+
+        List<Row> returned = new ArrayList<>(rows.size());
+        for (List<Map<String, Object>> batch : batchReturning(rows, primaryKeyCols)) {
+            boolean      hasKey = hasKey(batch.get(0), primaryKeyCols);
+            List<String> cols   = new ArrayList<>(batch.get(0).keySet());
+            String       sql    = buildUpsertReturningSQL(conn, tableName, primaryKeyCols, cols, batch.size(), hasKey);
+
+            List<Object> vals = new ArrayList<>();
+            for (Map<String, Object> row : batch)
+                cols.forEach(col -> vals.add(row.get(col)));
+
+            List<Row> persisted = orderReturning(batch, hasKey ? primaryKeyCols : null, executeReturning(conn, "upsert", sql, vals, batch));
+            if (persisted.size() != batch.size())
+                throw Utils.ex("Upsert returned {} rows for the {} rows written: {}", persisted.size(), batch.size(), batch);
+
+            returned.addAll(persisted);
+        }
+        return returned;
+    }
+
+    /**
+     * Updates the rows and returns the complete persisted rows from the writes themselves.
+     * <p>
+     * Consecutive rows with the same columns are written with one statement per batch using
+     * "SELECT * FROM FINAL TABLE (MERGE...USING (VALUES...) WHEN MATCHED...)" on H2, one
+     * "UPDATE...RETURNING *" writable CTE per row on Postgres and "MERGE...USING (VALUES...)...OUTPUT INSERTED.*"
+     * on SQL Server.  Rows that only contain <code>keyCols</code> are read with a single SELECT.
+     *
+     * @param conn      the jdbc connection
+     * @param tableName the table to update
+     * @param keyCols   the columns that identify the row to update
+     * @param rows      the data to update
+     * @return the rows that were updated, in the same order as <code>rows</code>, or null if the database type is not supported
+     * @throws SQLException when the update fails
+     * @see #isReturningSupported(Connection)
+     * @see #buildUpdateReturningSQL(Connection, String, List, List, int)
+     */
+    public static List<Row> updateReturning(Connection conn, String tableName, List<String> keyCols, List<Map<String, Object>> rows) throws SQLException {
+        if (!isReturningSupported(conn))
+            return null;
+
+        boolean   postgres = "postgres".equals(getDbType(conn));
+        List<Row> returned = new ArrayList<>(rows.size());
+        for (List<Map<String, Object>> batch : batchReturning(rows, keyCols)) {
+            List<String> valCols = new ArrayList<>(batch.get(0).keySet());
+            valCols.removeAll(keyCols);
+
+            String       sql  = buildUpdateReturningSQL(conn, tableName, keyCols, valCols, batch.size());
+            List<Object> vals = new ArrayList<>();
+            for (Map<String, Object> row : batch) {
+                if (postgres && !valCols.isEmpty()) {
+                    //-- each row is its own "UPDATE...SET...WHERE" CTE
+                    valCols.forEach(col -> vals.add(row.get(col)));
+                    keyCols.forEach(col -> vals.add(row.get(col)));
+                } else {
+                    keyCols.forEach(col -> vals.add(row.get(col)));
+                    valCols.forEach(col -> vals.add(row.get(col)));
+                }
+            }
+            returned.addAll(orderReturning(batch, keyCols, executeReturning(conn, "update", sql, vals, batch)));
+        }
+        return returned;
+    }
+
+    /**
+     * Builds one statement that upserts <code>numRows</code> rows with the same <code>cols</code> and returns them.
+     * <p>
+     * The SQL Server statement outputs a {@link #RETURNING_ROW_COL} column, the zero based index of the row that was written,
+     * before the table columns because the order of MERGE OUTPUT rows is not defined.
+     *
+     * @param conn           the jdbc connection
+     * @param tableName      the table to upsert into
+     * @param primaryKeyCols a unique key for the table that will constrain the upsert
+     * @param cols           the columns being written
+     * @param numRows        the number of rows
+     * @param hasKey         true if the rows have primaryKeyCols values, false if they should all be inserted
+     * @return the upsert sql
+     */
+    public static String buildUpsertReturningSQL(Connection conn, String tableName, List<String> primaryKeyCols, List<String> cols, int numRows, boolean hasKey) {
+        String        type = getDbType(conn);
+        StringBuilder sql  = new StringBuilder();
+
+        if ("sqlserver".equals(type)) {
+            List<String> updateCols = new ArrayList<>(cols);
+            if (primaryKeyCols.size() < updateCols.size())
+                updateCols.removeAll(primaryKeyCols);
+
+            sql.append("MERGE INTO ").append(quoteCol(conn, tableName)).append(" AS ").append(quoteCol(conn, "target"));
+            sql.append("\r\n USING (VALUES ").append(buildValuesSQL(cols.size(), numRows, true)).append(") AS ").append(quoteCol(conn, "source"));
+            sql.append(" (").append(quoteCol(conn, RETURNING_ROW_COL)).append(", ").append(getColumnStr(conn, cols)).append(")");
+            sql.append("\r\n ON ").append(hasKey ? buildJoinSQL(conn, "target", "source", primaryKeyCols) : "1 = 0");
+            if (hasKey)
+                sql.append("\r\n WHEN MATCHED THEN UPDATE SET ").append(buildSetSQL(conn, "source", updateCols));
+            sql.append("\r\n WHEN NOT MATCHED THEN INSERT (").append(getColumnStr(conn, cols)).append(") VALUES (").append(buildQualifiedColumnStr(conn, "source", cols)).append(")");
+            sql.append("\r\n OUTPUT ").append(quoteCol(conn, "source")).append(".").append(quoteCol(conn, RETURNING_ROW_COL)).append(", INSERTED.*;");
+        } else if ("postgres".equals(type)) {
+            sql.append("INSERT INTO ").append(quoteCol(conn, tableName)).append(" (").append(getColumnStr(conn, cols)).append(")");
+            sql.append("\r\n VALUES ").append(buildValuesSQL(cols.size(), numRows, false));
+            if (hasKey) {
+                sql.append("\r\n ON CONFLICT (").append(getColumnStr(conn, primaryKeyCols)).append(") DO UPDATE SET ");
+                for (int i = 0; i < cols.size(); i++) {
+                    sql.append("\r\n ").append(quoteCol(conn, cols.get(i))).append(" = EXCLUDED.").append(quoteCol(conn, cols.get(i)));
+                    if (i < cols.size() - 1)
+                        sql.append(", ");
+                }
+            }
+            sql.append("\r\n RETURNING *");
+        } else {
+            sql.append("SELECT * FROM FINAL TABLE (");
+            if (hasKey)
+                sql.append("MERGE INTO ").append(quoteCol(conn, tableName)).append(" (").append(getColumnStr(conn, cols)).append(") KEY(").append(getColumnStr(conn, primaryKeyCols)).append(")");
+            else
+                sql.append("INSERT INTO ").append(quoteCol(conn, tableName)).append(" (").append(getColumnStr(conn, cols)).append(")");
+            sql.append(" VALUES ").append(buildValuesSQL(cols.size(), numRows, false)).append(")");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Builds one statement that updates <code>numRows</code> rows with the same <code>valCols</code> and returns them.
+     * <p>
+     * Parameters are bound row by row, key columns first then value columns, except for Postgres
+     * where each row is bound value columns first then key columns.  When <code>valCols</code>
+     * is empty there is nothing to update and the statement is a SELECT of the keyed rows.
+     *
+     * @param conn      the jdbc connection
+     * @param tableName the table to update
+     * @param keyCols   the columns that identify the rows to update
+     * @param valCols   the columns to update
+     * @param numRows   the number of rows
+     * @return the update sql
+     */
+    public static String buildUpdateReturningSQL(Connection conn, String tableName, List<String> keyCols, List<String> valCols, int numRows) {
+        String        type = getDbType(conn);
+        StringBuilder sql  = new StringBuilder();
+
+        if (valCols.isEmpty()) {
+            sql.append("SELECT * FROM ").append(quoteCol(conn, tableName)).append(" WHERE ");
+            for (int i = 0; i < numRows; i++) {
+                if (i > 0)
+                    sql.append(" OR ");
+                sql.append("(").append(getWhereColumnStr(conn, keyCols.toArray(), " AND ").trim()).append(")");
+            }
+        } else if ("postgres".equals(type)) {
+            //-- each row is updated by its own writable CTE so parameter types are
+            //-- inferred from the column being set instead of from a VALUES list
+            sql.append("WITH ");
+            for (int i = 0; i < numRows; i++) {
+                if (i > 0)
+                    sql.append(", ");
+                sql.append(quoteCol(conn, "u" + i)).append(" AS (").append(buildUpdateSQL(conn, tableName, valCols.toArray(), keyCols.toArray())).append(" RETURNING *)");
+            }
+            for (int i = 0; i < numRows; i++) {
+                sql.append(i == 0 ? "\r\n SELECT " : "\r\n UNION ALL SELECT ");
+                sql.append(i).append(" AS ").append(quoteCol(conn, RETURNING_ROW_COL)).append(", ").append(quoteCol(conn, "u" + i)).append(".* FROM ").append(quoteCol(conn, "u" + i));
+            }
+        } else {
+            List<String> cols = new ArrayList<>(keyCols);
+            cols.addAll(valCols);
+
+            boolean sqlserver = "sqlserver".equals(type);
+            if (!sqlserver)
+                sql.append("SELECT * FROM FINAL TABLE (");
+            sql.append("MERGE INTO ").append(quoteCol(conn, tableName)).append(" AS ").append(quoteCol(conn, "target"));
+            sql.append("\r\n USING (VALUES ").append(buildValuesSQL(cols.size(), numRows, sqlserver)).append(") AS ").append(quoteCol(conn, "source")).append(" (");
+            if (sqlserver)
+                sql.append(quoteCol(conn, RETURNING_ROW_COL)).append(", ");
+            sql.append(getColumnStr(conn, cols)).append(")");
+            sql.append("\r\n ON ").append(buildJoinSQL(conn, "target", "source", keyCols));
+            sql.append("\r\n WHEN MATCHED THEN UPDATE SET ").append(buildSetSQL(conn, "source", valCols));
+            if (sqlserver)
+                sql.append("\r\n OUTPUT ").append(quoteCol(conn, "source")).append(".").append(quoteCol(conn, RETURNING_ROW_COL)).append(", INSERTED.*;");
+            else
+                sql.append(")");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Splits <code>rows</code> into consecutive runs with the same columns and the same presence of key values
+     * that can each be written by a single statement.  A run is also split before a key that it already
+     * contains, because a row can only be modified once per statement, and before it would exceed
+     * {@link #MAX_RETURNING_PARAMS} parameters.
+     */
+    static List<List<Map<String, Object>>> batchReturning(List<Map<String, Object>> rows, List<String> keyCols) {
+        List<List<Map<String, Object>>> batches = new ArrayList<>();
+        List<Map<String, Object>>       batch   = null;
+        Set<String>                     keys    = new HashSet<>();
+        for (Map<String, Object> row : rows) {
+            boolean hasKey = hasKey(row, keyCols);
+            String  key    = hasKey ? keyOf(row, keyCols) : null;
+
+            if (batch != null) {
+                Map<String, Object> first = batch.get(0);
+                if (!first.keySet().equals(row.keySet()) //
+                        || hasKey(first, keyCols) != hasKey //
+                        || (key != null && keys.contains(key)) //
+                        || (batch.size() + 1) * (row.size() + 1) > MAX_RETURNING_PARAMS)
+                    batch = null;
             }
-            for (String col : insertCols) {
-                Object value = row.get(col);
-                stmt.setObject(colNum++, value);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.add(batch);
+                keys.clear();
             }
+            batch.add(row);
+            if (key != null)
+                keys.add(key);
+        }
+        return batches;
+    }
+
+    /**
+     * Puts the rows returned from a write into the order of the <code>written</code> rows using the
+     * {@link #RETURNING_ROW_COL} values when the statement returned them or else the <code>keyCols</code>
+     * values.  When neither is available, the rows are returned in the order the database returned them.
+     */
+    static List<Row> orderReturning(List<Map<String, Object>> written, List<String> keyCols, Rows returned) {
+        Row[] ordered = new Row[written.size()];
+        if (returned.keySet().contains(RETURNING_ROW_COL)) {
+            for (Row row : returned) {
+                int idx = ((Number) row.remove(RETURNING_ROW_COL)).intValue();
+                ordered[idx] = row;
+            }
+        } else if (keyCols != null && !keyCols.isEmpty()) {
+            Map<String, Row> byKey = new HashMap<>();
+            for (Row row : returned)
+                byKey.put(keyOf(row, keyCols), row);
+
+            for (int i = 0; i < written.size(); i++)
+                ordered[i] = byKey.remove(keyOf(written.get(i), keyCols));
+
+            //-- a key that did not survive the round trip as the same string, return in database order
+            if (!byKey.isEmpty())
+                return new ArrayList<>(returned);
+        } else {
+            return new ArrayList<>(returned);
+        }
+
+        List<Row> rows = new ArrayList<>(ordered.length);
+        for (Row row : ordered) {
+            if (row != null)
+                rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Executes a write statement that returns rows and reads all rows of the first non empty result set.
+     */
+    static Rows executeReturning(Connection conn, String method, String sql, List<Object> vals, Object args) throws SQLException {
+        notifyBefore(method, sql, args);
 
-            stmt.execute();
+        Exception         ex   = null;
+        Rows              rows = new Rows();
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < vals.size(); i++)
+                stmt.setObject(i + 1, vals.get(i));
+
+            boolean isResultSet = stmt.execute();
+            while (rows.isEmpty()) {
+                if (isResultSet) {
+                    try (ResultSet rs = stmt.getResultSet()) {
+                        ResultSetMetaData rsmd = rs.getMetaData();
+                        while (rs.next()) {
+                            if (rows.isEmpty()) {
+                                for (int i = 1; i <= rsmd.getColumnCount(); i++)
+                                    rows.addKey(rsmd.getColumnLabel(i));
+                            }
+                            rows.addRow();
+                            for (int i = 1; i <= rsmd.getColumnCount(); i++)
+                                rows.put(getObject(rs, i));
+                        }
+                    }
+                } else if (stmt.getUpdateCount() == -1) {
+                    break;
+                }
+                if (rows.isEmpty())
+                    isResultSet = stmt.getMoreResults();
+            }
         } catch (Exception e) {
             ex = e;
-            notifyError("upsert", sql, row, ex);
-            throw e;
+            notifyError(method, sql, args, ex);
+            throw e instanceof SQLException ? (SQLException) e : new SQLException(e.getMessage() + " SQL=" + sql, Utils.getCause(e));
         } finally {
             close(stmt);
-            notifyAfter("upsert", sql, row, ex, null);
+            notifyAfter(method, sql, args, ex, rows);
         }
+        return rows;
+    }
+
+    static boolean hasKey(Map<String, Object> row, List<String> keyCols) {
+        for (String keyCol : keyCols) {
+            if (Utils.empty(row.get(keyCol)))
+                return false;
+        }
+        return true;
+    }
+
+    static String keyOf(Map<String, Object> row, List<String> keyCols) {
+        StringBuilder key = new StringBuilder();
+        for (String keyCol : keyCols)
+            key.append(row.get(keyCol)).append('\u0000');
+        return key.toString();
+    }
+
+    /**
+     * @return "(?,?), (?,?)" or, with <code>rowNumbers</code>, "(0,?,?), (1,?,?)"
+     */
+    static String buildValuesSQL(int numCols, int numRows, boolean rowNumbers) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < numRows; i++) {
+            if (i > 0)
+                sql.append(", ");
+            sql.append("(");
+            if (rowNumbers)
+                sql.append(i).append(",");
+            sql.append(getQuestionMarkStr(numCols)).append(")");
+        }
+        return sql.toString();
+    }
+
+    static String buildJoinSQL(Connection conn, String left, String right, List<String> cols) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < cols.size(); i++) {
+            if (i > 0)
+                sql.append(" AND ");
+            sql.append(quoteCol(conn, left)).append(".").append(quoteCol(conn, cols.get(i))).append(" = ").append(quoteCol(conn, right)).append(".").append(quoteCol(conn, cols.get(i)));
+        }
+        return sql.toString();
+    }
+
+    static String buildSetSQL(Connection conn, String source, List<String> cols) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < cols.size(); i++) {
+            if (i > 0)
+                sql.append(", ");
+            sql.append(quoteCol(conn, cols.get(i))).append(" = ").append(quoteCol(conn, source)).append(".").append(quoteCol(conn, cols.get(i)));
+        }
+        return sql.toString();
     }
 
-    public static void runSql(Connection conn, String sqlString) throws SQLException {
-        runSql(conn, readSql(sqlString));
+    static String buildQualifiedColumnStr(Connection conn, String alias, List<String> cols) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < cols.size(); i++) {
+            if (i > 0)
+                sql.append(", ");
+            sql.append(quoteCol(conn, alias)).append(".").append(quoteCol(conn, cols.get(i)));
+        }
+        return sql.toString();
     }
 
    /*
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A thread safe, size bounded, least recently used cache.
+ * <p>
+ * Reads do not lock.  Each entry records the time it was last read and, when a put takes the
+ * cache over <code>maxSize</code>, the least recently read entries are evicted, a quarter of
+ * <code>maxSize</code> at a time for caches that hold four or more entries.  Only the puts that
+ * overflow the cache lock, and then only against each other, so the cache may briefly hold a
+ * few more than <code>maxSize</code> entries under concurrent puts.
+ * <p>
+ * Values are computed outside of any lock so a slow loader does not block readers of other keys.
+ * Two threads that miss on the same key at the same time may both compute the value, the
+ * last one to finish wins.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+
+    final int                               maxSize;
+    final ConcurrentHashMap<K, Entry<V>>    map;
+    final ReentrantLock                     evictLock = new ReentrantLock();
+
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<>(Math.min(Math.max(16, maxSize), 1024));
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null)
+            return null;
+        entry.lastAccess = System.nanoTime();
+        return entry.value;
+    }
+
+    public V put(K key, V value) {
+        Entry<V> old = map.put(key, new Entry<>(value));
+        if (map.size() > maxSize)
+            evict();
+        return old != null ? old.value : null;
+    }
+
+    /**
+     * Returns the cached value for <code>key</code> or computes, caches and returns it if it is not cached.
+     * <p>
+     * Null values are returned but not cached.
+     *
+     * @param key    the cache key
+     * @param loader computes the value on a cache miss
+     * @return the cached or computed value
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null && maxSize > 0)
+                put(key, value);
+        }
+        return value;
+    }
+
+    public V remove(K key) {
+        Entry<V> old = map.remove(key);
+        return old != null ? old.value : null;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * Removes the least recently read entries until the cache is back down to <code>maxSize</code>.
+     * <p>
+     * Finding the oldest entries means visiting all of them so, for larger caches, a quarter of the
+     * entries are evicted at once and the following puts do not have to evict anything.
+     */
+    void evict() {
+        evictLock.lock();
+        try {
+            int size = map.size();
+            if (size <= maxSize)
+                return;
+
+            int excess = size - (maxSize - maxSize / 4);
+            if (excess == 1) {
+                Map.Entry<K, Entry<V>> oldest = null;
+                for (Map.Entry<K, Entry<V>> e : map.entrySet()) {
+                    if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess)
+                        oldest = e;
+                }
+                if (oldest != null)
+                    map.remove(oldest.getKey(), oldest.getValue());
+            } else {
+                //-- find the access time of the newest entry to evict and then evict it and everything older
+                long[] times = new long[size];
+                int    count = 0;
+                for (Entry<V> e : map.values()) {
+                    if (count == times.length)
+                        break;
+                    times[count++] = e.lastAccess;
+                }
+                if (count == 0)
+                    return;
+                Arrays.sort(times, 0, count);
+                long cutoff = times[Math.min(excess, count) - 1];
+
+                for (Iterator<Entry<V>> it = map.values().iterator(); it.hasNext() && excess > 0; ) {
+                    if (it.next().lastAccess <= cutoff) {
+                        it.remove();
+                        excess -= 1;
+                    }
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    static final class Entry<V> {
+        final    V    value;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
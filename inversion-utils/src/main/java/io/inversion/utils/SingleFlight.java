@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent calls for the same key into a single call whose result is shared.
+ * <p>
+ * The first caller for a key becomes the "leader" and is expected to compute the value and then call
+ * {@link #complete(Object, Flight, Object, boolean)} or {@link #fail(Object, Flight, Throwable)}.  Callers
+ * that {@link #join(Object)} the same key while the leader is working become "followers" and wait on
+ * {@link Flight#getFuture()} for the leader's value instead of doing the work themselves.
+ * <p>
+ * When <code>ttl</code> is greater than zero, cacheable values are kept for that many milliseconds after
+ * they complete so callers that arrive shortly after still share the result.
+ * <p>
+ * Values are shared between threads so callers that go on to modify them should complete flights
+ * with a snapshot and hand each follower its own copy.
+ * <p>
+ * A thread that joins a key while its own flight for that key is still in progress, for example through a
+ * recursive call, is not coalesced because it could end up waiting on itself.  {@link #join(Object)} returns
+ * null in that case.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlight<K, V> {
+
+    final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    final LongAdder leaders   = new LongAdder();
+    final LongAdder followers = new LongAdder();
+    final LongAdder hits      = new LongAdder();
+    final LongAdder completes = new LongAdder();
+
+    /**
+     * How long, in milliseconds, cacheable values are shared after they complete.
+     */
+    protected volatile long ttl = 0;
+
+    public SingleFlight() {
+
+    }
+
+    public SingleFlight(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param key identifies calls that can share a result
+     * @return a new Flight the caller must complete if {@link Flight#isLeader()}, an existing Flight to wait on, or null if the current thread is already leading <code>key</code>
+     */
+    public Flight<V> join(K key) {
+        Flight<V> candidate = new Flight<>(Thread.currentThread());
+        Flight<V> flight    = flights.compute(key, (k, existing) -> existing == null || existing.isExpired() ? candidate : existing);
+
+        if (flight == candidate) {
+            leaders.increment();
+            return flight;
+        }
+
+        if (flight.future.isDone()) {
+            hits.increment();
+        } else if (flight.leaderThread == Thread.currentThread()) {
+            //-- the caller is waiting on itself
+            return null;
+        } else {
+            followers.increment();
+        }
+
+        return new Flight<>(flight);
+    }
+
+    /**
+     * Completes the leader's flight handing <code>value</code> to all followers.
+     *
+     * @param key       the flight key
+     * @param flight    the leader's flight
+     * @param value     the value to share
+     * @param cacheable if false, the value is not kept for <code>ttl</code>
+     */
+    public void complete(K key, Flight<V> flight, V value, boolean cacheable) {
+        long ttl = this.ttl;
+        if (cacheable && ttl > 0)
+            flight.expiresAt = System.currentTimeMillis() + ttl;
+        else
+            flights.remove(key, flight);
+
+        flight.leaderThread = null;
+        flight.future.complete(value);
+
+        //-- periodically sweep expired values so keys that are never requested again do not accumulate
+        completes.increment();
+        if (ttl > 0 && completes.sum() % 64 == 0)
+            flights.values().removeIf(Flight::isExpired);
+    }
+
+    public void fail(K key, Flight<V> flight, Throwable error) {
+        flights.remove(key, flight);
+        flight.leaderThread = null;
+        flight.future.completeExceptionally(error);
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public SingleFlight<K, V> withTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    /**
+     * @return the number of calls that did the work
+     */
+    public long getLeaders() {
+        return leaders.sum();
+    }
+
+    /**
+     * @return the number of calls that waited on an in flight call instead of doing the work
+     */
+    public long getFollowers() {
+        return followers.sum();
+    }
+
+    /**
+     * @return the number of calls that were answered by a completed value within its ttl
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of in flight and cached flights
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    public void clear() {
+        flights.clear();
+    }
+
+    public static class Flight<V> {
+        final boolean              leader;
+        volatile Thread            leaderThread;
+        final CompletableFuture<V> future;
+        volatile long              expiresAt = Long.MAX_VALUE;
+
+        Flight(Thread leaderThread) {
+            this.leader = true;
+            this.leaderThread = leaderThread;
+            this.future = new CompletableFuture<>();
+        }
+
+        Flight(Flight<V> shared) {
+            this.leader = false;
+            this.leaderThread = shared.leaderThread;
+            this.future = shared.future;
+        }
+
+        /**
+         * @return true if the caller is responsible for computing the value
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * @return a future that completes with the leader's value
+         */
+        public CompletableFuture<V> getFuture() {
+            return future;
+        }
+
+        boolean isExpired() {
+            return expiresAt != Long.MAX_VALUE && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
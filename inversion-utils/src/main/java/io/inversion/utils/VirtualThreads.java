@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015-2019 Rocket Partners, LLC
+ * https://github.com/inversion-api
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.inversion.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual thread executors on JVMs that support them (Java 21+) without requiring Java 21 to compile.
+ * <p>
+ * Virtual threads are cheap to block so a thread per task executor of them lets blocking JDBC, ApiClient
+ * and SDK calls scale with the number of concurrent requests instead of the size of a platform thread pool.
+ */
+public class VirtualThreads {
+
+    static final Method ofVirtual;
+    static final Method name;
+    static final Method factory;
+    static final Method newThreadPerTaskExecutor;
+
+    static {
+        Method ov    = null;
+        Method n     = null;
+        Method f     = null;
+        Method ntpte = null;
+        try {
+            //-- the builder implementations are not public so their methods are found on the public interface
+            Class builder = Class.forName("java.lang.Thread$Builder");
+            ov = Thread.class.getMethod("ofVirtual");
+            n = builder.getMethod("name", String.class, long.class);
+            f = builder.getMethod("factory");
+            ntpte = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Exception ex) {
+            //-- virtual threads are not supported by this JVM
+            ov = null;
+        }
+        ofVirtual = ov;
+        name = n;
+        factory = f;
+        newThreadPerTaskExecutor = ntpte;
+    }
+
+    private VirtualThreads() {
+
+    }
+
+    /**
+     * @return true if this JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return ofVirtual != null && newThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * @param namePrefix the prefix for the names of the virtual threads, a sequence number is appended
+     * @return a ThreadFactory that creates virtual threads or null if they are not supported
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        if (!isSupported())
+            return null;
+        try {
+            Object builder = ofVirtual.invoke(null);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception ex) {
+            throw Utils.ex(ex);
+        }
+    }
+
+    /**
+     * @param namePrefix the prefix for the names of the virtual threads, a sequence number is appended
+     * @return an executor that starts a new virtual thread for each task or null if they are not supported
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        ThreadFactory factory = newThreadFactory(namePrefix);
+        if (factory == null)
+            return null;
+        try {
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (Exception ex) {
+            throw Utils.ex(ex);
+        }
+    }
+}
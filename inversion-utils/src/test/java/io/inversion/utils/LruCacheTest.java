@@ -0,0 +1,67 @@
+package io.inversion.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LruCacheTest {
+
+    @Test
+    public void test_least_recently_read_entry_is_evicted() {
+        LruCache<String, String> cache = new LruCache<>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+
+        cache.put("d", "D");
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+    }
+
+    @Test
+    public void test_loader_results_are_cached_and_nulls_are_not() {
+        LruCache<String, String> cache = new LruCache<>(10);
+        assertEquals("X", cache.get("x", k -> "X"));
+        assertEquals("X", cache.get("x", k -> "changed"));
+        assertNull(cache.get("y", k -> null));
+        assertEquals(1, cache.size());
+
+        LruCache<String, String> disabled = new LruCache<>(0);
+        assertEquals("X", disabled.get("x", k -> "X"));
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void test_concurrent_puts_stay_bounded() throws Exception {
+        LruCache<Integer, Integer> cache    = new LruCache<>(100);
+        ExecutorService            executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t * 10_000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++)
+                        assertEquals(offset + i, cache.get(offset + i, k -> k));
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        //-- concurrent puts can leave the cache briefly over size until the next put evicts
+        cache.put(-1, -1);
+        assertTrue(cache.size() <= 100, "size was " + cache.size());
+    }
+}
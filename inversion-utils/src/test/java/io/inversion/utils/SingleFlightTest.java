@@ -0,0 +1,83 @@
+package io.inversion.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void test_concurrent_callers_share_one_call() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger                calls        = new AtomicInteger();
+        CountDownLatch               release      = new CountDownLatch(1);
+        int                          callers      = 8;
+        CountDownLatch               joined       = new CountDownLatch(callers);
+
+        ExecutorService      executor = Executors.newFixedThreadPool(callers);
+        List<Future<String>> results  = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                SingleFlight.Flight<String> flight = singleFlight.join("key");
+                joined.countDown();
+                if (!flight.isLeader())
+                    return flight.getFuture().join();
+
+                release.await();
+                calls.incrementAndGet();
+                singleFlight.complete("key", flight, "value", true);
+                return "value";
+            }));
+        }
+
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Future<String> result : results)
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getLeaders());
+        assertEquals(callers - 1, singleFlight.getFollowers());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void test_ttl_shares_completed_values() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(50);
+
+        SingleFlight.Flight<String> leader = singleFlight.join("key");
+        assertTrue(leader.isLeader());
+        singleFlight.complete("key", leader, "value", true);
+
+        SingleFlight.Flight<String> hit = singleFlight.join("key");
+        assertFalse(hit.isLeader());
+        assertEquals("value", hit.getFuture().getNow(null));
+        assertEquals(1, singleFlight.getHits());
+
+        Thread.sleep(75);
+        assertTrue(singleFlight.join("key").isLeader());
+    }
+
+    @Test
+    public void test_failures_and_uncacheable_values_are_not_kept() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(60000);
+
+        SingleFlight.Flight<String> leader   = singleFlight.join("key");
+        SingleFlight.Flight<String> follower = singleFlight.join("key");
+        assertNull(follower, "the leader's own thread is never made to wait on itself");
+
+        singleFlight.fail("key", leader, new RuntimeException("boom"));
+        assertTrue(leader.getFuture().isCompletedExceptionally());
+
+        leader = singleFlight.join("key");
+        assertTrue(leader.isLeader());
+        singleFlight.complete("key", leader, "error", false);
+        assertEquals(0, singleFlight.size());
+    }
+}